@@ -27,7 +27,9 @@ import javax.swing.SwingConstants;
 import javax.swing.Timer;
 
 import server.GameServer;
+import client.EnemyInterpolator;
 import client.GameClient;
+import client.IntMap;
 import GUI.GameView.towerType;
 
 public class Board extends JPanel implements MouseListener
@@ -37,7 +39,8 @@ public class Board extends JPanel implements MouseListener
 	ArrayList<EnemyTile> enemiesPrefFrame;
 	ArrayList<EnemyTile> enemiesThisFrame;
 	ArrayList<JLabel> enemyTiles;
-	ArrayList<JProgressBar> enemyHealth;
+	IntMap<EnemyTile> enemyById; //Each enemy's tile, which holds its health bar, by entity ID
+	int enemyFrame; //Counts placeEnemies calls, to find the tiles of enemies that are gone
 	ArrayList<Projectile> projectiles;
 	volatile ArrayList<Line> lines;
 	boolean upgrading;
@@ -48,7 +51,7 @@ public class Board extends JPanel implements MouseListener
 	JTextArea towerStats;
 	TowerTile selectedTower;
 	EnemyTile selectedEnemy;
-	String selectedEnemyID = "";
+	int selectedEnemyID = -1;
 	ImageIcon tower1Proj;
 	ImageIcon tower2Proj;
 	ImageIcon tower3Proj;
@@ -69,8 +72,7 @@ public class Board extends JPanel implements MouseListener
 	
 	public static void main(String[] args)
 	{
-		new GameServer();
-		new GameClient();
+		new GameClient(new GameServer(GameServer.LOCAL_ONLY));
 	}
 	
 	public Board(GameView view)
@@ -85,7 +87,7 @@ public class Board extends JPanel implements MouseListener
 		enemyTiles = new ArrayList<JLabel>();
 		lines = new ArrayList<Line>();
 		tower1Proj = new ImageIcon();
-		enemyHealth = new ArrayList<JProgressBar>();
+		enemyById = new IntMap<EnemyTile>();
 		background = new JLabel("Waiting for image");
 		background.setIcon(new ImageIcon());
 		upgrade = new JButton("Upgrade");
@@ -229,132 +231,90 @@ public class Board extends JPanel implements MouseListener
 	
 	
 	/**
-	 * Takes in a list of EnemyTiles. Updates Board
-	 * @param enemiesInUpdate
+	 * Places the enemies where the EnemyInterpolator has them this frame. Each enemy keeps the
+	 * tile and health bar it was given when it first appeared, matched by its entity ID, and
+	 * they are moved and updated in place; the tiles of enemies no longer sampled are removed.
+	 * @param interpolated the enemies, sampled for this frame
+	 * @param count the number of enemies sampled
+	 * @param enemyData the icons and names of the enemies' sprites
 	 */
-	public void addEnemies(List<EnemyTile> enemiesInUpdate)
-	
+	public void placeEnemies(EnemyInterpolator interpolated, int count, EnemyTileData enemyData)
 	{
-		//Why is this stat display method here? -PH
-		if(enemySelected)
+		enemyFrame++;
+		for(int i = 0; i < count; i++)
 		{
-			for(EnemyTile enemy : enemiesInUpdate)
+			EnemyImage ei = interpolated.getImage(i);
+			EnemyTile tile = enemyById.get(ei.getEntityId());
+			JProgressBar bar;
+			if(tile == null)
 			{
-				if(enemy.getID().equals(selectedEnemyID))
-				{
-					selectedEnemy.setHealth(enemy.getHealth());
-					towerStats.setText("Health: " + selectedEnemy.getHealthLeft() + "/" + selectedEnemy.getMaxHealth() + "\nSpeed: " + selectedEnemy.getSpeed() + "\nAttack: " + selectedEnemy.getAttack() + "\nDefense: " + selectedEnemy.getAttack() + "\nWorth: " + selectedEnemy.getWorth());
-					//System.out.println("Setting enemy health");
-					break;
-				}
+				tile = new EnemyTile();
+				tile.setID(ei.getEntityId());
+				tile.setPokemon(enemyData.getName(ei.getSpriteId()));
+				tile.addMouseListener(new EnemyClickListener());
+				System.out.println("Added a new EnemyImage to board: " + tile.getPokeName());
+				bar = new JProgressBar(0,100);
+				bar.setBackground(Color.RED);
+				bar.setForeground(Color.GREEN);
+				bar.setVisible(true);
+				tile.setHealthBar(bar);
+				this.add(bar);
+				this.add(tile);
+				enemyById.put(ei.getEntityId(), tile);
+				this.enemies.add(tile);
 			}
-		}
-		
-		
-		
-		
-		//for(int i = 0; i < enemies.size() && i < this.enemies.size(); i++)
-		//{
-		//	System.out.println("Enemy ID: " + ((EnemyTile) enemies.get(i)).getID());
-		//	if(!((EnemyTile) (enemies.get(i))).getID().equals(((EnemyTile) (this.enemies.get(i))).getID()))
-		//	{
-		//		this.enemies.remove(i);
-		//		this.enemyHealth.remove(i);
-		//		i--;
-		//		System.out.println("Removing enemy");
-		//	 }
-		//}
-		
-		//If there are no EnemyTiles in the update then remove all from Board
-		
-		// commented out for testing
-		if(enemiesInUpdate.size() == 0)
-		{
-			for(EnemyTile tile : this.enemies)
+			else
 			{
-				this.remove(tile);
-				this.remove(enemyHealth.get(this.enemies.indexOf(tile)));
+				bar = tile.getHealthBar();
 			}
-			//System.out.println("Removed all enemies from view and list");
-			enemyHealth.clear();
-			this.enemies.clear();
+			tile.setIcon(enemyData.getIcon(ei.getSpriteId(), ei.getOrientation()));
+			tile.setStats(ei.getHealthPercentage(), ei.getMaxHealth(), ei.getAttackPower(), ei.getDefense(), ei.getSpeed(), ei.getWorth());
+			tile.frame = enemyFrame;
+			
+			//The interpolated position is in tiles, rows down and columns across
+			int x = (int) Math.round(interpolated.getColumn(i) * tileWidth);
+			int y = (int) Math.round(interpolated.getRow(i) * tileHeight);
+			tile.setBounds(x, y, tileWidth, tileHeight);
+			bar.setBounds(x, y - (tileHeight/4), tileWidth, tileHeight/4);
+			bar.setValue(ei.getHealthPercentage());
+			boolean onBoard = x >= 0 && y >= 0 && x <= this.getWidth() && y <= this.getHeight();
+			tile.setVisible(onBoard);
+			bar.setVisible(onBoard);
 		}
 		
-	
-	
-		//Check which EnemyTiles to keep on the board, remove ones that do not have a matching
-		//ID with any of the EnemyTiles in the update
+		//Remove the EnemyTiles of enemies that were not sampled this frame
+		int kept = 0;
 		for(int i = 0; i < this.enemies.size(); i++)
 		{
-			//System.out.println("Enemy ID (Exists): " + ((EnemyTile) this.enemies.get(i)).getID());
-			
-			for(int j = 0; j < enemiesInUpdate.size(); j++)
+			EnemyTile tile = this.enemies.get(i);
+			if(tile.frame == enemyFrame)
 			{
-				//System.out.println("Enemy ID (Adding): " + ((EnemyTile) enemies.get(j)).getID());
-				if(this.enemies.get(i).getID().equals(((EnemyTile) enemiesInUpdate.get(j)).getID()))
-					break;
-				if(j == enemiesInUpdate.size() - 1)
-				{
-					System.out.println("Removing enemy: " + this.enemies.get(i).getPokeName());
-					this.remove(this.enemies.remove(i));
-					this.remove(enemyHealth.remove(i));
-					
-				}
+				this.enemies.set(kept++, tile);
+			}
+			else
+			{
+				System.out.println("Removing enemy: " + tile.getPokeName());
+				this.remove(tile);
+				this.remove(tile.getHealthBar());
+				enemyById.remove(tile.getID());
 			}
 		}
-		//Creates an EnemyTile in Board's list for each one it is missing from the update?
-		while(this.enemies.size() < enemiesInUpdate.size())
+		while(this.enemies.size() > kept)
 		{
-			EnemyTile tempTile = (EnemyTile) enemiesInUpdate.get(this.enemies.size());
-			tempTile.addMouseListener(new EnemyClickListener());
-			this.enemies.add(tempTile);
-			System.out.println("Added a new EnemyImage to board: " + tempTile.getPokeName());
-			this.enemyHealth.add(new JProgressBar(0,100));
-			enemyHealth.get(enemyHealth.size()-1).setBackground(Color.RED);
-			enemyHealth.get(enemyHealth.size()-1).setForeground(Color.GREEN);
-			enemyHealth.get(enemyHealth.size()-1).setSize(tileWidth, tileHeight/4);
-			enemyHealth.get(enemyHealth.size()-1).setVisible(true);
-			this.add(enemyHealth.get(enemyHealth.size()-1));
-			this.add(this.enemies.get(this.enemies.size()-1));
+			this.enemies.remove(this.enemies.size() - 1);
 		}
 		
-		
-		//	System.out.println("Invalid array size, " + this.enemies.size() + ", " + enemiesInUpdate.size());
-			//for(EnemyTile tile : this.enemies)
-			//{
-				//System.out.println(tile.getID());
-			//}
-		//	System.out.println("End of list.");
-			
-		//	System.out.println("Invalid array size[], " + this.enemies.size() + ", " + enemiesInUpdate.size() + "{}");
-			//for(EnemyTile tile : enemiesInUpdate)
-		//	{
-			//	System.out.println(tile.getID());
-		//	}
-			//System.out.println("End of list.");
-			  
-			 
-			
-			int i = 0;
-			for(JLabel label : this.enemies)
-			{
-				
-				label.setLocation(enemiesInUpdate.get(i).getLocation().x, enemiesInUpdate.get(i).getLocation().y); //giving indexoutofbounds
-				label.setIcon(enemiesInUpdate.get(i).getIcon());
-				if(label.getLocation().x > this.getWidth() || label.getLocation().y > this.getHeight() || label.getLocation().x < 0 || label.getLocation().y < 0)
-				{
-					this.enemies.remove(label);
-				}
-				i++;
-			}
-			i = 0;
-			for(JProgressBar bar : this.enemyHealth)
+		//Why is this stat display method here? -PH
+		if(enemySelected)
+		{
+			EnemyTile tile = enemyById.get(selectedEnemyID);
+			if(tile != null)
 			{
-				bar.setLocation(enemiesInUpdate.get(i).getLocation().x, enemiesInUpdate.get(i).getLocation().y - (tileHeight/4));
-				bar.setValue(((EnemyTile) enemiesInUpdate.get(i)).getHealth());
-				i++;
+				selectedEnemy.setHealth(tile.getHealth());
+				towerStats.setText("Health: " + selectedEnemy.getHealthLeft() + "/" + selectedEnemy.getMaxHealth() + "\nSpeed: " + selectedEnemy.getSpeed() + "\nAttack: " + selectedEnemy.getAttack() + "\nDefense: " + selectedEnemy.getAttack() + "\nWorth: " + selectedEnemy.getWorth());
 			}
-			repaint();
+		}
+		repaint();
 	}
 	
 	public void animateAttack(Point start, Point end, towerType type)
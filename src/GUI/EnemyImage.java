@@ -9,14 +9,13 @@ import GameController.Enemy.directionFacing;
 public class EnemyImage implements Serializable {
 
 	private static final long serialVersionUID = 4456803491165705554L;
-	private String imageURL; //The URL of the image to paint
+	private int spriteId; //The enemy's sprite in SpriteRegistry, drawn facing orientation
 	private Point location; //The coordinates (rowsdown, column) in the grid to paint image
 	private directionFacing orientation; //The orientation NORTH SOUTH EAST WEST enemy faces
 	private int progress; //The percentage that enemy is across the tile. 0 to 100
 						  //Use this to offset the enemy from its top left corner of grid location
 	private int healthPercentage; //For future use to display HP bar of enemies, 0 to 100
-	private String ID; //a 4-digit, 0-9 ID unique to each enemy
-	private String name;
+	private int entityId; //The enemy's ID on its Map, never reused, the key the client matches it across updates by
 	private int maxHealth;
 	private int attackPower;
 	private int defense;
@@ -24,18 +23,35 @@ public class EnemyImage implements Serializable {
 	private int worth;
 	
 	public EnemyImage(Enemy enemy){
-		this.imageURL = enemy.getImageURL();
+		this.spriteId = SpriteRegistry.getEnemySprite(enemy.getName());
 		this.location = enemy.getLocation();
 		this.orientation = enemy.getOrientation();
 		this.progress = enemy.getProgress();
 		this.healthPercentage = enemy.getHealthPercentage();
-		this.ID = enemy.getImageID();
+		this.entityId = enemy.getEntityId();
 		this.maxHealth = enemy.getMaxHealth();
 		this.attackPower = enemy.getAttackPower();
 		this.defense = enemy.getDefense();
 		this.speed = enemy.getSpeed();
 		this.worth = enemy.getMoney();
-		this.name = enemy.getName();
+	}
+	
+	/**
+	 * Rebuilds an EnemyImage from its fields, used by WireCodec when decoding
+	 */
+	public EnemyImage(int entityId, int spriteId, Point location, directionFacing orientation,
+			int progress, int healthPercentage, int maxHealth, int attackPower, int defense, double speed, int worth){
+		this.entityId = entityId;
+		this.spriteId = spriteId;
+		this.location = location;
+		this.orientation = orientation;
+		this.progress = progress;
+		this.healthPercentage = healthPercentage;
+		this.maxHealth = maxHealth;
+		this.attackPower = attackPower;
+		this.defense = defense;
+		this.speed = speed;
+		this.worth = worth;
 	}
 	
 	public int getMaxHealth(){
@@ -58,16 +74,12 @@ public class EnemyImage implements Serializable {
 		return this.worth;
 	}
 	
-	public String getImageURL(){
-		return imageURL;
+	public int getSpriteId(){
+		return spriteId;
 	}
 
-	public String getID(){
-		return ID;
-	}
-	
-	public String getName(){
-		return this.name;
+	public int getEntityId(){
+		return entityId;
 	}
 	
 	public Point getLocation(){
@@ -85,4 +97,26 @@ public class EnemyImage implements Serializable {
 	public int getHealthPercentage(){
 		return healthPercentage;
 	}
+	
+	//Setters used by the client's SnapshotMirror to apply the changed fields of a ClientSnapshot
+	
+	public void setLocation(Point location){
+		this.location = location;
+	}
+	
+	public void setOrientation(directionFacing orientation){
+		this.orientation = orientation;
+	}
+	
+	public void setProgress(int progress){
+		this.progress = progress;
+	}
+	
+	public void setHealthPercentage(int healthPercentage){
+		this.healthPercentage = healthPercentage;
+	}
+	
+	public void setSpeed(double speed){
+		this.speed = speed;
+	}
 }
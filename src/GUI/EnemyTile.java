@@ -1,13 +1,14 @@
 package GUI;
 
 import javax.swing.JLabel;
+import javax.swing.JProgressBar;
 
 import GameController.Enemy.directionFacing;
 
 public class EnemyTile extends JLabel
 {
 	int health;
-	String ID;
+	int ID; //The enemy's entity ID
 	int maxHealth;
 	int attack;
 	int defense;
@@ -15,15 +16,17 @@ public class EnemyTile extends JLabel
 	int worth;
 	directionFacing dir;
 	private String pokeName;
+	JProgressBar healthBar; //Drawn above the tile by Board
+	int frame; //The Board.placeEnemies call that last placed the tile
 	
 	void setHealth(int health)
 	{
 		this.health = health;
 	}
 	
-	void setID(String str)
+	void setID(int ID)
 	{
-		this.ID = str;
+		this.ID = ID;
 	}
 	
 	void setMaxHealth(int maxHealth)
@@ -51,6 +54,11 @@ public class EnemyTile extends JLabel
 		this.worth = worth;
 	}
 	
+	void setHealthBar(JProgressBar healthBar)
+	{
+		this.healthBar = healthBar;
+	}
+	
 	void setDirection(directionFacing dir)
 	{
 		this.dir = dir;
@@ -61,7 +69,7 @@ public class EnemyTile extends JLabel
 		return health;
 	}
 	
-	String getID()
+	int getID()
 	{
 		return ID;
 	}
@@ -96,6 +104,11 @@ public class EnemyTile extends JLabel
 		return defense;
 	}
 	
+	JProgressBar getHealthBar()
+	{
+		return healthBar;
+	}
+	
 	directionFacing getDirection()
 	{
 		return dir;
@@ -3,6 +3,7 @@ package GUI;
 import java.awt.Image;
 import java.net.URL;
 
+import javax.swing.Icon;
 import javax.swing.ImageIcon;
 
 import GameController.Enemy.directionFacing;
@@ -40,6 +41,8 @@ public class EnemyTileData
 	private ImageIcon enemy7Left;
 	private ImageIcon enemy7Right;
 	private ImageIcon enemy8;
+	private Icon[][] spriteIcons = new Icon[0][]; //The icon of each sprite ID, by directionFacing ordinal
+	private String[] spriteNames = new String[0]; //The enemy name of each sprite ID
 	
 	
 	public EnemyTileData(int width, int height)
@@ -250,6 +253,51 @@ public class EnemyTileData
 		return tempEnemyTile;
 	}
 	
+	/**
+	 * Looks up the icons of each sprite of the server's SpriteRegistry table once, so the
+	 * enemies drawn every frame are looked up by sprite ID rather than by matching their names
+	 * @param enemySprites enemy names, indexed by sprite ID
+	 */
+	public void setSpriteTable(String[] enemySprites)
+	{
+		directionFacing[] facings = directionFacing.values();
+		Icon[][] icons = new Icon[enemySprites.length][facings.length];
+		String[] names = new String[enemySprites.length];
+		for(int i = 0; i < icons.length; i++)
+		{
+			names[i] = enemySprites[i] == null ? "Pikachu" : enemySprites[i]; //Unknown sprites are drawn as the default
+			for(directionFacing dir : facings)
+			{
+				icons[i][dir.ordinal()] = getTile(names[i], dir).getIcon();
+			}
+		}
+		spriteNames = names;
+		spriteIcons = icons;
+	}
+	
+	/**
+	 * @param spriteId an EnemyImage's sprite ID
+	 * @param dir the way the enemy faces
+	 * @return the enemy's icon
+	 */
+	public Icon getIcon(int spriteId, directionFacing dir)
+	{
+		if(spriteId < 0 || spriteId >= spriteIcons.length)
+		{
+			return spriteIcons.length > 0 ? spriteIcons[0][dir.ordinal()] : getTile("Pikachu", dir).getIcon();
+		}
+		return spriteIcons[spriteId][dir.ordinal()];
+	}
+	
+	/**
+	 * @param spriteId an EnemyImage's sprite ID
+	 * @return the name of the enemy drawn with the sprite
+	 */
+	public String getName(int spriteId)
+	{
+		return spriteId >= 0 && spriteId < spriteNames.length ? spriteNames[spriteId] : "Pikachu";
+	}
+	
 	/**
 	 * Creates an image icon based on the given URL, used to avoid nullPointers
 	 * @param url The location of the target image
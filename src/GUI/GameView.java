@@ -24,7 +24,9 @@ import java.awt.event.WindowEvent;
 import java.awt.geom.Line2D;
 import java.awt.geom.Point2D;
 import java.net.URL;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -33,6 +35,7 @@ import javax.swing.ImageIcon;
 import javax.swing.JButton;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
+import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JProgressBar;
 import javax.swing.JScrollPane;
@@ -44,7 +47,9 @@ import javax.swing.Timer;
 import javax.swing.UIManager;
 
 import server.GameServer;
+import server.SaveStore;
 import GameController.Enemy.directionFacing;
+import client.EnemyInterpolator;
 import client.GameClient;
 import client.Player;
 
@@ -95,7 +100,9 @@ public class GameView extends JFrame implements MouseListener, MouseMotionListen
 	boolean repaintGUI = true;
 	boolean clickedTowerStore = false;
 	boolean trueForShrink;
-	private Timer animationTimer;
+	private Timer animationTimer; //Draws the enemies every RENDER_INTERVAL_MILLIS
+	private static final int RENDER_INTERVAL_MILLIS = 16; //About 60 frames a second
+	private EnemyInterpolator interpolator = new EnemyInterpolator(); //The enemies between server updates
 	private ArrayList<Projectile> projectiles = new ArrayList<Projectile>();
 	int tileWidth = 102;
 	int tileHeight = 155; 
@@ -133,7 +140,6 @@ public class GameView extends JFrame implements MouseListener, MouseMotionListen
 	//private List<TowerImage> towersLast; //A list of all the TowerImages
 	//private List<EnemyImage> enemiesLast; //A list of all the EnemyImages
 	private List<TowerTile> towers = new ArrayList<TowerTile>(); //A list of all the JLabels on board based on sent TowerImages
-	private List<EnemyTile> enemies = new ArrayList<EnemyTile>(); //A list of all the JLabels on board based on sent EnemyImages
 	private List<JLabel> pathTiles = new ArrayList<JLabel>(); //A list of all the JLabels on board based on enemyPathCoords
 	
 	private TowerTileData towerData;
@@ -167,8 +173,7 @@ public class GameView extends JFrame implements MouseListener, MouseMotionListen
 	 */
 	public static void main(String[] args)
 	{
-		new GameServer();
-		new GameClient();
+		new GameClient(new GameServer(GameServer.LOCAL_ONLY));
 	}
 	
 	/**
@@ -198,7 +203,12 @@ public class GameView extends JFrame implements MouseListener, MouseMotionListen
 		//addComponentListener(new resizeListener());  //Temporarily disabled to stop scaling
 		addMouseMotionListener(this);
 		gameType = type;
-		//animationTimer = new Timer(50, null);
+		animationTimer = new Timer(RENDER_INTERVAL_MILLIS, new ActionListener(){
+			public void actionPerformed(ActionEvent e){
+				renderEnemies();
+			}
+		});
+		animationTimer.start();
 		//towersLast = new ArrayList<TowerImage>();
 		
 		//Change the cursor to pokeball
@@ -535,9 +545,7 @@ public class GameView extends JFrame implements MouseListener, MouseMotionListen
 			
 			TowerTile tempTowerLabel;
 			for(TowerImage ti: newTowers){
-				System.out.println(ti.getImageURL());
-				tempTowerLabel = towerData.getTile(ti.getImageURL());
-				System.out.println(ti.getImageURL());
+				tempTowerLabel = towerData.getTile(ti.getSpriteId());
 				Point tiLocation = ti.getLocation();//this point contains the rowsdown in x and the columnsacross in y
 				int y = tiLocation.x * tileHeight;
 				int x = tiLocation.y * tileWidth;
@@ -554,10 +562,10 @@ public class GameView extends JFrame implements MouseListener, MouseMotionListen
 		for(TowerImage tile : newTowers)
 		{
 			//System.out.println(tile.getLevel() + " <- tower url");
-			if(towerData.getTile(tile.getImageURL()).getLevel() != this.towers.get(i).getLevel())
+			if(towerData.getLevel(tile.getSpriteId()) != this.towers.get(i).getLevel())
 			{
 				System.out.println("Upgrade detected");
-				this.towers.set(i, towerData.getTile(tile.getImageURL()));
+				this.towers.set(i, towerData.getTile(tile.getSpriteId()));
 				((Board) board).addTowers(towers);
 			}
 			i++;
@@ -567,68 +575,21 @@ public class GameView extends JFrame implements MouseListener, MouseMotionListen
 		
 		
 		
-		enemies = new ArrayList<EnemyTile>();
-		//System.out.println("Start of list of enemies:");
-		EnemyTile tempEnemyLabel;
-		for(EnemyImage ei: newEnemies){
-			tempEnemyLabel = new EnemyTile();
-			//tempEnemyLabel = new JLabel(new ImageIcon(ei.getImageURL()));
-			tempEnemyLabel.setIcon(enemyData.getTile(ei.getName(), ei.getOrientation()).getIcon());
-			Point eiLocation = ei.getLocation();//this point contains the rowsdown in x and the columnsacross in y
-			directionFacing orientation = ei.getOrientation();
-			tempEnemyLabel.setID(ei.getID());
-			int progress = ei.getProgress();
-			tempEnemyLabel.setStats(ei.getHealthPercentage(), ei.getMaxHealth(), ei.getAttackPower(), ei.getDefense(), ei.getSpeed(), ei.getWorth());
-			//System.out.println(orientation);
-			//get eiLocation and offset
-			//it by progress fraction of tilewidth/height in direction of orientation
-			//to put the image in the right place
-			//System.out.println(ei.getID());
-			//To use when IDs are set up
-			//tempEnemyLabel.setID(ei.getID());
-			
-			int x = eiLocation.y * tileWidth;
-			if(orientation == directionFacing.WEST){
-				x = x - ((tileWidth * progress) / 100);
-				//tempEnemyLabel.setIcon(enemy1ImageW);
-			}
-			if(orientation == directionFacing.EAST){
-				x = x + ((tileWidth * progress) / 100);
-				//tempEnemyLabel.setIcon(enemy1ImageE);
-			}
-			
-			int y = eiLocation.x * tileHeight;
-			
-			if(orientation == directionFacing.NORTH){
-				y = y - ((tileHeight * progress) / 100);
-				//tempEnemyLabel.setIcon(enemy1ImageN);
-			}
-			if(orientation == directionFacing.SOUTH){
-				y = y + ((tileHeight * progress) / 100);
-				//tempEnemyLabel.setIcon(enemy1ImageS);
-			}
-			tempEnemyLabel.setHealth(ei.getHealthPercentage());
-			tempEnemyLabel.setLocation(x, y);
-			tempEnemyLabel.setSize(tileWidth, tileHeight); //Idk how big we want each enemy, use this for now
-			tempEnemyLabel.setPokemon(ei.getName());
-			enemies.add(tempEnemyLabel);
+		//Enemies are drawn at the display's rate by renderEnemies, between updates
+		interpolator.push(newEnemies, System.nanoTime());
+	}
+	
+	/**
+	 * Called by animationTimer every RENDER_INTERVAL_MILLIS, places the enemies where the
+	 * EnemyInterpolator has them now, between the last updates from the server
+	 */
+	private void renderEnemies()
+	{
+		if(interpolator.isEmpty()){
+			return; //No level yet
 		}
-		//System.out.println("Progress of furthest enemy: " + newEnemies.get(0).getProgress());
-		
-		//for(EnemyImage tile : newEnemies)
-		//{
-			//System.out.println(tile.getID());
-		//}
-		//System.out.println("End of list.");
-		
-		((Board) board).addEnemies(enemies); //Desone's method
-		
-		//Test print line passed, sending the right amount of EnemyTiles to Board
-		//System.out.println("Sending # of EnemyTiles to Board: " + enemies.size());
-		
-		//((Board) board).updateEnemyTiles(enemies); //Test Method -PH
-		repaint();
-		
+		int count = interpolator.sample(System.nanoTime());
+		((Board) board).placeEnemies(interpolator, count, enemyData); //Moves the tiles already on the board, repaints it
 	}
 	
 	void updateTileSize()
@@ -638,6 +599,8 @@ public class GameView extends JFrame implements MouseListener, MouseMotionListen
 		tileHeight = (int) ((board.getHeight()/levelHeight));
 		towerData = new TowerTileData(tileWidth, tileHeight);
 		enemyData = new EnemyTileData(tileWidth, tileHeight);
+		towerData.setSpriteTable(client.getTowerSprites());
+		enemyData.setSpriteTable(client.getEnemySprites());
 		if(gameType == gameType.MULTI)
 			map = new MiniMap(tileWidth, tileHeight, levelWidth, levelHeight);
 		
@@ -694,11 +657,21 @@ public class GameView extends JFrame implements MouseListener, MouseMotionListen
 		}
 	}
 	
+	/**
+	 * Asks for the name of the slot to save the game in, the time by default
+	 */
 	class SaveAction implements ActionListener
 	{
 		public void actionPerformed(ActionEvent arg0)
 		{
-			client.saveGame();
+			String name = (String) JOptionPane.showInputDialog(frame, "Save the game as", "Save",
+					JOptionPane.PLAIN_MESSAGE, null, null, new SimpleDateFormat("MMM d HH:mm").format(new Date()));
+			if(name == null || name.trim().isEmpty())
+			{
+				return;
+			}
+			name = name.trim();
+			client.saveGame(name.length() > SaveStore.MAX_NAME ? name.substring(0, SaveStore.MAX_NAME) : name);
 		}
 	}
 	
@@ -12,10 +12,18 @@ import java.awt.event.ComponentEvent;
 import java.awt.event.ComponentListener;
 import java.awt.event.WindowEvent;
 import java.awt.event.WindowListener;
+import java.io.File;
+import java.io.IOException;
 import java.net.URL;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
 
 import javax.swing.ImageIcon;
 import javax.swing.JButton;
+import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
@@ -23,8 +31,10 @@ import javax.swing.UIManager;
 import javax.swing.text.IconView;
 
 import server.GameServer;
+import server.SaveStore;
 import client.GameClient;
 import client.Player;
+import client.ReplayPlayback;
 
 public class MainMenu extends JFrame implements WindowListener
 {
@@ -35,6 +45,7 @@ public class MainMenu extends JFrame implements WindowListener
 	Image orig;
 	JButton singlePlayer;
 	private JButton loadButton;
+	private JButton replayButton;
 	JButton multiPlayer;
 	JButton instructions;
 	GameView view;
@@ -99,7 +110,10 @@ public class MainMenu extends JFrame implements WindowListener
 		instructions.addActionListener(new buttonListener());
 		loadButton = new JButton("Load");
 		loadButton.addActionListener(new LoadAction());
-		loadButton.setBounds(this.getWidth()/4, (this.getHeight()*4)/5, this.getWidth()/2, this.getHeight()/10);/*
+		loadButton.setBounds(this.getWidth()/4, (this.getHeight()*4)/5, this.getWidth()/4, this.getHeight()/10);
+		replayButton = new JButton("Replay");
+		replayButton.addActionListener(new ReplayAction());
+		replayButton.setBounds(this.getWidth()/2, (this.getHeight()*4)/5, this.getWidth()/4, this.getHeight()/10);/*
 		
 		//Set title
 		title = new JLabel("Pokemon Tower Defense");
@@ -114,6 +128,7 @@ public class MainMenu extends JFrame implements WindowListener
 		this.add(singlePlayer);
 		this.add(multiPlayer);
 		this.add(loadButton);
+		this.add(replayButton);
 		this.add(instructions);
 		this.add(bg);
 		
@@ -157,7 +172,8 @@ public class MainMenu extends JFrame implements WindowListener
 			singlePlayer.setBounds(frame.getWidth()/4, frame.getHeight()/5, frame.getWidth()/2, frame.getHeight()/10);
 			multiPlayer.setBounds(frame.getWidth()/4, (frame.getHeight()*2)/5, frame.getWidth()/2, frame.getHeight()/10);
 			instructions.setBounds(frame.getWidth()/4, (frame.getHeight()*3)/5, frame.getWidth()/2, frame.getHeight()/10);
-			loadButton.setBounds(frame.getWidth()/4, (frame.getHeight()*4)/5, frame.getWidth()/2, frame.getHeight()/10);
+			loadButton.setBounds(frame.getWidth()/4, (frame.getHeight()*4)/5, frame.getWidth()/4, frame.getHeight()/10);
+			replayButton.setBounds(frame.getWidth()/2, (frame.getHeight()*4)/5, frame.getWidth()/4, frame.getHeight()/10);
 			repaint();
 		}
 		public void componentShown(ComponentEvent arg0){}
@@ -233,13 +249,69 @@ public class MainMenu extends JFrame implements WindowListener
 		this.player = player;
 	}
 	
+	/**
+	 * Asks the server for the list of saves, chooseSave is called with it
+	 */
 	class LoadAction implements ActionListener
 	{
 		public void actionPerformed(ActionEvent arg0)
 		{
+			client.listSaves();
+		}
+	}
+	
+	/**
+	 * Lists the saves for the player to choose one, the last game played first, and loads it
+	 * on a new GameView
+	 * @param slots what the index holds of each save, the one saved last first
+	 */
+	public void chooseSave(List<SaveStore.Slot> slots)
+	{
+		String[] options = new String[slots.size() + 1];
+		options[0] = "Last game played";
+		SimpleDateFormat format = new SimpleDateFormat("MMM d HH:mm");
+		for(int i = 0; i < slots.size(); i++)
+		{
+			SaveStore.Slot slot = slots.get(i);
+			options[i + 1] = slot.getName() + " - Level " + slot.getLevelCode() + ", wave " + (slot.getWave() + 1) + ", "
+					+ slot.getHealthPoints() + " HP, $" + slot.getMoney() + ", " + format.format(new Date(slot.getSavedAt()));
+		}
+		String option = (String) JOptionPane.showInputDialog(frame, "Choose a saved game", "Load", JOptionPane.PLAIN_MESSAGE, null, options, options[0]);
+		if(option == null)
+		{
+			return;
+		}
+		int chosen = Arrays.asList(options).indexOf(option);
+		frame.setVisible(false);
+		view = new GameView(GameView.gameType.SINGLE, username, client, player);
+		client.loadGame(chosen <= 0 ? null : slots.get(chosen - 1).getName());
+	}
+	
+	/**
+	 * Asks for a replay the server recorded and plays it back on a new GameView
+	 */
+	class ReplayAction implements ActionListener
+	{
+		public void actionPerformed(ActionEvent arg0)
+		{
+			JFileChooser chooser = new JFileChooser(new File(GameServer.REPLAY_DIRECTORY));
+			if(chooser.showOpenDialog(frame) != JFileChooser.APPROVE_OPTION)
+			{
+				return;
+			}
+			ReplayPlayback replay;
+			try
+			{
+				replay = new ReplayPlayback(client, Files.readAllBytes(chooser.getSelectedFile().toPath()));
+			}
+			catch(IOException e)
+			{
+				JOptionPane.showMessageDialog(frame, "Could not play " + chooser.getSelectedFile().getName() + ": " + e.getMessage());
+				return;
+			}
 			frame.setVisible(false);
-			view = new GameView(GameView.gameType.SINGLE, username, client, player);
-			client.loadGame();
+			view = new GameView(replay.isMultiplayer() ? GameView.gameType.MULTI : GameView.gameType.SINGLE, username, client, player);
+			client.playReplay(replay);
 		}
 	}
 	
@@ -258,6 +330,7 @@ public class MainMenu extends JFrame implements WindowListener
 		multiPlayer.repaint();
 		instructions.repaint();
 		loadButton.repaint();
+		replayButton.repaint();
 		singlePlayer.repaint();
 		/*
 		title.setOpaque(true);
@@ -35,8 +35,7 @@ public class MiniMap extends JFrame
 	
 	public static void main(String[] args)
 	{
-		new GameServer();
-		new GameClient();
+		new GameClient(new GameServer(GameServer.LOCAL_ONLY));
 	}
 	
 	public MiniMap(int tileWidth, int tileHeight, int levelWidth, int levelHeight)
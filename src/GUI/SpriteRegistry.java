@@ -0,0 +1,86 @@
+package GUI;
+
+import java.util.HashMap;
+
+/**
+ * The table of every enemy and tower sprite, so EnemyImages and TowerImages can name their
+ * sprite by a small int instead of carrying its name or image URL. The server sends a client
+ * the table once when it connects, in a ClientSpriteTable, and the client's EnemyTileData and
+ * TowerTileData turn it into an array of scaled icons indexed by sprite ID.
+ *
+ * Enemy sprites are keyed by the enemy's name, tower sprites by the image URL of the tower's
+ * level. ID 0 is UNKNOWN, for anything not in the table, and is drawn with a default sprite.
+ *
+ * Instance Variables:
+ * String[] ENEMIES							- The enemy names, indexed by sprite ID
+ * String[] TOWERS							- The tower image URLs, indexed by sprite ID
+ * HashMap<String, Integer> enemyIds, towerIds	- The sprite ID of each key
+ *
+ * Methods:
+ * static int getEnemySprite(String name)
+ * static int getTowerSprite(String imageURL)
+ * static String[] getEnemySprites()
+ * static String[] getTowerSprites()
+ */
+public final class SpriteRegistry{
+
+	public static final int UNKNOWN = 0;
+
+	private static final String[] ENEMIES = {null, "Pikachu", "Bulbasaur", "Squirtle", "Mew", "Koffing", "Rattata",
+			"Growlithe", "Doc McCann"};
+	private static final String[] TOWERS = {null,
+			"src/images/tower1Level1.png", "src/images/tower1Level2.png",
+			"src/images/tower2Level1.png", "src/images/tower2Level2.png", "src/images/tower2level3.png",
+			"src/images/tower3Level1.png", "src/images/tower3Level2.png",
+			"src/images/tower4Level1.png", "src/images/tower4Level2.png", "src/images/tower4level3.png",
+			"src/images/tower5Level1.png", "src/images/tower5Level2.png", "src/images/tower5level3.png",
+			"src/images/tower6Level1.png", "src/images/tower6Level2.png", "src/images/tower6level3.png",
+			"src/images/tower7Level1.png", "src/images/tower7Level2.png", "src/images/tower7level3.png",
+			"src/images/tower8Level1.png"};
+
+	private static final HashMap<String, Integer> enemyIds = index(ENEMIES); //Only read once built
+	private static final HashMap<String, Integer> towerIds = index(TOWERS);
+
+	private SpriteRegistry(){
+	}
+
+	private static HashMap<String, Integer> index(String[] keys){
+		HashMap<String, Integer> ids = new HashMap<String, Integer>(keys.length * 2);
+		for(int i = 1; i < keys.length; i++){
+			ids.put(keys[i], i);
+		}
+		return ids;
+	}
+
+	/**
+	 * @param name an enemy's name
+	 * @return the enemy's sprite ID, UNKNOWN if it has none
+	 */
+	public static int getEnemySprite(String name){
+		Integer id = name == null ? null : enemyIds.get(name);
+		return id == null ? UNKNOWN : id;
+	}
+
+	/**
+	 * @param imageURL the image URL of a tower's level
+	 * @return the tower's sprite ID, UNKNOWN if it has none
+	 */
+	public static int getTowerSprite(String imageURL){
+		Integer id = imageURL == null ? null : towerIds.get(imageURL);
+		return id == null ? UNKNOWN : id;
+	}
+
+	/**
+	 * @return a copy of the enemy names, indexed by sprite ID
+	 */
+	public static String[] getEnemySprites(){
+		return ENEMIES.clone();
+	}
+
+	/**
+	 * @return a copy of the tower image URLs, indexed by sprite ID
+	 */
+	public static String[] getTowerSprites(){
+		return TOWERS.clone();
+	}
+}
@@ -18,18 +18,30 @@ public class TowerImage implements Serializable{
 	 * 
 	 */
 	private static final long serialVersionUID = -3104951236268857001L;
-	private String imageURL; //The URL of the image to paint
+	private int spriteId; //The sprite of the tower's level in SpriteRegistry
 	private Point location; //The coordinates (rowsDown, column) in grid to paint image
 	private int level; //The evolution stage
+	private int entityId; //The tower's ID on its Map, the key ClientSnapshot deltas refer to it by
 	
 	public TowerImage(Tower tower){
-		imageURL = tower.getImageURL();
+		spriteId = SpriteRegistry.getTowerSprite(tower.getImageURL());
 		location = tower.getPosition();
 		level = tower.getCurrentLevel();
+		entityId = tower.getEntityId();
 	}
 	
-	public String getImageURL(){
-		return imageURL;
+	/**
+	 * Rebuilds a TowerImage from its fields, used by WireCodec when decoding
+	 */
+	public TowerImage(int entityId, int spriteId, Point location, int level){
+		this.entityId = entityId;
+		this.spriteId = spriteId;
+		this.location = location;
+		this.level = level;
+	}
+	
+	public int getSpriteId(){
+		return spriteId;
 	}
 	
 	public Point getLocation(){
@@ -43,4 +55,8 @@ public class TowerImage implements Serializable{
 	public int getLevel(){
 		return level;
 	}
+	
+	public int getEntityId(){
+		return entityId;
+	}
 }
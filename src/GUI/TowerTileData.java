@@ -29,6 +29,7 @@ public class TowerTileData
 	private ImageIcon tower7Level2Image;
 	private ImageIcon tower7Level3Image;
 	private ImageIcon tower8Level1Image;
+	private TowerTile[] spriteTiles = new TowerTile[0]; //A tile of each sprite ID, copied by getTile(int)
 
 	
 	public TowerTileData(int width, int height)
@@ -314,6 +315,57 @@ public class TowerTileData
 		return tempTowerLabel;
 	}
 	
+	/**
+	 * Builds a tile for each sprite of the server's SpriteRegistry table, so the towers of an
+	 * update are looked up by sprite ID rather than by matching their URLs
+	 * @param towerSprites tower image URLs, indexed by sprite ID
+	 */
+	public void setSpriteTable(String[] towerSprites)
+	{
+		TowerTile[] tiles = new TowerTile[towerSprites.length];
+		for(int i = 0; i < tiles.length; i++)
+		{
+			tiles[i] = getTile(towerSprites[i] == null ? "" : towerSprites[i]);
+		}
+		spriteTiles = tiles;
+	}
+	
+	private TowerTile getPrototype(int spriteId)
+	{
+		if(spriteId <= 0 || spriteId >= spriteTiles.length)
+		{
+			return spriteTiles.length > 0 ? spriteTiles[0] : getTile("");
+		}
+		return spriteTiles[spriteId];
+	}
+	
+	/**
+	 * @param spriteId a TowerImage's sprite ID
+	 * @return a new tile of the sprite, each tower on the board needs its own
+	 */
+	public TowerTile getTile(int spriteId)
+	{
+		TowerTile prototype = getPrototype(spriteId);
+		TowerTile tempTowerLabel = new TowerTile();
+		tempTowerLabel.setType(prototype.getType());
+		tempTowerLabel.setLevel(prototype.getLevel());
+		tempTowerLabel.setRange(prototype.getRange());
+		tempTowerLabel.setPower(prototype.getPower());
+		tempTowerLabel.setRate(prototype.getRate());
+		tempTowerLabel.setSpecial(prototype.getSpecial());
+		tempTowerLabel.setUpgradable(prototype.isUpgradable());
+		tempTowerLabel.setIcon(prototype.getIcon());
+		return tempTowerLabel;
+	}
+	
+	/**
+	 * @return the level of a sprite's tile, without making a tile
+	 */
+	public int getLevel(int spriteId)
+	{
+		return getPrototype(spriteId).getLevel();
+	}
+	
 	/**
 	 * Creates an image icon based on the given URL, used to avoid nullPointers
 	 * @param url The location of the target image
@@ -41,7 +41,7 @@ public class BulbasaurEnemy extends Enemy{
 	 */
 	@Override
 	boolean specialPower() {
-		Random r = new Random();
+		Random r = getMap().getRandom();
 		int value = r.nextInt(3);
 		if (value == 0 || value == 1){
 			int newHealth = super.getHealth() + 5;
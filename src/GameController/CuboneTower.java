@@ -1,6 +1,5 @@
 package GameController;
 
-import java.util.ArrayList;
 
 import GUI.GameView.towerType;
 import GameController.Enemy;
@@ -15,7 +14,7 @@ import GameController.Tower;
  * 
  * methods
  * Constructor declares a the name of the player and a few other
- * ArrayList<Pokemon> AttackEnemy(ArrayList<Pokemon> enemies)
+ * boolean AttackEnemy()
  * setModifier
  * getModifer
  * boolean increaseFireRate(int amountToIncrease)
@@ -52,9 +51,9 @@ public class CuboneTower extends Tower{
 
 	/**
 	 * (non-Javadoc)
-	 * @see GameController.Tower#AttackEnemy(java.util.ArrayList)
-	 * Attack Enemy algorithm is simply.  It is passed the arraylist
-	 * of current enemies on the board that are alive.  It then runs a 
+	 * @see GameController.Tower#AttackEnemy()
+	 * Attack Enemy algorithm is simply.  It looks at the enemies
+	 * alive on the path tiles in its range.  It then runs a 
 	 * for loop for each enemy getting their current point on the board
 	 * checks if that enemy is within range with canAttackEnemy() method which
 	 * returns true if it can be attacked.  It then uses the incomingAttack()
@@ -69,11 +68,11 @@ public class CuboneTower extends Tower{
 	 //This method will be called by map every tick() as long as tower is not on cooldown from last attack and passed
 	 //a list of all enemies currently on the map
 	@Override
-	public boolean AttackEnemy(ArrayList<Enemy> enemies) {
+	public boolean AttackEnemy() {
 		
 		Enemy myClosestEnemy;
 		
-		myClosestEnemy = super.findClosestEnemy(enemies);
+		myClosestEnemy = super.findPriorityEnemy();
 		
 		if (myClosestEnemy == null)
 			return false;
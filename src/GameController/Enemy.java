@@ -2,8 +2,8 @@ package GameController;
 
 import java.awt.Point;
 import java.io.Serializable;
-import java.util.Random;
 
+import model.EnemyStore;
 import model.Map;
 
 /**
@@ -44,7 +44,11 @@ import model.Map;
  * boolean setSpeed(int speed)
  * String getImageURL()
  * Int getProgress()
- * void setProgress()
+ *
+ * Once spawned, the per-tick state (health, speed, path cursor, steps and effects)
+ * lives in its Map's EnemyStore and the getters and setters below read and write it
+ * there through storeHandle. The fields here hold that state before spawning and
+ * after the enemy leaves the map.
  */
 public abstract class Enemy implements Serializable{
 	private static final long serialVersionUID = -6737505326016172175L;
@@ -66,21 +70,16 @@ public abstract class Enemy implements Serializable{
 	private String downURL;
 	private Map map;
 	private int timePerTile; //The time in ms the enemy will spend on each tile before moving to the next
-	private int timeSinceLastMovement; //The time in ms since the enemy has last moved a tile
-	private int progress;		// requested by Desone track progress (timeSinceLastMovement/timePerTile)
 	private directionFacing orientation; //The way the enemy is facing based on it's Location nextLocation
 	private int stepsTaken; //The amount of tiles the enemy has taken along the path, useful for targeting farthest
 	private int distanceLeftOnPath;
 	private int maxHealth; //The initial, maximum health of Enemy
-	private int healthPercentage; //The percentage of current Health / maxHealth
 	private int pathTravelingCode; //The path # that the enemy is traveling on, starting at 0. Set when Level spawns enemies
-	private String imageID; //A randomized, constant ID code for each Enemy to pass to their Image requested by Desone
 	
-	private Point startingPosition; // @Max 12/11 this is for the teleport method
-	private boolean checkerForStartingPosition = true;
-	private boolean isAsleep = false, isBurnt = false, isSlowed = false;
-	private boolean activeEffectOn = false;
-	private int timeDuration = 0, secondsAlive = 0, burnDamage = 0;
+	private int pathCursor; //The index of the enemy's current position in its Map's CompiledPath
+	private EnemyStore store; //The store holding this enemy's per-tick state while it is on a Map
+	private int storeHandle = -1; //This enemy's handle in store, -1 when not spawned
+	private int entityId = -1; //Given by the Map the enemy spawns on, unique among that map's enemies and towers
 	
 	
 	public enum enemyType {NORMAL,WATER,ELECTRIC,GRASS,POISON,PSYCHIC,FIRE,MCCANN}
@@ -110,24 +109,10 @@ public abstract class Enemy implements Serializable{
 		this.leftURL = west;
 		this.rightURL = east;
 		orientation = directionFacing.EAST; //By default
-		timeSinceLastMovement = 0;
 		stepsTaken = 0;
-		healthPercentage = 100;
 		this.map = mapRef;
-		this.generateImageID();
 		//distanceLeftOnPath = mapRef.lengthOfPath();
 	} // end constructor
-	
-	private void generateImageID() {
-		this.imageID = "";
-		Random r = new Random();
-		Integer a;
-		for(int i = 0; i < 4; i++){
-			a = r.nextInt(10);
-			imageID = imageID + a.toString();
-		}
-		
-	}
 
 	// Max 12/2 this is for the pokemon's unique abilities
 	abstract boolean specialPower();
@@ -148,51 +133,45 @@ public abstract class Enemy implements Serializable{
 	 */
 	public boolean setLocation(Point x){
 		this.location = x;
-		// @Max 12/11 this stores the first point on the board the pokemon was at for teleport
-		if (checkerForStartingPosition){
-			this.startingPosition = x;
-			checkerForStartingPosition = false;
-		}
-			
 		return true;
 	}
 	
-	public void calculateHealthPercentage(){
-		this.healthPercentage = (int) Math.ceil(100*((double)Health / (double) maxHealth));
-	}
-	
 	//I moved a copy of this and changed name slightly to the Enemy Class
 	//Remember Point.x = how many rows down, Point.y = how many columns right the location is in the model
 public enum directionFacing{NORTH, EAST, SOUTH, WEST};
 	
-	private directionFacing direction(Enemy enemy)
+	/**
+	 * Looks up the way the enemy faces on its current path position, precomputed by the
+	 * Map's CompiledPath, and sets its image to match.
+	 * @return the directionFacing of the enemy
+	 */
+	private directionFacing direction()
 	{
-		// right, left, up, down
-		if(enemy.getLocation().x - enemy.getNextLocation().x > 0)
-		{
-			//this.imageURL = this.upURL;
-			enemy.setImageNorth();
-			return directionFacing.NORTH;
-		}
-		else if(enemy.getLocation().x - enemy.getNextLocation().x < 0)
-		{
-			//this.imageURL = this.downURL;
-			enemy.setImageSouth();
-			return directionFacing.SOUTH;
-		}
-		else if(enemy.getLocation().y - enemy.getNextLocation().y < 0)
-		{
-			//this.imageURL = this.rightURL;
-			enemy.setImageEast();
-			return directionFacing.EAST;
-		}
-		else if(enemy.getLocation().y - enemy.getNextLocation().y < 0)
-		{
-			//this.imageURL = this.leftURL;
-			enemy.setImageWest();
-			return directionFacing.WEST;
+		directionFacing facing = map.getCompiledPath(pathTravelingCode).getFacing(pathCursor);
+		setOrientation(facing);
+		return facing;
+	}
+	
+	/**
+	 * Sets the way the enemy faces and the image URL that goes with it
+	 * @param facing the new directionFacing
+	 */
+	public void setOrientation(directionFacing facing){
+		this.orientation = facing;
+		switch(facing){
+		case NORTH:
+			setImageNorth();
+			break;
+		case SOUTH:
+			setImageSouth();
+			break;
+		case EAST:
+			setImageEast();
+			break;
+		case WEST:
+			setImageWest();
+			break;
 		}
-		return directionFacing.SOUTH;//By default, shouldn't ever get to this point
 	}
 	
 	private void setImageNorth(){
@@ -211,12 +190,89 @@ public enum directionFacing{NORTH, EAST, SOUTH, WEST};
 	
 	// increase the number of steps taken each tick
 	public void takeStep(){
-		stepsTaken++;
+		if(storeHandle >= 0){
+			store.setStepsTaken(storeHandle, store.getStepsTaken(storeHandle) + 1);
+		}else{
+			stepsTaken++;
+		}
 	}
 	
 	// return the number of steps taken
 	public int getStepsTaken(){
-		return stepsTaken;
+		return storeHandle >= 0 ? store.getStepsTaken(storeHandle) : stepsTaken;
+	}
+	
+	// back to 0 steps taken, for when the enemy is sent back to the start of its path
+	public void resetStepsTaken(){
+		if(storeHandle >= 0){
+			store.setStepsTaken(storeHandle, 0);
+		}else{
+			stepsTaken = 0;
+		}
+	}
+	
+	/**
+	 * Returns the index of the enemy's current position along its path
+	 * @return pathCursor, 0 on the first tile of the path
+	 */
+	public int getPathCursor(){
+		return storeHandle >= 0 ? store.getPathCursor(storeHandle) : pathCursor;
+	}
+	
+	/**
+	 * Sets the index of the enemy's position along its path, to be called by its Map
+	 * @param pathCursor the new position along the path
+	 */
+	public void setPathCursor(int pathCursor){
+		if(storeHandle >= 0){
+			store.setPathCursor(storeHandle, pathCursor);
+		}else{
+			this.pathCursor = pathCursor;
+		}
+	}
+	
+	/**
+	 * Attaches this enemy to the EnemyStore that now holds its per-tick state.
+	 * To be called by EnemyStore.add after it has copied that state in.
+	 * @param store the EnemyStore of the Map this enemy spawned on
+	 * @param handle this enemy's handle in the store
+	 */
+	public void attachToStore(EnemyStore store, int handle){
+		this.store = store;
+		this.storeHandle = handle;
+	}
+	
+	/**
+	 * Updates this enemy's handle after the store moved it to fill a removed slot
+	 * @param handle the new handle
+	 */
+	public void setStoreHandle(int handle){
+		this.storeHandle = handle;
+	}
+	
+	/**
+	 * @return this enemy's handle in its Map's EnemyStore, -1 if it is not on a Map
+	 */
+	public int getStoreHandle(){
+		return storeHandle;
+	}
+	
+	/**
+	 * Copies the per-tick state back out of the store, to be called by EnemyStore.remove
+	 * when the enemy dies or breaches.
+	 */
+	public void detachFromStore(){
+		if(storeHandle < 0){
+			return;
+		}
+		Health = store.getHealth(storeHandle);
+		Speed = store.getSpeed(storeHandle);
+		timePerTile = store.getTimePerTile(storeHandle);
+		pathCursor = store.getPathCursor(storeHandle);
+		pathTravelingCode = store.getPathNumber(storeHandle);
+		stepsTaken = store.getStepsTaken(storeHandle);
+		storeHandle = -1;
+		store = null;
 	}
 	
 	// Upon death is returns the worth of the Pokemon
@@ -240,7 +296,7 @@ public enum directionFacing{NORTH, EAST, SOUTH, WEST};
 	
 	// this method just checks if the enemy is dead and returns a boolean depending on it
 	public boolean isDead(){
-		if(this.Health <= 0){
+		if(getHealth() <= 0){
 			map.gainedGold(Worth); // this calls the maps gainedGold method passing it he worth of the Enemy
 			return true;
 		}
@@ -259,27 +315,45 @@ public enum directionFacing{NORTH, EAST, SOUTH, WEST};
 		int healthToSubtract = incomingAttack - this.Defense;
 		if(healthToSubtract < 0)
 			healthToSubtract = 0;
-		this.Health -= healthToSubtract;
-		
+		setHealth(getHealth() - healthToSubtract);
+		checkForDeath();
+		return true;
+	}
+	
+	/**
+	 * Removes the enemy from its Map if its health has run out, paying out its worth
+	 * @return true if the enemy died
+	 */
+	public boolean checkForDeath(){
 		if(isDead()){
 			this.map.removeDeadEnemy(this.location, this);
+			return true;
 		}
-		this.calculateHealthPercentage();
-		return true;
+		return false;
 	}
 	
 	// gets the current speed of the pokemon
 	public double getSpeed(){
-		return this.Speed;
+		return storeHandle >= 0 ? store.getSpeed(storeHandle) : this.Speed;
 	}
 	
 	// set the speed of the pokemon is we need to later
 	public boolean setSpeed(int speed){
 		this.Speed = speed;
 		calculateTimePerTile();
+		if(storeHandle >= 0){
+			store.setSpeed(storeHandle, this.Speed, timePerTile);
+		}
 		return true;
 	}
 	
+	/**
+	 * @return the time in ms the enemy spends on each tile
+	 */
+	public int getTimePerTile(){
+		return storeHandle >= 0 ? store.getTimePerTile(storeHandle) : timePerTile;
+	}
+	
 	/**
 	 * Updates the timePerTile variable, must be called every time Speed is changed
 	 */
@@ -316,11 +390,15 @@ public enum directionFacing{NORTH, EAST, SOUTH, WEST};
 	}
 	
 	public int getHealth(){
-		return this.Health;
+		return storeHandle >= 0 ? store.getHealth(storeHandle) : this.Health;
 	}
 	
 	public void setHealth(int newHealth){
-		this.Health = newHealth;
+		if(storeHandle >= 0){
+			store.setHealth(storeHandle, newHealth);
+		}else{
+			this.Health = newHealth;
+		}
 	}
 	
 	public void levelUpAttackPower(int newAttack){
@@ -335,46 +413,25 @@ public enum directionFacing{NORTH, EAST, SOUTH, WEST};
 		this.map = map;
 		
 	}
+	
+	/**
+	 * @return the Map the pokemon is on
+	 */
+	public Map getMap() {
+		return this.map;
+	}
 
 	/**
-	 * Updates the timeSinceLastMovement variable and checks/moves if the Enemy can move
+	 * Moves the enemy to the next tile of its path. Called by the Map's EnemyStore
+	 * once the enemy has spent timePerTile on its current tile.
 	 */
-	public void tick(int timePerTick) {
-		timeSinceLastMovement = timeSinceLastMovement + timePerTick; //20 because master Timer ticks every 20 ms, make sure it is equal
-		if(timeSinceLastMovement >= timePerTile){
-			
-			if (!isAsleep){
-				map.updateEnemyPosition(this);
-				orientation = this.direction(this);//Enemy has just moved, update it's orientation
-				timeSinceLastMovement = 0;
-				specialPower();	
-			}
+	public void advanceAlongPath(){
+		map.updateEnemyPosition(this);
+		if(storeHandle < 0){
+			return; //Breached on the last tile and left the map
 		}
-		if (timeSinceLastMovement%1000 == 0){
-		
-			if (isBurnt){
-				
-				this.Health -= burnDamage;
-				
-				if(isDead()){
-					this.map.removeDeadEnemy(this.location, this);
-				}
-				this.calculateHealthPercentage();
-				
-			}
-			if (timeDuration == 0){
-				if (isSlowed)
-					this.Speed *= 0.5; //Speed should be slowed
-				
-				isBurnt = false;
-				isAsleep = false;
-				isSlowed = false;
-				activeEffectOn = false;
-			}
-			--timeDuration;
-		}
-		
-		calculateProgress(); //Updates % of tile he is finished with
+		this.direction();//Enemy has just moved, update it's orientation
+		specialPower();
 	}
 	
 	// get the previous location of the pokemon
@@ -401,26 +458,9 @@ public enum directionFacing{NORTH, EAST, SOUTH, WEST};
 		//distanceLeftOnPath--;
 	}
 	
-	// for desonne and the GUI
+	// for desonne and the GUI, the percentage that the enemy is across the tile
 	public int getProgress(){
-		return this.progress;
-	}
-	
-	//The percentage that the enemy is across the tile is progress
-	//this method is called on each enemy every tick.
-	public void calculateProgress(){
-		setProgress((double)timeSinceLastMovement/(double)timePerTile);
-	}
-	
-	// for Desone and the GUI
-	public void setProgress(double prog){
-		if (prog < 0){
-			this.progress = 0;
-		}
-		if(prog > 1)
-			this.progress = 100;
-		else
-			this.progress = (int)(prog*100);
+		return storeHandle >= 0 ? store.getProgress(storeHandle) : 0;
 	}
 	
 	public directionFacing getOrientation(){
@@ -439,7 +479,7 @@ public enum directionFacing{NORTH, EAST, SOUTH, WEST};
 	 * @return an int from 0-100 of percent of health left
 	 */
 	public int getHealthPercentage() {
-		return healthPercentage;
+		return (int) Math.ceil(100*((double)getHealth() / (double) maxHealth));
 	}
 	
 	
@@ -468,7 +508,7 @@ public enum directionFacing{NORTH, EAST, SOUTH, WEST};
 	 * @return pathTravelingCode that identifies which path, starting at 0, that the enemy travels
 	 */
 	public int getPathTravelingCode() {
-		return pathTravelingCode;
+		return storeHandle >= 0 ? store.getPathNumber(storeHandle) : pathTravelingCode;
 	}
 
 	/**
@@ -478,48 +518,51 @@ public enum directionFacing{NORTH, EAST, SOUTH, WEST};
 	 */
 	public void setPathTravelingCode(int pathTravelingCode) {
 		this.pathTravelingCode = pathTravelingCode;
+		if(storeHandle >= 0){
+			store.setPathNumber(storeHandle, pathTravelingCode);
+		}
 	}
 	
 	/**
 	 * @Max the special abilites are what follows
 	 */
 	public boolean setAsleep(int amountOfSecsAsleep){
-		if (!activeEffectOn){
-			timeDuration = amountOfSecsAsleep;
-			isAsleep = true;
-			activeEffectOn = true;
+		if(storeHandle >= 0){
+			store.startEffect(storeHandle, EnemyStore.ASLEEP, amountOfSecsAsleep, 0);
 		}
 		return true;
 	}
 	
 	public boolean setSlowed(int amountOfSecsSlowed){
-		if (!activeEffectOn){
-			timeDuration = amountOfSecsSlowed;
-			
-			isSlowed = true;
-			activeEffectOn = true;
+		if(storeHandle >= 0){
+			store.startEffect(storeHandle, EnemyStore.SLOWED, amountOfSecsSlowed, 0);
 		}
 		return true;
 	}
 	
 	public boolean setBurnt(int amountOfSecsBurnt, int burningDamage){
-		if(!activeEffectOn){
-			timeDuration = amountOfSecsBurnt;
-			isBurnt = true;
-			activeEffectOn = true;
-			burnDamage = burningDamage;
+		if(storeHandle >= 0){
+			store.startEffect(storeHandle, EnemyStore.BURNT, amountOfSecsBurnt, burningDamage);
 		}
 		return true;
 	}
 	
 	public boolean teleportToBeginning(){
-		setLocation(startingPosition);
-		//TODO: also set their number of steps to 0
+		if(map != null && location != null){
+			map.returnEnemyToStart(this); //Resets the path cursor and steps taken and moves tiles
+		}
 		return true;
 	}
 
-	public String getImageID() {
-		return this.imageID;
+	/**
+	 * @return the ID the enemy's Map gave it on spawning, -1 before it spawns
+	 */
+	public int getEntityId(){
+		return entityId;
+	}
+
+	public void setEntityId(int id){
+		this.entityId = id;
 	}
 
 	public int getMaxHealth() {
@@ -1,6 +1,5 @@
 package GameController;
 
-import java.util.ArrayList;
 import java.util.Random;
 
 import GUI.GameView.towerType;
@@ -41,9 +40,9 @@ public class MagnemiteTower extends Tower{
 
 	/**
 	 * (non-Javadoc)
-	 * @see GameController.Tower#AttackEnemy(java.util.ArrayList)
-	 * Attack Enemy algorithm is simply.  It is passed the arraylist
-	 * of current enemies on the board that are alive.  It then runs a 
+	 * @see GameController.Tower#AttackEnemy()
+	 * Attack Enemy algorithm is simply.  It looks at the enemies
+	 * alive on the path tiles in its range.  It then runs a 
 	 * for loop for each enemy getting their current point on the board
 	 * checks if that enemy is within range with canAttackEnemy() method which
 	 * returns true if it can be attacked.  It then uses the incomingAttack()
@@ -58,11 +57,11 @@ public class MagnemiteTower extends Tower{
 	 //This method will be called by map every tick() as long as tower is not on cooldown from last attack and passed
 	 //a list of all enemies currently on the map
 	@Override
-	public boolean AttackEnemy(ArrayList<Enemy> enemies) {
+	public boolean AttackEnemy() {
 		
 		Enemy myClosestEnemy;
 		
-		myClosestEnemy = super.findClosestEnemy(enemies);
+		myClosestEnemy = super.findPriorityEnemy();
 		
 		if (myClosestEnemy == null)
 			return false;
@@ -72,21 +71,21 @@ public class MagnemiteTower extends Tower{
 			
 			if ( super.getCurrentLevel() == 1)
 			{
-				Random r1 = new Random();
+				Random r1 = getMap().getRandom();
 				int chanceOfEffect1 = r1.nextInt(7);
 				if (chanceOfEffect1 == 0)
 					myClosestEnemy.setSlowed(durationOfSlow);
 			}
 			else if( super.getCurrentLevel() == 2)
 			{
-					Random r2 = new Random();
+					Random r2 = getMap().getRandom();
 					int chanceOfEffect2 = r2.nextInt(5);
 					if (chanceOfEffect2 == 0)
 						myClosestEnemy.setSlowed(durationOfSlow+multiSlow);
 			}
 				else if(super.getCurrentLevel() == 3)
 				{
-					Random r3 = new Random();
+					Random r3 = getMap().getRandom();
 					int chanceOfEffect3 = r3.nextInt(3);
 					if (chanceOfEffect3 == 0)
 						myClosestEnemy.setSlowed(durationOfSlow+multiSlow+multiSlow);
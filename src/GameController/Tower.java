@@ -28,7 +28,7 @@ import model.Map;
  * int Modifier			- this variable has yet to be determined what is used for
  * 
  * Abstract Methods:
- * boolean AttackEnemy(ArrayList<Pokemon> enemies)  - attack algorithm
+ * boolean AttackEnemy()  - attack algorithm
  * boolean setModifer()							- the modifier to what ever we want it to be
  * boolean getModifer()							- get the current state of the modifier
  * 
@@ -50,6 +50,15 @@ import model.Map;
  * Point getPosition();
  * int getCost();
  * boolean checkBuy();
+ * Enemy findPriorityEnemy();
+ * void startFiring();
+ * void stopFiring();
+ * void fire(long time);
+ * void wake();
+ * int getEntityId();
+ * long getNextFireTime();
+ * boolean isReadyToFire();
+ * void restoreFiring(long nextFireTime, boolean readyToFire);
  */
 
 public abstract class Tower implements Serializable{
@@ -65,11 +74,13 @@ public abstract class Tower implements Serializable{
 	private String GymOwner;
 	private String ImageURL;
 	private int Modifier;  //A modifier that might be used later on
-	private int timeSinceLastFire; //The time, in ms, since Tower last fired.
+	private long nextFireTime = -1; //The game time in ms this tower's next shot is scheduled for on its Map, -1 if none
 	private int coolDownTime; // (1/FireRateSecs)*1000, the minimum time in ms allowed between attacks
 	private Map map; //The map on which the tower is placed
 	private int CostofTower;
-	private boolean readyToFire; //true if tower is ready to fire, false if not
+	private boolean readyToFire; //true if tower is idle waiting for an enemy to come in range
+	private int[] pathCoverage; //(path, index) pairs in range ordered farthest along first, see Map.computePathCoverage
+	private int entityId = -1; //Given by the Map the tower is placed on, unique among that map's enemies and towers
 	
 	// for image load the location of the image here
 	/**
@@ -91,7 +102,6 @@ public abstract class Tower implements Serializable{
 		this.calculateCoolDown();
 		this.GymOwner = PlayersName;
 		this.ImageURL = Image;
-		timeSinceLastFire = 0;
 		this.Level = 1;
 		CostofTower = cost;
 	} // end Currency
@@ -102,7 +112,7 @@ public abstract class Tower implements Serializable{
 	 */
 	
 	// attack an enemy!!!  this is could be dependent on the Gym
-	public abstract boolean AttackEnemy(ArrayList<Enemy> enemies);
+	public abstract boolean AttackEnemy();
 	
 	// a modifier method that might be used later on and is dependent on the Gyms Attributes
 	public abstract boolean setModifer();
@@ -167,28 +177,27 @@ public abstract class Tower implements Serializable{
 	 */
 	public boolean setPlaceOnBoard (Point x){
 		this.BoardLocation = x;
+		updatePathCoverage();
 		return true;
 	}// end setPlaceOnBoard
 	
 	/**
-	 * This method uses the distance between two points on a Euclidean coordinate system
+	 * This method uses the squared distance between two points on a Euclidean coordinate system
 	 * 
-	 *                  _______________________________
-	 *  Distance = Sqrt -|( (x2 - x1)^2 +  (y2 - y1)^2 )
+	 *  Distance^2 = (x2 - x1)^2 +  (y2 - y1)^2
 	 * 			  
-	 * It then compares it the radius in pixels and returns true if it can attack 
-	 * else false
+	 * It then compares it to the squared radius in tiles and returns true if it can attack 
+	 * else false. Tiles are whole numbers so no square root is needed.
 	 * @param EnemysLocation is a point on the board
 	 * @return boolean
 	 */
 	public boolean canAttackEnemy(Point EnemysLocation){
-		Double Distance = Math.sqrt( Math.pow((EnemysLocation.getX() - this.BoardLocation.getX()), 2) +
-				Math.pow((EnemysLocation.getY() - this.BoardLocation.getY()), 2 ));
-		//System.out.println("Distance fromCanAttackEnemy is %.2f", Distance);
+		int rowDistance = EnemysLocation.x - this.BoardLocation.x;
+		int columnDistance = EnemysLocation.y - this.BoardLocation.y;
 		
 		//we are only moving the enemies/towers in 1x1 discrete squares on model
 		
-		if(Distance <= this.rangeRadius){ // do any other checks here.
+		if(rowDistance*rowDistance + columnDistance*columnDistance <= this.rangeRadius*this.rangeRadius){ // do any other checks here.
 			return true;
 		}
 		return false;
@@ -199,6 +208,17 @@ public abstract class Tower implements Serializable{
 		return this.Level;
 	}
 	
+	/**
+	 * @return the ID the tower's Map gave it when it was placed, -1 before then
+	 */
+	public int getEntityId(){
+		return entityId;
+	}
+	
+	public void setEntityId(int id){
+		this.entityId = id;
+	}
+	
 	// Getter to return the Gym's Name
 	public String getGymName(){
 		return this.TowerName;
@@ -259,6 +279,7 @@ public abstract class Tower implements Serializable{
 			newRadius = 1;
 		}
 		this.rangeRadius = newRadius;
+		updatePathCoverage(); //levelUp() changes the range through here
 		return true;
 		
 	}
@@ -295,6 +316,22 @@ public abstract class Tower implements Serializable{
 	
 	public void setMap(Map map){
 		this.map = map;
+		updatePathCoverage();
+	}
+	
+	/**
+	 * Recomputes which path positions are within range of this tower. Towers never move once
+	 * placed and paths are static, so this only has to run when the tower is placed or its
+	 * range changes.
+	 */
+	private void updatePathCoverage(){
+		int[] oldCoverage = pathCoverage;
+		if(map != null && BoardLocation != null){
+			pathCoverage = map.computePathCoverage(BoardLocation, rangeRadius);
+			map.watchPathCoverage(this, oldCoverage, pathCoverage);
+		}else{
+			pathCoverage = null;
+		}
 	}
 	
 	public Map getMap(){
@@ -302,56 +339,130 @@ public abstract class Tower implements Serializable{
 	}
 
 	/**
-	 * Called by the Tower's Map every time the master Timer ticks (20 ms). Updates
-	 * the timeSinceLastFire variable and checks/attacks if the Tower is ready to fire.
+	 * Schedules the Tower's first shot one cool down from now. To be called by its Map once placed.
+	 */
+	public void startFiring(){
+		readyToFire = false;
+		nextFireTime = map.getClock() + coolDownTime;
+		map.scheduleTowerFire(this, nextFireTime);
+	}
+	
+	/**
+	 * Cancels any scheduled shot and stops watching the path. To be called by its Map when sold.
+	 */
+	public void stopFiring(){
+		readyToFire = false;
+		nextFireTime = -1;
+		map.watchPathCoverage(this, pathCoverage, null);
+	}
+	
+	/**
+	 * Called by the Tower's Map when its scheduled shot comes due. Attacks if an enemy is
+	 * in range and schedules the next shot one cool down later, otherwise stays idle in
+	 * readyToFire mode until an enemy steps onto a covered tile and wakes it.
+	 * @param time the game time in ms the shot was scheduled for
+	 */
+	public void fire(long time) {
+		if(time != nextFireTime){
+			return; //Cancelled, or superseded by a wake
+		}
+		if(AttackEnemy()){
+			readyToFire = false; //Attack was successful, restart cooldown
+			nextFireTime = time + coolDownTime;
+			map.scheduleTowerFire(this, nextFireTime);
+		}else{
+			readyToFire = true; //No enemies in range, wait to be woken
+			nextFireTime = -1;
+		}
+	}
+	
+	/**
+	 * Called by a Tile this Tower covers when an enemy steps onto it. An idle Tower
+	 * fires straight away, one that is cooling down already has its shot scheduled.
+	 */
+	public void wake(){
+		if(readyToFire){
+			readyToFire = false;
+			nextFireTime = map.getClock();
+			map.scheduleTowerFire(this, nextFireTime);
+		}
+	}
+	
+	/**
+	 * @return the game time in ms of this tower's scheduled shot, -1 if none
+	 */
+	public long getNextFireTime(){
+		return nextFireTime;
+	}
+	
+	/**
+	 * @return true if the tower is idle, waiting for an enemy to wake it
+	 */
+	public boolean isReadyToFire(){
+		return readyToFire;
+	}
+	
+	/**
+	 * Sets the tower's shot as a saved game left it, without scheduling it; the saved
+	 * game's events are requeued by its Map
+	 * @param nextFireTime the game time in ms of the scheduled shot, -1 if none
+	 * @param readyToFire true if idle
+	 */
+	public void restoreFiring(long nextFireTime, boolean readyToFire){
+		this.nextFireTime = nextFireTime;
+		this.readyToFire = readyToFire;
+	}
+	
+	/**
+	 * Finds the enemy in range that is farthest along its path. Walks this tower's path
+	 * coverage from the exit backward and stops at the first occupied position, so the
+	 * cost does not depend on how many enemies are on the map. Towers that are not placed
+	 * on a Map yet fall back to scanning the enemies on tiles in range.
+	 * @return the Enemy to attack, or null if none are in range
 	 */
-	public void tick(int timePerTick) {
-		if(!readyToFire){
-			timeSinceLastFire = timeSinceLastFire + timePerTick; //20*tickDiluter because the Timer ticks every 20 ms
+	public Enemy findPriorityEnemy(){
+		if(pathCoverage == null){
+			if(map == null || BoardLocation == null){
+				return null;
+			}
+			return findClosestEnemy(map.getEnemiesInRange(BoardLocation, rangeRadius));
 		}
-		if(timeSinceLastFire >= coolDownTime || readyToFire){
-			if(AttackEnemy(map.getEnemies())){
-				timeSinceLastFire = 0; //Attack was successful, restart cooldown
-				readyToFire = false;
-			}else{
-				readyToFire = true; //No enemies in range, Maintain in readyToFire mode
+		for(int i = 0; i < pathCoverage.length; i += 2){
+			int pathNumber = pathCoverage[i];
+			int index = pathCoverage[i + 1];
+			ArrayList<Enemy> enemiesHere = map.getEnemiesAtPathPosition(pathNumber, index);
+			for(int e = 0; e < enemiesHere.size(); e++){
+				Enemy enemy = enemiesHere.get(e);
+				//A tile shared by a looping path holds enemies at other indices too, only take ones at this one
+				if(enemy.getPathCursor() == index && enemy.getPathTravelingCode() == pathNumber){
+					return enemy;
+				}
 			}
 		}
-		
+		return null;
 	}
 	
-	//May want to rename method to findPriorityEnemy or something -PWH
 	/**
 	 * This takes the list of enemies and in that list find a single enemy that is 
-	 * both in range and farthest along path to prioritize attacking
+	 * both in range and farthest along path to prioritize attacking.
 	 * @param enemies
 	 * @return
 	 */
 	public Enemy findClosestEnemy(ArrayList<Enemy> enemies){
 		Enemy closests = null;
-		//Double shortestDist = null;
 		int greatestStepsTaken = -1;
+		int rangeSquared = this.rangeRadius * this.rangeRadius;
 
-		if (enemies.isEmpty()){
-			return closests;
-		}
-			for (Enemy enemy: enemies){
-				Point EnemysLocation = enemy.getLocation();
-				int NumberOfStep = enemy.getStepsTaken();
-				Double Distance = Math.sqrt( Math.pow((EnemysLocation.getX() - this.BoardLocation.getX()), 2) +
-						Math.pow((EnemysLocation.getY() - this.BoardLocation.getY()), 2 ));
-				/*if (shortestDist == null)//was shortestDist == null, changed -PWH{
-					//closests = enemy;
-					//shortestDist = Distance;
-					//greatestStepsTaken = NumberOfStep;
-				
-				}/*/
-			if ( Distance < this.rangeRadius &&  NumberOfStep > greatestStepsTaken ){
-					closests = enemy;
-					//shortestDist = Distance;
-					greatestStepsTaken = NumberOfStep;
-				}
+		for (Enemy enemy: enemies){
+			Point EnemysLocation = enemy.getLocation();
+			int NumberOfStep = enemy.getStepsTaken();
+			int rowDistance = EnemysLocation.x - this.BoardLocation.x;
+			int columnDistance = EnemysLocation.y - this.BoardLocation.y;
+			if ( rowDistance*rowDistance + columnDistance*columnDistance < rangeSquared &&  NumberOfStep > greatestStepsTaken ){
+				closests = enemy;
+				greatestStepsTaken = NumberOfStep;
 			}
+		}
 		
 		return closests;
 	}
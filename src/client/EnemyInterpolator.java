@@ -0,0 +1,234 @@
+package client;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import GUI.EnemyImage;
+import GameController.Enemy.directionFacing;
+
+/**
+ * Smooths the enemies of the client's map between the server's snapshots, so they can be drawn
+ * at the display's rate however often the server sends them. Every update is kept as a sample
+ * with the time it arrived, and the view is drawn a little in the past, between the two samples
+ * around that time, with each enemy's position interpolated between them. If no newer sample
+ * has arrived by then, the enemies are extrapolated from where the newest one had them for up
+ * to MAX_EXTRAPOLATION_NANOS, then held still until it does.
+ *
+ * Positions are in tiles, an enemy's tile plus its progress across it in the direction it
+ * faces. How far in the past the view is drawn follows the average time between samples, so a
+ * server sending 10 times a second is drawn about 150ms behind, and one sending every tick much
+ * less. Arrival times are smoothed against that average, so network jitter does not make the
+ * enemies speed up and slow down, and the samples of a burst that arrives after a stall are
+ * spread out rather than played at once.
+ *
+ * push() is called on the client's reader thread, sample() and the getters on the Swing thread.
+ *
+ * Instance Variables:
+ * Sample[] samples					- The newest BUFFERED samples, a ring
+ * int newest							- The index of the newest sample
+ * int count							- The number of samples held
+ * double averageInterval				- The average nanoseconds between samples
+ * ArrayList<EnemyImage> images		- The enemies of the last sample() call
+ * double[] rows, columns				- Their positions, in tiles
+ *
+ * Methods:
+ * void push(List<EnemyImage> enemies, long now)
+ * int sample(long now)
+ * EnemyImage getImage(int i)
+ * double getRow(int i)
+ * double getColumn(int i)
+ * boolean isEmpty()
+ */
+public class EnemyInterpolator{
+
+	private static final int BUFFERED = 8; //Samples kept
+	private static final double DELAY_INTERVALS = 1.5; //How many average intervals behind the newest sample to draw
+	private static final long MAX_DELAY_NANOS = 250 * 1000000L;
+	private static final long MAX_EXTRAPOLATION_NANOS = 200 * 1000000L;
+	private static final double MAX_STEP_TILES = 2; //Moves further than this between samples are jumps, not lerped
+	private static final double NANOS_PER_SECOND = 1e9;
+
+	private final Sample[] samples = new Sample[BUFFERED];
+	private int newest = -1;
+	private int count;
+	private double averageInterval = 50 * 1000000.0; //A guess until samples arrive
+	private final ArrayList<EnemyImage> images = new ArrayList<EnemyImage>();
+	private double[] rows = new double[16];
+	private double[] columns = new double[16];
+
+	/**
+	 * The enemies of one update, with their positions
+	 */
+	private static class Sample{
+		private final long time;
+		private final Position[] enemies;
+		private final IntMap<Position> byId;
+
+		private Sample(long time, List<EnemyImage> from){
+			this.time = time;
+			int n = from.size();
+			this.enemies = new Position[n];
+			this.byId = new IntMap<Position>(n);
+			for(int i = 0; i < n; i++){
+				enemies[i] = new Position(from.get(i));
+				byId.put(enemies[i].image.getEntityId(), enemies[i]);
+			}
+		}
+	}
+
+	/**
+	 * One enemy of a sample and its position in tiles
+	 */
+	private static class Position{
+		private final EnemyImage image;
+		private final double row, column;
+
+		private Position(EnemyImage e){
+			double offset = e.getProgress() / 100.0;
+			this.image = e;
+			this.row = e.getLocation().x + rowStep(e.getOrientation()) * offset;
+			this.column = e.getLocation().y + columnStep(e.getOrientation()) * offset;
+		}
+	}
+
+	private static int rowStep(directionFacing facing){
+		return facing == directionFacing.SOUTH ? 1 : facing == directionFacing.NORTH ? -1 : 0;
+	}
+
+	private static int columnStep(directionFacing facing){
+		return facing == directionFacing.EAST ? 1 : facing == directionFacing.WEST ? -1 : 0;
+	}
+
+	/**
+	 * Adds the enemies of an update from the server. The images are copied, the list and its
+	 * images may be changed once this returns.
+	 * @param enemies every enemy on the map
+	 * @param now System.nanoTime() when the update arrived
+	 */
+	public synchronized void push(List<EnemyImage> enemies, long now){
+		ArrayList<EnemyImage> copies = new ArrayList<EnemyImage>(enemies.size());
+		for(EnemyImage e : enemies){
+			copies.add(new EnemyImage(e.getEntityId(), e.getSpriteId(), e.getLocation().getLocation(),
+					e.getOrientation(), e.getProgress(), e.getHealthPercentage(), e.getMaxHealth(), e.getAttackPower(),
+					e.getDefense(), e.getSpeed(), e.getWorth()));
+		}
+		long time = now;
+		if(count > 0){
+			long last = samples[newest].time;
+			double interval = now - last;
+			if(interval < averageInterval / 4){
+				time = last + (long) (averageInterval / 2); //Part of a burst after a stall, spread it out
+			}else if(interval < 4 * averageInterval){
+				averageInterval += (interval - averageInterval) / 8;
+				double expected = last + averageInterval;
+				time = Math.max(last + 1, Math.min(now, (long) (expected + (now - expected) / 4))); //Smooth out jitter
+			}
+		}
+		newest = (newest + 1) % BUFFERED;
+		samples[newest] = new Sample(time, copies);
+		count = Math.min(count + 1, BUFFERED);
+	}
+
+	/**
+	 * @return true until the first update has arrived
+	 */
+	public synchronized boolean isEmpty(){
+		return count == 0;
+	}
+
+	/**
+	 * Works out where the enemies are to be drawn, read them with the getters
+	 * @param now System.nanoTime()
+	 * @return the number of enemies to draw
+	 */
+	public synchronized int sample(long now){
+		images.clear();
+		if(count == 0){
+			return 0;
+		}
+		long renderTime = now - Math.min(MAX_DELAY_NANOS, (long) (averageInterval * DELAY_INTERVALS));
+		Sample to = samples[newest];
+		Sample from = count > 1 ? samples[(newest + BUFFERED - 1) % BUFFERED] : null;
+		for(int back = 1; back < count && renderTime < samples[(newest + BUFFERED - back) % BUFFERED].time; back++){
+			to = samples[(newest + BUFFERED - back) % BUFFERED];
+			from = back + 1 < count ? samples[(newest + BUFFERED - back - 1) % BUFFERED] : null;
+		}
+		ensureCapacity(to.enemies.length);
+		if(renderTime >= to.time){
+			extrapolate(from, to, Math.min(renderTime - to.time, MAX_EXTRAPOLATION_NANOS));
+		}else{
+			interpolate(from, to, renderTime);
+		}
+		return images.size();
+	}
+
+	/**
+	 * Draws the enemies of to, moved back towards where from had them
+	 */
+	private void interpolate(Sample from, Sample to, long renderTime){
+		double t = from == null ? 1 : Math.max(0, (double) (renderTime - from.time) / (to.time - from.time));
+		for(Position p : to.enemies){
+			double row = p.row, column = p.column;
+			Position was = from == null ? null : from.byId.get(p.image.getEntityId());
+			if(was != null && Math.abs(row - was.row) + Math.abs(column - was.column) <= MAX_STEP_TILES){
+				row = was.row + (row - was.row) * t;
+				column = was.column + (column - was.column) * t;
+			}
+			add(p.image, row, column);
+		}
+	}
+
+	/**
+	 * Draws the enemies of to, moved on by the velocity they had coming from from, or by their
+	 * speed if from did not have them
+	 */
+	private void extrapolate(Sample from, Sample to, long ahead){
+		for(Position p : to.enemies){
+			EnemyImage e = p.image;
+			double rowVelocity, columnVelocity; //Tiles per nanosecond
+			Position was = from == null ? null : from.byId.get(e.getEntityId());
+			if(was != null && Math.abs(p.row - was.row) + Math.abs(p.column - was.column) <= MAX_STEP_TILES){
+				rowVelocity = (p.row - was.row) / (to.time - from.time);
+				columnVelocity = (p.column - was.column) / (to.time - from.time);
+			}else{
+				rowVelocity = rowStep(e.getOrientation()) * e.getSpeed() / NANOS_PER_SECOND;
+				columnVelocity = columnStep(e.getOrientation()) * e.getSpeed() / NANOS_PER_SECOND;
+			}
+			add(e, p.row + rowVelocity * ahead, p.column + columnVelocity * ahead);
+		}
+	}
+
+	private void add(EnemyImage e, double row, double column){
+		rows[images.size()] = row;
+		columns[images.size()] = column;
+		images.add(e);
+	}
+
+	private void ensureCapacity(int n){
+		if(rows.length < n){
+			rows = new double[Math.max(n, rows.length * 2)];
+			columns = new double[rows.length];
+		}
+	}
+
+	/**
+	 * @return the i'th enemy of the last sample()
+	 */
+	public EnemyImage getImage(int i){
+		return images.get(i);
+	}
+
+	/**
+	 * @return the row, in tiles, to draw the i'th enemy at
+	 */
+	public double getRow(int i){
+		return rows[i];
+	}
+
+	/**
+	 * @return the column, in tiles, to draw the i'th enemy at
+	 */
+	public double getColumn(int i){
+		return columns[i];
+	}
+}
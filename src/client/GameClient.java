@@ -3,10 +3,7 @@ package client;
 import java.awt.Point;
 import java.io.EOFException;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.OptionalDataException;
-import java.net.Socket;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
@@ -14,14 +11,19 @@ import java.util.List;
 import javax.swing.JOptionPane;
 
 import server.GameServer;
+import server.SaveStore;
 import GUI.EnemyImage;
 import GUI.GameView.towerType;
 import GUI.MainMenu;
+import GUI.SpriteRegistry;
 import GUI.TowerImage;
+import commands.ClientLockstepTurn;
+import commands.ClientSnapshot;
 import commands.Command;
 import commands.DisconnectCommand;
 import commands.JoinMultiplayerCommand;
 import commands.ServerCreateLevelCommand;
+import commands.ServerListSaves;
 import commands.ServerMessageCommand;
 import commands.ServerTowerCommand;
 import commands.ServerTowerRemoveCommand;
@@ -40,12 +42,16 @@ public class GameClient{
 	private String host = "localhost";
 	private String port = "9001";
 	
-	private Socket server; // connection to server
-	private ObjectOutputStream out; // output stream
-	private ObjectInputStream in; // input stream
+	private Transport transport; // connection to server, over TCP or in memory
 	private MainMenu mainMenu;
 	private Player player;
 	private boolean isPlayer1Client; //In multiplayer, set to true if this client corresponds to player1 and its map
+	private SnapshotMirror player1Map = new SnapshotMirror(); //The enemies and towers of player 1's map
+	private SnapshotMirror player2Map = new SnapshotMirror(); //The enemies and towers of player 2's map
+	private volatile String[] enemySprites = SpriteRegistry.getEnemySprites(); //Replaced by the server's table when it arrives
+	private volatile String[] towerSprites = SpriteRegistry.getTowerSprites();
+	private volatile LockstepSimulation lockstep; //The game being played here in lockstep co-op, or null
+	private volatile ReplayPlayback replay; //The replay being watched, or null
 	
 	public static void main(String[] args){
 		new GameClient();
@@ -80,7 +86,7 @@ public class GameClient{
 					 */
 					//System.out.println("Read Object");
 					@SuppressWarnings("unchecked")
-					Command<GameClient> c = (Command<GameClient>)in.readObject();
+					Command<GameClient> c = (Command<GameClient>)transport.readObject();
 					//System.out.println(c.toString());
 					c.execute(GameClient.this);
 					//System.out.println(in.readObject());
@@ -111,11 +117,9 @@ public class GameClient{
 		
 		try{
 			// Open a connection to the server
-			server = new Socket(host, Integer.parseInt(port));
-			out = new ObjectOutputStream(server.getOutputStream());
-			in = new ObjectInputStream(server.getInputStream());
+			transport = new SocketTransport(host, Integer.parseInt(port));
 			
-			out.writeObject(clientName);
+			transport.writeObject(clientName);
 			
 			// TODO send a disconnect command to the server to safely disconnect
 			// DOES THIS STILL BREAK EVERYTHING?
@@ -123,7 +127,7 @@ public class GameClient{
 //			this.addWindowListener(new WindowAdapter(){
 //				public void windowClosing(WindowEvent arg0) {
 //					try {
-//						out.writeObject(null);
+//						transport.writeObject(null);
 //						out.close();
 //						in.close();
 //					} catch (IOException e) {
@@ -132,8 +136,8 @@ public class GameClient{
 //				}
 //			});
 			
-			player = (Player) in.readObject();
-			isPlayer1Client = (Boolean) in.readObject();
+			player = (Player) transport.readObject();
+			isPlayer1Client = (Boolean) transport.readObject();
 			//System.out.println("Player Received");
 			
 			// start a thread for handling server events
@@ -149,6 +153,34 @@ public class GameClient{
 		
 	}
 	
+	/**
+	 * Plays on a server in this JVM, for single player. Commands are passed to and from
+	 * the server as objects, with no socket, so no port is needed.
+	 * @param localServer the server, usually started with GameServer.LOCAL_ONLY
+	 */
+	public GameClient(GameServer localServer){
+		clientName = JOptionPane.showInputDialog("User name:");
+		
+		if (clientName == null)
+			return;
+		
+		try{
+			transport = localServer.openLoopback();
+			transport.writeObject(clientName);
+			
+			player = (Player) transport.readObject();
+			isPlayer1Client = (Boolean) transport.readObject();
+			
+			// start a thread for handling server events
+			new Thread(new ServerHandler()).start();
+		}catch(Exception e){
+			e.printStackTrace();
+		}
+
+		mainMenu = new MainMenu(this);
+		mainMenu.setPlayer(player);
+	}
+	
 	public GameClient(String string) {
 		// ask the user for a host, port, and user name
 		// String host = JOptionPane.showInputDialog("Host address:");
@@ -161,12 +193,10 @@ public class GameClient{
 		
 		try{
 			// Open a connection to the server
-			server = new Socket(host, Integer.parseInt(port));
-			out = new ObjectOutputStream(server.getOutputStream());
-			in = new ObjectInputStream(server.getInputStream());
+			transport = new SocketTransport(host, Integer.parseInt(port));
 			
 			// write out the name of this client
-			out.writeObject(clientName);
+			transport.writeObject(clientName);
 
 			new Thread(new ServerHandler()).start();
 			
@@ -180,6 +210,7 @@ public class GameClient{
 	 * @param i the levelCode
 	 */
 	public void createLevel(int i){
+		stopReplay();
 		ServerCreateLevelCommand c = new ServerCreateLevelCommand(clientName, i);
 		sendCommand(c);
 	}	
@@ -190,7 +221,7 @@ public class GameClient{
 	 */
 	public void sendCommand(Command<GameServer> command){
 		try {
-			out.writeObject(command);
+			transport.writeObject(command);
 			System.out.println(command.toString());
 		} catch (IOException e) {
 			//System.out.println("sendCommand FAILED");
@@ -219,6 +250,9 @@ public class GameClient{
 	 * @param loc the Point (rowdown, columnacross) to attempt to add tower to
 	 */
 	public void addTower(towerType type, Point loc){
+		if(replay != null){
+			return; //A replay is only watched
+		}
 		//System.out.println("Constructing SendServerTowerCommand");
 		ServerTowerCommand c = new ServerTowerCommand(clientName, type, loc);
 		//System.out.println("Sending SendServerTowerCommand");
@@ -233,6 +267,9 @@ public class GameClient{
 	 * @param p The point should contain coordinates (rowsdown, columnsacross) in the grid model
 	 */
 	public void sellTower(Point p){
+		if(replay != null){
+			return;
+		}
 		ServerTowerRemoveCommand c = new ServerTowerRemoveCommand(clientName, p);
 		this.sendCommand(c);
 	}
@@ -242,6 +279,9 @@ public class GameClient{
 	 * @param p the location coordinates (rows, columns) of tower to be upgraded
 	 */
 	public void upgradeTower(Point p){
+		if(replay != null){
+			return;
+		}
 		Command<GameServer> c = new upgradeTowerCommand(clientName, p);
 		this.sendCommand(c);
 	}
@@ -253,9 +293,13 @@ public class GameClient{
 	}*/
 	
 	public int disconnect(){
+		if(lockstep != null){
+			lockstep.stop();
+		}
+		stopReplay();
 		try{
 			System.out.println("Disconnecting");
-			out.writeObject(new DisconnectCommand(clientName));
+			transport.writeObject(new DisconnectCommand(clientName));
 			return 0;
 		}catch(Exception e){
 			e.printStackTrace();
@@ -266,7 +310,8 @@ public class GameClient{
 	//
 	/**
 	 * To be called by a Command from server when a Map is first instantiated on Server.
-	 * Passes info about the Map to print to the GUI
+	 * Passes info about the Map to print to the GUI. The server only sends this client
+	 * its own map's commands, so none of these methods need to check fromPlayer1.
 	 * @param backgroundImageURL
 	 * @param l
 	 * @param rowsInMap
@@ -274,12 +319,10 @@ public class GameClient{
 	 * @param fromPlayer1 
 	 */
 	public void mapBackgroundUpdate(String backgroundImageURL, LinkedList<LinkedList<Point>> l, int rowsInMap, int columnsInMap, boolean fromPlayer1) {
-		if(this.isPlayer1Client == fromPlayer1){
-			mainMenu.getView().setMapBackgroundImageURL(backgroundImageURL);
-			mainMenu.getView().setEnemyPathCoords(l);
-			Point mapSize = new Point(columnsInMap,rowsInMap);
-			mainMenu.getView().setGridSize(mapSize);
-		}
+		mainMenu.getView().setMapBackgroundImageURL(backgroundImageURL);
+		mainMenu.getView().setEnemyPathCoords(l);
+		Point mapSize = new Point(columnsInMap,rowsInMap);
+		mainMenu.getView().setGridSize(mapSize);
 	}
 
 	//Called by server via command every tick to pass updated enemy/tower image locations/states
@@ -293,23 +336,116 @@ public class GameClient{
 		//System.out.println("Client update being called"); //Testing purposes
 		
 		//GUI shouldn't hold enemies or towers, instead hold their image classes
-		if(this.isPlayer1Client == fromPlayer1){
-			//Testing print line passed, receiving correct number of enemyImages per update
-			//System.out.println("GameClient receiving enemyImages update of size: " + enemyImages.size());
-			mainMenu.getView().update(towerImages, enemyImages);
-		}else{
-			ArrayList<Point> partnerTowerLocations = new ArrayList<Point>();
-			for(TowerImage t: towerImages){
-				partnerTowerLocations.add(t.getLocation());
-			}
-			ArrayList<Point> partnerEnemyLocations = new ArrayList<Point>();
-			for(EnemyImage e: enemyImages){
-				partnerEnemyLocations.add(e.getLocation());
-			}
-			mainMenu.getView().updateMiniMap(partnerTowerLocations, partnerEnemyLocations);
+		//Testing print line passed, receiving correct number of enemyImages per update
+		//System.out.println("GameClient receiving enemyImages update of size: " + enemyImages.size());
+		mainMenu.getView().update(towerImages, enemyImages);
+	}
+	
+	/**
+	 * Called by server via ClientLockstepStart when a lockstep co-op game starts. The level is
+	 * played here, from the same seed as the partner's client, instead of being streamed.
+	 * @param levelCode the level to play
+	 * @param seed the seed both clients play it from
+	 * @param player1Name the name of player 1, whose map is the level's first
+	 * @param player2Name the name of player 2
+	 * @param turnTicks the ticks between the server's ClientLockstepTurns
+	 * @param leadTicks the ticks that may be played before the first turn arrives
+	 * @param hashInterval the ticks between state hashes sent back to the server
+	 */
+	public void startLockstep(int levelCode, long seed, String player1Name, String player2Name, int turnTicks, int leadTicks, int hashInterval){
+		if(lockstep != null){
+			lockstep.stop();
+		}
+		lockstep = new LockstepSimulation(this, transport, levelCode, seed, player1Name, player2Name, clientName,
+				turnTicks, leadTicks, hashInterval);
+		lockstep.start();
+	}
+	
+	/**
+	 * Plays back a replay the server recorded, here with no server, on the GameView the
+	 * caller has opened. Building is ignored while it plays, pausing and speed go to the replay.
+	 * @param playback the replay, created with this client
+	 */
+	public void playReplay(ReplayPlayback playback){
+		stopReplay();
+		if(lockstep != null){
+			lockstep.stop();
+		}
+		replay = playback;
+		playback.start();
+	}
+	
+	private void stopReplay(){
+		ReplayPlayback playing = replay;
+		if(playing != null){
+			playing.stop();
+			replay = null;
+		}
+	}
+	
+	/**
+	 * Called by a ReplayPlayback when a replay of a game that was not finished runs out
+	 */
+	public void notifyReplayEnded(){
+		replay = null;
+		JOptionPane.showMessageDialog(mainMenu, "End of the replay");
+		mainMenu.setVisible(false);
+		mainMenu.getView().setVisible(false);
+		mainMenu = new MainMenu(this);
+		mainMenu.setVisible(true);
+	}
+	
+	/**
+	 * Called by server via ClientLockstepTurn every turn of a lockstep co-op game
+	 * @param turn the players' inputs and the tick they apply at
+	 */
+	public void lockstepTurn(ClientLockstepTurn turn){
+		if(lockstep != null){
+			lockstep.turnArrived(turn);
 		}
 	}
 	
+	/**
+	 * Called by server via ClientSpriteTable when the client connects, with the sprites
+	 * the IDs of every later EnemyImage and TowerImage refer to
+	 * @param enemySprites enemy names, indexed by sprite ID
+	 * @param towerSprites tower image URLs, indexed by sprite ID
+	 */
+	public void setSpriteTable(String[] enemySprites, String[] towerSprites){
+		this.enemySprites = enemySprites;
+		this.towerSprites = towerSprites;
+	}
+	
+	public String[] getEnemySprites(){
+		return enemySprites;
+	}
+	
+	public String[] getTowerSprites(){
+		return towerSprites;
+	}
+	
+	/**
+	 * Called by server via ClientMiniMap a few times a second in multiplayer with where
+	 * the partner's towers and enemies are
+	 * @param partnerTowerLocations
+	 * @param partnerEnemyLocations
+	 */
+	public void updateMiniMap(ArrayList<Point> partnerTowerLocations, ArrayList<Point> partnerEnemyLocations){
+		mainMenu.getView().updateMiniMap(partnerTowerLocations, partnerEnemyLocations);
+	}
+	
+	
+	/**
+	 * Applies a snapshot of one map's enemies and towers, then passes the map's
+	 * images on like update() does.
+	 * @param snapshot the keyframe or delta from the server
+	 */
+	public void applySnapshot(ClientSnapshot snapshot){
+		SnapshotMirror mirror = snapshot.isFromPlayer1() ? player1Map : player2Map;
+		if(mirror.apply(snapshot)){
+			update(mirror.getEnemyImages(), mirror.getTowerImages(), snapshot.isFromPlayer1());
+		}
+	}
 	
 	/**
 	 * Called by GameServer via command when either of these variables change in model
@@ -319,22 +455,19 @@ public class GameClient{
 	 * @param fromPlayer1 
 	 */
 	public void updateHPandMoney(int hp, int money, boolean fromPlayer1) {
-		if(this.isPlayer1Client == fromPlayer1){
-			mainMenu.getView().setPlayerHP(hp);
-			mainMenu.getView().setPlayerMoney(money);
-		}
+		mainMenu.getView().setPlayerHP(hp);
+		mainMenu.getView().setPlayerMoney(money);
 	}
 
 	//Called by Server via command whenever a tower attacks an enemy
 	//The points pass (rowsdown, columnsacross) in the model grid of tower and enemy
 	public void towerAttack(towerType t, Point towerLoc, Point enemyLoc, boolean fromPlayer1) {
-		if(this.isPlayer1Client == fromPlayer1){
-			mainMenu.getView().animateAttack(towerLoc, enemyLoc, t);
-		}
+		mainMenu.getView().animateAttack(towerLoc, enemyLoc, t);
 	}
 	
 	//called from Server via command when the game is won
 	public void notifyLevelWasWon(){
+		replay = null; //Its game is over
 		JOptionPane.showMessageDialog(mainMenu, "You win");
 		mainMenu.setVisible(false);
 		mainMenu.getView().setVisible(false);
@@ -344,6 +477,7 @@ public class GameClient{
 	
 	//called from Server via command when the game is lost
 	public void notifyLevelWasLost(){
+		replay = null;
 		JOptionPane.showMessageDialog(mainMenu, "You lose");
 		mainMenu.setVisible(false);
 		mainMenu.getView().setVisible(false);
@@ -354,6 +488,10 @@ public class GameClient{
 	 * To be called by GUI when the user wants to either play or pause the game. Server will handle what to do.
 	 */
 	public void playPauseGame(){
+		if(replay != null){
+			replay.togglePause();
+			return;
+		}
 		Command<GameServer> c = new playPauseCommand();
 		this.sendCommand(c);
 	}
@@ -361,27 +499,54 @@ public class GameClient{
 	/**
 	 * To be called by the GUI when user wishes to save the game.
 	 * Creates and sends a Command to GameServer to save the game.
+	 * @param name the save slot to save it in, replacing any game saved there
 	 */
-	public void saveGame(){
-		Command<GameServer> c = new saveGameCommand();
+	public void saveGame(String name){
+		if(replay != null){
+			return;
+		}
+		Command<GameServer> c = new saveGameCommand(name);
 		this.sendCommand(c);
 	}
 	
 	/**
-	 * To be called by the GUI from MainMenu when user wishes to load last saved game.
+	 * To be called by the GUI from MainMenu when user wishes to load a saved game.
 	 * Creates and sends a Command to GameServer to reconstruct model based on loaded data
 	 * and resume gameplay in a paused state.
+	 * @param name the save slot to load, null for the last game played
+	 */
+	public void loadGame(String name){
+		stopReplay();
+		Command<GameServer> c = new loadGameCommand(name);
+		this.sendCommand(c);
+	}
+
+	/**
+	 * To be called by the GUI from MainMenu when user wishes to choose a saved game to load.
+	 * Asks the GameServer for the list of saves, which arrives as a ClientSaveList.
 	 */
-	public void loadGame(){
-		Command<GameServer> c = new loadGameCommand();
+	public void listSaves(){
+		Command<GameServer> c = new ServerListSaves();
 		this.sendCommand(c);
 	}
+
+	/**
+	 * Called by server via ClientSaveList with the saves to choose from
+	 * @param slots what the index holds of each save, the one saved last first
+	 */
+	public void chooseSave(List<SaveStore.Slot> slots){
+		this.mainMenu.chooseSave(slots);
+	}
 	
 	/**
 	 * To be called by the GUI when user wishes to speed up the game.
 	 * Creates and sends a Command to GameServer to speed up the game.
 	 */
 	public void speedUpGame(){
+		if(replay != null){
+			replay.setSpeed(2);
+			return;
+		}
 		Command<GameServer> c = new speedUpCommand();
 		this.sendCommand(c);
 	}
@@ -391,6 +556,10 @@ public class GameClient{
 	 * Creates and sends a Command to GameServer to do so.
 	 */
 	public void normalSpeedGame(){
+		if(replay != null){
+			replay.setSpeed(1);
+			return;
+		}
 		Command<GameServer> c = new normalSpeedCommand();
 		this.sendCommand(c);
 	}
@@ -405,6 +574,7 @@ public class GameClient{
 	}
 	
 	public void joinMultiplayer(){
+		stopReplay();
 		Command<GameServer> c = new JoinMultiplayerCommand(clientName);
 		this.sendCommand(c);
 	}
@@ -10,6 +10,9 @@ import server.GameServer;
  * 
  *  Also you could create a GameLaunch class
  * that will create a Server, create a client, connect them, and let the player actually play the game once that is ready.
+ * 
+ * The client is connected to the server in memory, so no port is opened. To play with others,
+ * run GameServer.main and connect with GameClient.main.
  */
 
 public class GameLaunch {
@@ -18,9 +21,8 @@ public class GameLaunch {
 	GameClient myClient;
 	
 	public static void main (String argv[]){
-		 new GameServer();
 		// new GameView();
-		 new GameClient();
+		 new GameClient(new GameServer(GameServer.LOCAL_ONLY));
 		
 	}
 }
@@ -0,0 +1,148 @@
+package client;
+
+import java.util.Arrays;
+
+/**
+ * A map from int keys to values, open addressed with linear probing, for looking entities up
+ * by their entity ID every frame without boxing the ID or allocating an entry per put.
+ * Removal shifts the following entries of the probe run back, so there are no tombstones and
+ * lookups stay short however many entities come and go.
+ *
+ * Not thread safe.
+ *
+ * Instance Variables:
+ * int[] keys		- The key in each slot, FREE if the slot is empty
+ * Object[] values	- The value in each slot
+ * int size			- The number of entries
+ *
+ * Methods:
+ * V get(int key)
+ * V put(int key, V value)
+ * V remove(int key)
+ * int size()
+ * void clear()
+ */
+public class IntMap<V>{
+
+	private static final int FREE = Integer.MIN_VALUE; //Never an entity ID, those start at 1
+
+	private int[] keys;
+	private Object[] values;
+	private int size;
+	private int mask; //keys.length - 1, the length is a power of two
+
+	public IntMap(){
+		this(16);
+	}
+
+	/**
+	 * @param expected the number of entries to make room for
+	 */
+	public IntMap(int expected){
+		int capacity = Integer.highestOneBit(Math.max(4, expected * 2 - 1)) * 2; //At most half full
+		keys = new int[capacity];
+		Arrays.fill(keys, FREE);
+		values = new Object[capacity];
+		mask = capacity - 1;
+	}
+
+	private int slot(int key){
+		int h = key * 0x9E3779B9; //Spread sequential IDs over the table
+		return (h ^ (h >>> 16)) & mask;
+	}
+
+	/**
+	 * @return the value of key, null if there is none
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(int key){
+		for(int i = slot(key); keys[i] != FREE; i = (i + 1) & mask){
+			if(keys[i] == key){
+				return (V) values[i];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return the value key had, null if it had none
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(int key, V value){
+		if(key == FREE){
+			throw new IllegalArgumentException("Key " + key + " is reserved");
+		}
+		int i = slot(key);
+		for(; keys[i] != FREE; i = (i + 1) & mask){
+			if(keys[i] == key){
+				V old = (V) values[i];
+				values[i] = value;
+				return old;
+			}
+		}
+		keys[i] = key;
+		values[i] = value;
+		if(++size * 2 > keys.length){
+			grow();
+		}
+		return null;
+	}
+
+	/**
+	 * @return the value key had, null if it had none
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(int key){
+		int i = slot(key);
+		for(; keys[i] != key; i = (i + 1) & mask){
+			if(keys[i] == FREE){
+				return null;
+			}
+		}
+		V old = (V) values[i];
+		size--;
+		int gap = i; //Move back any later entry of the run that would no longer be found
+		for(int j = (i + 1) & mask; keys[j] != FREE; j = (j + 1) & mask){
+			int home = slot(keys[j]);
+			if(((j - home) & mask) >= ((j - gap) & mask)){
+				keys[gap] = keys[j];
+				values[gap] = values[j];
+				gap = j;
+			}
+		}
+		keys[gap] = FREE;
+		values[gap] = null;
+		return old;
+	}
+
+	public int size(){
+		return size;
+	}
+
+	public void clear(){
+		if(size > 0){
+			Arrays.fill(keys, FREE);
+			Arrays.fill(values, null);
+			size = 0;
+		}
+	}
+
+	private void grow(){
+		int[] oldKeys = keys;
+		Object[] oldValues = values;
+		keys = new int[oldKeys.length * 2];
+		Arrays.fill(keys, FREE);
+		values = new Object[keys.length];
+		mask = keys.length - 1;
+		for(int i = 0; i < oldKeys.length; i++){
+			if(oldKeys[i] != FREE){
+				int j = slot(oldKeys[i]);
+				while(keys[j] != FREE){
+					j = (j + 1) & mask;
+				}
+				keys[j] = oldKeys[i];
+				values[j] = oldValues[i];
+			}
+		}
+	}
+}
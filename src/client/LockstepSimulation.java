@@ -0,0 +1,366 @@
+package client;
+
+import java.awt.Point;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+import model.GameEventSink;
+import model.Level;
+import model.LevelFactory;
+import model.Map;
+import model.TowerFactory;
+import server.GameLoop;
+import GUI.EnemyImage;
+import GUI.TowerImage;
+import GUI.GameView.towerType;
+import commands.ClientLockstepTurn;
+import commands.ClientMiniMap;
+import commands.ServerLockstepHash;
+
+/**
+ * A GameClient's copy of a lockstep co-op game. Both clients create the same Level from the
+ * same level code and seed and play it on a thread of their own, applying the inputs of each
+ * ClientLockstepTurn the server relays at the tick it is stamped with, so both copies stay
+ * the same without the server sending either map's state. The game may be played up to the
+ * tick of the next turn, and waits there until it arrives; otherwise it is played in
+ * GameLoop.STEP_MILLIS ticks at the speed the server's turns carry, following the server's clock.
+ *
+ * Every hashInterval ticks the Level's stateHash is sent to the server in a ServerLockstepHash,
+ * which compares the two clients' hashes to catch a desync. The outcome is sent the same way
+ * once the game is won or lost.
+ *
+ * The updates of the client's own map go to the GameClient as the server's would, its
+ * partner's map to the MiniMap a few times a second. With no GameClient the game is played
+ * with nobody watching, for tests and benchmarks.
+ *
+ * Instance Variables:
+ * GameClient client			- The client to show the game on, or null
+ * Transport toServer			- Where the hashes are sent, or null
+ * Level level					- The game, created on the simulation's thread
+ * ConcurrentLinkedQueue<ClientLockstepTurn> arrived - Turns from the server not yet taken by the thread
+ * ArrayDeque<ClientLockstepTurn> turns - Turns taken whose tick has not been played yet
+ * long tick					- The ticks played
+ * long allowed					- The ticks that may be played before the next turn arrives
+ *
+ * Methods:
+ * void start()
+ * void stop()
+ * void turnArrived(ClientLockstepTurn turn)
+ * boolean step()
+ * the GameEventSink methods
+ * getters for tests and benchmarks
+ */
+public class LockstepSimulation implements GameEventSink, Runnable{
+
+	private static final int MINI_MAP_TICKS = 10; //Ticks between MiniMap updates of the partner's map
+	private static final int MAX_STEPS_PER_WAKE = 50; //Catching up yields after this many ticks
+
+	private final GameClient client;
+	private final Transport toServer;
+	private final int levelCode;
+	private final long seed;
+	private final Player player1, player2;
+	private final boolean ownMapIsPlayer1;
+	private final int turnTicks;
+	private final int leadTicks;
+	private final int hashInterval;
+	private final ConcurrentLinkedQueue<ClientLockstepTurn> arrived = new ConcurrentLinkedQueue<ClientLockstepTurn>();
+	private final ArrayDeque<ClientLockstepTurn> turns = new ArrayDeque<ClientLockstepTurn>();
+	private Level level;
+	private long tick;
+	private long allowed;
+	private long anchorTick = -1; //The server's tick when the last turn arrived, -1 before the first
+	private long anchorNanos; //When it arrived
+	private int speed = 1;
+	private volatile boolean running;
+	private volatile boolean over;
+	private volatile long lastHash;
+	private Thread thread;
+
+	/**
+	 * @param client the client to show the game on, null to play it with nobody watching
+	 * @param toServer where the hashes and outcome are sent, null to send none
+	 * @param levelCode the level to play, as given to LevelFactory
+	 * @param seed the seed of the level's GameRandom
+	 * @param player1Name the name of player 1, whose map is the level's first
+	 * @param player2Name the name of player 2
+	 * @param ownName the name of the player this client plays as
+	 * @param turnTicks the ticks between turns
+	 * @param leadTicks the ticks that may be played before the first turn arrives
+	 * @param hashInterval the ticks between hashes sent to the server
+	 */
+	public LockstepSimulation(GameClient client, Transport toServer, int levelCode, long seed, String player1Name,
+			String player2Name, String ownName, int turnTicks, int leadTicks, int hashInterval){
+		this.client = client;
+		this.toServer = toServer;
+		this.levelCode = levelCode;
+		this.seed = seed;
+		this.player1 = new Player(player1Name, 100, 100);
+		this.player2 = new Player(player2Name, 100, 100);
+		player1.setPartner(player2);
+		player2.setPartner(player1);
+		this.ownMapIsPlayer1 = player1Name.equals(ownName);
+		this.turnTicks = turnTicks;
+		this.leadTicks = leadTicks;
+		this.hashInterval = hashInterval;
+		this.allowed = leadTicks;
+	}
+
+	/**
+	 * Starts playing the game on a thread of its own
+	 */
+	public void start(){
+		running = true;
+		thread = new Thread(this, "lockstep " + (ownMapIsPlayer1 ? player1 : player2).getName());
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stops the game's thread, a new game or a disconnect
+	 */
+	public void stop(){
+		running = false;
+		if(thread != null){
+			LockSupport.unpark(thread);
+		}
+	}
+
+	/**
+	 * Called on the client's reader thread with each turn from the server
+	 */
+	public void turnArrived(ClientLockstepTurn turn){
+		arrived.add(turn);
+		if(thread != null){
+			LockSupport.unpark(thread);
+		}
+	}
+
+	public void run(){
+		createLevel();
+		while(running && !over){
+			takeArrived();
+			long now = System.nanoTime();
+			long target = allowed;
+			if(anchorTick >= 0){
+				target = Math.min(allowed, anchorTick + (now - anchorNanos) / GameLoop.STEP_NANOS * speed);
+			}
+			int steps = 0;
+			while(tick < target && steps < MAX_STEPS_PER_WAKE && running && !over){
+				step();
+				steps++;
+			}
+			if(steps < MAX_STEPS_PER_WAKE){
+				LockSupport.parkNanos(GameLoop.STEP_NANOS / 4); //Woken early by a turn arriving
+			}
+		}
+	}
+
+	/**
+	 * Creates the Level, on the simulation's thread since that is where it reports its updates
+	 */
+	public void createLevel(){
+		if(level == null){
+			level = LevelFactory.generateLevel(player1, this, levelCode, seed);
+			Player own = ownMapIsPlayer1 ? player1 : player2;
+			if(client != null){
+				client.updateHPandMoney(own.getHealthPoints(), own.getMoney(), ownMapIsPlayer1);
+			}
+		}
+	}
+
+	/**
+	 * Moves the turns the server has sent to the thread's own queue, letting the game be
+	 * played up to each one's following turn
+	 */
+	private void takeArrived(){
+		ClientLockstepTurn turn;
+		while((turn = arrived.poll()) != null){
+			turns.add(turn);
+			allowed = Math.max(allowed, turn.getTick() + turnTicks);
+			anchorTick = turn.getTick() - leadTicks; //The server's tick when it sent the turn
+			anchorNanos = System.nanoTime();
+			speed = Math.max(1, turn.getSpeed());
+		}
+	}
+
+	/**
+	 * Plays one tick: the inputs due at it, then the Level and both Maps, as GameRoom.tickModel does.
+	 * Called by the simulation's thread, or directly when nobody is watching.
+	 * @return false if the tick may not be played yet, its turn has not arrived
+	 */
+	public boolean step(){
+		createLevel();
+		takeArrived();
+		if(tick >= allowed || over){
+			return false;
+		}
+		ClientLockstepTurn turn = turns.peek();
+		if(turn != null && turn.getTick() == tick){
+			turns.poll();
+			int[] inputs = turn.getInputs();
+			for(int i = 0; i + ClientLockstepTurn.INPUT_LENGTH <= inputs.length; i += ClientLockstepTurn.INPUT_LENGTH){
+				apply(inputs[i], inputs[i + 1] == 1, inputs[i + 2], inputs[i + 3], inputs[i + 4]);
+			}
+		}
+		level.tick(GameLoop.STEP_MILLIS);
+		if(!over){
+			level.getMap1().tick(GameLoop.STEP_MILLIS);
+			level.getMap2().tick(GameLoop.STEP_MILLIS);
+		}
+		tick++;
+		if(tick % hashInterval == 0 && !over){
+			lastHash = level.stateHash();
+			send(new ServerLockstepHash(tick, lastHash, ServerLockstepHash.PLAYING));
+		}
+		return true;
+	}
+
+	/**
+	 * Applies one player's input to their map
+	 */
+	private void apply(int action, boolean player1sMap, int a, int b, int c){
+		Map map = player1sMap ? level.getMap1() : level.getMap2();
+		switch(action){
+		case ClientLockstepTurn.PLACE:
+			towerType[] types = towerType.values();
+			if(a >= 0 && a < types.length){
+				map.addTower(TowerFactory.generateTower(types[a], map.getPlayer()), new Point(b, c));
+			}
+			break;
+		case ClientLockstepTurn.SELL:
+			map.sellTower(new Point(b, c));
+			break;
+		case ClientLockstepTurn.UPGRADE:
+			map.upgradeTower(new Point(b, c));
+			break;
+		case ClientLockstepTurn.TRANSFER:
+			Player from = player1sMap ? player1 : player2;
+			Player to = from.getPartner();
+			if(a > 0 && from.getMoney() >= a){
+				from.spendMoney(a);
+				to.gainMoney(a);
+				updateClients(player1.getHealthPoints(), player1.getMoney(), true);
+				updateClients(player2.getHealthPoints(), player2.getMoney(), false);
+			}
+			break;
+		}
+	}
+
+	private void send(ServerLockstepHash hash){
+		if(toServer == null){
+			return;
+		}
+		try{
+			toServer.writeObject(hash);
+		}catch(IOException e){
+			e.printStackTrace();
+			running = false; //The server is gone
+		}
+	}
+
+	/**
+	 * @return the ticks played
+	 */
+	public long getTick(){
+		return tick;
+	}
+
+	/**
+	 * @return the last state hash sent to the server
+	 */
+	public long getLastHash(){
+		return lastHash;
+	}
+
+	/**
+	 * @return true once the game has been won or lost
+	 */
+	public boolean isOver(){
+		return over;
+	}
+
+	public Level getLevel(){
+		return level;
+	}
+
+	//The GameEventSink methods, called by the Level and its Maps on the simulation's thread
+
+	public void putClientToMap(String clientName, Map map){
+	}
+
+	public Player getPlayer1(){
+		return player1;
+	}
+
+	public boolean isMultiplayer(){
+		return true;
+	}
+
+	public void startTimer(){
+	}
+
+	public void gameLost(){
+		if(!over){
+			over = true;
+			send(new ServerLockstepHash(tick, level.stateHash(), ServerLockstepHash.LOST));
+			if(client != null){
+				client.notifyLevelWasLost();
+			}
+		}
+	}
+
+	public void gameWon(){
+		if(!over){
+			over = true;
+			send(new ServerLockstepHash(tick, level.stateHash(), ServerLockstepHash.WON));
+			if(client != null){
+				client.notifyLevelWasWon();
+			}
+		}
+	}
+
+	public boolean hasViewers(){
+		return client != null;
+	}
+
+	public boolean isImageUpdateDue(boolean fromPlayer1){
+		if(client == null){
+			return false;
+		}
+		return fromPlayer1 == ownMapIsPlayer1 || tick % MINI_MAP_TICKS == 0; //The partner's only for the MiniMap
+	}
+
+	public void updateClients(int playerHealth, int playerMoney, boolean fromPlayer1){
+		if(client != null && fromPlayer1 == ownMapIsPlayer1){
+			client.updateHPandMoney(playerHealth, playerMoney, fromPlayer1);
+		}
+	}
+
+	public void updateClients(ArrayList<EnemyImage> enemyImages, ArrayList<TowerImage> towerImages, boolean fromPlayer1){
+		if(client == null){
+			return;
+		}
+		if(fromPlayer1 == ownMapIsPlayer1){
+			client.update(enemyImages, towerImages, fromPlayer1);
+		}else{
+			new ClientMiniMap(towerImages, enemyImages, fromPlayer1).execute(client);
+		}
+	}
+
+	public void updateClientsOfAttack(towerType type, Point towerLocation, Point enemyLocation, boolean fromPlayer1){
+		if(client != null && fromPlayer1 == ownMapIsPlayer1){
+			client.towerAttack(type, towerLocation, enemyLocation, fromPlayer1);
+		}
+	}
+
+	public void updateClientsOfMapBackground(String mapBackgroundURL, LinkedList<LinkedList<Point>> paths, int numOfRows, int numOfColumns, boolean fromPlayer1){
+		if(client != null && fromPlayer1 == ownMapIsPlayer1){
+			client.mapBackgroundUpdate(mapBackgroundURL, paths, numOfRows, numOfColumns, fromPlayer1);
+		}
+	}
+}
@@ -0,0 +1,404 @@
+package client;
+
+import java.awt.Point;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.concurrent.locks.LockSupport;
+
+import model.GameEventSink;
+import model.Level;
+import model.Map;
+import model.SaveCodec;
+import server.GameLoop;
+import server.InputJournal;
+import GUI.EnemyImage;
+import GUI.TowerImage;
+import GUI.GameView.towerType;
+import commands.ClientMiniMap;
+
+/**
+ * Plays back a replay a GameRoom recorded, here on the client with no server. A replay is an
+ * InputJournal that was never started again: its first checkpoint generates the Level from its
+ * level code and seed, and playing it on with the recorded inputs applied on their ticks gives
+ * exactly the game that was recorded.
+ *
+ * With a GameClient the replay is played at the speed of the game on a thread of its own,
+ * player 1's map shown on the client's GameView as the server would and player 2's on the
+ * MiniMap in co-op, and can be paused and sped up. With none it is played by step() or
+ * playToEnd() as fast as it will go with nobody watching, to check a game's outcome.
+ *
+ * seek() moves to any tick by loading the last snapshot the replay holds at or before it and
+ * playing on from there with nobody watching, instead of playing the whole game again.
+ *
+ * Instance Variables:
+ * GameClient client			- The client to show the replay on, or null
+ * byte[] replay				- The replay, an InputJournal
+ * long[] snapshotTicks			- The tick of each snapshot in the replay, in order
+ * int[] snapshotFrames			- Where each snapshot's frame starts
+ * long endTick					- The tick of the last input or snapshot recorded
+ * Level level					- The game, null until the first step or seek
+ * InputJournal.Reader in		- Reads the inputs after the snapshot the game was loaded from
+ * boolean pending				- True if in holds an input not yet applied
+ * long tick					- The ticks the game has run
+ * boolean quiet				- True while seeking, when nothing is shown
+ *
+ * Methods:
+ * void start()
+ * void stop()
+ * void togglePause()
+ * void setSpeed(int multiplier)
+ * void seek(long tick)
+ * boolean step()
+ * void playToEnd()
+ * the GameEventSink methods
+ * getters
+ */
+public class ReplayPlayback implements GameEventSink, Runnable{
+
+	private static final int MINI_MAP_TICKS = 10; //Ticks between MiniMap updates of player 2's map
+	private static final int MAX_STEPS_PER_WAKE = 50; //Catching up yields after this many ticks
+
+	private final GameClient client;
+	private final byte[] replay;
+	private final long[] snapshotTicks;
+	private final int[] snapshotFrames;
+	private final long endTick;
+	private final boolean multiplayer;
+	private final Player player1;
+	private Level level;
+	private InputJournal.Reader in;
+	private boolean pending;
+	private long tick;
+	private boolean quiet;
+	private volatile boolean over;
+	private volatile boolean won;
+	private volatile boolean running;
+	private volatile boolean paused;
+	private volatile int speed = 1;
+	private volatile long seekTo = -1; //A seek asked for while playing, taken by the thread
+	private long anchorTick; //The tick played when the pace was last set
+	private long anchorNanos; //When it was set
+	private Thread thread;
+
+	/**
+	 * @param client the client to show the replay on, null to play it with nobody watching
+	 * @param replay the replay, as recorded by a GameRoom
+	 * @throws IOException if it is not a replay or has no snapshot to start from
+	 */
+	public ReplayPlayback(GameClient client, byte[] replay) throws IOException{
+		this.client = client;
+		this.replay = replay;
+		ArrayList<long[]> snapshots = new ArrayList<long[]>();
+		long last = 0;
+		InputJournal.Reader reader = new InputJournal.Reader(replay);
+		byte[] first = null;
+		while(reader.next()){
+			if(reader.getAction() == InputJournal.CHECKPOINT){
+				snapshots.add(new long[]{reader.getTick(), reader.getFrameStart()});
+				if(first == null){
+					first = reader.getCheckpoint();
+				}
+			}
+			last = Math.max(last, reader.getTick());
+		}
+		if(first == null){
+			throw new StreamCorruptedException("replay has no snapshot");
+		}
+		snapshotTicks = new long[snapshots.size()];
+		snapshotFrames = new int[snapshots.size()];
+		for(int i = 0; i < snapshots.size(); i++){
+			snapshotTicks[i] = snapshots.get(i)[0];
+			snapshotFrames[i] = (int) snapshots.get(i)[1];
+		}
+		endTick = last;
+		multiplayer = SaveCodec.isMultiplayer(first);
+		player1 = new Player("Player 1", 100, 100);
+		if(multiplayer){
+			Player player2 = new Player("Player 2", 100, 100);
+			player1.setPartner(player2);
+			player2.setPartner(player1);
+		}
+	}
+
+	/**
+	 * Starts playing the replay at the speed of the game, on a thread of its own
+	 */
+	public void start(){
+		running = true;
+		thread = new Thread(this, "replay");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stops the replay's thread
+	 */
+	public void stop(){
+		running = false;
+		if(thread != null){
+			LockSupport.unpark(thread);
+		}
+	}
+
+	/**
+	 * Pauses a replay that is playing, or plays a paused one
+	 */
+	public void togglePause(){
+		paused = !paused;
+		if(thread != null){
+			LockSupport.unpark(thread);
+		}
+	}
+
+	/**
+	 * @param multiplier how many times the speed of the game to play at, up to GameLoop.MAX_SPEED
+	 */
+	public void setSpeed(int multiplier){
+		speed = Math.max(1, Math.min(GameLoop.MAX_SPEED, multiplier));
+		if(thread != null){
+			LockSupport.unpark(thread);
+		}
+	}
+
+	/**
+	 * Moves the replay to a tick, from the last snapshot at or before it. Taken by the
+	 * replay's thread if it is playing, done straight away if not.
+	 * @param target the tick to move to, past the game's end to play it to the end
+	 */
+	public void seek(long target){
+		if(thread == null){
+			seekNow(target);
+		}else{
+			seekTo = Math.max(0, target);
+			LockSupport.unpark(thread);
+		}
+	}
+
+	private void seekNow(long target){
+		int i = 0;
+		while(i + 1 < snapshotTicks.length && snapshotTicks[i + 1] <= target){
+			i++;
+		}
+		quiet = true;
+		try{
+			in = new InputJournal.Reader(replay, snapshotFrames[i]);
+			in.next();
+			over = false;
+			won = false;
+			level = SaveCodec.decode(in.getCheckpoint(), player1, this);
+			tick = in.getTick();
+			pending = false;
+			while(tick < target && step()){
+			}
+		}catch(IOException e){
+			throw new IllegalStateException("replay snapshot at tick " + snapshotTicks[i] + " will not load", e);
+		}finally{
+			quiet = false;
+		}
+		if(client != null){
+			level.getMap1().setServer(this); //Shows the maps as they are now
+			updateClients(player1.getHealthPoints(), player1.getMoney(), true);
+			if(multiplayer){
+				level.getMap2().setServer(this);
+			}
+		}
+	}
+
+	public void run(){
+		anchorTick = tick;
+		anchorNanos = System.nanoTime();
+		int pacedSpeed = speed;
+		while(running){
+			long target = seekTo;
+			if(target >= 0 || level == null){
+				seekTo = -1;
+				seekNow(Math.max(0, target));
+				anchorTick = tick;
+				anchorNanos = System.nanoTime();
+			}
+			if(over){
+				return; //The Level has told the client the game was won or lost
+			}
+			if(tick >= endTick){
+				client.notifyReplayEnded();
+				return;
+			}
+			long now = System.nanoTime();
+			if(paused || speed != pacedSpeed){ //Paced from here on
+				anchorTick = tick;
+				anchorNanos = now;
+				pacedSpeed = speed;
+			}
+			int steps = 0;
+			if(!paused){
+				long due = anchorTick + (now - anchorNanos) / GameLoop.STEP_NANOS * pacedSpeed;
+				while(tick < due && steps < MAX_STEPS_PER_WAKE && running && seekTo < 0 && step()){
+					steps++;
+				}
+			}
+			if(steps < MAX_STEPS_PER_WAKE){
+				LockSupport.parkNanos(GameLoop.STEP_NANOS / 4);
+			}
+		}
+	}
+
+	/**
+	 * Plays one tick: the inputs recorded for it, then the Level and its Maps, as
+	 * GameRoom.tickModel does. A game seeked to a tick has not had that tick's inputs yet.
+	 * Called by the replay's thread, or directly when nobody is watching.
+	 * @return false once the game is over or the replay has run out
+	 */
+	public boolean step(){
+		if(level == null){
+			seekNow(0);
+		}
+		if(over){
+			return false;
+		}
+		while(pending || in.next()){
+			pending = true;
+			int action = in.getAction();
+			if(action != InputJournal.CHECKPOINT && in.getTick() > tick){
+				break; //For a later tick
+			}
+			pending = false;
+			if(action != InputJournal.CHECKPOINT){
+				InputJournal.apply(level, action, in.isPlayer1(), in.getA(), in.getB(), in.getC());
+			}
+		}
+		if(tick >= endTick){
+			return false; //The replay has run out, with its last inputs applied
+		}
+		level.tick(GameLoop.STEP_MILLIS);
+		level.getMap1().tick(GameLoop.STEP_MILLIS);
+		if(multiplayer){
+			level.getMap2().tick(GameLoop.STEP_MILLIS);
+		}
+		tick++;
+		return true;
+	}
+
+	/**
+	 * Plays the rest of the replay as fast as it will go
+	 */
+	public void playToEnd(){
+		while(step()){
+		}
+	}
+
+	/**
+	 * @return the ticks the game has run
+	 */
+	public long getTick(){
+		return tick;
+	}
+
+	/**
+	 * @return the tick the replay runs out at, if the game is not over before
+	 */
+	public long getEndTick(){
+		return endTick;
+	}
+
+	/**
+	 * @return the ticks of the snapshots in the replay, where seeking is quickest
+	 */
+	public long[] getSnapshotTicks(){
+		return snapshotTicks.clone();
+	}
+
+	/**
+	 * @return true once the game has been won or lost
+	 */
+	public boolean isOver(){
+		return over;
+	}
+
+	/**
+	 * @return true if the game was won
+	 */
+	public boolean isWon(){
+		return won;
+	}
+
+	public boolean isMultiplayer(){
+		return multiplayer;
+	}
+
+	public Level getLevel(){
+		return level;
+	}
+
+	//The GameEventSink methods, called by the Level and its Maps as the replay plays
+
+	public void putClientToMap(String clientName, Map map){
+	}
+
+	public Player getPlayer1(){
+		return player1;
+	}
+
+	public void startTimer(){
+	}
+
+	public void gameLost(){
+		if(!over){
+			over = true;
+			if(client != null && !quiet){
+				client.notifyLevelWasLost();
+			}
+		}
+	}
+
+	public void gameWon(){
+		if(!over){
+			over = true;
+			won = true;
+			if(client != null && !quiet){
+				client.notifyLevelWasWon();
+			}
+		}
+	}
+
+	public boolean hasViewers(){
+		return client != null && !quiet;
+	}
+
+	public boolean isImageUpdateDue(boolean fromPlayer1){
+		if(!hasViewers()){
+			return false;
+		}
+		return fromPlayer1 || tick % MINI_MAP_TICKS == 0; //Player 2's only for the MiniMap
+	}
+
+	public void updateClients(int playerHealth, int playerMoney, boolean fromPlayer1){
+		if(hasViewers() && fromPlayer1){
+			client.updateHPandMoney(playerHealth, playerMoney, fromPlayer1);
+		}
+	}
+
+	public void updateClients(ArrayList<EnemyImage> enemyImages, ArrayList<TowerImage> towerImages, boolean fromPlayer1){
+		if(!hasViewers()){
+			return;
+		}
+		if(fromPlayer1){
+			client.update(enemyImages, towerImages, fromPlayer1);
+		}else{
+			new ClientMiniMap(towerImages, enemyImages, fromPlayer1).execute(client);
+		}
+	}
+
+	public void updateClientsOfAttack(towerType type, Point towerLocation, Point enemyLocation, boolean fromPlayer1){
+		if(hasViewers() && fromPlayer1){
+			client.towerAttack(type, towerLocation, enemyLocation, fromPlayer1);
+		}
+	}
+
+	public void updateClientsOfMapBackground(String mapBackgroundURL, LinkedList<LinkedList<Point>> paths, int numOfRows, int numOfColumns, boolean fromPlayer1){
+		if(hasViewers() && fromPlayer1){
+			client.mapBackgroundUpdate(mapBackgroundURL, paths, numOfRows, numOfColumns, fromPlayer1);
+		}
+	}
+}
@@ -0,0 +1,158 @@
+package client;
+
+import java.awt.Point;
+import java.util.ArrayList;
+
+import GUI.EnemyImage;
+import GUI.TowerImage;
+import GameController.Enemy.directionFacing;
+import commands.ClientSnapshot;
+
+/**
+ * The client's copy of the enemies and towers of one map, kept up to date by applying the
+ * ClientSnapshots the server sends for it. Enemy images are changed in place, so a delta only
+ * costs the client the entities in it. The lists keep the order entities arrived in, with towers
+ * upgraded in place, which is what GameView.update expects.
+ *
+ * A delta is only applied on top of the snapshot right before it; after a gap the mirror ignores
+ * deltas until the next keyframe.
+ *
+ * Added enemies are copied before they are changed in place: over a loopback connection the
+ * snapshot is the server's own object, not a decoded copy.
+ *
+ * Instance Variables:
+ * ArrayList<EnemyImage> enemies				- The map's enemies
+ * IntMap<EnemyImage> enemiesById				- The same enemies by entity ID
+ * ArrayList<TowerImage> towers				- The map's towers
+ * IntMap<TowerImage> towersById				- The same towers by entity ID
+ * int lastSequence							- The sequence # of the last snapshot applied
+ * boolean synced								- False until a keyframe arrives, and after a gap
+ *
+ * Methods:
+ * boolean apply(ClientSnapshot snapshot)
+ * ArrayList<EnemyImage> getEnemyImages()
+ * ArrayList<TowerImage> getTowerImages()
+ */
+public class SnapshotMirror{
+
+	private static final directionFacing[] FACINGS = directionFacing.values();
+
+	private ArrayList<EnemyImage> enemies = new ArrayList<EnemyImage>();
+	private IntMap<EnemyImage> enemiesById = new IntMap<EnemyImage>();
+	private ArrayList<TowerImage> towers = new ArrayList<TowerImage>();
+	private IntMap<TowerImage> towersById = new IntMap<TowerImage>();
+	private int lastSequence;
+	private boolean synced;
+
+	/**
+	 * Applies a snapshot from the server
+	 * @param snapshot the snapshot for this mirror's map
+	 * @return true if it was applied, false if it was a delta that did not follow the last one
+	 */
+	public boolean apply(ClientSnapshot snapshot){
+		if(snapshot.isKeyframe()){
+			enemies.clear();
+			enemiesById.clear();
+			towers.clear();
+			towersById.clear();
+		}else if(!synced || snapshot.getSequence() != lastSequence + 1){
+			synced = false; //Wait for the next keyframe
+			return false;
+		}
+		synced = true;
+		lastSequence = snapshot.getSequence();
+
+		int[] removed = snapshot.getRemovedEnemies();
+		for(int i = 0; i < removed.length; i++){
+			enemiesById.remove(removed[i]);
+		}
+		if(removed.length > 0){
+			int kept = 0;
+			for(int i = 0; i < enemies.size(); i++){
+				EnemyImage e = enemies.get(i);
+				if(enemiesById.get(e.getEntityId()) == e){
+					enemies.set(kept++, e);
+				}
+			}
+			while(enemies.size() > kept){
+				enemies.remove(enemies.size() - 1);
+			}
+		}
+		for(EnemyImage added : snapshot.getAddedEnemies()){
+			EnemyImage e = copy(added);
+			enemiesById.put(e.getEntityId(), e);
+			enemies.add(e);
+		}
+		applyEnemyChanges(snapshot.getEnemyChanges());
+
+		int[] sold = snapshot.getRemovedTowers();
+		for(int i = 0; i < sold.length; i++){
+			towers.remove(towersById.remove(sold[i]));
+		}
+		for(TowerImage t : snapshot.getAddedTowers()){
+			TowerImage old = towersById.put(t.getEntityId(), t);
+			if(old == null){
+				towers.add(t);
+			}else{
+				towers.set(towers.indexOf(old), t); //Upgraded, keep its place
+			}
+		}
+		return true;
+	}
+
+	private static EnemyImage copy(EnemyImage e){
+		return new EnemyImage(e.getEntityId(), e.getSpriteId(), new Point(e.getLocation()),
+				e.getOrientation(), e.getProgress(), e.getHealthPercentage(), e.getMaxHealth(), e.getAttackPower(),
+				e.getDefense(), e.getSpeed(), e.getWorth());
+	}
+
+	/**
+	 * Unpacks the changed enemy fields of a delta onto the enemy images
+	 */
+	private void applyEnemyChanges(int[] changes){
+		int i = 0;
+		while(i < changes.length){
+			EnemyImage e = enemiesById.get(changes[i++]);
+			int mask = changes[i++];
+			if((mask & ClientSnapshot.LOCATION) != 0){
+				int row = changes[i++];
+				int column = changes[i++];
+				if(e != null){
+					e.setLocation(new Point(row, column));
+				}
+			}
+			if((mask & ClientSnapshot.ORIENTATION) != 0){
+				int facing = changes[i++];
+				if(e != null){
+					e.setOrientation(FACINGS[facing]);
+				}
+			}
+			if((mask & ClientSnapshot.PROGRESS) != 0){
+				int progress = changes[i++];
+				if(e != null){
+					e.setProgress(progress);
+				}
+			}
+			if((mask & ClientSnapshot.HEALTH) != 0){
+				int health = changes[i++];
+				if(e != null){
+					e.setHealthPercentage(health);
+				}
+			}
+			if((mask & ClientSnapshot.SPEED) != 0){
+				int speedBits = changes[i++];
+				if(e != null){
+					e.setSpeed(Float.intBitsToFloat(speedBits));
+				}
+			}
+		}
+	}
+
+	public ArrayList<EnemyImage> getEnemyImages(){
+		return enemies;
+	}
+
+	public ArrayList<TowerImage> getTowerImages(){
+		return towers;
+	}
+}
@@ -0,0 +1,73 @@
+package client;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import commands.FrameInput;
+import commands.FrameOutput;
+import commands.ServerKeepAlive;
+
+/**
+ * The Transport to a GameServer over TCP, messages are WireCodec frames. Once it has sent its
+ * name, a transport that sends nothing for KEEPALIVE_MILLIS sends a ServerKeepAlive, so the
+ * server's idle timeout only closes clients that are gone. One timer thread checks every transport.
+ *
+ * Instance Variables:
+ * Socket socket		- The connection to the server
+ * FrameOutput out		- Writes frames to the server
+ * FrameInput in		- Reads frames from the server
+ * long lastWriteAt		- When the last message was sent, 0 until the first
+ * TimerTask keepAlive	- Sends a ServerKeepAlive when it is due, until the transport is closed
+ */
+public class SocketTransport implements Transport{
+
+	public static final long KEEPALIVE_MILLIS = 60 * 1000; //Well inside NetworkServer.IDLE_TIMEOUT_MILLIS
+	private static final Timer KEEPALIVE_TIMER = new Timer("SocketTransport-keepalive", true);
+
+	private final Socket socket;
+	private final FrameOutput out;
+	private final FrameInput in;
+	private volatile long lastWriteAt;
+	private final TimerTask keepAlive = new TimerTask(){
+		public void run(){
+			long last = lastWriteAt;
+			if(last == 0 || System.currentTimeMillis() - last < KEEPALIVE_MILLIS){
+				return; //The name not sent yet, or something else sent since
+			}
+			try{
+				writeObject(new ServerKeepAlive());
+			}catch(IOException e){
+				cancel(); //Closed, the reader finds out
+			}
+		}
+	};
+
+	/**
+	 * Connects to a server, blocking until the server's connection header has arrived
+	 * @param host the server's address
+	 * @param port the server's port
+	 * @throws IOException if the server cannot be reached or is not a game server
+	 */
+	public SocketTransport(String host, int port) throws IOException{
+		this.socket = new Socket(host, port);
+		this.out = new FrameOutput(socket.getOutputStream());
+		this.in = new FrameInput(socket.getInputStream());
+		KEEPALIVE_TIMER.schedule(keepAlive, KEEPALIVE_MILLIS / 4, KEEPALIVE_MILLIS / 4);
+	}
+
+	public void writeObject(Object message) throws IOException{
+		out.writeObject(message);
+		lastWriteAt = System.currentTimeMillis();
+	}
+
+	public Object readObject() throws IOException{
+		return in.readObject();
+	}
+
+	public void close() throws IOException{
+		keepAlive.cancel();
+		socket.close();
+	}
+}
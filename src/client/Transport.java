@@ -0,0 +1,41 @@
+package client;
+
+import java.io.EOFException;
+import java.io.IOException;
+
+/**
+ * A GameClient's connection to its GameServer. SocketTransport reaches a server over TCP,
+ * GameServer.openLoopback gives a client in the same JVM one that passes command objects
+ * straight to the server, with no socket and no encoding.
+ *
+ * The client first writes its name, then reads its Player and whether it is player 1, then
+ * sends commands and reads commands until it disconnects.
+ *
+ * Methods:
+ * void writeObject(Object message)
+ * Object readObject()
+ * void close()
+ */
+public interface Transport{
+
+	/**
+	 * Sends a message to the server, may be called from any thread
+	 * @param message the client's name, then Commands
+	 * @throws IOException if the connection has failed or been closed
+	 */
+	void writeObject(Object message) throws IOException;
+
+	/**
+	 * Takes the next message from the server, blocking until there is one. Only the client's
+	 * reader thread calls this.
+	 * @return the message
+	 * @throws EOFException once the server has closed the connection
+	 * @throws IOException if the connection fails
+	 */
+	Object readObject() throws IOException;
+
+	/**
+	 * Closes the connection
+	 */
+	void close() throws IOException;
+}
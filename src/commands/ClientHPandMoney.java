@@ -14,6 +14,10 @@ public class ClientHPandMoney extends Command<GameClient>{
 		this.fromPlayer1 = fromPlayer1;
 	}
 	
+	public boolean isFromPlayer1(){
+		return fromPlayer1;
+	}
+	
 	@Override
 	public void execute(GameClient executeOn) {
 		//TODO need to execute on something in the game client
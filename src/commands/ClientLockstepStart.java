@@ -0,0 +1,36 @@
+package commands;
+
+import client.GameClient;
+
+/**
+ * This class is a Command used to start a lockstep co-op game on both GameClients. Instead
+ * of being streamed the state of the maps, each client plays the Level itself from the same
+ * level code and seed, and the server only relays the players' inputs in ClientLockstepTurns.
+ * Sent once, in place of the level being created on the server.
+ */
+public class ClientLockstepStart extends Command<GameClient>{
+
+	private static final long serialVersionUID = -6149470271538817460L;
+
+	private int levelCode;
+	private long seed;
+	private String player1Name, player2Name;
+	private int turnTicks; //Ticks between ClientLockstepTurns
+	private int leadTicks; //The ticks that may be played before the first turn arrives
+	private int hashInterval; //Ticks between state hashes sent back to the server
+
+	public ClientLockstepStart(int levelCode, long seed, String player1Name, String player2Name, int turnTicks, int leadTicks, int hashInterval){
+		this.levelCode = levelCode;
+		this.seed = seed;
+		this.player1Name = player1Name;
+		this.player2Name = player2Name;
+		this.turnTicks = turnTicks;
+		this.leadTicks = leadTicks;
+		this.hashInterval = hashInterval;
+	}
+
+	@Override
+	public void execute(GameClient executeOn) {
+		executeOn.startLockstep(levelCode, seed, player1Name, player2Name, turnTicks, leadTicks, hashInterval);
+	}
+}
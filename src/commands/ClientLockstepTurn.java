@@ -0,0 +1,50 @@
+package commands;
+
+import client.GameClient;
+
+/**
+ * This class is a Command used to relay one turn of a lockstep co-op game to both clients:
+ * the inputs the players sent during the turn, all applied at the start of tick, and
+ * permission to play every tick before the next turn's. A turn with no inputs is a few bytes.
+ *
+ * inputs is packed as INPUT_LENGTH ints per input: the action, 1 if player 1's or 0 if
+ * player 2's, then for PLACE the towerType ordinal, row and column, for SELL and UPGRADE
+ * 0, row and column, for TRANSFER the amount of money sent to the partner, 0 and 0.
+ */
+public class ClientLockstepTurn extends Command<GameClient>{
+
+	private static final long serialVersionUID = 2907398610127766321L;
+
+	public static final int PLACE = 0;
+	public static final int SELL = 1;
+	public static final int UPGRADE = 2;
+	public static final int TRANSFER = 3;
+	public static final int INPUT_LENGTH = 5;
+
+	private long tick; //The tick the inputs apply at, the client may play up to tick + turnTicks
+	private int speed; //The server's speed multiplier, how fast the client plays to the next turn
+	private int[] inputs;
+
+	public ClientLockstepTurn(long tick, int speed, int[] inputs){
+		this.tick = tick;
+		this.speed = speed;
+		this.inputs = inputs;
+	}
+
+	public long getTick(){
+		return tick;
+	}
+
+	public int getSpeed(){
+		return speed;
+	}
+
+	public int[] getInputs(){
+		return inputs;
+	}
+
+	@Override
+	public void execute(GameClient executeOn) {
+		executeOn.lockstepTurn(this);
+	}
+}
@@ -0,0 +1,73 @@
+package commands;
+
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.List;
+
+import client.GameClient;
+import GUI.EnemyImage;
+import GUI.TowerImage;
+
+/**
+ * This class is a Command used to send a GameClient where its partner's towers and enemies are,
+ * for the MiniMap. It carries positions only and is sent a few times a second, while the full
+ * snapshots of a map go only to the client playing it.
+ *
+ * Positions are packed as row, column pairs.
+ */
+public class ClientMiniMap extends Command<GameClient>{
+
+	private static final long serialVersionUID = 3129488471850062214L;
+
+	private boolean fromPlayer1;
+	private int[] towers; //Row, column of each of the map's towers
+	private int[] enemies; //Row, column of each of the map's enemies
+
+	public ClientMiniMap(boolean fromPlayer1, int[] towers, int[] enemies){
+		this.fromPlayer1 = fromPlayer1;
+		this.towers = towers;
+		this.enemies = enemies;
+	}
+
+	/**
+	 * Takes the positions of a map's towers and enemies
+	 */
+	public ClientMiniMap(List<TowerImage> towerImages, List<EnemyImage> enemyImages, boolean fromPlayer1){
+		this.fromPlayer1 = fromPlayer1;
+		this.towers = new int[towerImages.size() * 2];
+		for(int i = 0; i < towerImages.size(); i++){
+			towers[2 * i] = towerImages.get(i).getLocation().x;
+			towers[2 * i + 1] = towerImages.get(i).getLocation().y;
+		}
+		this.enemies = new int[enemyImages.size() * 2];
+		for(int i = 0; i < enemyImages.size(); i++){
+			enemies[2 * i] = enemyImages.get(i).getLocation().x;
+			enemies[2 * i + 1] = enemyImages.get(i).getLocation().y;
+		}
+	}
+
+	@Override
+	public void execute(GameClient executeOn) {
+		executeOn.updateMiniMap(unpack(towers), unpack(enemies));
+	}
+
+	private static ArrayList<Point> unpack(int[] packed){
+		ArrayList<Point> points = new ArrayList<Point>(packed.length / 2);
+		for(int i = 0; i + 1 < packed.length; i += 2){
+			points.add(new Point(packed[i], packed[i + 1]));
+		}
+		return points;
+	}
+
+	public boolean isFromPlayer1(){
+		return fromPlayer1;
+	}
+
+	public int[] getTowers(){
+		return towers;
+	}
+
+	public int[] getEnemies(){
+		return enemies;
+	}
+}
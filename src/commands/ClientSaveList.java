@@ -0,0 +1,31 @@
+package commands;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import server.SaveStore;
+import client.GameClient;
+
+/**
+ * This class is a Command used to send a GameClient what its SaveStore's index holds of each of
+ * its saved games, for the menu to list them without any save being read.
+ */
+public class ClientSaveList extends Command<GameClient>{
+
+	private static final long serialVersionUID = -7729390145561108207L;
+
+	private ArrayList<SaveStore.Slot> slots; //The one saved last first
+
+	public ClientSaveList(List<SaveStore.Slot> slots){
+		this.slots = new ArrayList<SaveStore.Slot>(slots);
+	}
+
+	public List<SaveStore.Slot> getSlots(){
+		return slots;
+	}
+
+	@Override
+	public void execute(GameClient executeOn) {
+		executeOn.chooseSave(slots);
+	}
+}
@@ -0,0 +1,86 @@
+package commands;
+
+import java.util.ArrayList;
+
+import client.GameClient;
+import GUI.EnemyImage;
+import GUI.TowerImage;
+
+/**
+ * This class is a Command used to send the enemies and towers of one map from the GameServer to a
+ * GameClient, replacing ClientUpdate. A keyframe carries every entity on the map. Every other
+ * snapshot is a delta against the one before it sent to the same client: only entities that
+ * appeared, left, or changed are in it, and a changed enemy carries just its changed fields.
+ * Entities are keyed by the entity ID their Map gave them.
+ *
+ * enemyChanges is packed as, per changed enemy: entityId, mask, then one int per field set in
+ * the mask, in mask bit order: row, column, orientation ordinal, progress, health percentage,
+ * Float.floatToIntBits of the speed.
+ */
+public class ClientSnapshot extends Command<GameClient>{
+
+	private static final long serialVersionUID = -5862180476425937071L;
+	public static final int LOCATION = 1;
+	public static final int ORIENTATION = 2;
+	public static final int PROGRESS = 4;
+	public static final int HEALTH = 8;
+	public static final int SPEED = 16;
+
+	private boolean fromPlayer1;
+	private boolean keyframe; //true if this replaces everything the client has for the map
+	private int sequence; //Counts up by one per snapshot sent to a client for a map
+	private ArrayList<EnemyImage> addedEnemies; //Enemies the client has not seen yet, every enemy in a keyframe
+	private int[] removedEnemies; //IDs of enemies that have left the map
+	private int[] enemyChanges; //The changed fields of the other enemies, packed as above
+	private ArrayList<TowerImage> addedTowers; //New or upgraded towers, every tower in a keyframe
+	private int[] removedTowers; //IDs of towers that have been sold
+
+	public ClientSnapshot(boolean fromPlayer1, boolean keyframe, int sequence, ArrayList<EnemyImage> addedEnemies,
+			int[] removedEnemies, int[] enemyChanges, ArrayList<TowerImage> addedTowers, int[] removedTowers){
+		this.fromPlayer1 = fromPlayer1;
+		this.keyframe = keyframe;
+		this.sequence = sequence;
+		this.addedEnemies = addedEnemies;
+		this.removedEnemies = removedEnemies;
+		this.enemyChanges = enemyChanges;
+		this.addedTowers = addedTowers;
+		this.removedTowers = removedTowers;
+	}
+
+	@Override
+	public void execute(GameClient executeOn) {
+		executeOn.applySnapshot(this);
+	}
+
+	public boolean isFromPlayer1(){
+		return fromPlayer1;
+	}
+
+	public boolean isKeyframe(){
+		return keyframe;
+	}
+
+	public int getSequence(){
+		return sequence;
+	}
+
+	public ArrayList<EnemyImage> getAddedEnemies(){
+		return addedEnemies;
+	}
+
+	public int[] getRemovedEnemies(){
+		return removedEnemies;
+	}
+
+	public int[] getEnemyChanges(){
+		return enemyChanges;
+	}
+
+	public ArrayList<TowerImage> getAddedTowers(){
+		return addedTowers;
+	}
+
+	public int[] getRemovedTowers(){
+		return removedTowers;
+	}
+}
@@ -0,0 +1,26 @@
+package commands;
+
+import client.GameClient;
+
+/**
+ * This class is a Command used to send a GameClient the SpriteRegistry table once, when it
+ * connects, so the EnemyImages and TowerImages of every later update can name their sprites
+ * by ID.
+ */
+public class ClientSpriteTable extends Command<GameClient>{
+
+	private static final long serialVersionUID = -2215460951753017806L;
+
+	private String[] enemySprites; //Enemy names, indexed by sprite ID
+	private String[] towerSprites; //Tower image URLs, indexed by sprite ID
+
+	public ClientSpriteTable(String[] enemySprites, String[] towerSprites){
+		this.enemySprites = enemySprites;
+		this.towerSprites = towerSprites;
+	}
+
+	@Override
+	public void execute(GameClient executeOn) {
+		executeOn.setSpriteTable(enemySprites, towerSprites);
+	}
+}
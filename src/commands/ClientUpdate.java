@@ -35,6 +35,18 @@ public class ClientUpdate extends Command<GameClient>{
 		this.fromPlayer1 = fromPlayer1;
 	}
 
+	public List<EnemyImage> getEnemyImages(){
+		return enemyImages;
+	}
+	
+	public List<TowerImage> getTowerImages(){
+		return towerImages;
+	}
+	
+	public boolean isFromPlayer1(){
+		return fromPlayer1;
+	}
+
 	@Override
 	public void execute(GameClient executeOn) {
 		// TODO Auto-generated method stub
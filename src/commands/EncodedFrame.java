@@ -0,0 +1,58 @@
+package commands;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A message already encoded as a WireCodec frame, for sending the same message to many
+ * connections. The frame is encoded once into its own read-only heap buffer, and every FrameOutput
+ * it is written to writes those bytes as they are, so a broadcast costs one encode however
+ * many clients receive it.
+ *
+ * Instance Variables:
+ * Object message	- The message that was encoded, so queues can still tell what it is
+ * ByteBuffer frame	- The frame, length prefix included, never changed after encoding
+ *
+ * Methods:
+ * Object getMessage()
+ * ByteBuffer getFrame()
+ * int getLength()
+ */
+public final class EncodedFrame{
+
+	private final Object message;
+	private final ByteBuffer frame;
+
+	/**
+	 * Encodes a message with a codec, copying the frame out of the codec's buffer
+	 * @param message a Command, or any other Serializable object
+	 * @param codec the codec to encode with, used by this thread only
+	 * @throws IOException if the message falls back to Java serialization and it fails
+	 */
+	public EncodedFrame(Object message, WireCodec codec) throws IOException{
+		ByteBuffer encoded = codec.encode(message);
+		byte[] copy = new byte[encoded.remaining()]; //On the heap, a direct buffer per broadcast costs more than the encode
+		encoded.get(copy);
+		this.message = message;
+		this.frame = ByteBuffer.wrap(copy).asReadOnlyBuffer();
+	}
+
+	public Object getMessage(){
+		return message;
+	}
+
+	/**
+	 * @return a view of the whole frame with its own position, so each connection can write it
+	 * 			without disturbing the others
+	 */
+	public ByteBuffer getFrame(){
+		return frame.duplicate();
+	}
+
+	/**
+	 * @return the frame's size in bytes
+	 */
+	public int getLength(){
+		return frame.capacity();
+	}
+}
@@ -0,0 +1,89 @@
+package commands;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads messages written by a FrameOutput, taking the place of an ObjectInputStream.
+ * Each frame is read into one reusable buffer and decoded by a WireCodec.
+ *
+ * Instance Variables:
+ * DataInputStream in	- The connection's input, buffered
+ * WireCodec codec		- Decodes each frame
+ * byte[] frame			- The frame being decoded, grown to fit the largest frame so far
+ *
+ * Methods:
+ * Object readObject()
+ * void close()
+ */
+public class FrameInput{
+
+	private final DataInputStream in;
+	private final WireCodec codec = new WireCodec();
+	private byte[] frame = new byte[4096];
+
+	/**
+	 * Opens the input and checks the connection header, blocking until the other end has written it
+	 * @param stream the connection's input stream
+	 * @throws IOException if the header is missing or for another protocol version
+	 */
+	public FrameInput(InputStream stream) throws IOException{
+		this.in = new DataInputStream(new BufferedInputStream(stream));
+		int magic = in.readInt();
+		int version = in.readUnsignedByte();
+		if(magic != WireCodec.MAGIC){
+			throw new StreamCorruptedException("Not a game connection");
+		}
+		if(version != WireCodec.VERSION){
+			throw new StreamCorruptedException("Wire protocol version " + version + ", expected " + WireCodec.VERSION);
+		}
+	}
+
+	/**
+	 * Reads and decodes the next frame, blocking until it has arrived
+	 * @return the message
+	 * @throws EOFException if the connection was closed between frames
+	 * @throws IOException if the connection fails or a frame is not valid
+	 */
+	public Object readObject() throws IOException{
+		int length = readLength();
+		if(length > frame.length){
+			frame = new byte[Math.max(length, frame.length * 2)];
+		}
+		in.readFully(frame, 0, length);
+		return codec.decode(ByteBuffer.wrap(frame, 0, length));
+	}
+
+	/**
+	 * Reads a frame's varint length
+	 */
+	private int readLength() throws IOException{
+		int length = 0;
+		for(int shift = 0; shift < 35; shift += 7){
+			int b = in.read();
+			if(b < 0){
+				if(shift == 0){
+					throw new EOFException(); //Closed cleanly between frames
+				}
+				throw new StreamCorruptedException("Connection closed inside a frame");
+			}
+			length |= (b & 0x7F) << shift;
+			if((b & 0x80) == 0){
+				if(length < 1 || length > WireCodec.MAX_FRAME){
+					throw new StreamCorruptedException("Bad frame length " + length);
+				}
+				return length;
+			}
+		}
+		throw new StreamCorruptedException("Bad frame length");
+	}
+
+	public void close() throws IOException{
+		in.close();
+	}
+}
@@ -0,0 +1,157 @@
+package commands;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+
+/**
+ * Writes messages to a connection as WireCodec frames, taking the place of an
+ * ObjectOutputStream. Writes are synchronized, so threads sending to the same
+ * connection never interleave their frames.
+ *
+ * An EncodedFrame is written as it is, without encoding it again. writeAll writes a batch of
+ * messages in one gathering write when the channel supports it (a SocketChannel does), with
+ * EncodedFrames gathered straight from their shared buffers.
+ *
+ * Instance Variables:
+ * WritableByteChannel channel	- The connection's output
+ * WireCodec codec				- Encodes each message, reusing its buffer
+ * ByteBuffer staging			- The frames of a batch that were encoded here, for a gathering write
+ * ByteBuffer[] gather			- The frames of a batch, in order
+ * long bytesWritten			- Bytes written, header and frames
+ * long framesWritten			- Frames written
+ *
+ * Methods:
+ * void writeObject(Object message)
+ * void writeAll(List<?> messages)
+ * void close()
+ * long getBytesWritten()
+ * long getFramesWritten()
+ */
+public class FrameOutput{
+
+	private final WritableByteChannel channel;
+	private final WireCodec codec = new WireCodec();
+	private ByteBuffer staging;
+	private ByteBuffer[] gather = new ByteBuffer[16];
+	private volatile long bytesWritten;
+	private volatile long framesWritten;
+
+	/**
+	 * Opens the output and writes the connection header, WireCodec.MAGIC and VERSION
+	 * @param stream the connection's output stream
+	 * @throws IOException if the header cannot be written
+	 */
+	public FrameOutput(OutputStream stream) throws IOException{
+		this(Channels.newChannel(stream));
+	}
+
+	/**
+	 * Opens the output on a channel and writes the connection header, the channel must be blocking
+	 * @param channel the connection's channel
+	 * @throws IOException if the header cannot be written
+	 */
+	public FrameOutput(WritableByteChannel channel) throws IOException{
+		this.channel = channel;
+		ByteBuffer header = ByteBuffer.allocate(5);
+		header.putInt(WireCodec.MAGIC);
+		header.put((byte) WireCodec.VERSION);
+		header.flip();
+		write(header);
+	}
+
+	/**
+	 * Encodes a message and writes it as one frame
+	 * @param message a Command, any other Serializable object, or an EncodedFrame
+	 * @throws IOException if the connection fails
+	 */
+	public synchronized void writeObject(Object message) throws IOException{
+		write(frameOf(message));
+		framesWritten++;
+	}
+
+	/**
+	 * Writes messages in order, in one gathering write if the channel supports it
+	 * @param messages Commands, any other Serializable objects, or EncodedFrames
+	 * @throws IOException if the connection fails
+	 */
+	public synchronized void writeAll(List<?> messages) throws IOException{
+		int count = messages.size();
+		if(count == 1 || !(channel instanceof GatheringByteChannel)){
+			for(int i = 0; i < count; i++){
+				writeObject(messages.get(i));
+			}
+			return;
+		}
+		if(gather.length < count){
+			gather = new ByteBuffer[Math.max(count, gather.length * 2)];
+		}
+		if(staging != null){
+			staging.clear();
+		}
+		long total = 0;
+		for(int i = 0; i < count; i++){
+			Object message = messages.get(i);
+			if(message instanceof EncodedFrame){
+				gather[i] = ((EncodedFrame) message).getFrame();
+			}else{
+				gather[i] = stage(codec.encode(message));
+			}
+			total += gather[i].remaining();
+		}
+		long written = 0;
+		while(written < total){
+			written += ((GatheringByteChannel) channel).write(gather, 0, count);
+		}
+		for(int i = 0; i < count; i++){
+			gather[i] = null; //Do not keep shared frames alive
+		}
+		bytesWritten += total;
+		framesWritten += count;
+	}
+
+	/**
+	 * Copies a frame out of the codec's buffer into the staging buffer
+	 * @return a view of the copy
+	 */
+	private ByteBuffer stage(ByteBuffer frame){
+		if(staging == null || staging.remaining() < frame.remaining()){
+			//Frames already staged keep the old buffer alive through their views
+			staging = ByteBuffer.allocateDirect(Math.max(frame.remaining(), staging == null ? 16384 : staging.capacity() * 2));
+		}
+		ByteBuffer view = staging.slice();
+		view.limit(frame.remaining());
+		staging.put(frame);
+		return view;
+	}
+
+	private ByteBuffer frameOf(Object message) throws IOException{
+		if(message instanceof EncodedFrame){
+			return ((EncodedFrame) message).getFrame();
+		}
+		return codec.encode(message);
+	}
+
+	private void write(ByteBuffer buffer) throws IOException{
+		bytesWritten += buffer.remaining();
+		while(buffer.hasRemaining()){
+			channel.write(buffer);
+		}
+	}
+
+	public synchronized void close() throws IOException{
+		channel.close();
+	}
+
+	public long getBytesWritten(){
+		return bytesWritten;
+	}
+
+	public long getFramesWritten(){
+		return framesWritten;
+	}
+}
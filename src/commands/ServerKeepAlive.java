@@ -0,0 +1,18 @@
+package commands;
+
+import server.GameServer;
+
+/**
+ * This class is a Command a SocketTransport sends when it has sent nothing else for
+ * SocketTransport.KEEPALIVE_MILLIS, so the server does not close a client idle in the menu, paused
+ * or watching as idle. The server's connection drops it as it is read, it never reaches a room.
+ */
+public class ServerKeepAlive extends Command<GameServer>{
+
+	private static final long serialVersionUID = -2719934611085104376L;
+
+	@Override
+	public void execute(GameServer executeOn) {
+		//Nothing, reading it was the point
+	}
+}
@@ -0,0 +1,17 @@
+package commands;
+
+import server.GameServer;
+
+/**
+ * This class is a Command used by a GameClient to ask for the list of its saved games, which the
+ * server sends back as a ClientSaveList.
+ */
+public class ServerListSaves extends Command<GameServer>{
+
+	private static final long serialVersionUID = 6142259913387742870L;
+
+	@Override
+	public void execute(GameServer executeOn) {
+		executeOn.listSaves();
+	}
+}
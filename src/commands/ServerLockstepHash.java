@@ -0,0 +1,44 @@
+package commands;
+
+import server.GameServer;
+
+/**
+ * This class is a Command used by a GameClient playing a lockstep co-op game to report the
+ * hash of its Level's state every few ticks, so the server can tell when the two clients'
+ * games have drifted apart, and to report the end of the game.
+ */
+public class ServerLockstepHash extends Command<GameServer>{
+
+	private static final long serialVersionUID = -383021941582207166L;
+
+	public static final int PLAYING = 0;
+	public static final int WON = 1;
+	public static final int LOST = 2;
+
+	private long tick; //The tick the hash was taken after
+	private long hash;
+	private int outcome; //PLAYING, or WON or LOST once the client's game has ended
+
+	public ServerLockstepHash(long tick, long hash, int outcome){
+		this.tick = tick;
+		this.hash = hash;
+		this.outcome = outcome;
+	}
+
+	public long getTick(){
+		return tick;
+	}
+
+	public long getHash(){
+		return hash;
+	}
+
+	public int getOutcome(){
+		return outcome;
+	}
+
+	@Override
+	public void execute(GameServer executeOn) {
+		executeOn.lockstepHash(tick, hash, outcome);
+	}
+}
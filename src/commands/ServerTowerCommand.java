@@ -25,6 +25,18 @@ public class ServerTowerCommand extends Command<GameServer>{
 		this.name = name;
 	}
 
+	public String getName(){
+		return name;
+	}
+	
+	public towerType getTowerType(){
+		return tower;
+	}
+	
+	public Point getLocation(){
+		return loc;
+	}
+	
 	@Override
 	public void execute(GameServer executeOn) {
 		executeOn.addTower(this.name, this.tower, this.loc);
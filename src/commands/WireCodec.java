@@ -0,0 +1,418 @@
+package commands;
+
+import java.awt.Point;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.StreamCorruptedException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import GUI.EnemyImage;
+import GUI.TowerImage;
+import GUI.GameView.towerType;
+import GameController.Enemy.directionFacing;
+
+/**
+ * The binary encoding of everything sent between GameServer and GameClient. Each message is one
+ * frame: a varint length, a one byte type tag, then the body. The commands sent every tick have
+ * hand written bodies of varints, so they carry no class descriptors and no per-object
+ * overhead; any other object falls back to a JAVA frame holding it Java serialized on its own,
+ * so no stream keeps a handle table of everything ever sent.
+ *
+ * Signed ints are zigzag varints, strings are a varint of their UTF-8 length + 1 (0 for null)
+ * then the bytes. A connection starts with MAGIC and VERSION in each direction, see FrameOutput.
+ *
+ * Encoding reuses one direct ByteBuffer per codec, so a codec must only be used by one thread
+ * at a time and the returned frame written out before the next encode.
+ *
+ * Instance Variables:
+ * ByteBuffer out	- The frame being encoded, grown when a message does not fit
+ *
+ * Methods:
+ * ByteBuffer encode(Object message)
+ * Object decode(ByteBuffer frame)
+ * static void putVarint(ByteBuffer buffer, int value)
+ * static int getVarint(ByteBuffer buffer)
+ */
+public final class WireCodec{
+
+	public static final int MAGIC = 0x504B5444; //"PKTD"
+	public static final int VERSION = 5;
+	public static final int MAX_FRAME = 16 * 1024 * 1024; //Larger lengths mean a corrupt stream
+
+	static final int JAVA = 0;
+	static final int CLIENT_SNAPSHOT = 1;
+	static final int CLIENT_TOWER_ATTACK = 2;
+	static final int CLIENT_HP_AND_MONEY = 3;
+	static final int SERVER_TOWER = 4;
+	static final int UPGRADE_TOWER = 5;
+	static final int CLIENT_UPDATE = 6;
+	static final int CLIENT_MINI_MAP = 7;
+	static final int CLIENT_LOCKSTEP_TURN = 8;
+	static final int SERVER_LOCKSTEP_HASH = 9;
+
+	private static final int HEADROOM = 5; //The most bytes a varint frame length takes
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final directionFacing[] FACINGS = directionFacing.values();
+	private static final towerType[] TOWER_TYPES = towerType.values();
+
+	private ByteBuffer out = ByteBuffer.allocateDirect(4096);
+
+	/**
+	 * Encodes a message into a frame
+	 * @param message a Command, or any other Serializable object
+	 * @return the frame, length prefix included, valid until the next call
+	 * @throws IOException if the message falls back to Java serialization and it fails
+	 */
+	public ByteBuffer encode(Object message) throws IOException{
+		while(true){
+			out.clear();
+			out.position(HEADROOM);
+			try{
+				writeMessage(message);
+				break;
+			}catch(BufferOverflowException e){
+				out = ByteBuffer.allocateDirect(out.capacity() * 2);
+			}
+		}
+		int end = out.position();
+		int length = end - HEADROOM;
+		int start = HEADROOM - varintSize(length);
+		out.position(start);
+		putVarint(out, length);
+		out.position(start);
+		out.limit(end);
+		return out;
+	}
+
+	/**
+	 * Decodes the body of one frame, the length prefix already removed
+	 * @param frame the type tag and body, from position to limit
+	 * @return the message
+	 * @throws IOException if the frame is not valid
+	 */
+	public Object decode(ByteBuffer frame) throws IOException{
+		try{
+			int type = frame.get();
+			switch(type){
+			case CLIENT_SNAPSHOT:
+				return readSnapshot(frame);
+			case CLIENT_TOWER_ATTACK:
+				return new ClientTowerAttack(TOWER_TYPES[getVarint(frame)], getPoint(frame), getPoint(frame), frame.get() != 0);
+			case CLIENT_HP_AND_MONEY:
+				return new ClientHPandMoney(getSignedVarint(frame), getSignedVarint(frame), frame.get() != 0);
+			case SERVER_TOWER:
+				return new ServerTowerCommand(getString(frame), TOWER_TYPES[getVarint(frame)], getPoint(frame));
+			case UPGRADE_TOWER:
+				return new upgradeTowerCommand(getString(frame), getPoint(frame));
+			case CLIENT_MINI_MAP:
+				boolean partnerIsPlayer1 = frame.get() != 0;
+				int[] towers = getInts(frame);
+				return new ClientMiniMap(partnerIsPlayer1, towers, getInts(frame));
+			case CLIENT_UPDATE:
+				boolean fromPlayer1 = frame.get() != 0;
+				ArrayList<EnemyImage> enemies = getEnemies(frame);
+				return new ClientUpdate(enemies, getTowers(frame), fromPlayer1);
+			case CLIENT_LOCKSTEP_TURN:
+				long tick = getVarlong(frame);
+				int speed = getVarint(frame);
+				return new ClientLockstepTurn(tick, speed, getInts(frame));
+			case SERVER_LOCKSTEP_HASH:
+				return new ServerLockstepHash(getVarlong(frame), frame.getLong(), getVarint(frame));
+			case JAVA:
+				byte[] bytes = new byte[frame.remaining()];
+				frame.get(bytes);
+				ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes));
+				try{
+					return in.readObject();
+				}catch(ClassNotFoundException e){
+					throw new StreamCorruptedException("Unknown class in frame: " + e.getMessage());
+				}
+			default:
+				throw new StreamCorruptedException("Unknown frame type " + type);
+			}
+		}catch(BufferUnderflowException e){
+			throw new StreamCorruptedException("Truncated frame");
+		}catch(ArrayIndexOutOfBoundsException e){
+			throw new StreamCorruptedException("Bad enum ordinal in frame");
+		}
+	}
+
+	private void writeMessage(Object message) throws IOException{
+		if(message instanceof ClientSnapshot){
+			out.put((byte) CLIENT_SNAPSHOT);
+			writeSnapshot((ClientSnapshot) message);
+		}else if(message instanceof ClientTowerAttack){
+			ClientTowerAttack c = (ClientTowerAttack) message;
+			out.put((byte) CLIENT_TOWER_ATTACK);
+			putVarint(out, c.t.ordinal());
+			putPoint(c.towerLoc);
+			putPoint(c.enemyLoc);
+			out.put((byte) (c.fromPlayer1 ? 1 : 0));
+		}else if(message instanceof ClientHPandMoney){
+			ClientHPandMoney c = (ClientHPandMoney) message;
+			out.put((byte) CLIENT_HP_AND_MONEY);
+			putSignedVarint(out, c.hp);
+			putSignedVarint(out, c.money);
+			out.put((byte) (c.fromPlayer1 ? 1 : 0));
+		}else if(message instanceof ServerTowerCommand){
+			ServerTowerCommand c = (ServerTowerCommand) message;
+			out.put((byte) SERVER_TOWER);
+			putString(c.getName());
+			putVarint(out, c.getTowerType().ordinal());
+			putPoint(c.getLocation());
+		}else if(message instanceof upgradeTowerCommand){
+			upgradeTowerCommand c = (upgradeTowerCommand) message;
+			out.put((byte) UPGRADE_TOWER);
+			putString(c.getName());
+			putPoint(c.getLocation());
+		}else if(message instanceof ClientMiniMap){
+			ClientMiniMap c = (ClientMiniMap) message;
+			out.put((byte) CLIENT_MINI_MAP);
+			out.put((byte) (c.isFromPlayer1() ? 1 : 0));
+			putInts(c.getTowers());
+			putInts(c.getEnemies());
+		}else if(message instanceof ClientUpdate){
+			ClientUpdate c = (ClientUpdate) message;
+			out.put((byte) CLIENT_UPDATE);
+			out.put((byte) (c.isFromPlayer1() ? 1 : 0));
+			putEnemies(c.getEnemyImages());
+			putTowers(c.getTowerImages());
+		}else if(message instanceof ClientLockstepTurn){
+			ClientLockstepTurn c = (ClientLockstepTurn) message;
+			out.put((byte) CLIENT_LOCKSTEP_TURN);
+			putVarlong(c.getTick());
+			putVarint(out, c.getSpeed());
+			putInts(c.getInputs());
+		}else if(message instanceof ServerLockstepHash){
+			ServerLockstepHash c = (ServerLockstepHash) message;
+			out.put((byte) SERVER_LOCKSTEP_HASH);
+			putVarlong(c.getTick());
+			out.putLong(c.getHash());
+			putVarint(out, c.getOutcome());
+		}else{
+			out.put((byte) JAVA);
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			ObjectOutputStream java = new ObjectOutputStream(bytes);
+			java.writeObject(message);
+			java.close();
+			out.put(bytes.toByteArray());
+		}
+	}
+
+	private void writeSnapshot(ClientSnapshot s){
+		out.put((byte) ((s.isFromPlayer1() ? 1 : 0) | (s.isKeyframe() ? 2 : 0)));
+		putVarint(out, s.getSequence());
+		putEnemies(s.getAddedEnemies());
+		putInts(s.getRemovedEnemies());
+		putInts(s.getEnemyChanges());
+		putTowers(s.getAddedTowers());
+		putInts(s.getRemovedTowers());
+	}
+
+	private ClientSnapshot readSnapshot(ByteBuffer in){
+		int flags = in.get();
+		int sequence = getVarint(in);
+		ArrayList<EnemyImage> addedEnemies = getEnemies(in);
+		int[] removedEnemies = getInts(in);
+		int[] enemyChanges = getInts(in);
+		ArrayList<TowerImage> addedTowers = getTowers(in);
+		int[] removedTowers = getInts(in);
+		return new ClientSnapshot((flags & 1) != 0, (flags & 2) != 0, sequence, addedEnemies, removedEnemies,
+				enemyChanges, addedTowers, removedTowers);
+	}
+
+	private void putEnemies(List<EnemyImage> enemies){
+		putVarint(out, enemies.size());
+		for(int i = 0; i < enemies.size(); i++){
+			EnemyImage e = enemies.get(i);
+			putVarint(out, e.getEntityId());
+			putVarint(out, e.getSpriteId());
+			putPoint(e.getLocation());
+			putVarint(out, e.getOrientation().ordinal());
+			putVarint(out, e.getProgress());
+			putSignedVarint(out, e.getHealthPercentage());
+			putSignedVarint(out, e.getMaxHealth());
+			putSignedVarint(out, e.getAttackPower());
+			putSignedVarint(out, e.getDefense());
+			out.putFloat((float) e.getSpeed());
+			putSignedVarint(out, e.getWorth());
+		}
+	}
+
+	private ArrayList<EnemyImage> getEnemies(ByteBuffer in){
+		int count = getLength(in);
+		ArrayList<EnemyImage> enemies = new ArrayList<EnemyImage>(count);
+		for(int i = 0; i < count; i++){
+			int entityId = getVarint(in);
+			int spriteId = getVarint(in);
+			Point location = getPoint(in);
+			directionFacing orientation = FACINGS[getVarint(in)];
+			int progress = getVarint(in);
+			int health = getSignedVarint(in);
+			int maxHealth = getSignedVarint(in);
+			int attackPower = getSignedVarint(in);
+			int defense = getSignedVarint(in);
+			double speed = in.getFloat();
+			int worth = getSignedVarint(in);
+			enemies.add(new EnemyImage(entityId, spriteId, location, orientation, progress, health,
+					maxHealth, attackPower, defense, speed, worth));
+		}
+		return enemies;
+	}
+
+	private void putTowers(List<TowerImage> towers){
+		putVarint(out, towers.size());
+		for(int i = 0; i < towers.size(); i++){
+			TowerImage t = towers.get(i);
+			putVarint(out, t.getEntityId());
+			putVarint(out, t.getSpriteId());
+			putPoint(t.getLocation());
+			putVarint(out, t.getLevel());
+		}
+	}
+
+	private ArrayList<TowerImage> getTowers(ByteBuffer in){
+		int count = getLength(in);
+		ArrayList<TowerImage> towers = new ArrayList<TowerImage>(count);
+		for(int i = 0; i < count; i++){
+			towers.add(new TowerImage(getVarint(in), getVarint(in), getPoint(in), getVarint(in)));
+		}
+		return towers;
+	}
+
+	private void putInts(int[] values){
+		putVarint(out, values.length);
+		for(int i = 0; i < values.length; i++){
+			putSignedVarint(out, values[i]);
+		}
+	}
+
+	private static int[] getInts(ByteBuffer in){
+		int length = getLength(in);
+		int[] values = new int[length];
+		for(int i = 0; i < length; i++){
+			values[i] = getSignedVarint(in);
+		}
+		return values;
+	}
+
+	private void putPoint(Point p){
+		putSignedVarint(out, p.x);
+		putSignedVarint(out, p.y);
+	}
+
+	private static Point getPoint(ByteBuffer in){
+		int x = getSignedVarint(in);
+		return new Point(x, getSignedVarint(in));
+	}
+
+	private void putString(String s){
+		if(s == null){
+			putVarint(out, 0);
+			return;
+		}
+		byte[] bytes = s.getBytes(UTF8);
+		putVarint(out, bytes.length + 1);
+		out.put(bytes);
+	}
+
+	private static String getString(ByteBuffer in){
+		int length = getVarint(in) - 1;
+		if(length == -1){
+			return null;
+		}
+		if(length < 0 || length > in.remaining()){
+			throw new BufferUnderflowException(); //Refused before a corrupt length is allocated
+		}
+		byte[] bytes = new byte[length];
+		in.get(bytes);
+		return new String(bytes, UTF8);
+	}
+
+	/**
+	 * Reads the varint count of an array, list or string's bytes, each at least a byte, so a
+	 * count larger than the rest of the frame is corrupt and refused before anything is allocated
+	 */
+	private static int getLength(ByteBuffer in){
+		int length = getVarint(in);
+		if(length < 0 || length > in.remaining()){
+			throw new BufferUnderflowException();
+		}
+		return length;
+	}
+
+	/**
+	 * Writes an int as an unsigned LEB128 varint, 1 byte for 0-127 up to 5 bytes
+	 */
+	public static void putVarint(ByteBuffer buffer, int value){
+		while((value & ~0x7F) != 0){
+			buffer.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+	}
+
+	/**
+	 * Reads an unsigned LEB128 varint
+	 */
+	public static int getVarint(ByteBuffer buffer){
+		int value = 0;
+		for(int shift = 0; shift < 35; shift += 7){
+			int b = buffer.get();
+			value |= (b & 0x7F) << shift;
+			if((b & 0x80) == 0){
+				return value;
+			}
+		}
+		throw new BufferUnderflowException(); //More than 5 bytes, not a varint
+	}
+
+	private void putVarlong(long value){
+		while((value & ~0x7FL) != 0){
+			out.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.put((byte) value);
+	}
+
+	private static long getVarlong(ByteBuffer in){
+		long value = 0;
+		for(int shift = 0; shift < 70; shift += 7){
+			int b = in.get();
+			value |= (long) (b & 0x7F) << shift;
+			if((b & 0x80) == 0){
+				return value;
+			}
+		}
+		throw new BufferUnderflowException(); //More than 10 bytes, not a varint
+	}
+
+	/**
+	 * @return the number of bytes putVarint takes for the value
+	 */
+	public static int varintSize(int value){
+		int size = 1;
+		while((value & ~0x7F) != 0){
+			value >>>= 7;
+			size++;
+		}
+		return size;
+	}
+
+	private static void putSignedVarint(ByteBuffer buffer, int value){
+		putVarint(buffer, (value << 1) ^ (value >> 31));
+	}
+
+	private static int getSignedVarint(ByteBuffer buffer){
+		int zigzag = getVarint(buffer);
+		return (zigzag >>> 1) ^ -(zigzag & 1);
+	}
+}
@@ -8,10 +8,18 @@ public class loadGameCommand extends Command<GameServer> {
 	 * 
 	 */
 	private static final long serialVersionUID = -4720835393874240806L;
+	private String name; //The save slot, null for the last game played
+
+	/**
+	 * @param name the save slot to load, null for the last game played
+	 */
+	public loadGameCommand(String name){
+		this.name = name;
+	}
 
 	@Override
 	public void execute(GameServer executeOn) {
-		executeOn.loadGame();
+		executeOn.loadGame(name);
 	}
 
 }
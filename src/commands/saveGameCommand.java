@@ -8,10 +8,18 @@ public class saveGameCommand extends Command<GameServer> {
 	 * 
 	 */
 	private static final long serialVersionUID = 7494794423029088329L;
+	private String name; //The save slot
+
+	/**
+	 * @param name the save slot to save the game in
+	 */
+	public saveGameCommand(String name){
+		this.name = name;
+	}
 
 	@Override
 	public void execute(GameServer executeOn) {
-		executeOn.saveGame();
+		executeOn.saveGame(name);
 	}
 
 }
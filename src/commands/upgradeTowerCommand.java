@@ -17,6 +17,14 @@ public class upgradeTowerCommand extends Command<GameServer> {
 		this.p = p;
 	}
 	
+	public String getName(){
+		return s;
+	}
+	
+	public Point getLocation(){
+		return p;
+	}
+	
 	@Override
 	public void execute(GameServer executeOn) {
 		executeOn.upgradeTower(p, s);
@@ -0,0 +1,122 @@
+package model;
+
+import java.awt.Point;
+import java.io.Serializable;
+import java.util.LinkedList;
+
+import GameController.Enemy.directionFacing;
+
+/**
+ * An immutable, array backed copy of one enemy path built once by Map from the
+ * LinkedList<Point> that MapFactory generates. Enemies keep an int cursor into it,
+ * so stepping along the path is an array index instead of a LinkedList walk and
+ * paths that loop back over the same tile are still followed correctly.
+ *
+ * Instance Variables:
+ * int[] rows					- The row (Point.x) of every position along the path
+ * int[] columns				- The column (Point.y) of every position along the path
+ * directionFacing[] facing		- The way an enemy faces while on each position, toward the next one
+ * Point[] points				- Shared Point objects for every position so moving allocates nothing
+ *
+ * Methods:
+ * CompiledPath(LinkedList<Point> path)
+ * int length()
+ * int getRow(int index)
+ * int getColumn(int index)
+ * Point getPoint(int index)
+ * directionFacing getFacing(int index)
+ * int lastIndex()
+ * @version 1.0
+ */
+public final class CompiledPath implements Serializable{
+
+	private static final long serialVersionUID = 2876015536247021348L;
+	private final int[] rows;
+	private final int[] columns;
+	private final directionFacing[] facing;
+	private final Point[] points;
+
+	/**
+	 * Compiles a path of coordinates (rowsDown, column) into arrays and precomputes the
+	 * orientation of an enemy at each step.
+	 * @param path The coordinates enemies pass through, in order from spawn to exit
+	 */
+	public CompiledPath(LinkedList<Point> path){
+		int length = path.size();
+		rows = new int[length];
+		columns = new int[length];
+		facing = new directionFacing[length];
+		points = new Point[length];
+		int i = 0;
+		for(Point p : path){
+			rows[i] = p.x;
+			columns[i] = p.y;
+			points[i] = new Point(p.x, p.y);
+			i++;
+		}
+		for(i = 0; i < length - 1; i++){
+			facing[i] = directionBetween(i, i + 1);
+		}
+		if(length > 1){
+			facing[length - 1] = facing[length - 2]; //Keep facing the same way on the exit tile
+		}else if(length == 1){
+			facing[0] = directionFacing.EAST;
+		}
+	}
+
+	/**
+	 * Returns the direction an enemy faces when walking from one index to another.
+	 * Remember Point.x = rows down, Point.y = columns right in the model.
+	 */
+	private directionFacing directionBetween(int from, int to){
+		if(rows[to] < rows[from]){
+			return directionFacing.NORTH;
+		}else if(rows[to] > rows[from]){
+			return directionFacing.SOUTH;
+		}else if(columns[to] > columns[from]){
+			return directionFacing.EAST;
+		}else if(columns[to] < columns[from]){
+			return directionFacing.WEST;
+		}
+		return directionFacing.SOUTH; //Two identical points in a row, shouldn't happen
+	}
+
+	/**
+	 * @return the number of positions along the path
+	 */
+	public int length(){
+		return rows.length;
+	}
+
+	/**
+	 * @return the index of the last position, where enemies breach
+	 */
+	public int lastIndex(){
+		return rows.length - 1;
+	}
+
+	public int getRow(int index){
+		return rows[index];
+	}
+
+	public int getColumn(int index){
+		return columns[index];
+	}
+
+	/**
+	 * Returns the shared Point for a position. Do not modify it.
+	 * @param index the position along the path
+	 * @return the Point (row, column) of that position
+	 */
+	public Point getPoint(int index){
+		return points[index];
+	}
+
+	/**
+	 * @param index the position along the path
+	 * @return the directionFacing of an enemy on that position, toward the next one
+	 */
+	public directionFacing getFacing(int index){
+		return facing[index];
+	}
+}
@@ -0,0 +1,392 @@
+package model;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import GameController.Enemy;
+
+/**
+ * Holds the per-tick state of every enemy on a Map in parallel primitive arrays.
+ * Moves and effect seconds are scheduled on the Map's EventQueue, so a tick only
+ * touches the enemies whose move or effect is due. Enemies are addressed by dense int
+ * handles from 0 to size()-1. Removing one moves the last enemy into its slot, so
+ * handles stay dense and removal is constant time; the moved Enemy is told its new handle.
+ *
+ * While an Enemy is in the store its hot getters and setters read and write these
+ * arrays, once removed the values are copied back onto the Enemy.
+ *
+ * Instance Variables:
+ * ArrayList<Enemy> owners	- The Enemy for each handle, in handle order, shared with Map.getEnemies()
+ * int[] health				- Current health
+ * int[] pathNumber			- The path # each enemy travels
+ * int[] pathCursor			- The index of each enemy along its CompiledPath
+ * int[] stepsTaken			- Tiles moved since spawning or last being sent back to the start
+ * long[] lastMoveAt		- The game time in ms the enemy last moved a tile, or spawned
+ * long[] nextMoveAt		- The game time in ms of the enemy's scheduled move
+ * int[] timePerTile		- ms the enemy spends on each tile
+ * double[] speed			- Tiles per second, kept for the GUI stats
+ * byte[] effects			- Bit flags of ASLEEP, BURNT and SLOWED
+ * int[] effectSecondsLeft	- Whole seconds left on the current effect
+ * long[] nextEffectAt		- The game time in ms the next second of the effect is over
+ * int[] burnDamage			- Health lost every second while burnt
+ * EventQueue events		- The Map's queue that moves and effect seconds are scheduled on
+ *
+ * Methods:
+ * int add(Enemy enemy)
+ * int restore(Enemy enemy, ...)
+ * void remove(int handle)
+ * void handleMove(Enemy enemy, long time)
+ * void handleEffect(Enemy enemy, long time)
+ * int size()
+ * ArrayList<Enemy> getEnemies()
+ * getters and setters by handle
+ * @version 1.0
+ */
+public final class EnemyStore implements Serializable{
+
+	private static final long serialVersionUID = 5330829471065212274L;
+	public static final int ASLEEP = 1;
+	public static final int BURNT = 2;
+	public static final int SLOWED = 4;
+	private static final int SLOW_FACTOR = 2; //A slowed enemy spends this many times longer on each tile
+	private static final int INITIAL_CAPACITY = 32;
+
+	private final EventQueue events;
+	private final ArrayList<Enemy> owners;
+	private int size;
+	private int[] health;
+	private int[] pathNumber;
+	private int[] pathCursor;
+	private int[] stepsTaken;
+	private long[] lastMoveAt;
+	private long[] nextMoveAt;
+	private int[] timePerTile;
+	private double[] speed;
+	private byte[] effects;
+	private int[] effectSecondsLeft;
+	private long[] nextEffectAt;
+	private int[] burnDamage;
+
+	/**
+	 * @param events the EventQueue of the Map the enemies are on
+	 */
+	public EnemyStore(EventQueue events){
+		this.events = events;
+		owners = new ArrayList<Enemy>(INITIAL_CAPACITY);
+		health = new int[INITIAL_CAPACITY];
+		pathNumber = new int[INITIAL_CAPACITY];
+		pathCursor = new int[INITIAL_CAPACITY];
+		stepsTaken = new int[INITIAL_CAPACITY];
+		lastMoveAt = new long[INITIAL_CAPACITY];
+		nextMoveAt = new long[INITIAL_CAPACITY];
+		timePerTile = new int[INITIAL_CAPACITY];
+		speed = new double[INITIAL_CAPACITY];
+		effects = new byte[INITIAL_CAPACITY];
+		effectSecondsLeft = new int[INITIAL_CAPACITY];
+		nextEffectAt = new long[INITIAL_CAPACITY];
+		burnDamage = new int[INITIAL_CAPACITY];
+	}
+
+	/**
+	 * Copies an Enemy's current state into the store, attaches it to its new handle
+	 * and schedules its first move
+	 * @param enemy the Enemy being spawned, must not already be in a store
+	 * @return the handle of the enemy
+	 */
+	public int add(Enemy enemy){
+		if(size == health.length){
+			grow();
+		}
+		int h = size++;
+		health[h] = enemy.getHealth();
+		pathNumber[h] = enemy.getPathTravelingCode();
+		pathCursor[h] = enemy.getPathCursor();
+		stepsTaken[h] = enemy.getStepsTaken();
+		lastMoveAt[h] = events.now();
+		timePerTile[h] = enemy.getTimePerTile();
+		speed[h] = enemy.getSpeed();
+		effects[h] = 0;
+		effectSecondsLeft[h] = 0;
+		nextEffectAt[h] = -1;
+		burnDamage[h] = 0;
+		owners.add(enemy);
+		enemy.attachToStore(this, h);
+		nextMoveAt[h] = -1;
+		rescheduleMove(h);
+		return h;
+	}
+
+	/**
+	 * Puts an enemy of a saved game back in the store with the state it was saved with,
+	 * scheduling nothing; SaveCodec requeues the saved game's events itself
+	 * @return the handle of the enemy
+	 */
+	int restore(Enemy enemy, int health, int cursor, int steps, int tileTime, double tilesPerSecond,
+			long lastMove, long nextMove, int effectFlags, int secondsLeft, long nextEffect, int damagePerSecond){
+		if(size == this.health.length){
+			grow();
+		}
+		int h = size++;
+		this.health[h] = health;
+		pathNumber[h] = enemy.getPathTravelingCode();
+		pathCursor[h] = cursor;
+		stepsTaken[h] = steps;
+		lastMoveAt[h] = lastMove;
+		nextMoveAt[h] = nextMove;
+		timePerTile[h] = tileTime;
+		speed[h] = tilesPerSecond;
+		effects[h] = (byte) effectFlags;
+		effectSecondsLeft[h] = secondsLeft;
+		nextEffectAt[h] = nextEffect;
+		burnDamage[h] = damagePerSecond;
+		owners.add(enemy);
+		enemy.attachToStore(this, h);
+		return h;
+	}
+
+	/**
+	 * Removes an enemy, copying its state back onto the Enemy, and moves the last
+	 * enemy into the freed handle. Events already queued for the removed enemy are
+	 * ignored when they come due because it no longer has a handle.
+	 * @param handle the handle of the enemy to remove
+	 */
+	public void remove(int handle){
+		if(handle < 0 || handle >= size){
+			return;
+		}
+		owners.get(handle).detachFromStore();
+		int last = --size;
+		if(handle != last){
+			health[handle] = health[last];
+			pathNumber[handle] = pathNumber[last];
+			pathCursor[handle] = pathCursor[last];
+			stepsTaken[handle] = stepsTaken[last];
+			lastMoveAt[handle] = lastMoveAt[last];
+			nextMoveAt[handle] = nextMoveAt[last];
+			timePerTile[handle] = timePerTile[last];
+			speed[handle] = speed[last];
+			effects[handle] = effects[last];
+			effectSecondsLeft[handle] = effectSecondsLeft[last];
+			nextEffectAt[handle] = nextEffectAt[last];
+			burnDamage[handle] = burnDamage[last];
+			Enemy moved = owners.get(last);
+			owners.set(handle, moved);
+			moved.setStoreHandle(handle);
+		}
+		owners.remove(last);
+	}
+
+	private void grow(){
+		int capacity = health.length * 2;
+		health = Arrays.copyOf(health, capacity);
+		pathNumber = Arrays.copyOf(pathNumber, capacity);
+		pathCursor = Arrays.copyOf(pathCursor, capacity);
+		stepsTaken = Arrays.copyOf(stepsTaken, capacity);
+		lastMoveAt = Arrays.copyOf(lastMoveAt, capacity);
+		nextMoveAt = Arrays.copyOf(nextMoveAt, capacity);
+		timePerTile = Arrays.copyOf(timePerTile, capacity);
+		speed = Arrays.copyOf(speed, capacity);
+		effects = Arrays.copyOf(effects, capacity);
+		effectSecondsLeft = Arrays.copyOf(effectSecondsLeft, capacity);
+		nextEffectAt = Arrays.copyOf(nextEffectAt, capacity);
+		burnDamage = Arrays.copyOf(burnDamage, capacity);
+	}
+
+	/**
+	 * Returns the time an enemy should next move: timePerTile after its last move,
+	 * twice that while slowed, and not before it wakes up while asleep.
+	 */
+	private long moveDueTime(int h){
+		int limit = (effects[h] & SLOWED) != 0 ? timePerTile[h] * SLOW_FACTOR : timePerTile[h];
+		long due = lastMoveAt[h] + limit;
+		if((effects[h] & ASLEEP) != 0){
+			long wakeAt = nextEffectAt[h] + (effectSecondsLeft[h] - 1) * 1000L;
+			due = Math.max(due, wakeAt);
+		}
+		return Math.max(due, events.now());
+	}
+
+	/**
+	 * Schedules an enemy's move for when it is now due, if that changed. The event
+	 * for the old time is left queued and ignored since it no longer matches nextMoveAt.
+	 */
+	private void rescheduleMove(int h){
+		long due = moveDueTime(h);
+		if(due != nextMoveAt[h]){
+			nextMoveAt[h] = due;
+			events.schedule(due, EventQueue.ENEMY_MOVE, owners.get(h));
+		}
+	}
+
+	/**
+	 * Moves an enemy one tile along its path if this is its scheduled move, then
+	 * schedules the next one. Called by the Map when an ENEMY_MOVE event comes due.
+	 * @param enemy the Enemy the event was for
+	 * @param time the game time in ms the event was scheduled for
+	 */
+	public void handleMove(Enemy enemy, long time){
+		int h = enemy.getStoreHandle();
+		if(h < 0 || nextMoveAt[h] != time){
+			return; //Left the map or was rescheduled
+		}
+		lastMoveAt[h] = time;
+		enemy.advanceAlongPath(); //May breach, removing the enemy
+		h = enemy.getStoreHandle();
+		if(h >= 0){
+			rescheduleMove(h);
+		}
+	}
+
+	/**
+	 * Counts down one second of an enemy's active effect, applying burn damage and
+	 * clearing the effect when its time runs out. Called by the Map when an
+	 * ENEMY_EFFECT event comes due.
+	 * @param enemy the Enemy the event was for
+	 * @param time the game time in ms the event was scheduled for
+	 */
+	public void handleEffect(Enemy enemy, long time){
+		int h = enemy.getStoreHandle();
+		if(h < 0 || nextEffectAt[h] != time){
+			return;
+		}
+		if((effects[h] & BURNT) != 0){
+			health[h] -= burnDamage[h];
+			if(enemy.checkForDeath()){
+				return; //Removed from the store
+			}
+		}
+		if(--effectSecondsLeft[h] <= 0){
+			effects[h] = 0;
+			nextEffectAt[h] = -1;
+			rescheduleMove(h); //No longer asleep or slowed
+		}else{
+			nextEffectAt[h] = time + 1000;
+			events.schedule(nextEffectAt[h], EventQueue.ENEMY_EFFECT, enemy);
+		}
+	}
+
+	/**
+	 * Starts an effect on an enemy unless one is already active
+	 * @param handle the enemy
+	 * @param effect one of ASLEEP, BURNT or SLOWED
+	 * @param seconds how long the effect lasts
+	 * @param damagePerSecond the burn damage, ignored for other effects
+	 */
+	public void startEffect(int handle, int effect, int seconds, int damagePerSecond){
+		if(effects[handle] != 0 || seconds <= 0){
+			return;
+		}
+		effects[handle] = (byte) effect;
+		effectSecondsLeft[handle] = seconds;
+		burnDamage[handle] = damagePerSecond;
+		nextEffectAt[handle] = events.now() + 1000;
+		events.schedule(nextEffectAt[handle], EventQueue.ENEMY_EFFECT, owners.get(handle));
+		rescheduleMove(handle);
+	}
+
+	/**
+	 * @return the number of enemies in the store
+	 */
+	public int size(){
+		return size;
+	}
+
+	/**
+	 * Returns the Enemy objects in handle order. Do not modify it.
+	 * @return the list of enemies in the store
+	 */
+	public ArrayList<Enemy> getEnemies(){
+		return owners;
+	}
+
+	public int getHealth(int handle){
+		return health[handle];
+	}
+
+	public void setHealth(int handle, int newHealth){
+		health[handle] = newHealth;
+	}
+
+	public int getPathNumber(int handle){
+		return pathNumber[handle];
+	}
+
+	public void setPathNumber(int handle, int path){
+		pathNumber[handle] = path;
+	}
+
+	public int getPathCursor(int handle){
+		return pathCursor[handle];
+	}
+
+	public void setPathCursor(int handle, int cursor){
+		pathCursor[handle] = cursor;
+	}
+
+	public int getStepsTaken(int handle){
+		return stepsTaken[handle];
+	}
+
+	public void setStepsTaken(int handle, int steps){
+		stepsTaken[handle] = steps;
+	}
+
+	public double getSpeed(int handle){
+		return speed[handle];
+	}
+
+	/**
+	 * Sets the speed of an enemy along with the time it spends on each tile
+	 */
+	public void setSpeed(int handle, double newSpeed, int newTimePerTile){
+		speed[handle] = newSpeed;
+		timePerTile[handle] = newTimePerTile;
+		rescheduleMove(handle);
+	}
+
+	public int getTimePerTile(int handle){
+		return timePerTile[handle];
+	}
+
+	public long getLastMoveAt(int handle){
+		return lastMoveAt[handle];
+	}
+
+	public long getNextMoveAt(int handle){
+		return nextMoveAt[handle];
+	}
+
+	public int getEffectSecondsLeft(int handle){
+		return effectSecondsLeft[handle];
+	}
+
+	public long getNextEffectAt(int handle){
+		return nextEffectAt[handle];
+	}
+
+	public int getBurnDamage(int handle){
+		return burnDamage[handle];
+	}
+
+	/**
+	 * @return the effect flags of an enemy, 0 if it has no active effect
+	 */
+	public int getEffects(int handle){
+		return effects[handle];
+	}
+
+	/**
+	 * Returns how far an enemy is across its current tile
+	 * @param handle the enemy
+	 * @return 0-100, the percentage of the time on this tile that has passed
+	 */
+	public int getProgress(int handle){
+		long limit = nextMoveAt[handle] - lastMoveAt[handle];
+		long elapsed = events.now() - lastMoveAt[handle];
+		if(limit <= 0 || elapsed >= limit){
+			return 100;
+		}
+		return (int) (elapsed * 100 / limit);
+	}
+}
@@ -0,0 +1,200 @@
+package model;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A priority queue of timed simulation events for one Map, ordered by game time in ms
+ * and then by the order they were scheduled, so events due at the same time always run
+ * in the same order. It is a binary heap over parallel arrays, so scheduling and polling
+ * an event allocates nothing once the arrays have grown to fit.
+ *
+ * Events are never cancelled. Whoever handles an event checks it is still the one its
+ * target is waiting for (the target keeps the time it expects to be called at) and ignores
+ * it otherwise, so rescheduling is just scheduling again.
+ *
+ * Instance Variables:
+ * long now				- The current game time in ms of the Map
+ * long[] times			- The time each queued event is due
+ * long[] order			- The sequence # each queued event was scheduled with, to break ties
+ * int[] kinds			- What each queued event is, one of the event kind constants
+ * Object[] targets		- The Enemy or Tower each queued event is for
+ * int size				- The number of queued events
+ *
+ * Methods:
+ * void schedule(long time, int kind, Object target)
+ * boolean pollDue(long until)
+ * long getCurrentTime()
+ * int getCurrentKind()
+ * Object getCurrentTarget()
+ * void advanceTo(long time)
+ * long now()
+ * int size()
+ * @version 1.0
+ */
+public final class EventQueue implements Serializable{
+
+	private static final long serialVersionUID = -2297151876446360411L;
+	public static final int ENEMY_MOVE = 0; //An enemy has spent its time on a tile
+	public static final int ENEMY_EFFECT = 1; //A second of an enemy's sleep/burn/slow effect has passed
+	public static final int TOWER_FIRE = 2; //A tower's cool down is over
+	private static final int INITIAL_CAPACITY = 64;
+
+	private long now;
+	private long nextOrder;
+	private long[] times;
+	private long[] order;
+	private int[] kinds;
+	private Object[] targets;
+	private int size;
+	private long currentTime;
+	private int currentKind;
+	private Object currentTarget;
+
+	public EventQueue(){
+		times = new long[INITIAL_CAPACITY];
+		order = new long[INITIAL_CAPACITY];
+		kinds = new int[INITIAL_CAPACITY];
+		targets = new Object[INITIAL_CAPACITY];
+	}
+
+	/**
+	 * Copies another queue, so SaveCodec can poll its events in order without running them
+	 */
+	EventQueue(EventQueue other){
+		now = other.now;
+		nextOrder = other.nextOrder;
+		times = Arrays.copyOf(other.times, Math.max(1, other.size));
+		order = Arrays.copyOf(other.order, times.length);
+		kinds = Arrays.copyOf(other.kinds, times.length);
+		targets = Arrays.copyOf(other.targets, times.length);
+		size = other.size;
+	}
+
+	/**
+	 * Schedules an event. Events due before now run as soon as the queue is next polled.
+	 * @param time the game time in ms the event is due
+	 * @param kind what the event is
+	 * @param target the Enemy or Tower the event is for
+	 */
+	public void schedule(long time, int kind, Object target){
+		if(size == times.length){
+			int capacity = size * 2;
+			times = Arrays.copyOf(times, capacity);
+			order = Arrays.copyOf(order, capacity);
+			kinds = Arrays.copyOf(kinds, capacity);
+			targets = Arrays.copyOf(targets, capacity);
+		}
+		int i = size++;
+		set(i, time, nextOrder++, kind, target);
+		siftUp(i);
+	}
+
+	/**
+	 * Removes the earliest event if it is due by the given time, moving the game clock
+	 * up to it. The event can then be read with the getCurrent methods.
+	 * @param until the game time to run events up to, inclusive
+	 * @return true if an event was removed, false if none are due
+	 */
+	public boolean pollDue(long until){
+		if(size == 0 || times[0] > until){
+			return false;
+		}
+		currentTime = times[0];
+		currentKind = kinds[0];
+		currentTarget = targets[0];
+		int last = --size;
+		if(last > 0){
+			set(0, times[last], order[last], kinds[last], targets[last]);
+			siftDown(0);
+		}
+		targets[last] = null;
+		if(currentTime > now){
+			now = currentTime;
+		}
+		return true;
+	}
+
+	public long getCurrentTime(){
+		return currentTime;
+	}
+
+	public int getCurrentKind(){
+		return currentKind;
+	}
+
+	public Object getCurrentTarget(){
+		return currentTarget;
+	}
+
+	/**
+	 * Moves the game clock forward once every event up to the time has been polled
+	 * @param time the new game time in ms
+	 */
+	public void advanceTo(long time){
+		if(time > now){
+			now = time;
+		}
+		currentTarget = null;
+	}
+
+	/**
+	 * @return the current game time in ms
+	 */
+	public long now(){
+		return now;
+	}
+
+	/**
+	 * @return the number of queued events, including ones that will be ignored
+	 */
+	public int size(){
+		return size;
+	}
+
+	private boolean before(int a, int b){
+		return times[a] < times[b] || (times[a] == times[b] && order[a] < order[b]);
+	}
+
+	private void set(int i, long time, long seq, int kind, Object target){
+		times[i] = time;
+		order[i] = seq;
+		kinds[i] = kind;
+		targets[i] = target;
+	}
+
+	private void swap(int a, int b){
+		long t = times[a]; times[a] = times[b]; times[b] = t;
+		long o = order[a]; order[a] = order[b]; order[b] = o;
+		int k = kinds[a]; kinds[a] = kinds[b]; kinds[b] = k;
+		Object g = targets[a]; targets[a] = targets[b]; targets[b] = g;
+	}
+
+	private void siftUp(int i){
+		while(i > 0){
+			int parent = (i - 1) / 2;
+			if(!before(i, parent)){
+				return;
+			}
+			swap(i, parent);
+			i = parent;
+		}
+	}
+
+	private void siftDown(int i){
+		while(true){
+			int child = 2 * i + 1;
+			if(child >= size){
+				return;
+			}
+			if(child + 1 < size && before(child + 1, child)){
+				child++;
+			}
+			if(!before(child, i)){
+				return;
+			}
+			swap(i, child);
+			i = child;
+		}
+	}
+}
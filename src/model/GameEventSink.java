@@ -0,0 +1,73 @@
+package model;
+
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.LinkedList;
+
+import GUI.EnemyImage;
+import GUI.TowerImage;
+import GUI.GameView.towerType;
+import client.Player;
+
+/**
+ * Everything a running Level and its Maps report outward. Each GameRoom of the GameServer implements it to
+ * forward updates to its clients, while a headless run plugs in a sink that ignores or
+ * records them, so the model can be played without sockets, Swing or a Timer.
+ *
+ * Methods:
+ * void putClientToMap(String clientName, Map map)
+ * Player getPlayer1()
+ * boolean isMultiplayer()
+ * void startTimer()
+ * void gameLost()
+ * void gameWon()
+ * boolean hasViewers()
+ * boolean isImageUpdateDue(boolean fromPlayer1)
+ * void updateClients(int playerHealth, int playerMoney, boolean fromPlayer1)
+ * void updateClients(ArrayList<EnemyImage> enemyImages, ArrayList<TowerImage> towerImages, boolean fromPlayer1)
+ * void updateClientsOfAttack(towerType type, Point towerLocation, Point enemyLocation, boolean fromPlayer1)
+ * void updateClientsOfMapBackground(String mapBackgroundURL, LinkedList<LinkedList<Point>> paths, int numOfRows, int numOfColumns, boolean fromPlayer1)
+ */
+public interface GameEventSink {
+
+	/**
+	 * Called by every Map as it is connected, so commands from a client can find its Map
+	 */
+	public void putClientToMap(String clientName, Map map);
+
+	/**
+	 * @return player 1, used by a Map to tell if it is player 1's
+	 */
+	public Player getPlayer1();
+
+	public boolean isMultiplayer();
+
+	/**
+	 * Called once by a new Level when it is ready to be ticked
+	 */
+	public void startTimer();
+
+	public void gameLost();
+
+	public void gameWon();
+
+	/**
+	 * @return true if anyone is watching, false lets a Map skip building its Image lists every tick
+	 */
+	public boolean hasViewers();
+
+	/**
+	 * Called by a Map every tick, the network rate is independent of the tick rate
+	 * @param fromPlayer1 which map
+	 * @return true if the Map is to build its Image lists and send them this tick
+	 */
+	public boolean isImageUpdateDue(boolean fromPlayer1);
+
+	public void updateClients(int playerHealth, int playerMoney, boolean fromPlayer1);
+
+	public void updateClients(ArrayList<EnemyImage> enemyImages, ArrayList<TowerImage> towerImages, boolean fromPlayer1);
+
+	public void updateClientsOfAttack(towerType type, Point towerLocation, Point enemyLocation, boolean fromPlayer1);
+
+	public void updateClientsOfMapBackground(String mapBackgroundURL, LinkedList<LinkedList<Point>> paths, int numOfRows, int numOfColumns, boolean fromPlayer1);
+}
@@ -0,0 +1,54 @@
+package model;
+
+import java.util.Random;
+
+/**
+ * The random number generator of one game. It produces exactly the same numbers as a
+ * java.util.Random with the same seed, but its state can be read and restored, so a game
+ * started from a given seed always plays out the same way and a saved game can resume
+ * the same sequence. Every random roll in the model (waves, tower effects, enemy specials)
+ * should come from the Level's GameRandom, reached through Level.getRandom() or Map.getRandom().
+ *
+ * Not thread safe, a game is only ever ticked by one thread at a time.
+ */
+public class GameRandom extends Random{
+
+	private static final long serialVersionUID = -4409384271934120315L;
+	private static final long MULTIPLIER = 0x5DEECE66DL;
+	private static final long ADDEND = 0xBL;
+	private static final long MASK = (1L << 48) - 1;
+	private long state;
+
+	/**
+	 * @param seed the seed, the same seed always gives the same sequence
+	 */
+	public GameRandom(long seed){
+		super(seed);
+	}
+
+	@Override
+	public void setSeed(long seed){
+		state = (seed ^ MULTIPLIER) & MASK;
+	}
+
+	@Override
+	protected int next(int bits){
+		state = (state * MULTIPLIER + ADDEND) & MASK;
+		return (int) (state >>> (48 - bits));
+	}
+
+	/**
+	 * @return the current internal state, to be restored with setState
+	 */
+	public long getState(){
+		return state;
+	}
+
+	/**
+	 * Restores a state from getState, the numbers that follow are the ones that followed then
+	 * @param state the saved state
+	 */
+	public void setState(long state){
+		this.state = state & MASK;
+	}
+}
@@ -2,7 +2,7 @@ package model;
 
 import java.io.Serializable;
 import java.util.ArrayList;
-import server.GameServer;
+import java.util.Random;
 import GameController.Enemy;
 import client.Player;
 
@@ -21,7 +21,10 @@ import client.Player;
 public abstract class Level implements Serializable {
  
   private static final long serialVersionUID = 4903194688398376628L;
-  private transient GameServer server; //Needs to know which server it is on so that it can call the server to start its global timer
+  private transient GameEventSink server; //Needs to know which server it is on so that it can call the server to start its global timer
+  private int levelCode; //The code LevelFactory generated this level from
+  private long seed; //The seed the level's GameRandom started from
+  private GameRandom random; //The source of every random roll in this level, so a seed replays the same game
   private Player player1; //The person playing this level, passed in constructor
   private Player player2; //The partner Player if on multiplayer
   private Map map1; //The map of the level to which enemy waves will be spawned, create with MapFactory class
@@ -33,25 +36,43 @@ public abstract class Level implements Serializable {
                               //It is in milliseconds so it would have to be say 30000 for 30 secs between waves.
   private long enemySpawnIntervals; //The time in milliseconds between each spawning of an enemy within a wave
   private boolean playerIsAlive; //Can be used to tell if the game is still going and enemies should still be spawned or not
-  private long timeSinceLastWave; //The time in milliseconds since the last enemy in last wave spawned
-  private long timeSinceLastEnemySpawned; //The time in ms since last enemy within the wave was spawned
+  private long levelClock; //The game time in ms since the level started
+  private long nextSpawnEventAt; //The game time in ms of the next wave start, enemy spawn or wave end
   private boolean waveInProgress; //True if a wave is still in progress, false if not
   private int enemyIndexCounter;//The index of the enemy to spawn next in the wave
   private int waveIndexCounter;//The index of the enemy wave to send next in the wavesList
   private boolean enemiesLeftToSpawn;//True if enemies left to spawn on the level, false if not
   
-  public Level(Player player, GameServer server){
+  /**
+   * Creates a level with a random seed
+   * @param player the Player playing the level
+   * @param server the GameServer, or any other GameEventSink, the level reports to
+   */
+  public Level(Player player, GameEventSink server){
+	  this(player, server, new Random().nextLong());
+  }
+  
+  /**
+   * Creates a level whose waves and every random roll during play come from the given seed
+   * @param player the Player playing the level
+   * @param server the GameServer, or any other GameEventSink, the level reports to
+   * @param seed the seed of the level's GameRandom
+   */
+  public Level(Player player, GameEventSink server, long seed){
 	  this.player1 = player;
 	  this.server = server;
+	  this.seed = seed;
+	  this.random = new GameRandom(seed);
 	  multiplayer = server.isMultiplayer();
 	  if(multiplayer){
 		  this.player2 = player1.getPartner();
 	  }
-	  timeSinceLastWave = 0;
+	  levelClock = 0;
 	  waveInProgress = false;
 	  enemiesLeftToSpawn = true;
 	  setPlayerIsAlive(true);
 	  levelSpecificSetup();
+	  nextSpawnEventAt = waveIntervals; //The first wave starts one interval in
 	  this.setPlayer2StartingValues();
 	  levelStart();
   }
@@ -86,53 +107,49 @@ public abstract class Level implements Serializable {
   /**
    * Every time the Master Timer in GameServer ticks (after it has been started
    * by this newly instantiated Level), this method will be called. Whether
-   * the game has been won or lost is first checked, then if there are still
-   * enemies left to spawn, 1 of 2 cooldown timers are incremented.
-   * If a wave is in progress, the timeSinceLastEnemySpawned tracker is incremented.
-   * If a wave is not in progress, the timeSinceLastWave tracker is incremented.
-   * Once either of these trackers become greater than their set cooldown interval,
-   * either another enemy is spawned or another wave is started. Once the last
-   * enemy of a wave has been spawned, it checks if there are any more waves
-   * and sets waveInProgress to false, and enemiesLeftToSpawn to false
-   * if there are no more waves. The game ends when there are no more enemies
+   * the game has been won or lost is first checked, then the level clock is advanced
+   * and every spawn event that has come due is run in order. There is only ever one
+   * spawn event pending: the start of the next wave waveIntervals after the last one
+   * ended, the next enemy of a wave in progress every enemySpawnIntervals, or the end
+   * of the wave one interval after its last enemy. Once the last wave ends
+   * enemiesLeftToSpawn is set to false. The game ends when there are no more enemies
    * to spawn and no more enemies alive on the board, or when the players HP falls to 0.
    */
   public void tick(int timePerTick){
 	  if(!gameOver()){
-	  if(enemiesLeftToSpawn){
-		  if(!waveInProgress){
-			  timeSinceLastWave = timeSinceLastWave + timePerTick;
-			  if(timeSinceLastWave >= waveIntervals){
-				  waveInProgress = true;
-				  timeSinceLastWave = 0;
-			  }
-		  }	  
-		  if(waveInProgress){
-			  timeSinceLastEnemySpawned = timeSinceLastEnemySpawned + timePerTick;
-			  if(timeSinceLastEnemySpawned >= enemySpawnIntervals){
-				  if(enemyIndexCounter < wavesList1.get(waveIndexCounter).size()){
-					  map1.spawnEnemy(wavesList1.get(waveIndexCounter).get(enemyIndexCounter));
-					  if(multiplayer){
-						  map2.spawnEnemy(wavesList2.get(waveIndexCounter).get(enemyIndexCounter)); 
-					  //I hope this works, each wave must be same size for it do work otherwise index out of bounds errors may occur
-					  }
-					  timeSinceLastEnemySpawned = 0; //reset time counter
-					  enemyIndexCounter++;
-				  }else{//All the enemies in the wave have been spawned
-					  waveInProgress = false;
-					  timeSinceLastEnemySpawned = 0;
-					  enemyIndexCounter = 0;
-					  waveIndexCounter++;
-					  if(waveIndexCounter == wavesList1.size()){
-						  //All enemies in the level have been spawned
-						  enemiesLeftToSpawn = false;
-					  }
-				  }
-			  }
+		  levelClock = levelClock + timePerTick;
+		  while(enemiesLeftToSpawn && levelClock >= nextSpawnEventAt){
+			  runSpawnEvent();
 		  }
-	  }
 	  } //if Game is not over...
- }
+  }
+  
+  /**
+   * Runs the pending spawn event and schedules the one after it
+   */
+  private void runSpawnEvent(){
+	  if(!waveInProgress){
+		  waveInProgress = true;
+		  nextSpawnEventAt = nextSpawnEventAt + enemySpawnIntervals;
+	  }else if(enemyIndexCounter < wavesList1.get(waveIndexCounter).size()){
+		  map1.spawnEnemy(wavesList1.get(waveIndexCounter).get(enemyIndexCounter));
+		  if(multiplayer){
+			  map2.spawnEnemy(wavesList2.get(waveIndexCounter).get(enemyIndexCounter)); 
+		  //I hope this works, each wave must be same size for it do work otherwise index out of bounds errors may occur
+		  }
+		  enemyIndexCounter++;
+		  nextSpawnEventAt = nextSpawnEventAt + enemySpawnIntervals;
+	  }else{//All the enemies in the wave have been spawned
+		  waveInProgress = false;
+		  enemyIndexCounter = 0;
+		  waveIndexCounter++;
+		  if(waveIndexCounter == wavesList1.size()){
+			  //All enemies in the level have been spawned
+			  enemiesLeftToSpawn = false;
+		  }
+		  nextSpawnEventAt = nextSpawnEventAt + waveIntervals;
+	  }
+  }
   
   // gameover method checks if player health is less than 0 and calls you lose or you win methods to advance
   public boolean gameOver(){
@@ -173,11 +190,99 @@ public abstract class Level implements Serializable {
   
 	public void setMap1(Map map){
 	  this.map1 = map;
+	  map.setRandom(random);
 	}
 	
-	public GameServer getServer(){
+	public GameEventSink getServer(){
 		return server;
 	}
+	
+	/**
+	 * @return the GameRandom every random roll in this level should use
+	 */
+	public GameRandom getRandom(){
+		return random;
+	}
+	
+	/**
+	 * @return the seed the level's GameRandom started from
+	 */
+	public long getSeed(){
+		return seed;
+	}
+	
+	/**
+	 * @return the code LevelFactory generated this level from
+	 */
+	public int getLevelCode(){
+		return levelCode;
+	}
+	
+	void setLevelCode(int levelCode){
+		this.levelCode = levelCode;
+	}
+	
+	/**
+	 * @return the number of waves that have ended, the wave in progress or next to start
+	 */
+	public int getWaveIndex(){
+		return waveIndexCounter;
+	}
+	
+	boolean isMultiplayer(){
+		return multiplayer;
+	}
+	
+	long getLevelClock(){
+		return levelClock;
+	}
+	
+	long getNextSpawnEventAt(){
+		return nextSpawnEventAt;
+	}
+	
+	boolean isWaveInProgress(){
+		return waveInProgress;
+	}
+	
+	int getEnemyIndex(){
+		return enemyIndexCounter;
+	}
+	
+	boolean hasEnemiesLeftToSpawn(){
+		return enemiesLeftToSpawn;
+	}
+	
+	/**
+	 * Puts the level's clock and spawning back where a saved game left them, for SaveCodec
+	 */
+	void restoreProgress(long levelClock, long nextSpawnEventAt, boolean waveInProgress, int waveIndex,
+			int enemyIndex, boolean enemiesLeftToSpawn){
+		this.levelClock = levelClock;
+		this.nextSpawnEventAt = nextSpawnEventAt;
+		this.waveInProgress = waveInProgress;
+		this.waveIndexCounter = waveIndex;
+		this.enemyIndexCounter = enemyIndex;
+		this.enemiesLeftToSpawn = enemiesLeftToSpawn;
+	}
+	
+	/**
+	 * @return a hash of the level's clock, spawning, random state and maps, the same for
+	 * every copy of the level played from the same seed and inputs up to the same tick
+	 */
+	public long stateHash(){
+		long hash = 0xCBF29CE484222325L;
+		hash = Map.mix(hash, levelClock);
+		hash = Map.mix(hash, nextSpawnEventAt);
+		hash = Map.mix(hash, waveIndexCounter);
+		hash = Map.mix(hash, enemyIndexCounter);
+		hash = Map.mix(hash, random.getState());
+		hash = map1.stateHash(hash);
+		if(map2 != null){
+			hash = map2.stateHash(hash);
+		}
+		return hash;
+	}
 
 	public Player getPlayer1(){
 	  return this.player1;
@@ -219,7 +324,7 @@ public abstract class Level implements Serializable {
    * To be called by GameServer during Loading to reset transient GameServer variable
    * @param thisServer the GameServer to set
    */
-  public void setServer(GameServer thisServer) {
+  public void setServer(GameEventSink thisServer) {
 	server = thisServer;
   }
 
@@ -229,6 +334,7 @@ public abstract class Level implements Serializable {
 		player2.setMoney(player1.getMoney());
 		notifyPlayerInfoUpdated(player2.getHealthPoints(), player2.getMoney(), false);
 		map2 = MapFactory.generateMap(player2, map1.getMapTypeCode());
+		map2.setRandom(random);
 		map2.setServer(server);
 		wavesList2 = new ArrayList<ArrayList<Enemy>>();
 		//wavesList2 = wavesList1 backwards to vary between players
@@ -13,7 +13,6 @@ import GameController.MewEnemy;
 import GameController.PikachuEnemy;
 import GameController.RattataEnemy;
 import GameController.SquirtleEnemy;
-import server.GameServer;
 import client.Player;
 
 
@@ -24,14 +23,18 @@ public class Level0 extends Level implements Serializable{
 	private static final long serialVersionUID = -2776248289168724657L;
 	private static final int numbOfWaves = 3;
 	
-	public Level0(Player player, GameServer server) {
+	public Level0(Player player, GameEventSink server, long seed) {
+		super(player, server, seed);
+	}
+	
+	public Level0(Player player, GameEventSink server) {
 		super(player, server);	
 	}
 	
 	// enemies for the first level is a 50/50 chance of being bulbasaur or pikachu
 	public void createWaves(){
-		Random r = new Random();
-		Random pathRandom= new Random();
+		Random r = getRandom();
+		Random pathRandom = getRandom();
 		ArrayList<ArrayList<Enemy>> waveList = new ArrayList<ArrayList<Enemy>>(); //A temporary 2D array list of Enemy
 		for (int i = 0; i < numbOfWaves; i++){
 			ArrayList<Enemy> wave = new ArrayList<Enemy>();
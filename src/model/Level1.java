@@ -13,7 +13,6 @@ import GameController.MewEnemy;
 import GameController.PikachuEnemy;
 import GameController.RattataEnemy;
 import GameController.SquirtleEnemy;
-import server.GameServer;
 import client.Player;
 
 public class Level1 extends Level implements Serializable{
@@ -21,15 +20,19 @@ public class Level1 extends Level implements Serializable{
 	private static final long serialVersionUID = 8553831735812259923L;
 	private static final int numbOfWaves = 4;
 
-	public Level1(Player player, GameServer server) {
+	public Level1(Player player, GameEventSink server, long seed) {
+		super(player, server, seed);
+	}
+	
+	public Level1(Player player, GameEventSink server) {
 		super(player, server);
 		// TODO Auto-generated constructor stub
 	}
 
 	@Override
 	public void createWaves() {
-		Random r = new Random();
-		Random pathRandom= new Random();
+		Random r = getRandom();
+		Random pathRandom = getRandom();
 		// TODO Auto-generated method stub
 		ArrayList<ArrayList<Enemy>> waveList = new ArrayList<ArrayList<Enemy>>(); //A temporary 2D array list of Enemy
 		for (int i = 0; i < numbOfWaves; i++){
@@ -13,7 +13,6 @@ import GameController.Enemy;
 import GameController.PikachuEnemy;
 import GameController.RattataEnemy;
 import GameController.SquirtleEnemy;
-import server.GameServer;
 import client.Player;
 
 public class Level2 extends Level implements Serializable{
@@ -21,15 +20,19 @@ public class Level2 extends Level implements Serializable{
 	private static final long serialVersionUID = 1437975597688032201L;
 	private static final int numbOfWaves = 5;
 
-	public Level2(Player player, GameServer server) {
+	public Level2(Player player, GameEventSink server, long seed) {
+		super(player, server, seed);
+	}
+	
+	public Level2(Player player, GameEventSink server) {
 		super(player, server);
 		// TODO Auto-generated constructor stub
 	} 
 
 	@Override
 	public void createWaves() {
-		Random r = new Random();
-		Random pathRandom= new Random();
+		Random r = getRandom();
+		Random pathRandom = getRandom();
 		// TODO Auto-generated method stub
 		ArrayList<ArrayList<Enemy>> waveList = new ArrayList<ArrayList<Enemy>>(); //A temporary 2D array list of Enemy
 		for (int i = 0; i < numbOfWaves; i++){
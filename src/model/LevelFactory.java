@@ -1,6 +1,7 @@
 package model;
 
-import server.GameServer;
+import java.util.Random;
+
 import client.Player;
 
 
@@ -19,25 +20,42 @@ public class LevelFactory{
 	/**
 	 * A static method that returns a Level object created and specified by the parameters
 	 * @param player the Player linked to this Level
-	 * @param server the GameServer that this Level will be played on
+	 * @param server the GameServer, or other GameEventSink, that this Level will be played on
 	 * @param levelCode the Level number, determines which type of Level is generated
 	 * @return
 	 */
-	public static Level generateLevel(Player player, GameServer server, int levelCode) {
+	public static Level generateLevel(Player player, GameEventSink server, int levelCode) {
+		return generateLevel(player, server, levelCode, new Random().nextLong());
+	}
+	
+	/**
+	 * Same as generateLevel(player, server, levelCode), but the Level's waves and every
+	 * random roll while it is played come from the given seed, so the same seed and the
+	 * same player inputs always play out the same game.
+	 * @param seed the seed of the Level's GameRandom
+	 */
+	public static Level generateLevel(Player player, GameEventSink server, int levelCode, long seed) {
+		Level level;
 		switch(levelCode){
-		case 0:
-			return new Level0(player, server);
 		case 1:
-			return new Level1(player, server);
+			level = new Level1(player, server, seed);
+			break;
 		case 2:
-			return new Level2(player, server);
+			level = new Level2(player, server, seed);
+			break;
 		case 3:
-			return new Level3(player, server);
+			level = new Level3(player, server, seed);
+			break;
 		case 4: //Only for debugging
-			return new LevelMultiplayer(player, server);
+			level = new LevelMultiplayer(player, server, seed);
+			break;
 		default: 
-			return new Level0(player, server);
+			level = new Level0(player, server, seed);
+			levelCode = 0;
+			break;
 		}
+		level.setLevelCode(levelCode); //So a saved game knows what to regenerate
+		return level;
 	}
 	
 }
\ No newline at end of file
@@ -12,7 +12,6 @@ import GameController.MewEnemy;
 import GameController.PikachuEnemy;
 import GameController.RattataEnemy;
 import GameController.SquirtleEnemy;
-import server.GameServer;
 import client.Player;
 
 /**
@@ -27,7 +26,11 @@ public class LevelMultiplayer extends Level {
 	private static final long serialVersionUID = -4356179074259053436L;
 	private static final int numbOfWaves = 3;
 	
-	public LevelMultiplayer(Player player, GameServer server) {
+	public LevelMultiplayer(Player player, GameEventSink server, long seed) {
+		super(player, server, seed);
+	}
+	
+	public LevelMultiplayer(Player player, GameEventSink server) {
 		super(player, server);
 	}
 	
@@ -4,9 +4,10 @@ package model;
 import java.awt.Point;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedList;
+import java.util.Random;
 
-import server.GameServer;
 import model.Tile;
 import client.Player;
 import GUI.EnemyImage;
@@ -35,9 +36,13 @@ import GameController.Tower;
  * String mapType				- A description of the map level, can be used for theme differentiation
  * int mapTypeCode				- A code # to differentiate each level
  * Player player				- The associated Player object playing this map
- * ArrayList<Enemy> enemies		- A list of all the enemies currently on the map
+ * EnemyStore enemyStore		- The per-tick state of all the enemies currently on the map
+ * EventQueue events			- The timed enemy moves, effect seconds and tower shots of this map
  * ArrayList<Tower> towers		- A list of all the towers currently placed on the map
- * GameServer server			- The GameServer that the player is on, map will send it notify update calls
+ * GameEventSink server		- The GameServer (or headless sink) that the player is on, map will send it notify update calls
+ * Random random				- The Level's GameRandom, for tower effect and enemy special rolls
+ * int enemiesKilled			- The number of enemies killed by towers on this map
+ * int nextEntityId			- The entity ID given to the next enemy spawned or tower placed
  * 
  * Methods:
  * Map(Tile[][] gridDimensions, LinkedList<LinkedList<Point>> paths, String mapType, Image background, int mapTypeCode, Player player)
@@ -50,8 +55,17 @@ import GameController.Tower;
  * void sellTower(Point l)
  * ArrayList<Tower> getTowers()
  * ArrayList<Enemy> getEnemies()
- * void tick(int timePerTick, GameServer gameServer)
- * void setServer(GameServer server)
+ * ArrayList<Enemy> getEnemiesInRange(Point center, int radius)
+ * void returnEnemyToStart(Enemy enemy)
+ * CompiledPath getCompiledPath(int pathNumber)
+ * int[] computePathCoverage(Point center, int radius)
+ * ArrayList<Enemy> getEnemiesAtPathPosition(int pathNumber, int index)
+ * void tick(int timePerTick)
+ * void setServer(GameEventSink server)
+ * Random getRandom()
+ * int getEnemiesKilled()
+ * long stateHash(long hash)
+ * restore methods for SaveCodec
  * public void notifyOfAttack(towerType type, Point towerLocation, Point enemyLocation)
  * public String getImageURL()
  * 
@@ -70,13 +84,19 @@ public abstract class Map implements Serializable{
 	                                     //enemies will attempt to pass through
 	private LinkedList<Point> firstPathTiles; //The path tiles on which enemies spawn
 	private LinkedList<Point> lastPathTiles; //The path tiles on which enemies stop and do damage to health
+	private Tile[][] pathTiles; //pathTiles[p][i] is the Tile at index i of path p, for constant time lookups along a path
+	private CompiledPath[] compiledPaths; //Array backed copies of enemyPaths that enemies step through with a cursor
 	private int currentEnemies; //The current total amount of enemies on the map (necessary?)
 	private String mapType; //A description of the map level, can be used for theme differentiation
 	private int mapTypeCode; //A code # to differentiate each level
 	private Player player; //The associated player object for this map
-	private ArrayList<Enemy> enemies; //A list of all the enemies currently on the map
+	private EventQueue events; //Every scheduled enemy move, effect second and tower shot, by game time
+	private EnemyStore enemyStore; //The per-tick state of all the enemies currently on the map, in parallel arrays
 	private ArrayList<Tower> towers; //A list of all the towers currently placed on the map
-	private transient GameServer server; //The GameServer that the player is on, map will send it notify update calls
+	private transient GameEventSink server; //The GameServer that the player is on, map will send it notify update calls
+	private Random random; //Replaced by the Level's GameRandom so that rolls follow the level's seed
+	private int enemiesKilled; //The number of enemies killed by towers on this map
+	private int nextEntityId = 1; //IDs are never reused, so clients can match entities across snapshots
 	private boolean isPlayer1sMap; //true if this is player 1's map, false if player 2s
 	
 	
@@ -103,7 +123,9 @@ public abstract class Map implements Serializable{
 		
 		
 		//player.setMap(this); //may not be necessary -PH
-		enemies = new ArrayList<Enemy>();
+		events = new EventQueue();
+		enemyStore = new EnemyStore(events);
+		random = new Random();
 		towers = new ArrayList<Tower>();
 		firstPathTiles = new LinkedList<Point>();
 		lastPathTiles = new LinkedList<Point>();
@@ -133,9 +155,14 @@ public abstract class Map implements Serializable{
 	private void setPath(){
 		
 		Point tempCoords;
+		pathTiles = new Tile[enemyPaths.size()][];
+		compiledPaths = new CompiledPath[enemyPaths.size()];
 		for(int p = 0; p < enemyPaths.size(); p++){
+			compiledPaths[p] = new CompiledPath(enemyPaths.get(p));
+			pathTiles[p] = new Tile[enemyPaths.get(p).size()];
 			for(int i = 0; i < enemyPaths.get(p).size(); i++){
 				tempCoords = enemyPaths.get(p).get(i);
+				pathTiles[p][i] = grid[tempCoords.x][tempCoords.y];
 				grid[tempCoords.x][tempCoords.y].setAsPath();
 				if(i == 0){
 					grid[tempCoords.x][tempCoords.y].setFirstPathTile();
@@ -157,12 +184,16 @@ public abstract class Map implements Serializable{
 	 */
 	public void spawnEnemy(Enemy enemy){
 		enemy.setMap(this);
-		//TODO: Set its directionFacing
 		int pathNumber = enemy.getPathTravelingCode();
-		grid[firstPathTiles.get(pathNumber).x][firstPathTiles.get(pathNumber).y].addPokemon(enemy);
-		enemy.setLocation(firstPathTiles.get(pathNumber));
-		enemies.add(enemy);
+		CompiledPath path = compiledPaths[pathNumber];
+		enemy.setPathCursor(0);
+		enemy.setLocation(path.getPoint(0));
+		enemy.setNextLocation(path.getPoint(Math.min(1, path.lastIndex())));
+		enemy.setOrientation(path.getFacing(0));
+		enemy.setEntityId(nextEntityId++);
+		enemyStore.add(enemy);
 		currentEnemies++;
+		pathTiles[pathNumber][0].addPokemon(enemy);
 	}
 	
 	
@@ -170,40 +201,24 @@ public abstract class Map implements Serializable{
 	 * Updates an enemy pokemon's position from the current path tile to the next one.
 	 * To be called by the Enemy every timePerTile milliseconds/movement.
 	 * Enemies can only move 1 discrete square along the grid at a time in this model.
+	 * The enemy's path cursor indexes straight into the compiled path, so a step is
+	 * constant time and allocates nothing.
 	 * @param enemy The Enemy whose position is to be updated
 	 * 
 	 */
 	public void updateEnemyPosition(Enemy enemy){
-		
-		//Each Enemy will call this method when it is ready to move, passing a reference
-		//to itself, to make Map update its position when appropriate. Can only move in
-		//1 square discrete amounts along the path.
-		
-		//get enemy's current coordinates, determine what his next coordinates will be
-		Point enemyCoords = enemy.getLocation();
 		int pathNumber = enemy.getPathTravelingCode();
-		int i = enemyPaths.get(pathNumber).indexOf(enemyCoords);
-		int iLess = i - 1;
-		if(iLess == -1){
-			iLess = 0;
-		}
-		int iMore = i + 2;
-		if(iMore >= enemyPaths.get(pathNumber).size()){
-			iMore = enemyPaths.get(pathNumber).size() - 1; //The last tile in that path
-		}
-		Point nextCoords;
-		if(i < enemyPaths.get(pathNumber).size() - 1){
-			nextCoords = enemyPaths.get(pathNumber).get(++i);
-		}else{
-			nextCoords = this.lastPathTiles.get(pathNumber);
-		}
+		CompiledPath path = compiledPaths[pathNumber];
+		int i = enemy.getPathCursor();
+		int next = Math.min(i + 1, path.lastIndex());
 		
 		//remove enemy from current tile, update his position, and add him to the next one
-		grid[enemyCoords.x][enemyCoords.y].removePokemon(enemy);
-		enemy.setPreviousLocation(enemyCoords);
-		enemy.setLocation(nextCoords);
-		grid[nextCoords.x][nextCoords.y].addPokemon(enemy);
-		enemy.setNextLocation(enemyPaths.get(pathNumber).get(iMore));
+		pathTiles[pathNumber][i].removePokemon(enemy);
+		enemy.setPreviousLocation(path.getPoint(i));
+		enemy.setPathCursor(next);
+		enemy.setLocation(path.getPoint(next));
+		enemy.setNextLocation(path.getPoint(Math.min(next + 1, path.lastIndex())));
+		pathTiles[pathNumber][next].addPokemon(enemy); //Breaches and is removed if next is the last tile
 		enemy.takeStep();//Increments step counter to see how many tiles it has gone total		
 	}
 	
@@ -214,8 +229,14 @@ public abstract class Map implements Serializable{
 	 * @param enemy The dead enemy Pokemon to remove from the Map
 	 */
 	public void removeDeadEnemy(Point location, Enemy enemy){
+		if(enemy.getStoreHandle() < 0){
+			return; //Already removed
+		}
+		if(enemy.getHealth() <= 0){
+			enemiesKilled++; //Otherwise it breached
+		}
 		grid[location.x][location.y].removePokemon(enemy);
-		enemies.remove(enemy);
+		enemyStore.remove(enemy.getStoreHandle());
 		currentEnemies--;
 	}
 	
@@ -258,8 +279,10 @@ public abstract class Map implements Serializable{
 		if(!grid[location.x][location.y].containsGym() && !grid[location.x][location.y].isPartOfPath()){
 			if(tower.checkBuy(player.getMoney())){
 				tower.setPlaceOnBoard(location);
+				tower.setEntityId(nextEntityId++);
 				towers.add(tower);
 				tower.setMap(this);
+				tower.startFiring();
 				player.spendMoney(tower.getCost());
 				server.updateClients(player.getHealthPoints(), player.getMoney(), isPlayer1sMap);
 				return grid[location.x][location.y].setGym(tower);
@@ -284,6 +307,7 @@ public abstract class Map implements Serializable{
 		Tower towerToRemove = grid[l.x][l.y].getGym();
 		grid[l.x][l.y].removeGym();
 		towers.remove(towerToRemove);
+		towerToRemove.stopFiring();
 		int reclaimedGold = towerToRemove.getCost()/2;
 		player.gainMoney(reclaimedGold);
 		server.updateClients(player.getHealthPoints(), player.getMoney(), isPlayer1sMap);
@@ -295,7 +319,257 @@ public abstract class Map implements Serializable{
 	 * @return enemies an ArrayList of all the Enemies on the map
 	 */
 	public ArrayList<Enemy> getEnemies(){
-		return enemies;
+		return enemyStore.getEnemies();
+	}
+	
+	/**
+	 * Returns the enemies standing on tiles within radius of a center tile. The Tile grid
+	 * already tracks which enemies occupy each square, so it doubles as a spatial index:
+	 * only the tiles inside the radius' bounding box are visited instead of every enemy
+	 * on the map. Distances are compared as integer squared tile distances.
+	 * @param center the Point (row, column) to search around, usually a tower's location
+	 * @param radius the radius in tiles, enemies strictly closer than it are returned
+	 * @return inRange an ArrayList of the enemies in range, empty if there are none
+	 */
+	public ArrayList<Enemy> getEnemiesInRange(Point center, int radius){
+		ArrayList<Enemy> inRange = new ArrayList<Enemy>();
+		int radiusSquared = radius * radius;
+		int firstRow = Math.max(0, center.x - radius);
+		int lastRow = Math.min(numOfRows - 1, center.x + radius);
+		int firstColumn = Math.max(0, center.y - radius);
+		int lastColumn = Math.min(numOfColumns - 1, center.y + radius);
+		for(int r = firstRow; r <= lastRow; r++){
+			int rowDistance = r - center.x;
+			for(int c = firstColumn; c <= lastColumn; c++){
+				int columnDistance = c - center.y;
+				if(grid[r][c].containsPokemon() && rowDistance*rowDistance + columnDistance*columnDistance < radiusSquared){
+					inRange.addAll(grid[r][c].getPokemon());
+				}
+			}
+		}
+		return inRange;
+	}
+	
+	/**
+	 * Builds the coverage table of a tower placed at center: every path position whose tile
+	 * is strictly within radius, as (pathNumber, index) pairs flattened into one array and
+	 * ordered from the farthest along the path to the nearest to the spawn. Paths never change
+	 * after MapFactory builds them, so a tower only needs this recomputed when its range does.
+	 * @param center the Point (row, column) of the tower
+	 * @param radius the tower's range in tiles
+	 * @return coverage {path0, index0, path1, index1, ...} sorted by index descending
+	 */
+	public int[] computePathCoverage(Point center, int radius){
+		int radiusSquared = radius * radius;
+		int longestPath = 0;
+		for(int p = 0; p < compiledPaths.length; p++){
+			longestPath = Math.max(longestPath, compiledPaths[p].length());
+		}
+		int[] coverage = new int[16];
+		int size = 0;
+		//Walking the indices backwards produces the farthest-first order without sorting
+		for(int i = longestPath - 1; i >= 0; i--){
+			for(int p = 0; p < compiledPaths.length; p++){
+				if(i >= compiledPaths[p].length()){
+					continue;
+				}
+				int rowDistance = compiledPaths[p].getRow(i) - center.x;
+				int columnDistance = compiledPaths[p].getColumn(i) - center.y;
+				if(rowDistance*rowDistance + columnDistance*columnDistance < radiusSquared){
+					if(size == coverage.length){
+						coverage = Arrays.copyOf(coverage, size * 2);
+					}
+					coverage[size++] = p;
+					coverage[size++] = i;
+				}
+			}
+		}
+		return Arrays.copyOf(coverage, size);
+	}
+	
+	/**
+	 * Returns the enemies on the tile at a given position along a path
+	 * @param pathNumber the path, starting at 0
+	 * @param index the position along that path, starting at 0 on its first tile
+	 * @return the list of enemies on that tile, empty if there are none
+	 */
+	public ArrayList<Enemy> getEnemiesAtPathPosition(int pathNumber, int index){
+		return pathTiles[pathNumber][index].getPokemon();
+	}
+	
+	/**
+	 * Sends an enemy that is still on the map back to the first tile of its path,
+	 * resetting its path cursor and steps taken so targeting treats it as just spawned.
+	 * @param enemy The Enemy to send back
+	 */
+	public void returnEnemyToStart(Enemy enemy){
+		int pathNumber = enemy.getPathTravelingCode();
+		Tile current = pathTiles[pathNumber][enemy.getPathCursor()];
+		if(!current.getPokemon().contains(enemy)){
+			return; //Enemy already died or breached on this tick, it is no longer on the map
+		}
+		current.removePokemon(enemy);
+		CompiledPath path = compiledPaths[pathNumber];
+		enemy.setPathCursor(0);
+		enemy.setLocation(path.getPoint(0));
+		enemy.setNextLocation(path.getPoint(Math.min(1, path.lastIndex())));
+		enemy.resetStepsTaken();
+		pathTiles[pathNumber][0].addPokemon(enemy);
+	}
+	
+	/**
+	 * Returns the compiled, array backed form of a path
+	 * @param pathNumber the path, starting at 0
+	 * @return the CompiledPath enemies on that path step through
+	 */
+	public CompiledPath getCompiledPath(int pathNumber){
+		return compiledPaths[pathNumber];
+	}
+	
+	/**
+	 * @return the Random that tower and enemy rolls on this map should use
+	 */
+	public Random getRandom(){
+		return random;
+	}
+	
+	/**
+	 * Shares the Level's GameRandom with this map, to be called by the Level that owns it
+	 * @param random the Level's GameRandom
+	 */
+	public void setRandom(Random random){
+		this.random = random;
+	}
+	
+	/**
+	 * @return the number of enemies killed by towers on this map
+	 */
+	public int getEnemiesKilled(){
+		return enemiesKilled;
+	}
+	
+	/**
+	 * Folds the state of this map that a desync would show up in, its clock, player, enemies
+	 * and towers, into a hash. Two copies of a map played from the same seed and inputs hash
+	 * the same after every tick.
+	 * @param hash the hash so far
+	 * @return the hash with this map folded in
+	 */
+	public long stateHash(long hash){
+		hash = mix(hash, events.now());
+		hash = mix(hash, nextEntityId);
+		hash = mix(hash, enemiesKilled);
+		hash = mix(hash, player.getHealthPoints());
+		hash = mix(hash, player.getMoney());
+		ArrayList<Enemy> enemies = enemyStore.getEnemies();
+		for(int i = 0; i < enemies.size(); i++){
+			Enemy e = enemies.get(i);
+			hash = mix(hash, e.getEntityId());
+			hash = mix(hash, e.getLocation().x);
+			hash = mix(hash, e.getLocation().y);
+			hash = mix(hash, e.getProgress());
+			hash = mix(hash, e.getHealth());
+		}
+		for(int i = 0; i < towers.size(); i++){
+			Tower t = towers.get(i);
+			hash = mix(hash, t.getEntityId());
+			hash = mix(hash, t.getCurrentLevel());
+		}
+		return hash;
+	}
+	
+	EventQueue getEvents(){
+		return events;
+	}
+	
+	EnemyStore getEnemyStore(){
+		return enemyStore;
+	}
+	
+	Tile[][] getGrid(){
+		return grid;
+	}
+	
+	int getNextEntityId(){
+		return nextEntityId;
+	}
+	
+	/**
+	 * Puts the map's clock and counters back where a saved game left them
+	 */
+	void restoreCounters(long clock, int nextEntityId, int enemiesKilled){
+		events.advanceTo(clock);
+		this.nextEntityId = nextEntityId;
+		this.enemiesKilled = enemiesKilled;
+	}
+	
+	/**
+	 * Places a Tower of a saved game, already leveled up, without charging for it or
+	 * scheduling its shot
+	 */
+	void restoreTower(Tower tower, Point location, int entityId){
+		tower.setPlaceOnBoard(location);
+		tower.setEntityId(entityId);
+		towers.add(tower);
+		tower.setMap(this);
+		grid[location.x][location.y].setGym(tower);
+	}
+	
+	/**
+	 * Puts an Enemy of a saved game back on its path at the given cursor, leaving its
+	 * tile and store state to the caller
+	 */
+	void restoreEnemy(Enemy enemy, int cursor, Point previousLocation, int entityId){
+		CompiledPath path = compiledPaths[enemy.getPathTravelingCode()];
+		enemy.setMap(this);
+		enemy.setLocation(path.getPoint(cursor));
+		enemy.setNextLocation(path.getPoint(Math.min(cursor + 1, path.lastIndex())));
+		enemy.setPreviousLocation(previousLocation);
+		enemy.setEntityId(entityId);
+		currentEnemies++;
+	}
+	
+	/**
+	 * One FNV-1a style step of stateHash
+	 */
+	static long mix(long hash, long value){
+		return (hash ^ value) * 0x100000001B3L;
+	}
+	
+	/**
+	 * @return the current game time of this map in ms, advanced by tick()
+	 */
+	public long getClock(){
+		return events.now();
+	}
+	
+	/**
+	 * Schedules a Tower's next shot on this map's EventQueue
+	 * @param tower the Tower to fire
+	 * @param time the game time in ms to fire at
+	 */
+	public void scheduleTowerFire(Tower tower, long time){
+		events.schedule(time, EventQueue.TOWER_FIRE, tower);
+	}
+	
+	/**
+	 * Moves a Tower's registration from the path tiles it used to cover to the ones it covers
+	 * now, so that only the tiles in its range wake it when an enemy arrives.
+	 * @param tower the Tower whose range changed
+	 * @param oldCoverage its previous (path, index) pairs, or null
+	 * @param newCoverage its current (path, index) pairs, or null
+	 */
+	public void watchPathCoverage(Tower tower, int[] oldCoverage, int[] newCoverage){
+		if(oldCoverage != null){
+			for(int i = 0; i < oldCoverage.length; i += 2){
+				pathTiles[oldCoverage[i]][oldCoverage[i + 1]].removeWatcher(tower);
+			}
+		}
+		if(newCoverage != null){
+			for(int i = 0; i < newCoverage.length; i += 2){
+				pathTiles[newCoverage[i]][newCoverage[i + 1]].addWatcher(tower);
+			}
+		}
 	}
 	
 	/**
@@ -308,24 +582,41 @@ public abstract class Map implements Serializable{
 	
 	/**
 	 * This method is called by the master Timer on the Server every timePerTick,
-	 * it updates the internal state of every tower and enemy on the map, then
-	 * generates their respective "Image" objects and sends them to the Clients
+	 * it advances the map's game clock and runs every enemy move, effect second and
+	 * tower shot that has come due, in time order, then generates the "Image" objects
+	 * of every tower and enemy and sends them to the Clients. Enemies and towers with
+	 * nothing due are not touched by the simulation at all, and the Images are only built
+	 * on the ticks the server says an update is due, at its network rate, not every tick.
 	 * @param timePerTick the time in ms between ticks
-	 * @param gameServer the GameServer that the map belongs to responsible for notifying clients of this update
 	 */
 	public void tick(int timePerTick){
-		//call all enemies and towers to call their tick() method, which will increment their
-		//cool down timers, causing them to move/shoot if they are ready
-		ArrayList<EnemyImage> enemyImages = new ArrayList<EnemyImage>();
-		ArrayList<Enemy> tempEnemies = new ArrayList<Enemy>(enemies); //To prevent error multithread editing
-		for(Enemy enemy : tempEnemies){
-			enemy.tick(timePerTick);
-			enemyImages.add(new EnemyImage(enemy));
+		long until = events.now() + timePerTick;
+		while(events.pollDue(until)){
+			long time = events.getCurrentTime();
+			switch(events.getCurrentKind()){
+			case EventQueue.ENEMY_MOVE:
+				enemyStore.handleMove((Enemy) events.getCurrentTarget(), time);
+				break;
+			case EventQueue.ENEMY_EFFECT:
+				enemyStore.handleEffect((Enemy) events.getCurrentTarget(), time);
+				break;
+			case EventQueue.TOWER_FIRE:
+				((Tower) events.getCurrentTarget()).fire(time);
+				break;
+			}
+		}
+		events.advanceTo(until);
+		if(!server.isImageUpdateDue(isPlayer1sMap)){
+			return;
+		}
+		ArrayList<Tower> tempTowers = new ArrayList<Tower>(towers); //To prevent error multithread editing
+		ArrayList<EnemyImage> enemyImages = new ArrayList<EnemyImage>(enemyStore.size());
+		ArrayList<Enemy> enemies = enemyStore.getEnemies();
+		for(int i = 0; i < enemies.size(); i++){
+			enemyImages.add(new EnemyImage(enemies.get(i)));
 		}
-		ArrayList<TowerImage> towerImages = new ArrayList<TowerImage>();
-		ArrayList<Tower> tempTowers = new ArrayList<Tower>(towers);
+		ArrayList<TowerImage> towerImages = new ArrayList<TowerImage>(tempTowers.size());
 		for(Tower tower : tempTowers){
-			tower.tick(timePerTick);
 			towerImages.add(new TowerImage(tower));
 		}
 		//Testing Passed, is sending the right amount of enemy images
@@ -339,7 +630,7 @@ public abstract class Map implements Serializable{
 	 * Map required to paint it on the Clients GUI
 	 * @param server the GameServer to set this Map to
 	 */
-	public void setServer(GameServer server) {
+	public void setServer(GameEventSink server) {
 		this.server = server;
 		server.putClientToMap(player.getName(), this);
 		if(server.getPlayer1() == player){
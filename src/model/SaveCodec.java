@@ -0,0 +1,513 @@
+package model;
+
+import java.awt.Point;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.StreamCorruptedException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.zip.CRC32;
+
+import GUI.GameView.towerType;
+import GameController.Enemy;
+import GameController.Enemy.directionFacing;
+import GameController.Tower;
+import client.Player;
+
+/**
+ * The binary format of a saved game. Rather than Java serializing the whole Level with every
+ * Tile, image URL and wave, a save holds only what cannot be regenerated: the level code and
+ * seed, then the state that play has changed. Loading generates the Level again from its code
+ * and seed with LevelFactory, which rebuilds the maps and the same waves of enemies, and puts
+ * the saved state back on top of it.
+ *
+ * A save is MAGIC and VERSION as two big endian ints, the body, then a CRC32 of everything
+ * before it. The body is:
+ * the level code, seed, co-op flag, clock, spawning progress and GameRandom state;
+ * each player's HP and money;
+ * then for each map its clock and counters, its towers in placement order, the enemies on it in
+ * EnemyStore handle order, each named by its wave and index in the wave, the order of the enemies
+ * on each occupied tile and of the watchers on any tile not in placement order, and the pending
+ * events of the EventQueue in the order they will run.
+ * With all of that in place a loaded game plays on exactly as the saved one would have.
+ *
+ * Counts and IDs are varints, signed values zigzag varints, times zigzag varints relative to the
+ * map's clock, + 1 so that 0 is the -1 of nothing scheduled.
+ *
+ * Encoding reuses one ByteBuffer per codec, so a codec must only be used by one thread at a time.
+ *
+ * Instance Variables:
+ * ByteBuffer out	- The save being encoded, grown when a game does not fit
+ *
+ * Methods:
+ * byte[] encode(Level level)
+ * static Level decode(byte[] save, Player player, GameEventSink server)
+ * static void verify(byte[] save)
+ * static int checksum(byte[] save)
+ * static boolean isMultiplayer(byte[] save)
+ */
+public final class SaveCodec{
+
+	public static final int MAGIC = 0x504B5356; //"PKSV"
+	public static final int VERSION = 1;
+	private static final int HEADER = 8; //MAGIC and VERSION
+	private static final int TRAILER = 4; //The CRC32
+	private static final directionFacing[] FACINGS = directionFacing.values();
+	private static final towerType[] TOWER_TYPES = towerType.values();
+	private static final int WAVE_INDEX_BITS = 16; //Wave positions are packed as wave << 16 | index
+
+	private ByteBuffer out = ByteBuffer.allocate(4096);
+
+	/**
+	 * Encodes a Level's state. To be called between ticks, on the thread that ticks it.
+	 * @param level the game to save
+	 * @return the save
+	 * @throws IOException if an enemy on a map is not one of the level's waves
+	 */
+	public byte[] encode(Level level) throws IOException{
+		while(true){
+			out.clear();
+			try{
+				putLevel(level);
+				break;
+			}catch(BufferOverflowException e){
+				out = ByteBuffer.allocate(out.capacity() * 2);
+			}
+		}
+		int length = out.position();
+		CRC32 crc = new CRC32();
+		crc.update(out.array(), 0, length);
+		byte[] save = Arrays.copyOf(out.array(), length + TRAILER);
+		ByteBuffer.wrap(save, length, TRAILER).putInt((int) crc.getValue());
+		return save;
+	}
+
+	/**
+	 * Checks a save's header and CRC32 without decoding it
+	 * @param save the save
+	 * @throws IOException if it is not a save, from a newer version, or corrupt
+	 */
+	public static void verify(byte[] save) throws IOException{
+		if(save.length < HEADER + TRAILER){
+			throw new StreamCorruptedException("save too short: " + save.length + " bytes");
+		}
+		ByteBuffer in = ByteBuffer.wrap(save);
+		if(in.getInt() != MAGIC){
+			throw new StreamCorruptedException("not a saved game");
+		}
+		int version = in.getInt();
+		if(version != VERSION){
+			throw new InvalidObjectException("saved game version " + version + ", expected " + VERSION);
+		}
+		CRC32 crc = new CRC32();
+		crc.update(save, 0, save.length - TRAILER);
+		if(in.getInt(save.length - TRAILER) != (int) crc.getValue()){
+			throw new StreamCorruptedException("saved game failed its checksum");
+		}
+	}
+
+	/**
+	 * @param save the save, verified or not
+	 * @return the CRC32 it ends with, to keep beside it and match against it before loading
+	 */
+	public static int checksum(byte[] save){
+		return save.length < TRAILER ? 0 : ByteBuffer.wrap(save).getInt(save.length - TRAILER);
+	}
+
+	/**
+	 * @param save the save
+	 * @return true if it is of a co-op game, to be decoded as a Player with a partner
+	 * @throws IOException if it is not a save, from a newer version, or corrupt
+	 */
+	public static boolean isMultiplayer(byte[] save) throws IOException{
+		verify(save);
+		ByteBuffer in = ByteBuffer.wrap(save, HEADER, save.length - HEADER - TRAILER);
+		getVarint(in); //The level code
+		in.getLong(); //The seed
+		return in.get() != 0;
+	}
+
+	/**
+	 * Generates the saved Level again and puts the saved state back on it
+	 * @param save the save, from encode
+	 * @param player the Player to play the level as, whose partner plays player 2's map in co-op
+	 * @param server the GameServer, or any other GameEventSink, the level reports to
+	 * @return the loaded Level
+	 * @throws IOException if the save is corrupt or was saved for the other kind of game
+	 */
+	public static Level decode(byte[] save, Player player, GameEventSink server) throws IOException{
+		verify(save);
+		ByteBuffer in = ByteBuffer.wrap(save, HEADER, save.length - HEADER - TRAILER);
+		try{
+			return getLevel(in, player, server);
+		}catch(RuntimeException e){
+			StreamCorruptedException corrupt = new StreamCorruptedException("saved game is corrupt: " + e);
+			corrupt.initCause(e);
+			throw corrupt;
+		}
+	}
+
+	private void putLevel(Level level) throws IOException{
+		out.putInt(MAGIC);
+		out.putInt(VERSION);
+		putVarint(level.getLevelCode());
+		out.putLong(level.getSeed());
+		out.put((byte) (level.isMultiplayer() ? 1 : 0));
+		putVarlong(level.getLevelClock());
+		putVarlong(level.getNextSpawnEventAt());
+		out.put((byte) ((level.isWaveInProgress() ? 1 : 0) | (level.hasEnemiesLeftToSpawn() ? 2 : 0)));
+		putVarint(level.getWaveIndex());
+		putVarint(level.getEnemyIndex());
+		out.putLong(level.getRandom().getState());
+		putPlayer(level.getPlayer1());
+		if(level.isMultiplayer()){
+			putPlayer(level.getPlayer1().getPartner());
+		}
+		IdentityHashMap<Enemy, Integer> wavePositions = new IdentityHashMap<Enemy, Integer>();
+		ArrayList<ArrayList<Enemy>> waves = level.getWavesList();
+		for(int w = 0; w < waves.size(); w++){
+			for(int i = 0; i < waves.get(w).size(); i++){
+				wavePositions.put(waves.get(w).get(i), (w << WAVE_INDEX_BITS) | i);
+			}
+		}
+		putMap(level.getMap1(), wavePositions);
+		if(level.getMap2() != null){
+			putMap(level.getMap2(), wavePositions);
+		}
+	}
+
+	private static Level getLevel(ByteBuffer in, Player player, GameEventSink server) throws IOException{
+		int levelCode = getVarint(in);
+		long seed = in.getLong();
+		boolean multiplayer = in.get() != 0;
+		if(multiplayer != server.isMultiplayer()){
+			throw new InvalidObjectException(multiplayer ? "saved game is co-op" : "saved game is single player");
+		}
+		Level level = LevelFactory.generateLevel(player, server, levelCode, seed);
+		long levelClock = getVarlong(in);
+		long nextSpawnEventAt = getVarlong(in);
+		int flags = in.get();
+		int waveIndex = getVarint(in);
+		int enemyIndex = getVarint(in);
+		level.restoreProgress(levelClock, nextSpawnEventAt, (flags & 1) != 0, waveIndex, enemyIndex, (flags & 2) != 0);
+		long randomState = in.getLong();
+		getPlayer(in, player);
+		if(multiplayer){
+			getPlayer(in, player.getPartner());
+		}
+		getMap(in, level.getMap1(), level.getWavesList());
+		if(multiplayer){
+			getMap(in, level.getMap2(), level.getWavesList());
+		}
+		level.getRandom().setState(randomState);
+		server.updateClients(player.getHealthPoints(), player.getMoney(), true);
+		if(multiplayer){
+			server.updateClients(player.getPartner().getHealthPoints(), player.getPartner().getMoney(), false);
+		}
+		return level;
+	}
+
+	private void putPlayer(Player player){
+		putSignedVarint(player.getHealthPoints());
+		putSignedVarint(player.getMoney());
+	}
+
+	private static void getPlayer(ByteBuffer in, Player player){
+		player.setHealth(getSignedVarint(in));
+		player.setMoney(getSignedVarint(in));
+	}
+
+	private void putMap(Map map, IdentityHashMap<Enemy, Integer> wavePositions) throws IOException{
+		long now = map.getClock();
+		putVarlong(now);
+		putVarint(map.getNextEntityId());
+		putVarint(map.getEnemiesKilled());
+
+		ArrayList<Tower> towers = map.getTowers();
+		IdentityHashMap<Object, Integer> placed = new IdentityHashMap<Object, Integer>(); //Towers to placement order
+		putVarint(towers.size());
+		for(int i = 0; i < towers.size(); i++){
+			Tower tower = towers.get(i);
+			placed.put(tower, i);
+			putVarint(tower.getType().ordinal());
+			putVarint(tower.getPosition().x);
+			putVarint(tower.getPosition().y);
+			putVarint(tower.getCurrentLevel());
+			putVarint(tower.getEntityId());
+			putTime(tower.getNextFireTime(), now);
+			out.put((byte) (tower.isReadyToFire() ? 1 : 0));
+		}
+
+		EnemyStore store = map.getEnemyStore();
+		ArrayList<Enemy> enemies = store.getEnemies();
+		IdentityHashMap<Object, Integer> live = new IdentityHashMap<Object, Integer>(); //Entities to their IDs
+		putVarint(enemies.size());
+		for(int h = 0; h < enemies.size(); h++){
+			Enemy enemy = enemies.get(h);
+			Integer position = wavePositions.get(enemy);
+			if(position == null){
+				throw new InvalidObjectException(enemy.getName() + " " + enemy.getEntityId() + " is not from one of the level's waves");
+			}
+			live.put(enemy, enemy.getEntityId());
+			putVarint(position >>> WAVE_INDEX_BITS);
+			putVarint(position & ((1 << WAVE_INDEX_BITS) - 1));
+			putVarint(enemy.getEntityId());
+			putSignedVarint(store.getHealth(h));
+			putVarint(store.getPathCursor(h));
+			putVarint(store.getStepsTaken(h));
+			putTime(store.getLastMoveAt(h), now);
+			putTime(store.getNextMoveAt(h), now);
+			putVarint(store.getTimePerTile(h));
+			out.putDouble(store.getSpeed(h));
+			out.put((byte) store.getEffects(h));
+			if(store.getEffects(h) != 0){
+				putVarint(store.getEffectSecondsLeft(h));
+				putTime(store.getNextEffectAt(h), now);
+				putSignedVarint(store.getBurnDamage(h));
+			}
+			putSignedVarint(enemy.getAttackPower());
+			putPoint(enemy.getPreviousLocation());
+			out.put((byte) enemy.getOrientation().ordinal());
+		}
+		for(int i = 0; i < towers.size(); i++){
+			live.put(towers.get(i), towers.get(i).getEntityId());
+		}
+
+		//Tiles whose enemies or watchers are not in the order rebuilding them would give, ended by 0
+		Tile[][] grid = map.getGrid();
+		for(int r = 0; r < grid.length; r++){
+			for(int c = 0; c < grid[r].length; c++){
+				ArrayList<Enemy> here = grid[r][c].getPokemon();
+				ArrayList<Tower> watchers = grid[r][c].getWatchers();
+				boolean reordered = !inPlacementOrder(watchers, placed);
+				if(here.isEmpty() && !reordered){
+					continue;
+				}
+				putVarint(r * grid[r].length + c + 1);
+				putIds(here, live);
+				if(reordered){
+					putIds(watchers, live);
+				}else{
+					putVarint(0);
+				}
+			}
+		}
+		putVarint(0);
+
+		//The events still to run for entities on the map, in the order they will run, ended by 0
+		EventQueue pending = new EventQueue(map.getEvents());
+		while(pending.pollDue(Long.MAX_VALUE)){
+			Integer id = live.get(pending.getCurrentTarget());
+			if(id != null){
+				out.put((byte) (pending.getCurrentKind() + 1));
+				putVarint(id);
+				putTime(pending.getCurrentTime(), now);
+			}
+		}
+		out.put((byte) 0);
+	}
+
+	private static void getMap(ByteBuffer in, Map map, ArrayList<ArrayList<Enemy>> waves){
+		long now = getVarlong(in);
+		int nextEntityId = getVarint(in);
+		map.restoreCounters(now, nextEntityId, getVarint(in));
+		Object[] entities = new Object[nextEntityId];
+
+		int towers = getVarint(in);
+		for(int i = 0; i < towers; i++){
+			towerType type = TOWER_TYPES[getVarint(in)];
+			Point location = new Point(getVarint(in), 0);
+			location.y = getVarint(in);
+			int level = getVarint(in);
+			int id = getVarint(in);
+			long nextFireTime = getTime(in, now);
+			boolean readyToFire = in.get() != 0;
+			Tower tower = TowerFactory.generateTower(type, map.getPlayer());
+			for(int l = tower.getCurrentLevel(); l < level; l++){
+				tower.levelUp(); //Before it is on the map, so its coverage is only computed once
+			}
+			map.restoreTower(tower, location, id);
+			tower.restoreFiring(nextFireTime, readyToFire);
+			entities[id] = tower;
+		}
+
+		EnemyStore store = map.getEnemyStore();
+		int enemies = getVarint(in);
+		for(int i = 0; i < enemies; i++){
+			int wave = getVarint(in);
+			Enemy enemy = waves.get(wave).get(getVarint(in));
+			int id = getVarint(in);
+			int health = getSignedVarint(in);
+			int cursor = getVarint(in);
+			int steps = getVarint(in);
+			long lastMoveAt = getTime(in, now);
+			long nextMoveAt = getTime(in, now);
+			int timePerTile = getVarint(in);
+			double speed = in.getDouble();
+			int effects = in.get();
+			int effectSecondsLeft = 0;
+			long nextEffectAt = -1;
+			int burnDamage = 0;
+			if(effects != 0){
+				effectSecondsLeft = getVarint(in);
+				nextEffectAt = getTime(in, now);
+				burnDamage = getSignedVarint(in);
+			}
+			int attackPower = getSignedVarint(in);
+			Point previousLocation = getPoint(in);
+			directionFacing facing = FACINGS[in.get()];
+			map.restoreEnemy(enemy, cursor, previousLocation, id);
+			enemy.levelUpAttackPower(attackPower - enemy.getAttackPower());
+			enemy.setOrientation(facing);
+			store.restore(enemy, health, cursor, steps, timePerTile, speed, lastMoveAt, nextMoveAt,
+					effects, effectSecondsLeft, nextEffectAt, burnDamage);
+			entities[id] = enemy;
+		}
+
+		Tile[][] grid = map.getGrid();
+		int columns = grid[0].length;
+		int tile;
+		while((tile = getVarint(in) - 1) >= 0){
+			int count = getVarint(in);
+			ArrayList<Enemy> here = new ArrayList<Enemy>(Math.max(count, 4));
+			for(int i = 0; i < count; i++){
+				here.add((Enemy) entity(entities, getVarint(in)));
+			}
+			ArrayList<Tower> watchers = null; //Left as the towers placed above registered them
+			count = getVarint(in);
+			if(count > 0){
+				watchers = new ArrayList<Tower>(count);
+				for(int i = 0; i < count; i++){
+					watchers.add((Tower) entity(entities, getVarint(in)));
+				}
+			}
+			grid[tile / columns][tile % columns].restoreOccupants(here, watchers);
+		}
+
+		EventQueue events = map.getEvents();
+		int kind;
+		while((kind = in.get() - 1) >= 0){
+			Object target = entity(entities, getVarint(in));
+			events.schedule(getTime(in, now), kind, target);
+		}
+	}
+
+	private static Object entity(Object[] entities, int id){
+		if(entities[id] == null){
+			throw new IllegalStateException("no entity " + id + " on the map");
+		}
+		return entities[id];
+	}
+
+	/**
+	 * @return true if the towers are in the order they were placed, as restoring them registers them
+	 */
+	private static boolean inPlacementOrder(ArrayList<Tower> watchers, IdentityHashMap<Object, Integer> placed){
+		int last = -1;
+		for(int i = 0; i < watchers.size(); i++){
+			Integer order = placed.get(watchers.get(i));
+			if(order == null || order < last){
+				return false;
+			}
+			last = order;
+		}
+		return true;
+	}
+
+	private void putIds(ArrayList<?> entities, IdentityHashMap<Object, Integer> live){
+		int count = 0;
+		for(int i = 0; i < entities.size(); i++){
+			if(live.containsKey(entities.get(i))){
+				count++;
+			}
+		}
+		putVarint(count);
+		for(int i = 0; i < entities.size(); i++){
+			Integer id = live.get(entities.get(i));
+			if(id != null){
+				putVarint(id);
+			}
+		}
+	}
+
+	private void putPoint(Point p){
+		if(p == null){
+			putVarint(0);
+			return;
+		}
+		putVarint(p.x + 1);
+		putVarint(p.y);
+	}
+
+	private static Point getPoint(ByteBuffer in){
+		int x = getVarint(in) - 1;
+		if(x < 0){
+			return null;
+		}
+		return new Point(x, getVarint(in));
+	}
+
+	private void putTime(long time, long now){
+		putVarlong(time < 0 ? 0 : (((time - now) << 1) ^ ((time - now) >> 63)) + 1);
+	}
+
+	private static long getTime(ByteBuffer in, long now){
+		long zigzag = getVarlong(in) - 1;
+		if(zigzag < 0){
+			return -1;
+		}
+		return now + ((zigzag >>> 1) ^ -(zigzag & 1));
+	}
+
+	private void putVarint(int value){
+		while((value & ~0x7F) != 0){
+			out.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.put((byte) value);
+	}
+
+	private static int getVarint(ByteBuffer in){
+		int value = 0;
+		for(int shift = 0; shift < 35; shift += 7){
+			int b = in.get();
+			value |= (b & 0x7F) << shift;
+			if((b & 0x80) == 0){
+				return value;
+			}
+		}
+		throw new IllegalStateException("more than 5 bytes, not a varint");
+	}
+
+	private void putVarlong(long value){
+		while((value & ~0x7FL) != 0){
+			out.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.put((byte) value);
+	}
+
+	private static long getVarlong(ByteBuffer in){
+		long value = 0;
+		for(int shift = 0; shift < 70; shift += 7){
+			int b = in.get();
+			value |= (long) (b & 0x7F) << shift;
+			if((b & 0x80) == 0){
+				return value;
+			}
+		}
+		throw new IllegalStateException("more than 10 bytes, not a varint");
+	}
+
+	private void putSignedVarint(int value){
+		putVarint((value << 1) ^ (value >> 31));
+	}
+
+	private static int getSignedVarint(ByteBuffer in){
+		int zigzag = getVarint(in);
+		return (zigzag >>> 1) ^ -(zigzag & 1);
+	}
+}
@@ -21,6 +21,7 @@ import GameController.Enemy;
  * boolean lastPathTile			- True if the tile is the last along the enemy path
  * Tower gymTower				- The Tower on this tile if there is one
  * ArrayList<Enemy> enemies		- A list of all enemy Pokemon present on the tile if any
+ * ArrayList<Tower> watchers	- The Towers whose range covers this path tile, woken when an enemy arrives
  * 
  * Methods:
  * public Tile()
@@ -40,6 +41,9 @@ import GameController.Enemy;
  * Map getMap()
  * void setMap(Map map)
  * void removeGym()
+ * void addWatcher(Tower tower)
+ * void removeWatcher(Tower tower)
+ * void restoreOccupants(ArrayList<Enemy> enemies, ArrayList<Tower> watchers)
  * 
  * @author Peter Hanson
  * @version 1.0
@@ -56,6 +60,7 @@ public class Tile implements Serializable{
 	private boolean lastPathTile;
 	private Tower gymTower;
 	private ArrayList<Enemy> enemies;
+	private ArrayList<Tower> watchers;
 	
 	/**
 	 * Constructor
@@ -68,6 +73,7 @@ public class Tile implements Serializable{
 		lastPathTile = false;
 		gymTower = null;
 		enemies = new ArrayList<Enemy>();
+		watchers = new ArrayList<Tower>();
 	}
 
 	/**
@@ -133,7 +139,8 @@ public class Tile implements Serializable{
 	 * last tile in the enemy path and an enemy is added to it
 	 * this tile will alert its map that it has lost health
 	 * equal to the breaching enemy's attack power. It will
-	 * then remove that enemy
+	 * then remove that enemy. Otherwise any idle towers covering
+	 * this tile are woken so they can fire at it.
 	 * @param enemyPoke the Enemy to be added
 	 */
 	public void addPokemon(Enemy enemyPoke){
@@ -145,9 +152,49 @@ public class Tile implements Serializable{
 		if(lastPathTile){
 			map.lostHealth(enemyPoke.getAttackPower());
 			map.removeDeadEnemy(enemyPoke.getLocation(), enemyPoke);
+			return;
+		}
+		for(int i = 0; i < watchers.size(); i++){
+			watchers.get(i).wake();
 		}
 	}
+	
+	/**
+	 * Registers a Tower whose range covers this tile
+	 * @param tower the Tower to wake when an enemy arrives
+	 */
+	public void addWatcher(Tower tower){
+		if(!watchers.contains(tower)){
+			watchers.add(tower);
+		}
+	}
+	
+	/**
+	 * Unregisters a Tower that no longer covers this tile
+	 * @param tower the Tower to stop waking
+	 */
+	public void removeWatcher(Tower tower){
+		watchers.remove(tower);
+	}
 		
+	ArrayList<Tower> getWatchers(){
+		return watchers;
+	}
+	
+	/**
+	 * Puts back the enemies on a tile of a saved game, and its watchers in the order they
+	 * were woken in, without breaching or waking anything. For SaveCodec.
+	 * @param enemies the enemies on the tile, in the order they arrived
+	 * @param watchers the Towers covering the tile, or null to keep the ones placed since
+	 */
+	void restoreOccupants(ArrayList<Enemy> enemies, ArrayList<Tower> watchers){
+		this.enemies = enemies;
+		containsEnemy = !enemies.isEmpty();
+		if(watchers != null){
+			this.watchers = watchers;
+		}
+	}
+	
 	/**
 	 * Removes an Enemy from this tile location
 	 * @param enemyPoke the Enemy to remove
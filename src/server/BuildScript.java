@@ -0,0 +1,120 @@
+package server;
+
+import java.awt.Point;
+import java.io.Serializable;
+import java.util.ArrayList;
+
+import model.Map;
+import model.TowerFactory;
+import GUI.GameView.towerType;
+import client.Player;
+
+/**
+ * The tower building a player does during a headless game: towers to place, upgrade
+ * or sell, each at a given tick. Steps are kept in tick order, steps on the same tick
+ * run in the order they were added. Steps the Map rejects (no money, bad location)
+ * are skipped like a rejected click would be.
+ *
+ * Methods:
+ * BuildScript place(long tick, towerType type, int row, int column)
+ * BuildScript upgrade(long tick, int row, int column)
+ * BuildScript sell(long tick, int row, int column)
+ * int size()
+ * int applyDue(long tick, Map map, Player player, int from)
+ */
+public class BuildScript implements Serializable{
+
+	private static final long serialVersionUID = 3306432907012694437L;
+	private static final int PLACE = 0;
+	private static final int UPGRADE = 1;
+	private static final int SELL = 2;
+
+	private static class Step implements Serializable{
+		private static final long serialVersionUID = -1470474212307950716L;
+		private final long tick;
+		private final int action;
+		private final towerType type;
+		private final Point location;
+
+		private Step(long tick, int action, towerType type, int row, int column){
+			this.tick = tick;
+			this.action = action;
+			this.type = type;
+			this.location = new Point(row, column);
+		}
+	}
+
+	private ArrayList<Step> steps = new ArrayList<Step>();
+
+	/**
+	 * Places a tower
+	 * @param tick the tick to place it on, 0 is before the first tick
+	 * @param type the towerType to place
+	 * @param row the row of the tile
+	 * @param column the column of the tile
+	 * @return this BuildScript, to chain calls
+	 */
+	public BuildScript place(long tick, towerType type, int row, int column){
+		return add(new Step(tick, PLACE, type, row, column));
+	}
+
+	/**
+	 * Upgrades the tower on a tile
+	 * @return this BuildScript, to chain calls
+	 */
+	public BuildScript upgrade(long tick, int row, int column){
+		return add(new Step(tick, UPGRADE, null, row, column));
+	}
+
+	/**
+	 * Sells the tower on a tile
+	 * @return this BuildScript, to chain calls
+	 */
+	public BuildScript sell(long tick, int row, int column){
+		return add(new Step(tick, SELL, null, row, column));
+	}
+
+	private BuildScript add(Step step){
+		int i = steps.size();
+		while(i > 0 && steps.get(i - 1).tick > step.tick){
+			i--;
+		}
+		steps.add(i, step);
+		return this;
+	}
+
+	/**
+	 * @return the number of steps in the script
+	 */
+	public int size(){
+		return steps.size();
+	}
+
+	/**
+	 * Runs every step due by the given tick, starting from a given step
+	 * @param tick the current tick
+	 * @param map the Map to build on
+	 * @param player the Player paying for the towers
+	 * @param from the index of the first step not yet run
+	 * @return the index of the first step still to run
+	 */
+	public int applyDue(long tick, Map map, Player player, int from){
+		int i = from;
+		while(i < steps.size() && steps.get(i).tick <= tick){
+			Step step = steps.get(i);
+			switch(step.action){
+			case PLACE:
+				map.addTower(TowerFactory.generateTower(step.type, player), step.location);
+				break;
+			case UPGRADE:
+				map.upgradeTower(step.location);
+				break;
+			case SELL:
+				map.sellTower(step.location);
+				break;
+			}
+			i++;
+		}
+		return i;
+	}
+}
@@ -0,0 +1,58 @@
+package server;
+
+/**
+ * The GameServer's side of one connected client. Rooms send the client commands through it,
+ * and it passes the GameServer the client's name and then each command it sends.
+ *
+ * There are two transports: SocketConnection, for clients over TCP, served by a NetworkServer,
+ * and LoopbackConnection, for a GameClient in the same JVM, which hands command objects over
+ * without a socket or any encoding.
+ *
+ * Methods:
+ * String getName()
+ * void send(Object command)
+ * boolean takeKeyframeRequest(boolean fromPlayer1)
+ * boolean close()
+ * boolean isClosed()
+ * int getQueueDepth()
+ * String getStats()
+ */
+public interface ClientConnection{
+
+	/**
+	 * @return the client's name, null until it has sent it
+	 */
+	String getName();
+
+	/**
+	 * Queues a command for the client, superseded state may be coalesced or dropped when the
+	 * client falls behind, everything else is delivered in order. Never blocks.
+	 * @param command a Command, or an EncodedFrame of one
+	 */
+	void send(Object command);
+
+	/**
+	 * Returns true once if some of a map's snapshots had to be dropped, so the next snapshot
+	 * of that map sent to the client must be a keyframe
+	 * @param fromPlayer1 which map
+	 */
+	boolean takeKeyframeRequest(boolean fromPlayer1);
+
+	/**
+	 * Closes the connection, commands still queued are discarded
+	 * @return true if this call closed it, false if it was already closed
+	 */
+	boolean close();
+
+	boolean isClosed();
+
+	/**
+	 * @return the number of commands waiting to be delivered
+	 */
+	int getQueueDepth();
+
+	/**
+	 * @return one line of the connection's queue and delivery statistics, for the server's logs
+	 */
+	String getStats();
+}
@@ -0,0 +1,208 @@
+package server;
+
+/**
+ * The fixed timestep clock of one GameRoom. Every frame of STEP_MILLIS real time it asks
+ * the room to tick the model by exactly one fixed step of STEP_MILLIS game time, once per
+ * unit of the speed multiplier, so the game runs the same enemy moves and tower shots at
+ * every speed, just more of them per second. Frames are timed with System.nanoTime so
+ * changes to the wall clock do not affect the game.
+ *
+ * The loop has no thread of its own: a RoomScheduler worker calls pump() whenever the
+ * room's next frame is due. When the room falls behind (a slow frame, a busy worker, a GC
+ * pause) pump() runs the missed frames back to back, up to MAX_CATCH_UP_FRAMES at once,
+ * and drops whatever is left rather than spiraling further behind.
+ *
+ * Instance Variables:
+ * GameRoom room			- The room whose model is ticked
+ * int speedMultiplier		- Fixed steps run per frame, 1 to MAX_SPEED
+ * boolean running			- True while frames should be run, false when paused or stopped
+ * long nextFrame			- The System.nanoTime the next frame is due
+ * long startedAt			- The System.nanoTime the loop was first started, for the load
+ * long stepsRun			- Fixed steps run
+ * long frames				- Frames run
+ * long overruns			- Frames whose steps took longer than a frame to run
+ * long framesDropped		- Frames skipped because the room was too far behind to catch up
+ * long busyNanos			- Total time spent running frames
+ * long worstFrameNanos		- The longest time one frame's steps took to run
+ * long latenessNanos		- Total time frames started after they were due
+ * long worstLatenessNanos	- The latest a frame has started after it was due
+ *
+ * Methods:
+ * void start()
+ * void stop()
+ * boolean isRunning()
+ * void pump(long now)
+ * long getNextFrame()
+ * void setSpeedMultiplier(int multiplier)
+ * int getSpeedMultiplier()
+ * double getLoad(long now)
+ * statistics getters
+ */
+public class GameLoop{
+
+	public static final int STEP_MILLIS = 20; //The game time in ms of one fixed step, and the real time of one frame
+	public static final long STEP_NANOS = STEP_MILLIS * 1000000L;
+	public static final int MAX_SPEED = 16;
+	private static final int MAX_CATCH_UP_FRAMES = 5; //At most this many late frames are run back to back
+
+	private final GameRoom room;
+	private volatile int speedMultiplier = 1;
+	private volatile boolean running;
+	private long nextFrame;
+	private long startedAt;
+	private volatile long stepsRun;
+	private volatile long frames;
+	private volatile long overruns;
+	private volatile long framesDropped;
+	private volatile long busyNanos;
+	private volatile long worstFrameNanos;
+	private volatile long latenessNanos;
+	private volatile long worstLatenessNanos;
+
+	public GameLoop(GameRoom room){
+		this.room = room;
+	}
+
+	/**
+	 * Starts running frames, the first one is due straight away
+	 */
+	public void start(){
+		if(running){
+			return;
+		}
+		nextFrame = System.nanoTime();
+		if(startedAt == 0){
+			startedAt = nextFrame;
+		}
+		running = true;
+	}
+
+	/**
+	 * Stops running frames after the step in progress
+	 */
+	public void stop(){
+		running = false;
+	}
+
+	public boolean isRunning(){
+		return running;
+	}
+
+	/**
+	 * @return the System.nanoTime the next frame is due
+	 */
+	public long getNextFrame(){
+		return nextFrame;
+	}
+
+	/**
+	 * Sets how many fixed steps are run each frame
+	 * @param multiplier the speed, clamped to 1 to MAX_SPEED
+	 */
+	public void setSpeedMultiplier(int multiplier){
+		speedMultiplier = Math.max(1, Math.min(MAX_SPEED, multiplier));
+	}
+
+	public int getSpeedMultiplier(){
+		return speedMultiplier;
+	}
+
+	/**
+	 * Runs every frame that is due, catching up on at most MAX_CATCH_UP_FRAMES.
+	 * To be called by the room's worker only.
+	 * @param now the current System.nanoTime
+	 */
+	public void pump(long now){
+		if(!running || now < nextFrame){
+			return;
+		}
+		long late = now - nextFrame;
+		latenessNanos += late;
+		if(late > worstLatenessNanos){
+			worstLatenessNanos = late;
+		}
+		long framesDue = late / STEP_NANOS + 1;
+		if(framesDue > MAX_CATCH_UP_FRAMES){
+			framesDropped += framesDue - MAX_CATCH_UP_FRAMES;
+			nextFrame += (framesDue - MAX_CATCH_UP_FRAMES) * STEP_NANOS;
+			framesDue = MAX_CATCH_UP_FRAMES;
+		}
+		for(long f = 0; f < framesDue && running; f++){
+			runFrame();
+			nextFrame += STEP_NANOS;
+		}
+	}
+
+	/**
+	 * Runs one frame's worth of fixed steps and records how long they took
+	 */
+	private void runFrame(){
+		long start = System.nanoTime();
+		int steps = speedMultiplier;
+		for(int s = 0; s < steps && running; s++){
+			room.tickModel(STEP_MILLIS);
+			stepsRun++;
+		}
+		long elapsed = System.nanoTime() - start;
+		frames++;
+		busyNanos += elapsed;
+		if(elapsed > STEP_NANOS){
+			overruns++;
+		}
+		if(elapsed > worstFrameNanos){
+			worstFrameNanos = elapsed;
+		}
+	}
+
+	/**
+	 * Returns the share of one core this room has used since it was started
+	 * @param now the current System.nanoTime
+	 * @return the time spent running frames over the time since the loop started, 0 to 1
+	 */
+	public double getLoad(long now){
+		if(startedAt == 0 || now <= startedAt){
+			return 0;
+		}
+		return (double) busyNanos / (now - startedAt);
+	}
+
+	public long getStepsRun(){
+		return stepsRun;
+	}
+
+	public long getFrames(){
+		return frames;
+	}
+
+	public long getOverruns(){
+		return overruns;
+	}
+
+	public long getFramesDropped(){
+		return framesDropped;
+	}
+
+	/**
+	 * @return the mean time in ns a frame took to run, the room's tick latency
+	 */
+	public long getAverageFrameNanos(){
+		long f = frames;
+		return f == 0 ? 0 : busyNanos / f;
+	}
+
+	public long getWorstFrameNanos(){
+		return worstFrameNanos;
+	}
+
+	/**
+	 * @return the mean time in ns frames started after they were due, how long the room waited for a worker
+	 */
+	public long getAverageLatenessNanos(){
+		long f = frames;
+		return f == 0 ? 0 : latenessNanos / f;
+	}
+
+	public long getWorstLatenessNanos(){
+		return worstLatenessNanos;
+	}
+}
@@ -0,0 +1,1132 @@
+package server;
+
+import java.awt.Point;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import model.GameEventSink;
+import model.Level;
+import model.LevelFactory;
+import model.Map;
+import model.SaveCodec;
+import model.TowerFactory;
+import GUI.EnemyImage;
+import GUI.GameView.towerType;
+import GUI.TowerImage;
+import GameController.Enemy;
+import GameController.Tower;
+import client.GameClient;
+import client.Player;
+import commands.ClientGameLost;
+import commands.ClientGameWon;
+import commands.ClientHPandMoney;
+import commands.ClientLockstepStart;
+import commands.ClientLockstepTurn;
+import commands.ClientMapBackground;
+import commands.ClientMessageCommand;
+import commands.ClientMiniMap;
+import commands.ClientSaveList;
+import commands.ClientSnapshot;
+import commands.ClientTowerAttack;
+import commands.Command;
+import commands.EncodedFrame;
+import commands.PromptMultiplayerLevelCommand;
+import commands.WireCodec;
+import commands.YouArePlayer1Command;
+import commands.changeStateCommand;
+
+/**
+ * One game hosted by the GameServer: its Level, its one or two Players, its GameLoop and the
+ * clients watching it. Updates from the Level go only to this room's clients, and the updates
+ * of a map only to the client playing it; in multiplayer the partner gets a low rate
+ * ClientMiniMap of the map instead. Snapshots are sent at each client's own network rate, set
+ * by the room's SnapshotScheduler, not every tick, and a Map only builds its Image lists on
+ * the ticks something is due.
+ *
+ * A room is only ever run by one RoomScheduler worker at a time, so its game state needs no
+ * locks. Commands from its clients are read on their ClientHandler threads and queued in
+ * the room's inbox, then run on the worker at the start of the room's next frame, before
+ * the model is ticked. A room with no game running is taken out of the RoomScheduler after
+ * its frame and put back by the next command or task to reach its inbox, so a client idle in
+ * the lobby costs no worker time.
+ *
+ * The game is autosaved every GameServer.getAutosaveSeconds() of game time and at the end of
+ * every wave. The save is encoded on the worker between ticks, which is a consistent copy of
+ * the game, and handed to the server's SaveWriter, so the tick never waits on the disk.
+ * Every input applied to the game since it started or was last autosaved is kept in the
+ * room's InputJournal, which starts again from a checkpoint of each new level and each
+ * autosave, so a game lost to a server crash is recovered on load by playing the inputs on
+ * from it, with autosaving turned off as well. Both files are in player 1's directory of the
+ * server's save directory. Unless the server records none, each game is also
+ * recorded as a replay: the same kind of journal, never started again, with a snapshot of the
+ * game every REPLAY_SNAPSHOT_TICKS to seek from. A game the player saves goes in a slot of
+ * player 1's SaveStore, which the menu lists from its index and checks a save against before
+ * it is loaded.
+ *
+ * When the server is set to lockstep co-op, a co-op game is not played in the room at all:
+ * both clients play the Level from the same seed and the room's LockstepRelay only relays
+ * the players' inputs on the GameLoop's ticks, and compares the clients' state hashes.
+ *
+ * Instance Variables:
+ * GameServer server			- The server the room is on, owns the client output streams
+ * int id						- The room #, for logs and statistics
+ * ArrayList<String> clients	- The names of the clients in the room, player 1's first
+ * ConcurrentLinkedQueue<Pending> inbox - Commands and tasks waiting to be run on the room's worker
+ * GameLoop gameLoop			- The room's fixed timestep clock
+ * long wakeAt					- The System.nanoTime the room next needs a worker
+ * AtomicBoolean scheduled		- True while the room is in the RoomScheduler or being run, false while it is parked
+ * boolean closed				- True once every client has left, the scheduler then drops the room
+ * Level levelA					- The level being played, null before one is chosen or once it is over
+ * Player player1, player2		- The players, player2 is null unless a partner has joined
+ * LinkedList<String> messages	- The chat log
+ * HashMap<String, Map> client2Map - Allows the appropriate map to be updated by a call from a given GameClient
+ * HashMap<String, SnapshotEncoder[]> snapshotEncoders - Each client's encoders for player 1's and player 2's maps
+ * WireCodec codec				- Encodes commands broadcast to SHARED_FRAME_RECIPIENTS or more clients, once
+ * SaveCodec saveCodec			- Encodes the level when it is saved
+ * autosave state				- When the level is next autosaved, the wave it was last at, and the encoding times
+ * InputJournal journal			- The inputs applied to the level since it started or was last autosaved
+ * InputJournal replay			- The replay of the level being played, null if none is recorded
+ * SnapshotScheduler snapshotScheduler - When each client is next sent a snapshot, at its own rate
+ * long[] nextMiniMap			- When each map's partner is next sent a ClientMiniMap
+ * LockstepRelay lockstep		- The relay of a lockstep co-op game, null unless one is being played
+ *
+ * Methods:
+ * void submit(String clientName, Command<GameServer> command)
+ * void submit(Runnable task)
+ * void runFrame()
+ * boolean park()
+ * void tickModel(int stepMillis)
+ * void acceptPartner(String clientName, Player partner)
+ * void removeClient(String clientName)
+ * void lockstepReport(String clientName, long tick, long hash, int outcome)
+ * the game methods called by commands, and the GameEventSink methods
+ * statistics getters
+ */
+public class GameRoom implements GameEventSink, Delayed{
+
+	private static final long MINI_MAP_INTERVAL_NANOS = 200 * 1000000L; //Time between ClientMiniMaps sent to a map's partner
+	private static final int SHARED_FRAME_RECIPIENTS = 3; //Fewer clients encode a broadcast each, on their own writers, which costs less
+	private static final String AUTOSAVE_FILE = "autosave.data"; //In player 1's directory
+	private static final String JOURNAL_FILE = "journal.data";
+	private static final long REPLAY_SNAPSHOT_TICKS = 30 * 1000 / GameLoop.STEP_MILLIS; //Ticks between a replay's snapshots
+
+	private final GameServer server;
+	private final int id;
+	private final ArrayList<String> clients = new ArrayList<String>();
+	private final ConcurrentLinkedQueue<Pending> inbox = new ConcurrentLinkedQueue<Pending>();
+	private final GameLoop gameLoop;
+	private volatile long wakeAt;
+	private final AtomicBoolean scheduled = new AtomicBoolean(true); //GameServer schedules a new room
+	private volatile boolean closed;
+	private volatile Level levelA;
+	private Player player1, player2;
+	private LinkedList<String> messages = new LinkedList<String>();	// the chat log
+	private HashMap<String, Map> client2Map = new HashMap<String, Map>();
+	private HashMap<String, SnapshotEncoder[]> snapshotEncoders = new HashMap<String, SnapshotEncoder[]>();
+	private final WireCodec codec = new WireCodec();
+	private final SaveCodec saveCodec = new SaveCodec();
+	private Level autosavedLevel; //The level the autosave counters below are for
+	private long nextAutosaveAt; //The game time in ms of the level's next autosave
+	private int autosavedWave; //The level's wave index at its last autosave
+	private long autosaves; //Checkpoints encoded, whether autosaved or only journaled
+	private long autosaveNanos; //Time spent encoding autosaves on the worker, the only part the tick pays for
+	private long worstAutosaveNanos;
+	private InputJournal journal; //Records inputs to the autosaved level, created at its first checkpoint
+	private InputJournal replay;
+	private Level replayedLevel; //The level the replay is of
+	private long nextReplaySnapshot; //The tick of the replay's next snapshot
+	private final SnapshotScheduler snapshotScheduler; //When each client is next sent a snapshot
+	private final long[] nextMiniMap = new long[2]; //When each map's partner is next sent a ClientMiniMap
+	private LockstepRelay lockstep; //Set instead of levelA in a lockstep co-op game
+	private int fastSpeed = 2; //The GameLoop speed multiplier used in fast mode
+	private boolean paused = false; //True if the game is paused, false if not
+	private boolean fast = false; //True if the game is in fast mode, false if normal speed.
+	private volatile boolean multiplayer = false; //True if the game is in multiplayer mode
+	private boolean waitingFor2ndPlayer = false; //true if waiting for 2nd player
+
+	/**
+	 * A command from a client, or a task from the server, waiting in the inbox
+	 */
+	private static class Pending{
+		private final String clientName;
+		private final Command<GameServer> command;
+		private final Runnable task;
+
+		private Pending(String clientName, Command<GameServer> command, Runnable task){
+			this.clientName = clientName;
+			this.command = command;
+			this.task = task;
+		}
+	}
+
+	/**
+	 * Creates a room for a client that has just connected, who becomes its player 1
+	 * @param server the GameServer hosting the room
+	 * @param id the room #
+	 * @param clientName the name of the client
+	 */
+	public GameRoom(GameServer server, int id, String clientName){
+		this.server = server;
+		this.id = id;
+		this.gameLoop = new GameLoop(this);
+		this.snapshotScheduler = new SnapshotScheduler(server);
+		this.player1 = new Player(clientName, 100, 100);
+		this.clients.add(clientName);
+		this.wakeAt = System.nanoTime();
+	}
+
+	public int getId(){
+		return id;
+	}
+
+	/**
+	 * Queues a command from one of the room's clients to run on the room's worker
+	 * @param clientName the client that sent it
+	 * @param command the command
+	 */
+	public void submit(String clientName, Command<GameServer> command){
+		inbox.add(new Pending(clientName, command, null));
+		wake();
+	}
+
+	/**
+	 * Queues a task from the server to run on the room's worker
+	 * @param task the task
+	 */
+	public void submit(Runnable task){
+		inbox.add(new Pending(null, null, task));
+		wake();
+	}
+
+	/**
+	 * Puts a parked room back in the RoomScheduler to run what was just queued
+	 */
+	private void wake(){
+		if(!scheduled.get() && !closed && scheduled.compareAndSet(false, true)){
+			wakeAt = System.nanoTime(); //Not in the DelayQueue, so its key may change
+			server.getScheduler().add(this);
+		}
+	}
+
+	/**
+	 * Runs the queued commands and then any frames of the game that are due.
+	 * Called by a RoomScheduler worker only.
+	 */
+	public void runFrame(){
+		Pending p;
+		while((p = inbox.poll()) != null){
+			try{
+				if(p.task != null){
+					p.task.run();
+					continue;
+				}
+				GameRoom current = server.getRoom(p.clientName);
+				if(current != null && current != this){
+					current.submit(p.clientName, p.command); //The client moved rooms after sending it
+				}else{
+					server.runCommand(p.clientName, p.command);
+				}
+			}catch(Exception e){
+				e.printStackTrace();
+			}
+		}
+		long now = System.nanoTime();
+		gameLoop.pump(now);
+		if(journal != null){
+			journal.flush(); //This frame's inputs, appended and synced off the worker
+		}
+		if(replay != null){
+			replay.flush();
+		}
+		if(gameLoop.isRunning()){
+			wakeAt = gameLoop.getNextFrame();
+		}else{
+			wakeAt = now; //Only run again at once if park finds a command queued as it parked
+		}
+	}
+
+	/**
+	 * Parks the room if it has no game running, taking it out of the RoomScheduler until the
+	 * next command or task is submitted. Called by a RoomScheduler worker after runFrame.
+	 * @return false if the room must be put back in the scheduler
+	 */
+	public boolean park(){
+		if(gameLoop.isRunning()){
+			return false;
+		}
+		scheduled.set(false);
+		//A command submitted before the set saw the room scheduled and did not wake it
+		return inbox.isEmpty() || !scheduled.compareAndSet(false, true);
+	}
+
+	/**
+	 * Progresses the game logic model by one fixed step, spawn/moves enemies, towers fire, etc.
+	 * Called by the room's GameLoop only.
+	 * @param stepMillis the game time in ms of the step
+	 */
+	public void tickModel(int stepMillis){
+		if(lockstep != null){
+			ClientLockstepTurn turn = lockstep.tick(gameLoop.getSpeedMultiplier()); //The clients play the game
+			if(turn != null){
+				sendCommand(turn);
+			}
+			return;
+		}
+		Level level = levelA;
+		if(level == null){
+			return; //The game ended earlier in this frame
+		}
+		level.tick(stepMillis); //spawn enemies when ready
+		level.getMap1().tick(stepMillis); //towers fire and enemies move when ready
+		if(multiplayer){
+			level.getMap2().tick(stepMillis);
+		}
+		autosaveIfDue(level);
+		recordReplay(level);
+	}
+
+	/**
+	 * Autosaves the level if the autosave interval has passed or a wave has just ended.
+	 * Run on the worker after a tick, so the game is between ticks while it is encoded.
+	 * A new or loaded level is not autosaved straight away, only checkpointed in the journal,
+	 * which it is even with autosaving turned off.
+	 */
+	private void autosaveIfDue(Level level){
+		if(level != levelA){
+			return; //The game ended this tick
+		}
+		int intervalSeconds = server.getAutosaveSeconds();
+		long clock = level.getMap1().getClock();
+		if(level != autosavedLevel){ //A new or loaded level
+			autosavedLevel = level;
+			autosavedWave = level.getWaveIndex();
+			nextAutosaveAt = clock + intervalSeconds * 1000L;
+			checkpoint(level, false);
+			return;
+		}
+		if(journal != null){
+			journal.mark(clock / GameLoop.STEP_MILLIS);
+		}
+		if(intervalSeconds <= 0 || (clock < nextAutosaveAt && level.getWaveIndex() == autosavedWave)){
+			return; //Turned off, or not due
+		}
+		autosavedWave = level.getWaveIndex();
+		nextAutosaveAt = clock + intervalSeconds * 1000L;
+		checkpoint(level, true);
+	}
+
+	/**
+	 * Encodes the level and starts the journal again from it
+	 * @param autosave true to write it to the autosave file as well
+	 */
+	private void checkpoint(Level level, boolean autosave){
+		long start = System.nanoTime();
+		try{
+			byte[] save = saveCodec.encode(level);
+			File dir = getAutosaveFile().getParentFile();
+			if(!dir.isDirectory() && !dir.mkdirs()){
+				throw new IOException("could not create " + dir);
+			}
+			if(autosave){
+				server.getSaveWriter().submit(getAutosaveFile(), save);
+			}
+			if(journal == null){
+				journal = new InputJournal(getJournalFile(), server.getSaveWriter());
+			}
+			journal.checkpoint(level.getMap1().getClock() / GameLoop.STEP_MILLIS, save);
+			journalInput(InputJournal.SPEED, true, gameLoop.getSpeedMultiplier(), 0, 0); //Not part of the save
+		}catch(IOException e){
+			System.out.println("Room " + id + " could not autosave: " + e);
+			journal = null; //Inputs are not journaled without a checkpoint to play them from
+			return;
+		}
+		long nanos = System.nanoTime() - start;
+		autosaves++;
+		autosaveNanos += nanos;
+		worstAutosaveNanos = Math.max(worstAutosaveNanos, nanos);
+	}
+
+	/**
+	 * Starts a replay of a new or loaded level, and adds a snapshot to it every
+	 * REPLAY_SNAPSHOT_TICKS. Run on the worker after a tick.
+	 */
+	private void recordReplay(Level level){
+		if(level != levelA){
+			return; //The game ended this tick
+		}
+		long tick = level.getMap1().getClock() / GameLoop.STEP_MILLIS;
+		boolean starting = level != replayedLevel;
+		if(starting){
+			replayedLevel = level;
+			replay = null;
+			File dir = server.getReplayDirectory();
+			if(dir == null){
+				return;
+			}
+			if(!dir.isDirectory() && !dir.mkdirs()){
+				System.out.println("Room " + id + " could not record a replay in " + dir);
+				return;
+			}
+			String name = player1.getName().replaceAll("[^A-Za-z0-9_-]", "_") + "-" + System.currentTimeMillis() + ".replay";
+			replay = new InputJournal(new File(dir, name), server.getSaveWriter());
+		}else if(replay == null || tick < nextReplaySnapshot){
+			return;
+		}
+		nextReplaySnapshot = tick + REPLAY_SNAPSHOT_TICKS;
+		try{
+			byte[] save = saveCodec.encode(level);
+			if(starting){
+				replay.checkpoint(tick, save); //Holds the level code and seed the replay plays from
+			}else{
+				replay.snapshot(tick, save);
+			}
+		}catch(IOException e){
+			System.out.println("Room " + id + " stopped recording a replay: " + e);
+			replay = null;
+		}
+	}
+
+	/**
+	 * Records an input to the journal, if the level being played has been checkpointed in it,
+	 * and to the replay. Called before the input is applied, between ticks.
+	 */
+	private void journalInput(int action, boolean player1sMap, int a, int b, int c){
+		Level level = levelA;
+		if(level == null){
+			return;
+		}
+		long tick = level.getMap1().getClock() / GameLoop.STEP_MILLIS;
+		if(journal != null && level == autosavedLevel){
+			journal.record(tick, action, player1sMap, a, b, c);
+		}
+		if(replay != null && level == replayedLevel){
+			replay.record(tick, action, player1sMap, a, b, c);
+		}
+	}
+
+	/**
+	 * @return the file player 1's games are autosaved to
+	 */
+	private File getAutosaveFile(){
+		return new File(server.getPlayerDirectory(player1.getName()), AUTOSAVE_FILE);
+	}
+
+	/**
+	 * @return the file player 1's games are journaled to
+	 */
+	private File getJournalFile(){
+		return new File(server.getPlayerDirectory(player1.getName()), JOURNAL_FILE);
+	}
+
+	public long getDelay(TimeUnit unit){
+		return unit.convert(wakeAt - System.nanoTime(), TimeUnit.NANOSECONDS);
+	}
+
+	public int compareTo(Delayed other){
+		if(other instanceof GameRoom){
+			long diff = wakeAt - ((GameRoom) other).wakeAt;
+			return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+		}
+		long diff = getDelay(TimeUnit.NANOSECONDS) - other.getDelay(TimeUnit.NANOSECONDS);
+		return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+	}
+
+	/**
+	 * Adds a client that joined this room's player 1 for multiplayer. Run on the room's worker.
+	 * @param clientName the name of the joining client
+	 * @param partner the joining client's Player
+	 */
+	public void acceptPartner(String clientName, Player partner){
+		clients.add(clientName);
+		player2 = partner;
+		player1.setPartner(player2);
+		player2.setPartner(player1);
+		this.multiplayer = true;
+		this.waitingFor2ndPlayer = false;
+		server.sendTo(clientName, new YouArePlayer1Command(false));
+		//Call Client to prompt for level select
+		Command<GameClient> c = new PromptMultiplayerLevelCommand();
+		this.sendCommand(c);
+	}
+
+	/**
+	 * Removes a client from the room, closing the room and ending its game once no clients are left
+	 * @param clientName the client leaving
+	 */
+	public void removeClient(String clientName){
+		clients.remove(clientName);
+		client2Map.remove(clientName);
+		snapshotEncoders.remove(clientName);
+		snapshotScheduler.remove(clientName);
+		if(clients.isEmpty()){
+			closed = true;
+			stopTimer();
+			removeLevel();
+			lockstep = null;
+		}
+	}
+
+	/**
+	 * Takes a lockstep client's state hash, telling the room's clients if it differs from the
+	 * other client's for the same tick, and ends the game once both clients have played it out
+	 * @param clientName the client that sent it
+	 * @param tick the tick the hash was taken after
+	 * @param hash the hash
+	 * @param outcome ServerLockstepHash.PLAYING, WON or LOST
+	 */
+	public void lockstepReport(String clientName, long tick, long hash, int outcome){
+		if(lockstep == null){
+			return; //The game is over, or was never in lockstep
+		}
+		boolean fromPlayer1 = clientName.equals(player1.getName());
+		if(!lockstep.hash(fromPlayer1, tick, hash)){
+			System.out.println("room " + id + ": lockstep desync at tick " + tick);
+			this.messages.add("Desync at tick " + tick + ", the two games no longer match");
+			updateClientMessages();
+		}
+		if(lockstep.finish(fromPlayer1, outcome)){
+			System.out.println("room " + id + ": " + lockstep.getStats());
+			stopTimer();
+			lockstep = null;
+		}
+	}
+
+	/**
+	 * @return true once every client has left the room
+	 */
+	public boolean isClosed(){
+		return closed;
+	}
+
+	/**
+	 * @return the number of clients in the room
+	 */
+	public int getClientCount(){
+		return clients.size();
+	}
+
+	/**
+	 * @return true if player 1 has asked to play online and no partner has joined yet
+	 */
+	public boolean isWaitingFor2ndPlayer(){
+		return waitingFor2ndPlayer;
+	}
+
+	public void setWaitingFor2ndPlayer(boolean waiting){
+		this.waitingFor2ndPlayer = waiting;
+	}
+
+	/**
+	 * @return the room's GameLoop, for its speed, latency and load statistics
+	 */
+	public GameLoop getGameLoop(){
+		return gameLoop;
+	}
+
+	/**
+	 * @return one line of the room's tick latency and load, for the server's logs
+	 */
+	public String getStats(){
+		long now = System.nanoTime();
+		return "room " + id + ": clients=" + clients.size()
+				+ " running=" + gameLoop.isRunning()
+				+ " steps=" + gameLoop.getStepsRun()
+				+ " tick avg/worst us=" + gameLoop.getAverageFrameNanos() / 1000 + "/" + gameLoop.getWorstFrameNanos() / 1000
+				+ " late avg/worst us=" + gameLoop.getAverageLatenessNanos() / 1000 + "/" + gameLoop.getWorstLatenessNanos() / 1000
+				+ " overruns=" + gameLoop.getOverruns()
+				+ " dropped=" + gameLoop.getFramesDropped()
+				+ " load=" + Math.round(gameLoop.getLoad(now) * 1000) / 10.0 + "%"
+				+ (lockstep != null ? " " + lockstep.getStats() : "")
+				+ " checkpoints=" + autosaves + " encode avg/worst us="
+				+ (autosaves == 0 ? 0 : autosaveNanos / autosaves / 1000) + "/" + worstAutosaveNanos / 1000
+				+ (journal != null ? " " + journal.getStats() : "")
+				+ getSnapshotStats(now);
+	}
+
+	/**
+	 * @return the snapshot rate and actual send Hz of each client, for getStats
+	 */
+	private String getSnapshotStats(long now){
+		StringBuilder stats = new StringBuilder();
+		for(String clientName : new ArrayList<String>(clients)){
+			stats.append("\n  ").append(snapshotScheduler.getStats(clientName, now));
+		}
+		return stats.toString();
+	}
+
+	/**
+	 * @param clientName a client in the room
+	 * @return the snapshots per second the client is actually being sent
+	 */
+	public double getSnapshotSendHz(String clientName){
+		return snapshotScheduler.getSendHz(clientName, System.nanoTime());
+	}
+
+	/**
+	 * Sends a command to every client in the room. With SHARED_FRAME_RECIPIENTS or more clients
+	 * it is encoded once here and every client's connection writes the same bytes.
+	 *
+	 * @param c The command that is to be sent to the room's clients
+	 */
+	public void sendCommand(Command<GameClient> c){
+		sendCommand(c, null);
+	}
+
+	/**
+	 * Sends a command to every client in the room but one
+	 *
+	 * @param c The command that is to be sent
+	 * @param except The client to leave out, or null for none
+	 */
+	private void sendCommand(Command<GameClient> c, String except){
+		int recipients = clients.size() - (except != null && clients.contains(except) ? 1 : 0);
+		if(recipients == 0){
+			return;
+		}
+		EncodedFrame frame = null;
+		if(recipients >= SHARED_FRAME_RECIPIENTS){
+			try{
+				frame = new EncodedFrame(c, codec);
+			}catch(IOException e){
+				e.printStackTrace();
+				return;
+			}
+		}
+		for(String clientName : clients){
+			if(clientName.equals(except)){
+				continue;
+			}
+			if(frame == null){
+				server.sendTo(clientName, c); //Encoded on the client's writer thread
+			}else{
+				server.sendTo(clientName, frame);
+			}
+		}
+	}
+
+	/**
+	 * Sends a command about one of the maps only to the client playing it
+	 *
+	 * @param c The command that is to be sent
+	 * @param fromPlayer1 true for player 1's map, false for player 2's
+	 */
+	private void sendToOwner(Command<GameClient> c, boolean fromPlayer1){
+		String owner = getOwner(fromPlayer1);
+		if(owner != null && clients.contains(owner)){
+			server.sendTo(owner, c);
+		}
+	}
+
+	/**
+	 * @return the name of the client playing one of the maps, null if there is no such player
+	 */
+	private String getOwner(boolean fromPlayer1){
+		Player p = fromPlayer1 ? player1 : player2;
+		return p == null ? null : p.getName();
+	}
+
+	/**
+	 * Writes an UpdateClientCommand to every client in the room.
+	 */
+	public void updateClientMessages() {
+		System.out.println(this.messages.toString() + "\nupdateClients");
+		System.out.println("updateClientsMessages");
+
+		// make an UpdateClientCommmand, try to write to all users in the room
+		LinkedList<String> temp = new LinkedList<String>(messages);
+		Command<GameClient> c = new ClientMessageCommand(temp);
+		this.sendCommand(c);
+	}
+
+	/**
+	 * Starts the room's GameLoop, every GameLoop.STEP_MILLIS it will call tickModel()
+	 * once per unit of the speed multiplier
+	 */
+	public void startTimer(){
+		gameLoop.start();
+	}
+
+	/**
+	 * Stops the room's GameLoop
+	 */
+	public void stopTimer(){
+		gameLoop.stop();
+	}
+
+	/**
+	 * Removes the current level
+	 */
+	public void removeLevel(){
+		levelA = null;
+	}
+
+	/**
+	 * Sets the rooms latest message and calls the method to send it to all its clients
+	 *
+	 * @param message The message to be sent to all clients
+	 * @param clientName The client that sent it
+	 */
+	public void newMessage(String message, String clientName) {
+		//Parse for money transfers
+		if((message.charAt(0) == '$') && multiplayer){
+			// Send this amount of money to the other player
+			int moneyToSend = Integer.parseInt(message.substring(1));
+			boolean p1Sending;
+			if(player1.getName().equals(clientName)){
+				p1Sending = true;
+			}else{
+				p1Sending = false;
+			}
+			if(lockstep != null){
+				lockstep.transfer(p1Sending, moneyToSend); //The clients hold the money
+			}else if(p1Sending){
+				if(player1.getMoney() >= moneyToSend){
+					journalInput(InputJournal.TRANSFER, true, moneyToSend, 0, 0);
+					player1.spendMoney(moneyToSend);
+					player2.gainMoney(moneyToSend);
+					this.messages.add(player1.getName() + "Sent $" + moneyToSend + " to " + player2.getName());
+					this.updateClients(player1.getHealthPoints(), player1.getMoney(), true);
+					this.updateClients(player2.getHealthPoints(), player2.getMoney(), false);
+				}
+			}else{
+				if(player2.getMoney() >= moneyToSend){
+					journalInput(InputJournal.TRANSFER, false, moneyToSend, 0, 0);
+					player2.spendMoney(moneyToSend);
+					player1.gainMoney(moneyToSend);
+					this.messages.add(player2.getName() + "Sent $" + moneyToSend + " to " + player1.getName());
+					this.updateClients(player1.getHealthPoints(), player1.getMoney(), true);
+					this.updateClients(player2.getHealthPoints(), player2.getMoney(), false);
+				}
+			}
+		}
+
+		this.messages.add(clientName + ": " + message);
+		System.out.println(this.messages.toString());
+		updateClientMessages();
+	}
+
+	/**
+	 * Called by each Map every tick, before it builds its Image lists
+	 * @param fromPlayer1 which map
+	 * @return true if the client playing the map is due a snapshot, or its partner a ClientMiniMap
+	 */
+	public boolean isImageUpdateDue(boolean fromPlayer1){
+		long now = System.nanoTime();
+		String owner = getOwner(fromPlayer1);
+		if(owner != null && clients.contains(owner) && server.isConnected(owner) && snapshotScheduler.isDue(owner, now)){
+			return true;
+		}
+		return clients.size() > 1 && now - nextMiniMap[fromPlayer1 ? 0 : 1] >= 0;
+	}
+
+	/**
+	 * This method will be called by map on the ticks isImageUpdateDue() says something is due.
+	 * The client playing the map is sent a ClientSnapshot of only what changed since the last
+	 * one it was sent, at the rate its SnapshotScheduler sets, every other client a
+	 * ClientMiniMap of positions every MINI_MAP_INTERVAL_NANOS.
+	 *
+	 * @param enemies The Server's list of EnemyImages
+	 * @param towers The Server's list of TowerImages
+	 * @param fromPlayer1 true if this update is from the map of Player1, false if from Player2
+	 */
+	public void updateClients(ArrayList<EnemyImage> enemyImages, ArrayList<TowerImage> towerImages, boolean fromPlayer1){
+		long now = System.nanoTime();
+		String owner = getOwner(fromPlayer1);
+		if(owner != null && clients.contains(owner) && snapshotScheduler.isDue(owner, now)){
+			SnapshotEncoder encoder = getSnapshotEncoder(owner, fromPlayer1);
+			boolean dropped = server.takeKeyframeRequest(owner, fromPlayer1);
+			if(dropped){
+				encoder.requestKeyframe(); //The client fell behind and some snapshots were dropped
+			}
+			ClientSnapshot c = encoder.encode(enemyImages, towerImages, now);
+			if(c != null){
+				server.sendTo(owner, c);
+				snapshotScheduler.sent(owner, now, server.getQueueDepth(owner), dropped);
+			}else{
+				snapshotScheduler.skipped(owner, now);
+			}
+		}
+		int side = fromPlayer1 ? 0 : 1;
+		if(clients.size() > 1 && now - nextMiniMap[side] >= 0){
+			nextMiniMap[side] = now + MINI_MAP_INTERVAL_NANOS;
+			sendCommand(new ClientMiniMap(towerImages, enemyImages, fromPlayer1), owner);
+		}
+	}
+
+	/**
+	 * Returns a client's SnapshotEncoder for one of the maps, creating it the first time
+	 */
+	private SnapshotEncoder getSnapshotEncoder(String clientName, boolean fromPlayer1){
+		SnapshotEncoder[] encoders = snapshotEncoders.get(clientName);
+		if(encoders == null){
+			encoders = new SnapshotEncoder[]{new SnapshotEncoder(true), new SnapshotEncoder(false)};
+			snapshotEncoders.put(clientName, encoders);
+		}
+		return encoders[fromPlayer1 ? 0 : 1];
+	}
+
+	/**
+	 * @return true if any client in the room is connected to receive updates
+	 */
+	public boolean hasViewers(){
+		for(String clientName : clients){
+			if(server.isConnected(clientName)){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Sends the given player health and money to clients
+	 *
+	 * @param playerHealth The player's current health
+	 * @param playerMoney The player's current money
+	 */
+	public void updateClients(int playerHealth, int playerMoney, boolean fromPlayer1){
+		Command<GameClient> c = new ClientHPandMoney(playerHealth, playerMoney, fromPlayer1);
+		sendToOwner(c, fromPlayer1);
+	}
+
+	/**
+	 * Notifies clients of an attack, giving the client the TowerType and Location of the attacking tower, and the enemy location
+	 *
+	 * @param type The tower's type
+	 * @param towerLocation The tower's location
+	 * @param enemyLocation The enemy's location
+	 */
+	public void updateClientsOfAttack(towerType type, Point towerLocation, Point enemyLocation, boolean fromPlayer1){
+		Command<GameClient> c = new ClientTowerAttack(type, towerLocation, enemyLocation, fromPlayer1);
+		sendToOwner(c, fromPlayer1);
+	}
+
+	/**
+	 * Send the clients the mapBackground path, the path list, and the number of rows and columns for the map
+	 *
+	 * @param mapBackgroundURL Path to the mapBackground image
+	 * @param path The list representing the path for the enemies to take
+	 * @param numOfRows Number of rows on map
+	 * @param numOfColumns Number of columns on map
+	 */
+	public void updateClientsOfMapBackground(String mapBackgroundURL, LinkedList<LinkedList<Point>> paths, int numOfRows, int numOfColumns, boolean fromPlayer1){
+		Command<GameClient> c = new ClientMapBackground(mapBackgroundURL, paths, numOfRows, numOfColumns, fromPlayer1);
+		sendToOwner(c, fromPlayer1);
+		String owner = getOwner(fromPlayer1);
+		if(owner != null){
+			getSnapshotEncoder(owner, fromPlayer1).requestKeyframe(); //A new map, start its snapshots over
+		}
+	}
+
+	//These methods below will be called by Command objects passed from client to server
+
+	/**
+	 * Uses the LevelFactory to create a level with the specified difficulty and sets it as the current level
+	 * @param name
+	 *
+	 * @param levelCode Int code identifying difficulty level which specifies which actual level to load
+	 */
+	public void createLevel(String name, int levelCode){
+		if(this.levelA == null && multiplayer && lockstep == null && server.isLockstepCoop()){
+			startLockstep(levelCode);
+		}else if(this.levelA == null && lockstep == null){
+			this.levelA = LevelFactory.generateLevel(this.player1, this, levelCode);
+			Command<GameClient> c = new YouArePlayer1Command(true);
+			sendCommand(c);
+		}else{
+			Command<GameClient> c = new YouArePlayer1Command(false);
+			sendCommand(c);
+		}
+	}
+
+	/**
+	 * Starts a lockstep co-op game: both clients are sent the level and a new seed to play it
+	 * from, and the GameLoop is started to pace the turns relaying their inputs
+	 *
+	 * @param levelCode Int code identifying which Level both clients create
+	 */
+	private void startLockstep(int levelCode){
+		lockstep = new LockstepRelay(levelCode, new Random().nextLong());
+		sendCommand(new ClientLockstepStart(levelCode, lockstep.getSeed(), player1.getName(), player2.getName(),
+				LockstepRelay.TURN_TICKS, LockstepRelay.LEAD_TICKS, LockstepRelay.HASH_INTERVAL));
+		this.paused = false;
+		startTimer();
+	}
+
+	/**
+	 * Adds a tower to the map, using the TowerFactory validation with the level
+	 *
+	 * @param type Which tower type is to be placed
+	 * @param loc The location at which to place the tower
+	 */
+	public void addTower(String clientName, towerType type, Point loc) {
+		if(lockstep != null){
+			lockstep.place(clientName.equals(player1.getName()), type, loc.x, loc.y);
+			return;
+		}
+		Map map = client2Map.get(clientName);
+		journalInput(InputJournal.PLACE, map.getPlayer() == player1, type.ordinal(), loc.x, loc.y);
+		Tower towerToAdd = TowerFactory.generateTower(type, map.getPlayer()); // Generate a tower
+		map.addTower(towerToAdd, loc); // Ask the map to add the tower
+	}
+
+	/**
+	 * Sell the tower
+	 *
+	 * @param location The location that the tower to be sold is located
+	 */
+	public void sellTower(String clientName, Point location) {
+		if(lockstep != null){
+			lockstep.sell(clientName.equals(player1.getName()), location.x, location.y);
+			return;
+		}
+		Map map = client2Map.get(clientName);
+		journalInput(InputJournal.SELL, map.getPlayer() == player1, location.x, location.y, 0);
+		map.sellTower(location);
+	}
+
+	/**
+	 * Add and enemy to the map. NOTE: not currently used
+	 *
+	 * @param enemy The enemy that is to be spawned on the map
+	 */
+	public void addEnemy(Enemy enemy, String clientName) {
+		client2Map.get(clientName).spawnEnemy(enemy);
+	}
+
+	/**
+	 * Attempts to upgrade the tower at point p
+	 * @param p
+	 */
+	public void upgradeTower(Point p, String clientName) {
+		if(lockstep != null){
+			lockstep.upgrade(clientName.equals(player1.getName()), p.x, p.y);
+			return;
+		}
+		Map map = client2Map.get(clientName);
+		journalInput(InputJournal.UPGRADE, map.getPlayer() == player1, p.x, p.y, 0);
+		map.upgradeTower(p);
+	}
+
+	/**
+	 * Stop the room's GameLoop, create a GameOver Command object notifying clients of
+	 * game lost, that causes GUI to print out a game over pic and return to the main menu
+	 */
+	public void gameLost() {
+		endJournal();
+		stopTimer();
+		removeLevel();
+		Command<GameClient> c = new ClientGameLost();
+		sendCommand(c);
+	}
+
+	/**
+	 * Stop the room's GameLoop, create a GameOver Command object notifying clients of
+	 * game won, that causes GUI to print out a game won pic and return to the main menu
+	 */
+	public void gameWon() {
+		endJournal();
+		stopTimer();
+		removeLevel();
+		Command<GameClient> c = new ClientGameWon();
+		sendCommand(c);
+	}
+
+	/**
+	 * Records the end of the game in the journal, so it is not recovered, and deletes its
+	 * autosave, so loading the last game does not go back to before it ended
+	 */
+	private void endJournal(){
+		journalInput(InputJournal.END, true, 0, 0, 0);
+		if(levelA != null && levelA == autosavedLevel){
+			server.getSaveWriter().delete(getAutosaveFile()); //Queued after the autosaves before it
+		}
+	}
+
+	/**
+	 * Toggle whether the game is playing normally or is paused, as well as starting the game
+	 */
+	public void playPauseGame() {
+		this.paused = !this.paused; //If game is playing, flip to paused, and vice versa
+		journalInput(InputJournal.PAUSE, true, paused ? 1 : 0, 0, 0);
+		if(paused){
+			this.stopTimer();
+		}else{
+			this.startTimer();
+		}
+		this.changeState(this.paused, this.fast);
+	}
+
+	/**
+	 * Save the state of the current game to the server, in one of player 1's save slots
+	 * @param name the slot, replacing any game saved in it
+	 */
+	public void saveGame(String name) {
+		if(levelA == null){
+			return; //No game to save
+		}
+		try{
+			//Encoded here between ticks, written to disk off the worker
+			SaveStore.Slot slot = server.getSaveStore(player1.getName()).save(name, levelA, saveCodec.encode(levelA));
+			this.messages.add("Saved the game as \"" + slot.getName() + "\"");
+		}catch(Exception e){
+			System.out.println("There was a problem when saving, here is some info:");
+			e.printStackTrace();
+			this.messages.add("Could not save the game: " + e.getMessage());
+		}
+		updateClientMessages();
+	}
+
+	/**
+	 * Loads a saved game, checked against its store's index before it is decoded. One that
+	 * cannot be loaded is reported to the players and a new level started in its place.
+	 * @param name player 1's save slot to load, null for the last game played, from its
+	 * autosave and the journal of the inputs since. A last game that was won or lost is not
+	 * loaded, and a new level is started instead.
+	 */
+	public void loadGame(String name) {
+		try{
+			int speed = 1;
+			if(name != null){
+				byte[] save = server.getSaveStore(player1.getName()).read(name); //Checked against the index first
+				levelA = SaveCodec.decode(save, player1, this);
+			}else{
+				//The journal goes on from the last autosave, so is newer unless the game was autosaved since
+				File file = getAutosaveFile();
+				Level recovered = null;
+				boolean over = false;
+				File journalFile = getJournalFile();
+				if(journalFile.lastModified() > file.lastModified()){
+					try{
+						byte[] inputs = server.getSaveWriter().read(journalFile);
+						recovered = InputJournal.recover(inputs, player1, this);
+						over = recovered == null;
+						speed = InputJournal.lastSpeed(inputs);
+					}catch(IOException e){
+						System.out.println("Room " + id + " could not recover " + journalFile + ": " + e);
+					}
+				}
+				if(over){
+					//Not the autosave either, which is of the game before it ended
+					this.messages.add("The last game is over, starting a new one");
+					updateClientMessages();
+					this.createLevel(player1.getName(), 1);
+					return;
+				}else if(recovered != null){
+					levelA = recovered;
+				}else{
+					byte[] save = server.getSaveWriter().read(file);
+					//The level is generated again from its code and seed, reporting to this room, then the save put back on it
+					levelA = SaveCodec.decode(save, player1, this);
+				}
+			}
+
+			this.setSpeedMultiplier(speed);
+
+			//start the game unpaused, GUI can't be notified of starting paused yet
+			this.paused = false;
+			this.startTimer();
+
+		}catch(Exception e){
+			e.printStackTrace();
+			this.messages.add("Could not load " + (name == null ? "the last game" : "\"" + name + "\"") + ": " + e.getMessage());
+			updateClientMessages();
+			this.createLevel(player1.getName(), 1);
+		}
+	}
+
+	/**
+	 * Sends a client the list of its saves, read from its store's index only
+	 * @param clientName the client
+	 */
+	public void listSaves(String clientName) {
+		List<SaveStore.Slot> slots;
+		try{
+			slots = server.getSaveStore(clientName).list();
+		}catch(IOException e){
+			System.out.println("Room " + id + " could not list the saves of " + clientName + ": " + e);
+			slots = new ArrayList<SaveStore.Slot>();
+		}
+		server.sendTo(clientName, new ClientSaveList(slots));
+	}
+
+	/**
+	 * Changes game behavior to play at a faster rate
+	 */
+	public void speedUp() {
+		setSpeedMultiplier(fastSpeed);
+	}
+
+	/**
+	 * Changes game behavior to play at the default rate
+	 */
+	public void normalSpeed() {
+		setSpeedMultiplier(1);
+	}
+
+	/**
+	 * Sets how many fixed steps the GameLoop runs per frame. Faster speeds run more steps
+	 * of the same length, so the game plays out exactly the same, only sooner.
+	 * @param multiplier 1 for normal speed, up to GameLoop.MAX_SPEED
+	 */
+	public void setSpeedMultiplier(int multiplier){
+		gameLoop.setSpeedMultiplier(multiplier);
+		journalInput(InputJournal.SPEED, true, gameLoop.getSpeedMultiplier(), 0, 0);
+		this.fast = gameLoop.getSpeedMultiplier() > 1;
+		if(this.fast){
+			this.fastSpeed = gameLoop.getSpeedMultiplier();
+		}
+		changeState(this.paused, this.fast);
+	}
+
+	/**
+	 * Notifies the room's clients that the state has changed based on a message received from a client
+	 *
+	 * @param paused
+	 * @param fast
+	 */
+	public void changeState(Boolean paused, Boolean fast){
+		Command<GameClient> c = new changeStateCommand(paused, fast);
+		this.sendCommand(c);
+	}
+
+	/**
+	 * Checks if multiplayer mode is in effect
+	 * @return multiplayer, a boolean
+	 */
+	public boolean isMultiplayer(){
+		return this.multiplayer;
+	}
+
+	/**
+	 * Called by Map every time it is instantiated
+	 * @param s the String of GameClient's name
+	 * @param m the Map
+	 */
+	public void putClientToMap(String s, Map m){
+		this.client2Map.put(s, m);
+	}
+
+	/**
+	 * Return's player1, useful for Map to check if it is Map1 or not
+	 * @return player1
+	 */
+	public Player getPlayer1() {
+		return player1;
+	}
+
+	/**
+	 * @return the level being played, or null
+	 */
+	public Level getLevel(){
+		return levelA;
+	}
+}
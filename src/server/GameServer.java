@@ -1,429 +1,504 @@
 package server;
 
 import java.awt.Point;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import java.io.File;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.Serializable;
-import java.net.ServerSocket;
-import java.net.Socket;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.Timer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import model.Level;
-import model.LevelFactory;
-import model.Map;
-import model.TowerFactory;
-import GUI.EnemyImage;
+import GUI.SpriteRegistry;
 import GUI.GameView.towerType;
-import GUI.TowerImage;
 import GameController.Enemy;
-import GameController.Tower;
 import client.GameClient;
 import client.Player;
-import commands.ClientGameLost;
-import commands.ClientGameWon;
-import commands.ClientHPandMoney;
-import commands.ClientMapBackground;
-import commands.ClientMessageCommand;
-import commands.ClientTowerAttack;
-import commands.ClientUpdate;
+import client.Transport;
+import commands.ClientSpriteTable;
 import commands.Command;
 import commands.DisconnectCommand;
-import commands.PromptMultiplayerLevelCommand;
-import commands.YouArePlayer1Command;
-import commands.changeStateCommand;
+import commands.EncodedFrame;
 
 /**
  * This class is the server side of the tower defense game. The server keeps track of all client outputs, and manages
- * communication between them. It also takes care of the global timer that synchronizes the clients' games.
+ * communication between them. Every game is hosted in its own GameRoom, with its own Level, players and GameLoop,
+ * and a RoomScheduler runs all the rooms on a fixed pool of worker threads, one per core. Client connections are
+ * served by a NetworkServer, IO_THREADS selector threads however many clients are connected. A GameClient in the
+ * same JVM, for single player, connects through openLoopback() instead, which hands it command objects with no
+ * socket or encoding; a server started with the port LOCAL_ONLY serves only such clients and binds no port.
+ * Rooms encode their saves on their workers and a SaveWriter thread writes them, their input
+ * journals and the replays of their games to disk. Each player's saves are kept in a SaveStore
+ * of their own.
+ * 
+ * A client gets a room of its own as player 1 when it connects, and moves into another client's room when it
+ * joins that client for multiplayer. Commands a client sends are queued on its room and run on the room's worker,
+ * the server methods they call find the room through the client whose command is running.
  * 
  * @author Brody Painter
  */
 public class GameServer implements Serializable{
 
 	private static final long serialVersionUID = 2161825695191929679L;
-	private ServerSocket socket; // the server socket
-	private LinkedList<String> messages = new LinkedList<String>();	// the chat log
-	private HashMap<String, ObjectOutputStream> outputs; // map of all connected users' output streams
-	private Timer timer; //The master timer
-	private Player player1, player2;
-	//private Vector<Enemy> enemyList; //Use currentLevel.getMap().getEnemies() and similar for towers
-	//private Vector<Tower> towerList;
-	//private Map map = new Level0Map(); //If you need the map use currentLevel.getMap()
-	private Level levelA; //to be set by a command object from server
+	public static final int PORT = 9001;
+	public static final int LOCAL_ONLY = -1; // the port of a server with loopback clients only
+	public static final int IO_THREADS = 2; // threads serving every client connection
+	public static final long SHUTDOWN_GRACE_MILLIS = 2000; // how long shutdown waits for queued output
+	public static final int SNAPSHOT_HZ = 20; // default snapshots per second sent to a client that keeps up
+	public static final int MAX_SNAPSHOT_HZ = 1000 / GameLoop.STEP_MILLIS; // one per frame at normal speed
+	public static final int AUTOSAVE_SECONDS = 30; // default game time between a room's autosaves, 0 for none
+	public static final String REPLAY_DIRECTORY = "replays"; // default directory the rooms record their games' replays in
+	public static final String SAVE_DIRECTORY = "saves"; // default directory of the players' SaveStores, one directory each
+	private transient NetworkServer network; // the listening socket and client connections
+	private transient ConcurrentHashMap<String, ClientConnection> connections; // map of all connected users' outbound queues
+	private transient ConcurrentHashMap<String, GameRoom> clientRooms; // the room each connected user is in
+	private transient CopyOnWriteArrayList<GameRoom> rooms; // every open room
+	private transient RoomScheduler scheduler; // the workers that run the rooms
+	private transient SaveWriter saveWriter; // writes every room's saves to disk off the workers
+	private transient HashMap<File, SaveStore> saveStores; // the players' SaveStores opened so far, by directory
+	private transient ThreadLocal<String> currentClient; // the client whose command a worker is running
+	private transient GameRoom waitingRoom; // the room of a player waiting for a multiplayer partner
+	private transient AtomicInteger nextRoomId = new AtomicInteger(1);
+	private transient volatile int snapshotRate = SNAPSHOT_HZ; // the network rate, independent of the tick rate
+	private transient volatile boolean lockstepCoop; // co-op games are played on the clients, see LockstepRelay
+	private transient volatile int autosaveSeconds = AUTOSAVE_SECONDS; // game time between a room's autosaves
+	private transient volatile File replayDirectory = new File(REPLAY_DIRECTORY); // where replays are recorded, null for none
+	private transient volatile File saveDirectory = new File(SAVE_DIRECTORY); // where the players' SaveStores are
 	private GameServer thisServer = this; //A reference to itself, the server
-	private int timePerTick = 20; //The time in ms per tick, will be set to 20 ms (50 fps) after debugging
-	private int tickDiluter = 1; //The multiplier of the timePerTick, 1 on normal speed, 2 on fast
-	private boolean paused = false; //True if the game is paused, false if not
-	private boolean fast = false; //True if the game is in fast mode, false if normal speed.
-	private boolean multiplayer = false; //True if the game is in multiplayer mode
-	private boolean waitingFor2ndPlayer = false; //true if waiting for 2nd player
-	private HashMap<String, Map> client2Map; //Allows the appropriate map to be updated by a call from a given GameClient
 	
 	/**
-	 *	This thread reads and executes commands sent by a client
-	 * 
-	 * @author brodypainter
+	 * Starts the room workers and the network on port 9001
 	 */
-	private class ClientHandler implements Runnable{
-		private ObjectInputStream input; // the input stream from the client
-		private String name;
-		
-		/**
-		 * Constructor for ClientHandler
-		 * 
-		 * @param input The ObjectInputStream object for a specific client
-		 * @param name The String user name associated with the input
-		 */
-		public ClientHandler(ObjectInputStream input, String name){
-			this.input = input;
-			this.name = name;
+	public GameServer(){
+		this(PORT);
+	}
+	
+	/**
+	 * Starts the room workers and the network
+	 * @param port the port to listen on, 0 for any free port, LOCAL_ONLY for no network
+	 */
+	public GameServer(int port){
+		this.connections = new ConcurrentHashMap<String, ClientConnection>(); // setup this hashmap
+		this.clientRooms = new ConcurrentHashMap<String, GameRoom>();
+		this.rooms = new CopyOnWriteArrayList<GameRoom>();
+		this.currentClient = new ThreadLocal<String>();
+		this.scheduler = new RoomScheduler(Runtime.getRuntime().availableProcessors());
+		this.scheduler.start();
+		this.saveWriter = new SaveWriter();
+		this.saveWriter.start();
+		this.saveStores = new HashMap<File, SaveStore>();
+		if(port == LOCAL_ONLY){
+			return; // clients connect through openLoopback
 		}
 		
-		/**
-		 * 
-		 */
-		public void run() {
-			try{
-				while(true){
-					
-					// read a command from the client, execute on the server
-					@SuppressWarnings("unchecked")
-					Command<GameServer> c = (Command<GameServer>)input.readObject();
-					System.out.println("\t\t Command " + c + " received");
-					c.execute(thisServer);
-					
-					// terminate if client is disconnecting
-					if (c instanceof DisconnectCommand){
-						input.close();
-						return;
-					}
-				}
-			} catch(ArrayIndexOutOfBoundsException e){
-				e.printStackTrace();
-			} catch(IOException e){
-				//e.printStackTrace(); // Will be thrown if client does not safely disconnect, then we will remove the client
-				levelA = null; // Remove the current level
-				GameServer.this.outputs.remove(name); // Remove this client from the outputs list
-				System.out.println("\t\t This client did not safely disconnect");
-			}catch(Exception e){
-				System.out.println("Something else is still wrong!");
-				e.printStackTrace();
-			}
+		try{
+			// start listening, a few I/O threads serve every client
+			network = new NetworkServer(this, port, IO_THREADS);
+			network.start();
+			System.out.println("GameServer started on port " + network.getPort());
+		}
+		catch(IOException e){
+			e.printStackTrace();
 		}
 	}
 	
 	/**
-	 * This thread listens for and sets up connections to new clients
-	 * @author brodypainter
-	 *
-	 */
-	private class ClientAccepter implements Runnable{
-		public void run() {
-			while(true){
-				try{
-					//check if GameServer is full, if so do not accept client
-					if(player2 != null){
-						//TODO:reject client, will this do it?
-						break;
-					}
-					
-					// accept a new client, get output & input streams
-					System.out.println("\t socket accepter");
-					Socket s = socket.accept();
-					ObjectOutputStream output = new ObjectOutputStream(s.getOutputStream());
-					ObjectInputStream input = new ObjectInputStream(s.getInputStream());
-					
-					// read the client's name
-					String clientName = (String)input.readObject();
-					
-					
-					// create the single player, will need to change this for multiplayer games
-					// for multiplayer, this will need to check if the player already exists
-					
-					//TODO: Find a way to set the GameClient with player1's name's boolean isPlayer1Client to true
-					//and set it false on other client
-					if(player1 == null){
-						player1 = new Player(clientName, 100, 100);
-						output.writeObject(player1);
-						output.writeObject(true); //Sets isPlayer1Client to true
-					}else{
-						player2 = new Player(clientName, 100, 100);
-						output.writeObject(player2);
-						output.writeObject(false); //Sets isPlayer1Client to true
-					}
-										
-//					System.out.println("Player Send Try");
-//					System.out.println("Player is: " + player1.toString());
-//					output.writeObject(player1);
-//					System.out.println("Player Send Success");
-					
-					// map client name to output stream
-					outputs.put(clientName, output);
-					
-					
-					// spawn a thread to handle communication with this client
-					new Thread(new ClientHandler(input, clientName)).start();
-					
-					// add a notification message to the chat log
-					System.out.println("\t new client: " + clientName);
-					
-					// for now we wont send a message
-					//newMessage(clientName + " connected");
-				}catch(Exception e){
-					e.printStackTrace();
-				}
-			}
+	 * Connects a GameClient in this JVM. Commands pass both ways as objects, through the
+	 * returned Transport and a LoopbackConnection, without a socket or any encoding.
+	 * @return the client's end of the connection, the client writes its name first
+	 */
+	public Transport openLoopback(){
+		return new LoopbackConnection(thisServer).getClientTransport();
+	}
+	
+	/**
+	 * Called by a client's connection once it has sent its name. Every client starts as
+	 * player 1 of a room of its own.
+	 * @param connection the client's connection
+	 * @param clientName the name it sent
+	 * @return false if the name is in use, the connection is then closed
+	 */
+	boolean clientConnected(ClientConnection connection, String clientName){
+		if(connections.putIfAbsent(clientName, connection) != null){
+			System.out.println("\t rejected client, name in use: " + clientName);
+			connection.close();
+			return false;
 		}
+		GameRoom room = new GameRoom(thisServer, nextRoomId.getAndIncrement(), clientName);
+		connection.send(room.getPlayer1());
+		connection.send(true); //Sets isPlayer1Client to true
+		connection.send(new ClientSpriteTable(SpriteRegistry.getEnemySprites(), SpriteRegistry.getTowerSprites()));
+		
+		// map client name to its room
+		clientRooms.put(clientName, room);
+		rooms.add(room);
+		scheduler.add(room);
+		System.out.println("\t new client: " + clientName + " in room " + room.getId());
+		return true;
 	}
 	
 	/**
-	 * 
+	 * Called by a client's connection with each command it reads, queues the command on the client's room
+	 * @param clientName the client
+	 * @param c the command
 	 */
-	public GameServer(){
-		this.outputs = new HashMap<String, ObjectOutputStream>(); // setup this hashmap
-		this.client2Map = new HashMap<String, Map>();
-		
-		try{
-			// start a new server on port 9001
-			socket = new ServerSocket(9001);
-			System.out.println("GameServer started on port 9001");
-			
-			// spawn a client accepter thread
-			new Thread(new ClientAccepter()).start();
-		}
-		catch(Exception e){
-			e.printStackTrace();
+	void commandReceived(String clientName, Command<GameServer> c){
+		System.out.println("\t\t Command " + c + " received");
+		GameRoom room = clientRooms.get(clientName);
+		if(room != null){
+			room.submit(clientName, c);
 		}
 	}
-
+	
 	/**
-	 * Writes an UpdateClientCommand to every connected user.
+	 * Shuts the server down gracefully: stops accepting clients and reading commands, stops
+	 * the rooms, then gives each client up to SHUTDOWN_GRACE_MILLIS to be sent what was
+	 * already queued for it before closing every connection
 	 */
-	public void updateClientMessages() {
-		System.out.println(this.messages.toString() + "\nupdateClients");
-		System.out.println(this.outputs.toString());
-		System.out.println("updateClientsMessages");
-		
-		// make an UpdateClientCommmand, try to write to all connected users
-		LinkedList<String> temp = new LinkedList<String>(messages);
-		Command<GameClient> c = new ClientMessageCommand(temp);
-		this.sendCommand(c);
+	public void shutdown(){
+		System.out.println("GameServer shutting down");
+		if(network != null){
+			network.stopAccepting(); // stop taking commands before stopping the rooms
+		}
+		scheduler.shutdown(SHUTDOWN_GRACE_MILLIS); // no room journals or autosaves after this
+		saveWriter.shutdown(); // the rooms' last saves are written out
+		if(network != null){
+			network.shutdown(SHUTDOWN_GRACE_MILLIS);
+		}
+		for(ClientConnection connection : connections.values()){
+			connection.close(); // loopback clients, they have nothing left to write out
+		}
 	}
 	
 	/**
-	 * Starts the master Timer, every timePerTick it will call this GameServer to
-	 * call the tickClients() command
-	 * 
-	 * Set GameServer timePerTick as needed
+	 * @return the port the server is listening on
 	 */
-	public void startTimer(){
-		TimerTaskUpdate task = new TimerTaskUpdate(thisServer);
-		this.timer = new Timer();
-		timer.scheduleAtFixedRate(task, 0, timePerTick);
+	public int getPort(){
+		return network == null ? -1 : network.getPort();
 	}
 	
 	/**
-	 * Progresses the game logic model, runs game loop, spawn/moves enemies, towers fire, etc.
+	 * Start this GameServer
+	 * @param args Command Line args, "lockstep" for lockstep co-op games, "autosave=<seconds>"
+	 * for the game time between autosaves, 0 for none with inputs still journaled, and
+	 * "replays=<directory>" for where replays are recorded, "replays=off" for none, and
+	 * "saves=<directory>" for where the players' saves are kept
 	 */
-	public void tickModel(){
-		levelA.tick(this.timePerTick*this.tickDiluter); //spawn enemies when ready
-		levelA.getMap1().tick(this.timePerTick*this.tickDiluter); //towers fire and enemies move when ready
-		if(multiplayer){
-			levelA.getMap2().tick(this.timePerTick*this.tickDiluter);
+	public static void main(String[] args){
+		GameServer server = new GameServer();
+		for(String arg : args){
+			if(arg.equals("lockstep")){
+				server.setLockstepCoop(true);
+			}else if(arg.startsWith("autosave=")){
+				server.setAutosaveSeconds(Integer.parseInt(arg.substring("autosave=".length())));
+			}else if(arg.startsWith("replays=")){
+				String dir = arg.substring("replays=".length());
+				server.setReplayDirectory(dir.equals("off") ? null : new File(dir));
+			}else if(arg.startsWith("saves=")){
+				server.setSaveDirectory(new File(arg.substring("saves=".length())));
+			}
 		}
 	}
 	
 	/**
-	 * Stops the GameServer's Timer
+	 * Runs a command from a client on the calling room worker, so the server methods it
+	 * calls act on that client's room
+	 * @param clientName the client that sent the command
+	 * @param command the command
 	 */
-	public void stopTimer(){
-		timer.cancel();
+	void runCommand(String clientName, Command<GameServer> command){
+		currentClient.set(clientName);
+		try{
+			command.execute(this);
+		}finally{
+			currentClient.remove();
+		}
 	}
 	
+	/**
+	 * @return the room of the client whose command is running on this thread
+	 */
+	private GameRoom currentRoom(){
+		String clientName = currentClient.get();
+		GameRoom room = clientName == null ? null : clientRooms.get(clientName);
+		if(room == null){
+			throw new IllegalStateException("No room for the command being run");
+		}
+		return room;
+	}
 	
 	/**
-	 * Removes the current level
+	 * @param clientName a connected client
+	 * @return the room the client is in, or null if it is not connected
 	 */
-	public void removeLevel(){
-		//TODO let the server determine which level to remove
-		levelA = null;
+	public GameRoom getRoom(String clientName){
+		return clientRooms.get(clientName);
 	}
 	
 	/**
-	 * Start this GameServer
-	 * @param args Command Line args
+	 * @return every open room, for their statistics
 	 */
-	public static void main(String[] args){
-		new GameServer();
+	public ArrayList<GameRoom> getRooms(){
+		return new ArrayList<GameRoom>(rooms);
 	}
-
+	
 	/**
-	 * Disconnects a given user from the server gracefully
-	 * @param clientName	User name to disconnect
+	 * @return the tick latency and load of every open room, one per line
 	 */
-	public void disconnect(String clientName) {
-		try{
-			outputs.get(clientName).close(); // close output stream
-			outputs.remove(clientName); // remove from map
-		} catch(Exception e){
-			e.printStackTrace();
+	public String getRoomStats(){
+		StringBuilder stats = new StringBuilder();
+		stats.append(rooms.size()).append(" rooms on ").append(scheduler.getWorkerCount()).append(" workers\n");
+		for(GameRoom room : rooms){
+			stats.append(room.getStats()).append('\n');
 		}
+		stats.append(saveWriter.getStats()).append('\n');
+		return stats.toString();
 	}
 	
 	/**
-	 * Sets the servers latest message and calls the method to send it to all clients
-	 * 
-	 * @param message The message to be sent to all clients
-	 * @param message2 
+	 * @param clientName a client name
+	 * @return true if the client is connected
 	 */
-
-	public void newMessage(String message, String clientName) {
-		//Parse for money transfers
-		if((message.charAt(0) == '$') && multiplayer){
-			// Send this amount of money to the other player
-			int moneyToSend = Integer.parseInt(message.substring(1));
-			boolean p1Sending;
-			if(player1.getName().equals(clientName)){
-				p1Sending = true;
-			}else{
-				p1Sending = false;
-			}
-			if(p1Sending){
-				if(player1.getMoney() >= moneyToSend){
-					player1.spendMoney(moneyToSend);
-					player2.gainMoney(moneyToSend);
-					this.messages.add(player1.getName() + "Sent $" + moneyToSend + " to " + player2.getName());
-					this.updateClients(player1.getHealthPoints(), player1.getMoney(), true);
-					this.updateClients(player2.getHealthPoints(), player2.getMoney(), false);
-				}
-			}else{
-				if(player2.getMoney() >= moneyToSend){
-					player2.spendMoney(moneyToSend);
-					player1.gainMoney(moneyToSend);
-					this.messages.add(player2.getName() + "Sent $" + moneyToSend + " to " + player1.getName());
-					this.updateClients(player1.getHealthPoints(), player1.getMoney(), true);
-					this.updateClients(player2.getHealthPoints(), player2.getMoney(), false);
-				}
-			}
-		}
-		
-		this.messages.add(clientName + ": " + message);
-		System.out.println(this.messages.toString());
-		updateClientMessages();
+	public boolean isConnected(String clientName){
+		return connections.containsKey(clientName);
 	}
 	
 	/**
-	 * Executes the appropriate method on the server as dictated by the command argument
+	 * Queues a command for one client. This never blocks, the client's ClientConnection
+	 * is written out by its NetworkServer I/O thread, or read by a loopback client's own thread.
 	 * 
-	 * @param command The command that was received
+	 * @param clientName the client to send to
+	 * @param c The command that is to be sent
 	 */
-	public void execute(Command<GameServer> command){
-		command.execute(this);
+	public void sendTo(String clientName, Command<GameClient> c){
+		ClientConnection connection = connections.get(clientName);
+		if(connection != null){
+			connection.send(c);
+		}
 	}
 	
 	/**
-	 * Sends a command to the clients
+	 * Queues a frame already encoded for many clients, see GameRoom.sendCommand
 	 * 
-	 * @param c The command that is to be sent to all of the clients
-	 */
-	public void sendCommand(Command<GameClient> c){
-		if(!outputs.isEmpty()){
-			for (ObjectOutputStream out : outputs.values()){
-				try{
-					//System.out.println(out.toString());
-					//System.out.println("Command:\n" + c.toString());
-					out.writeObject(c); // Write the command out
-				}catch(Exception e){
-					e.printStackTrace();
-				}
-			}
+	 * @param clientName the client to send to
+	 * @param frame the encoded command
+	 */
+	public void sendTo(String clientName, EncodedFrame frame){
+		ClientConnection connection = connections.get(clientName);
+		if(connection != null){
+			connection.send(frame);
 		}
 	}
 	
+	/**
+	 * Returns true once if some of a client's snapshots for a map were dropped because it
+	 * fell behind, so the next one sent must be a keyframe
+	 * @param clientName the client
+	 * @param fromPlayer1 which map
+	 */
+	public boolean takeKeyframeRequest(String clientName, boolean fromPlayer1){
+		ClientConnection connection = connections.get(clientName);
+		return connection != null && connection.takeKeyframeRequest(fromPlayer1);
+	}
 	
-	//These following "notify" methods will be called by Map every time model changes in a way
-	//that requires animation, such as an enemy spawning, moving tiles, dying, or a
-	//tower being created, removed, upgraded, or removed.
-	//When Player is called to notify it will tell its GameServer to 
+	/**
+	 * @param clientName a client
+	 * @return the number of commands waiting to be written to the client, 0 if it is not connected
+	 */
+	public int getQueueDepth(String clientName){
+		ClientConnection connection = connections.get(clientName);
+		return connection == null ? 0 : connection.getQueueDepth();
+	}
 	
 	/**
-	 * This method will be called by map every time a tick occurs
-	 * 
-	 * @param enemies The Server's list of EnemyImages
-	 * @param towers The Server's list of TowerImages
-	 * @param fromPlayer1 true if this update is from the map of Player1, false if from Player2
+	 * @return the snapshots per second sent to clients that keep up
 	 */
-	public void updateClients(ArrayList<EnemyImage> enemyImages, ArrayList<TowerImage> towerImages, boolean fromPlayer1){
-		//System.out.println(enemyImages.toString());
-		ClientUpdate c = new ClientUpdate(enemyImages, towerImages, fromPlayer1);
-		sendCommand(c);
+	public int getSnapshotRate(){
+		return snapshotRate;
 	}
 	
 	/**
-	 * Sends the given player health and money to clients
-	 * 
-	 * @param playerHealth The player's current health
-	 * @param playerMoney The player's current money
+	 * Sets the network rate of every room, independent of the GameLoop's tick rate. Clients
+	 * whose output backs up are sent fewer, see SnapshotScheduler.
+	 * @param hz snapshots per second, clamped to SnapshotScheduler.MIN_HZ to MAX_SNAPSHOT_HZ
 	 */
-	public void updateClients(int playerHealth, int playerMoney, boolean fromPlayer1){
-		Command<GameClient> c = new ClientHPandMoney(playerHealth, playerMoney, fromPlayer1);
-		sendCommand(c);
+	public void setSnapshotRate(int hz){
+		snapshotRate = Math.max(SnapshotScheduler.MIN_HZ, Math.min(MAX_SNAPSHOT_HZ, hz));
 	}
 	
 	/**
-	 * Notifies clients of an attack, giving the client the TowerType and Location of the attacking tower, and the enemy location
-	 * 
-	 * @param type The tower's type
-	 * @param towerLocation The tower's location 
-	 * @param enemyLocation The enemy's location
+	 * @return true if new co-op games are played in lockstep on the clients
 	 */
-	public void updateClientsOfAttack(towerType type, Point towerLocation, Point enemyLocation, boolean fromPlayer1){
-		Command<GameClient> c = new ClientTowerAttack(type, towerLocation, enemyLocation, fromPlayer1);
-		sendCommand(c);
+	public boolean isLockstepCoop(){
+		return lockstepCoop;
 	}
 	
 	/**
-	 * Send the clients the mapBackground path, the path list, and the number of rows and columns for the map
-	 * 
-	 * @param mapBackgroundURL Path to the mapBackground image
-	 * @param path The list representing the path for the enemies to take
-	 * @param numOfRows Number of rows on map
-	 * @param numOfColumns Number of columns on map
+	 * Sets whether co-op games created from now on stream both maps from the server, or are
+	 * played by both clients from a shared seed with the server only relaying the players'
+	 * inputs, see LockstepRelay
+	 * @param lockstep true for lockstep
+	 */
+	public void setLockstepCoop(boolean lockstep){
+		lockstepCoop = lockstep;
+	}
+
+	/**
+	 * @return the game time between a room's autosaves in seconds, 0 if rooms do not autosave
+	 */
+	public int getAutosaveSeconds(){
+		return autosaveSeconds;
+	}
+
+	/**
+	 * Sets how often every room autosaves its game, besides at the end of each wave
+	 * @param seconds game time between autosaves, 0 to turn autosaving off. Inputs are journaled
+	 * from the start of each level either way.
+	 */
+	public void setAutosaveSeconds(int seconds){
+		autosaveSeconds = Math.max(0, seconds);
+	}
+
+	/**
+	 * @return the directory the rooms record a replay of every game in, null if they record none
+	 */
+	public File getReplayDirectory(){
+		return replayDirectory;
+	}
+
+	/**
+	 * Sets where the rooms record replays, from each room's next game on
+	 * @param directory the directory, created when the first replay is recorded, or null for no replays
+	 */
+	public void setReplayDirectory(File directory){
+		replayDirectory = directory;
+	}
+
+	/**
+	 * Sets where the players' saves are kept, for the stores opened from then on
+	 * @param directory the directory holding a directory of saves for each player
+	 */
+	public void setSaveDirectory(File directory){
+		saveDirectory = directory;
+	}
+
+	/**
+	 * @param playerName the player
+	 * @return the player's directory in the save directory, which holds their SaveStore, autosave
+	 * and journal, and is created with the first file written to it
+	 */
+	File getPlayerDirectory(String playerName){
+		return new File(saveDirectory, playerName.replaceAll("[^A-Za-z0-9_-]", "_"));
+	}
+
+	/**
+	 * Opens a player's SaveStore the first time it is asked for, reading only its index
+	 * @param playerName the player
+	 * @return the store, the same one for every room the player plays in
+	 * @throws IOException if its index cannot be read
+	 */
+	public synchronized SaveStore getSaveStore(String playerName) throws IOException{
+		File dir = getPlayerDirectory(playerName);
+		SaveStore store = saveStores.get(dir);
+		if(store == null){
+			store = new SaveStore(dir, saveWriter);
+			saveStores.put(dir, store);
+		}
+		return store;
+	}
+
+	/**
+	 * @return the workers that run the rooms
 	 */
-	public void updateClientsOfMapBackground(String mapBackgroundURL, LinkedList<LinkedList<Point>> paths, int numOfRows, int numOfColumns, boolean fromPlayer1){
-		Command<GameClient> c = new ClientMapBackground(mapBackgroundURL, paths, numOfRows, numOfColumns, fromPlayer1);
-		sendCommand(c);
+	RoomScheduler getScheduler(){
+		return scheduler;
+	}
+
+	/**
+	 * @return the writer that puts the rooms' saves on disk
+	 */
+	public SaveWriter getSaveWriter(){
+		return saveWriter;
 	}
 	
+	/**
+	 * @return the outbound queue depth, drops, write latency and snapshot send Hz of every client, one per line
+	 */
+	public String getClientStats(){
+		StringBuilder stats = new StringBuilder();
+		for(ClientConnection connection : connections.values()){
+			stats.append(connection.getStats());
+			GameRoom room = connection.getName() == null ? null : clientRooms.get(connection.getName());
+			if(room != null){
+				stats.append(" snapshotHz=").append(Math.round(room.getSnapshotSendHz(connection.getName()) * 10) / 10.0);
+			}
+			stats.append('\n');
+		}
+		return stats.toString();
+	}
+	
+	/**
+	 * Called when a client's connection fails, reading or writing. Closes the connection and
+	 * has the client leave its room, ending its game if no one is left.
+	 * @param clientName the client
+	 * @return true if the client was still connected
+	 */
+	boolean connectionLost(String clientName){
+		ClientConnection connection = connections.remove(clientName);
+		if(connection == null){
+			return false;
+		}
+		connection.close();
+		GameRoom room = clientRooms.get(clientName);
+		if(room != null){
+			room.submit(clientName, new DisconnectCommand(clientName));
+		}
+		return true;
+	}
+
+	/**
+	 * Disconnects a given user from the server gracefully
+	 * @param clientName	User name to disconnect
+	 */
+	public void disconnect(String clientName) {
+		ClientConnection connection = connections.remove(clientName); // remove from map
+		if(connection != null){
+			connection.close(); // close output stream
+		}
+		GameRoom room = clientRooms.remove(clientName);
+		if(room != null){
+			room.removeClient(clientName);
+			if(room.isClosed()){
+				rooms.remove(room);
+			}
+		}
+	}
 	
+	/**
+	 * Sets the room's latest message and calls the method to send it to all its clients
+	 * 
+	 * @param message The message to be sent to all clients
+	 * @param clientName The client that sent it
+	 */
+	public void newMessage(String message, String clientName) {
+		currentRoom().newMessage(message, clientName);
+	}
 	
-	//These methods below will be called by Command objects passed from client to server
+	//These methods below will be called by Command objects passed from client to server,
+	//on the worker of the sending client's room
 	
 	/**
 	 * Uses the LevelFactory to create a level with the specified difficulty and sets it as the current level
+	 * of the client's room
 	 * @param name 
 	 * 
 	 * @param levelCode Int code identifying difficulty level which specifies which actual level to load
 	 */
 	public void createLevel(String name, int levelCode){
-		if(this.levelA == null){
-			this.levelA = LevelFactory.generateLevel(this.player1, thisServer, levelCode);
-			Command<GameClient> c = new YouArePlayer1Command(true);
-			sendCommand(c);
-		}else{
-			Command<GameClient> c = new YouArePlayer1Command(false);
-			sendCommand(c);
-		}
-		
+		currentRoom().createLevel(name, levelCode);
 	}
 	
-	
 	/**
 	 * Adds a tower to the map, using the TowerFactory validation with the level
 	 * 
@@ -431,22 +506,16 @@ public class GameServer implements Serializable{
 	 * @param loc The location at which to place the tower
 	 */
 	public void addTower(String clientName, towerType type, Point loc) {
-		//System.out.println("GameServer attempting to add tower to row: " + loc.x + " col: " + loc.y);
-		Tower towerToAdd = TowerFactory.generateTower(type, client2Map.get(clientName).getPlayer()); // Generate a tower	
-		//System.out.println("addTower command received, adding tower to current level");
-		client2Map.get(clientName).addTower(towerToAdd, loc); // Ask the map to add the tower
-			//System.out.println("successfully added tower");
-			//System.out.println("Adding tower failed due to position/lack of $!");
-		
+		currentRoom().addTower(clientName, type, loc);
 	}
 	
 	/**
-	 * Sell the tower, not used 
+	 * Sell the tower
 	 * 
 	 * @param location The location that the tower to be sold is located
 	 */
 	public void sellTower(String clientName, Point location) {
-		client2Map.get(clientName).sellTower(location);
+		currentRoom().sellTower(clientName, location);
 	}
 	
 	/**
@@ -455,126 +524,51 @@ public class GameServer implements Serializable{
 	 * @param enemy The enemy that is to be spawned on the map
 	 */
 	public void addEnemy(Enemy enemy, String clientName) {
-		client2Map.get(clientName).spawnEnemy(enemy);
-	}
-	
-	/*/**
-	 * @return The server's current time between ticks
-	 */
-	/*unnecessary now? just have GUI check if fastforward or not? -PWH
-	public long getTickLength(){
-		return timePerTick;
-	}
-	*/
-	
-	/**
-	 * Stop the GameServer master Timer, create a GameOver Command object notifying client of 
-	 * game lost, that causes GUI to print out a game over pic and return to the main menu
-	 */
-	public void gameLost() {
-		stopTimer();
-		removeLevel();
-		Command<GameClient> c = new ClientGameLost();
-		sendCommand(c);
-	}
-
-	/**
-	 * Stop the GameServer master Timer, create a GameOver Command object notifying client of 
-	 * game won, that causes GUI to print out a game won pic and return to the main menu
-	 */
-	public void gameWon() {
-		stopTimer();
-		removeLevel();
-		Command<GameClient> c = new ClientGameWon();
-		sendCommand(c);
+		currentRoom().addEnemy(enemy, clientName);
 	}
 
 	/**
 	 * Toggle whether the game is playing normally or is paused, as well as starting the game
 	 */
 	public void playPauseGame() {
-		this.paused = !this.paused; //If game is playing, flip to paused, and vice versa
-		if(paused){
-			this.stopTimer();
-		}else{
-			this.startTimer();
-		}
-		this.changeState(this.paused, this.fast);
+		currentRoom().playPauseGame();
 	}
 
 	/**
 	 * Save the state of the current game to the server
+	 * @param name the save slot to save it in, replacing any game saved there
 	 */
-	public void saveGame() {
-		try{
-			FileOutputStream f_out = new FileOutputStream("currentLevel.data");
-			ObjectOutputStream obj_out = new ObjectOutputStream(f_out);
-			obj_out.writeObject(levelA);
-			obj_out.close();
-		}catch(Exception e){
-			System.out.println("There was a problem when saving, here is some info:");
-			e.printStackTrace();
-		}
+	public void saveGame(String name) {
+		currentRoom().saveGame(name);
 	}
 
 	/**
 	 * Attempts to load a saved game.
+	 * @param name the save slot to load, null for the last game played, from its autosave and journal
 	 */
-	public void loadGame() {
-		// LOGIC: attempt to load the game using a file name that wont be changing, if it exists, set that game as the current one
-		//		and continue as normal, if there isnt a game, what exactly should we do?
-		try{
-			FileInputStream f_in = new FileInputStream("currentLevel.data");
-			ObjectInputStream obj_in = new ObjectInputStream(f_in);
-			levelA = (Level) obj_in.readObject();
-			obj_in.close();
-			//reset currentLevel and it's map's transient variables GameServer
-			levelA.setServer(thisServer);
-			levelA.getMap1().setServer(thisServer);
-			
-			
-			//Start the game paused and at normal speed, notify GUI of this state.
-			//this.paused = true;
-			this.normalSpeed();
-			
-			//start the game unpaused, GUI can't be notified of starting paused yet
-			this.paused = false;
-			this.startTimer();
-			
-		}catch(Exception e){
-			// TODO tell the player that there was an issue
-			this.createLevel(player1.getName(), tickDiluter);
-			e.printStackTrace();
-		}
+	public void loadGame(String name) {
+		currentRoom().loadGame(name);
+	}
+
+	/**
+	 * Sends the client whose command is running the list of its saves
+	 */
+	public void listSaves() {
+		currentRoom().listSaves(currentClient.get());
 	}
 
 	/**
 	 * Changes game behavior to play at a faster rate
 	 */
 	public void speedUp() {
-		this.fast = true;
-		this.tickDiluter = 2;
-		changeState(this.paused, this.fast);
+		currentRoom().speedUp();
 	}
 
 	/**
 	 * Changes game behavior to play at the default rate
 	 */
 	public void normalSpeed() {
-		this.fast = false;
-		this.tickDiluter = 1;
-		changeState(this.paused, this.fast);
-	}
-	
-	/**
-	 * Server will notify the client that the state has changed based on a message received from the client
-	 * 
-	 * @param paused
-	 * @param fast
-	 */
-	public void changeState(Boolean paused, Boolean fast){
-		Command<GameClient> c = new changeStateCommand(paused, fast);
-		this.sendCommand(c);
+		currentRoom().normalSpeed();
 	}
 
 	/**
@@ -582,52 +576,49 @@ public class GameServer implements Serializable{
 	 * @param p
 	 */
 	public void upgradeTower(Point p, String clientName) {
-		client2Map.get(clientName).upgradeTower(p);
+		currentRoom().upgradeTower(p, clientName);
 	}
 	
 	/**
-	 * Attempting to do multiplayer, to be called by the Client. The first player
-	 * to call online will set the boolean waitingFor2ndPlayer to true, the
-	 * next player when they call online will link the partner players together and
-	 * create a multiplayer level.
-	 * @param name 
+	 * Takes a lockstep client's hash of its game's state, and its outcome once the game is over
+	 * @param tick the tick the hash was taken after
+	 * @param hash the hash
+	 * @param outcome ServerLockstepHash.PLAYING, WON or LOST
 	 */
-	public void joinMultiplayer(String name){
-		if(this.waitingFor2ndPlayer){
-			player1.setPartner(player2);
-			player2.setPartner(player1);
-			this.multiplayer = true;
-			//Call Client to prompt for level select
-			//this.createLevel("Tester", 0); //TODO: Hardcoded for now, see if there is a way to choose, or just make it a random level 0-3
-			Command<GameClient> c = new PromptMultiplayerLevelCommand();
-			this.sendCommand(c);
-		}else{
-			this.waitingFor2ndPlayer = true;
-		}
+	public void lockstepHash(long tick, long hash, int outcome){
+		currentRoom().lockstepReport(currentClient.get(), tick, hash, outcome);
 	}
 	
 	/**
-	 * Checks if multiplayer mode is in effect
-	 * @return multiplayer, a boolean
-	 */
-	public boolean isMultiplayer(){
-		return this.multiplayer;
-	}
-
-	/**
-	 * Called by Map every time it is instantiated
-	 * @param s the String of GameClient's name
-	 * @param m the Map
-	 */
-	public void putClientToMap(String s, Map m){
-		this.client2Map.put(s, m);
-	}
-
-	/**
-	 * Return's player1, useful for Map to check if it is Map1 or not
-	 * @return player1
+	 * Attempting to do multiplayer, to be called by the Client. The first player
+	 * to call online has their room wait for a partner, the next player to call
+	 * online leaves their own room and joins the waiting one as player 2, which links
+	 * the partner players together and prompts both for a multiplayer level.
+	 * @param name 
 	 */
-	public Player getPlayer1() {
-		return player1;
+	public void joinMultiplayer(String name){
+		GameRoom own = currentRoom();
+		final GameRoom host;
+		synchronized(this){
+			if(waitingRoom == null || waitingRoom.isClosed() || waitingRoom == own){
+				waitingRoom = own;
+				own.setWaitingFor2ndPlayer(true);
+				return;
+			}
+			host = waitingRoom;
+			waitingRoom = null;
+		}
+		final String joiner = name;
+		final Player partner = own.getPlayer1();
+		clientRooms.put(name, host); // commands sent from now on go to the host room
+		own.removeClient(name);
+		if(own.isClosed()){
+			rooms.remove(own);
+		}
+		host.submit(new Runnable(){
+			public void run(){
+				host.acceptPartner(joiner, partner);
+			}
+		});
 	}
 }
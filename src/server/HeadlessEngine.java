@@ -0,0 +1,120 @@
+package server;
+
+import model.Level;
+import model.LevelFactory;
+import model.Map;
+import client.Player;
+
+/**
+ * Plays a whole Level without sockets, Swing or a GameLoop. The Level is created from a
+ * level code and a seed, the BuildScript places towers as the game goes, and the model
+ * is ticked in GameLoop.STEP_MILLIS steps as fast as the CPU allows until the game is
+ * won or lost. Updates go to a NullEventSink, or a RecordingEventSink to keep a log.
+ * The same level code, script and seed always give the same Outcome.
+ *
+ * Methods:
+ * static Outcome run(int levelCode, BuildScript script, long seed)
+ * static Outcome run(int levelCode, BuildScript script, long seed, NullEventSink sink, long maxTicks)
+ */
+public class HeadlessEngine{
+
+	public static final String PLAYER_NAME = "headless";
+	public static final long DEFAULT_MAX_TICKS = 60L * 60 * 1000 / GameLoop.STEP_MILLIS; //An hour of game time
+
+	/**
+	 * The result of a headless game
+	 */
+	public static class Outcome{
+		private final int healthPoints;
+		private final int money;
+		private final int kills;
+		private final long ticks;
+		private final boolean finished;
+		private final boolean won;
+
+		public Outcome(int healthPoints, int money, int kills, long ticks, boolean finished, boolean won){
+			this.healthPoints = healthPoints;
+			this.money = money;
+			this.kills = kills;
+			this.ticks = ticks;
+			this.finished = finished;
+			this.won = won;
+		}
+
+		public int getHealthPoints(){
+			return healthPoints;
+		}
+
+		public int getMoney(){
+			return money;
+		}
+
+		public int getKills(){
+			return kills;
+		}
+
+		/**
+		 * @return the number of GameLoop.STEP_MILLIS ticks the game took
+		 */
+		public long getTicks(){
+			return ticks;
+		}
+
+		/**
+		 * @return false if the game hit the tick limit before it was won or lost
+		 */
+		public boolean isFinished(){
+			return finished;
+		}
+
+		public boolean isWon(){
+			return won;
+		}
+
+		@Override
+		public String toString(){
+			return (finished ? (won ? "won" : "lost") : "unfinished") + " hp " + healthPoints
+					+ " money " + money + " kills " + kills + " ticks " + ticks;
+		}
+	}
+
+	/**
+	 * Plays a level to the end with nobody watching
+	 * @param levelCode the level to play, as given to LevelFactory
+	 * @param script the towers to build, may be empty
+	 * @param seed the seed of the level's GameRandom
+	 * @return the Outcome of the game
+	 */
+	public static Outcome run(int levelCode, BuildScript script, long seed){
+		return run(levelCode, script, seed, new NullEventSink(), DEFAULT_MAX_TICKS);
+	}
+
+	/**
+	 * Plays a level until it is won or lost, or maxTicks have passed
+	 * @param levelCode the level to play, as given to LevelFactory
+	 * @param script the towers to build, may be empty
+	 * @param seed the seed of the level's GameRandom
+	 * @param sink where the level's updates go, reset for this game
+	 * @param maxTicks the most ticks to play
+	 * @return the Outcome of the game
+	 */
+	public static Outcome run(int levelCode, BuildScript script, long seed, NullEventSink sink, long maxTicks){
+		Player player = new Player(PLAYER_NAME, 0, 0);
+		sink.reset(player);
+		Level level = LevelFactory.generateLevel(player, sink, levelCode, seed);
+		Map map = level.getMap1();
+		int nextStep = 0;
+		long tick = 0;
+		while(!sink.isGameOver() && tick < maxTicks){
+			nextStep = script.applyDue(tick, map, player, nextStep);
+			level.tick(GameLoop.STEP_MILLIS); //Same order as GameRoom.tickModel
+			if(sink.isGameOver()){
+				break;
+			}
+			map.tick(GameLoop.STEP_MILLIS);
+			tick++;
+		}
+		return new Outcome(player.getHealthPoints(), player.getMoney(), map.getEnemiesKilled(), tick,
+				sink.isGameOver(), sink.isWon());
+	}
+}
@@ -0,0 +1,558 @@
+package server;
+
+import java.awt.Point;
+import java.io.File;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+import model.GameEventSink;
+import model.Level;
+import model.Map;
+import model.SaveCodec;
+import model.TowerFactory;
+import GUI.GameView.towerType;
+import client.Player;
+import commands.ClientLockstepTurn;
+
+/**
+ * A write ahead journal of a GameRoom's game: a checkpoint of the Level followed by every
+ * input the room applied to it since, each tagged with the tick it was applied before. The
+ * game is deterministic from its level code and seed, so decoding the checkpoint and playing
+ * on from it with the same inputs on the same ticks gives back the game as it was when the
+ * journal was last written, which is how a game is recovered after the server crashes.
+ *
+ * Recording an input only packs a few bytes into an array on the room's worker. The room
+ * flushes them once a frame as one frame of the journal, handed to the server's SaveWriter to
+ * append and sync on its own thread, so a command never waits on the disk and the appends of
+ * a busy room are synced in batches. Each checkpoint starts the file again with a new
+ * SaveCodec save, so the journal never holds more than the inputs since the last one.
+ *
+ * A replay of a game is the same journal never started again: its first checkpoint holds the
+ * level code and seed, and later ones are appended among the inputs as snapshots, so a
+ * ReplayPlayback can seek to a tick from the snapshot before it.
+ *
+ * A journal is MAGIC and VERSION as two big endian ints, then frames: the frame type, the
+ * length of its payload as a varint, the payload and a CRC32 of all three. A CHECKPOINT
+ * frame holds its tick as a varint then a SaveCodec save, an INPUTS frame the inputs of one
+ * flush, each the ticks since the last input or checkpoint as a varint, the action shifted left once with 1 for player 1's map, then
+ * the action's arguments as zigzag varints. A frame cut short or corrupt by a crash ends the
+ * journal, losing only the inputs that were never synced.
+ *
+ * Only the room's worker records to a journal.
+ *
+ * Instance Variables:
+ * File file						- The journal file
+ * SaveWriter writer				- Appends and syncs the journal off the worker
+ * byte[] inputs					- The inputs recorded since the last flush
+ * long lastTick					- The tick of the last input or checkpoint, inputs store the ticks since it
+ * byte[] frame, CRC32 crc			- Reused to build each frame
+ * statistics						- Inputs recorded, frames flushed, checkpoints and bytes written
+ *
+ * Methods:
+ * void checkpoint(long tick, byte[] save)
+ * void snapshot(long tick, byte[] save)
+ * void record(long tick, int action, boolean player1, int a, int b, int c)
+ * void mark(long tick)
+ * void flush()
+ * String getStats()
+ * static void apply(Level level, int action, boolean player1, int a, int b, int c)
+ * static Level recover(byte[] journal, Player player, GameEventSink server)
+ * static int lastSpeed(byte[] journal)
+ */
+public class InputJournal{
+
+	public static final int MAGIC = 0x504B4A4E; //"PKJN"
+	public static final int VERSION = 2;
+	public static final int PLACE = ClientLockstepTurn.PLACE; //towerType ordinal, row, column
+	public static final int SELL = ClientLockstepTurn.SELL; //row, column
+	public static final int UPGRADE = ClientLockstepTurn.UPGRADE; //row, column
+	public static final int TRANSFER = ClientLockstepTurn.TRANSFER; //the money sent to the partner
+	public static final int SPEED = 4; //the GameLoop speed multiplier
+	public static final int PAUSE = 5; //1 if paused, 0 if playing
+	public static final int MARK = 6; //nothing, the game reached the tick
+	public static final int END = 7; //nothing, the game was won or lost
+	public static final int CHECKPOINT = -1; //Read in place of an action where a checkpoint is
+	public static final int MARK_TICKS = 50; //Ticks without inputs before a MARK, so a recovery plays to within a second of the crash
+	private static final int[] ARGS = {3, 2, 2, 1, 1, 1, 0, 0}; //Arguments of each action
+	private static final int HEADER = 8; //MAGIC and VERSION
+	private static final byte CHECKPOINT_FRAME = 1;
+	private static final byte INPUTS_FRAME = 2;
+	private static final int MAX_FRAME_OVERHEAD = 1 + 5 + 4; //Type, length and CRC
+
+	private final File file;
+	private final SaveWriter writer;
+	private byte[] inputs = new byte[256];
+	private int inputsLength;
+	private long lastTick;
+	private byte[] frame = new byte[256];
+	private final CRC32 crc = new CRC32();
+	private long recorded;
+	private long frames;
+	private long checkpoints;
+	private long bytes;
+
+	/**
+	 * @param file the journal file
+	 * @param writer the SaveWriter to write it
+	 */
+	public InputJournal(File file, SaveWriter writer){
+		this.file = file;
+		this.writer = writer;
+	}
+
+	public File getFile(){
+		return file;
+	}
+
+	/**
+	 * Starts the journal again from a checkpoint. Inputs recorded and not yet flushed are
+	 * dropped, the checkpoint already holds what they did.
+	 * @param tick the ticks the game has run
+	 * @param save the Level encoded by SaveCodec between ticks
+	 */
+	public void checkpoint(long tick, byte[] save){
+		inputsLength = 0;
+		lastTick = tick;
+		int length = putCheckpointFrame(tick, save);
+		byte[] journal = new byte[HEADER + length];
+		ByteBuffer.wrap(journal).putInt(MAGIC).putInt(VERSION);
+		System.arraycopy(frame, 0, journal, HEADER, length);
+		writer.submit(file, journal); //Replaces the old journal and any of its appends still waiting
+		checkpoints++;
+		bytes += journal.length;
+	}
+
+	/**
+	 * Appends a checkpoint after the inputs recorded so far, keeping them, as a replay's
+	 * snapshots are
+	 * @param tick the ticks the game has run
+	 * @param save the Level encoded by SaveCodec between ticks
+	 */
+	public void snapshot(long tick, byte[] save){
+		flush();
+		lastTick = tick;
+		int length = putCheckpointFrame(tick, save);
+		writer.append(file, frame, length);
+		checkpoints++;
+		bytes += length;
+	}
+
+	/**
+	 * Builds a CHECKPOINT frame in the frame array
+	 * @return its length
+	 */
+	private int putCheckpointFrame(long tick, byte[] save){
+		byte[] payload = new byte[10 + save.length];
+		int i = putVarlong(payload, 0, tick);
+		System.arraycopy(save, 0, payload, i, save.length);
+		return putFrame(CHECKPOINT_FRAME, payload, i + save.length);
+	}
+
+	/**
+	 * Records an input the room is applying, before the tick it is applied on runs
+	 * @param tick the ticks the game has run
+	 * @param action PLACE, SELL, UPGRADE, TRANSFER, SPEED, PAUSE, MARK or END
+	 * @param player1 true for player 1's map, or player 1 sending money
+	 * @param a the action's first argument, or 0
+	 * @param b the action's second argument, or 0
+	 * @param c the action's third argument, or 0
+	 */
+	public void record(long tick, int action, boolean player1, int a, int b, int c){
+		if(inputsLength + 10 + 1 + 3 * 5 > inputs.length){
+			inputs = Arrays.copyOf(inputs, inputs.length * 2);
+		}
+		inputsLength = putVarlong(inputs, inputsLength, tick - lastTick);
+		inputs[inputsLength++] = (byte) ((action << 1) | (player1 ? 1 : 0));
+		int args = ARGS[action];
+		if(args > 0){
+			inputsLength = putVarint(inputs, inputsLength, (a << 1) ^ (a >> 31));
+		}
+		if(args > 1){
+			inputsLength = putVarint(inputs, inputsLength, (b << 1) ^ (b >> 31));
+		}
+		if(args > 2){
+			inputsLength = putVarint(inputs, inputsLength, (c << 1) ^ (c >> 31));
+		}
+		lastTick = tick;
+		recorded++;
+	}
+
+	/**
+	 * Records a MARK if there has been no input for MARK_TICKS, called after each tick
+	 * @param tick the ticks the game has run
+	 */
+	public void mark(long tick){
+		if(tick - lastTick >= MARK_TICKS){
+			record(tick, MARK, true, 0, 0, 0);
+		}
+	}
+
+	/**
+	 * Hands the inputs recorded since the last flush to the SaveWriter as one frame
+	 */
+	public void flush(){
+		if(inputsLength == 0){
+			return;
+		}
+		int length = putFrame(INPUTS_FRAME, inputs, inputsLength);
+		writer.append(file, frame, length);
+		inputsLength = 0;
+		frames++;
+		bytes += length;
+	}
+
+	/**
+	 * Builds a frame in the frame array
+	 * @return its length
+	 */
+	private int putFrame(byte type, byte[] payload, int length){
+		if(length + MAX_FRAME_OVERHEAD > frame.length){
+			frame = new byte[Math.max(frame.length * 2, length + MAX_FRAME_OVERHEAD)];
+		}
+		frame[0] = type;
+		int i = putVarint(frame, 1, length);
+		System.arraycopy(payload, 0, frame, i, length);
+		i += length;
+		crc.reset();
+		crc.update(frame, 0, i);
+		int sum = (int) crc.getValue();
+		frame[i] = (byte) (sum >>> 24);
+		frame[i + 1] = (byte) (sum >>> 16);
+		frame[i + 2] = (byte) (sum >>> 8);
+		frame[i + 3] = (byte) sum;
+		return i + 4;
+	}
+
+	/**
+	 * @return one line of the inputs recorded and what has been written
+	 */
+	public String getStats(){
+		return "journal inputs=" + recorded + " frames=" + frames + " checkpoints=" + checkpoints + " bytes=" + bytes;
+	}
+
+	/**
+	 * Applies an input to a Level as the GameRoom does, actions that do not change the game
+	 * are ignored
+	 * @param level the Level
+	 * @param action the action
+	 * @param player1 true for player 1's map, or player 1 sending money
+	 * @param a the action's first argument
+	 * @param b the action's second argument
+	 * @param c the action's third argument
+	 */
+	public static void apply(Level level, int action, boolean player1, int a, int b, int c){
+		Map map = player1 ? level.getMap1() : level.getMap2();
+		switch(action){
+		case PLACE:
+			towerType[] types = towerType.values();
+			if(a >= 0 && a < types.length){
+				map.addTower(TowerFactory.generateTower(types[a], map.getPlayer()), new Point(b, c));
+			}
+			break;
+		case SELL:
+			map.sellTower(new Point(a, b));
+			break;
+		case UPGRADE:
+			map.upgradeTower(new Point(a, b));
+			break;
+		case TRANSFER:
+			Player from = player1 ? level.getPlayer1() : level.getPlayer1().getPartner();
+			Player to = from.getPartner();
+			if(from.getMoney() >= a){
+				from.spendMoney(a);
+				to.gainMoney(a);
+			}
+			break;
+		}
+	}
+
+	/**
+	 * Recovers a game from its journal: the last checkpoint is loaded and played on with
+	 * nobody watching, applying the inputs after it on their ticks, then handed to the server
+	 * @param journal the journal
+	 * @param player the Player to play the level as, whose partner plays player 2's map in co-op
+	 * @param server the GameServer, or any other GameEventSink, the level reports to
+	 * @return the Level as of the last input or MARK in the journal, or null if its game is over:
+	 * the journal ends in END, or the game is won or lost playing on to its last input
+	 * @throws IOException if the journal has no checkpoint or is corrupt
+	 */
+	public static Level recover(byte[] journal, Player player, final GameEventSink server) throws IOException{
+		int last = -1;
+		Reader in = new Reader(journal);
+		while(in.next()){
+			if(in.getAction() == CHECKPOINT){
+				last = in.getFrameStart();
+			}
+		}
+		if(last < 0){
+			throw new StreamCorruptedException("journal has no checkpoint");
+		}
+		NullEventSink quiet = new NullEventSink(){
+			@Override
+			public boolean isMultiplayer(){
+				return server.isMultiplayer();
+			}
+		};
+		quiet.reset(player);
+		in = new Reader(journal, last);
+		in.next();
+		Level level = SaveCodec.decode(in.getCheckpoint(), player, quiet);
+		while(in.next()){
+			if(in.getAction() == END){
+				return null;
+			}
+			playTo(level, quiet, in.getTick());
+			if(quiet.isGameOver()){
+				return null;
+			}
+			apply(level, in.getAction(), in.isPlayer1(), in.getA(), in.getB(), in.getC());
+		}
+		level.setServer(server); //Report to the server from here on, as a loaded level does
+		level.getMap1().setServer(server);
+		server.updateClients(player.getHealthPoints(), player.getMoney(), true);
+		if(level.getMap2() != null){
+			level.getMap2().setServer(server);
+			server.updateClients(player.getPartner().getHealthPoints(), player.getPartner().getMoney(), false);
+		}
+		return level;
+	}
+
+	/**
+	 * Ticks a Level as GameRoom.tickModel does until it has run the given ticks
+	 */
+	private static void playTo(Level level, NullEventSink sink, long tick){
+		long until = tick * GameLoop.STEP_MILLIS;
+		while(level.getMap1().getClock() < until && !sink.isGameOver()){
+			level.tick(GameLoop.STEP_MILLIS);
+			level.getMap1().tick(GameLoop.STEP_MILLIS);
+			if(level.getMap2() != null){
+				level.getMap2().tick(GameLoop.STEP_MILLIS);
+			}
+		}
+	}
+
+	/**
+	 * @param journal the journal
+	 * @return the last speed multiplier recorded in it, 1 if none was
+	 */
+	public static int lastSpeed(byte[] journal) throws IOException{
+		int speed = 1;
+		Reader in = new Reader(journal);
+		while(in.next()){
+			if(in.getAction() == SPEED){
+				speed = in.getA();
+			}
+		}
+		return speed;
+	}
+
+	/**
+	 * Reads a journal's checkpoints and inputs in order, stopping at its end or at the first
+	 * frame cut short or corrupt
+	 */
+	public static class Reader{
+		private final byte[] journal;
+		private final CRC32 crc = new CRC32();
+		private int position = HEADER; //The next byte of the frame being read
+		private int frameEnd = HEADER; //The end of its payload
+		private int nextFrame = HEADER; //The start of the frame after it
+		private int frameStart; //The start of the frame being read
+		private boolean truncated;
+		private byte[] checkpoint;
+		private long tick;
+		private int action;
+		private boolean player1;
+		private final int[] args = new int[3];
+		private final long[] read = new long[1];
+
+		/**
+		 * @param journal the journal
+		 * @throws IOException if it is not a journal, or from another version
+		 */
+		public Reader(byte[] journal) throws IOException{
+			this(journal, HEADER);
+		}
+
+		/**
+		 * Reads a journal from one of its checkpoints
+		 * @param journal the journal
+		 * @param frameStart where the checkpoint's frame starts, from getFrameStart
+		 * @throws IOException if it is not a journal, or from another version
+		 */
+		public Reader(byte[] journal, int frameStart) throws IOException{
+			this.journal = journal;
+			this.nextFrame = Math.max(HEADER, frameStart);
+			if(journal.length < HEADER){
+				throw new StreamCorruptedException("journal is " + journal.length + " bytes");
+			}
+			ByteBuffer in = ByteBuffer.wrap(journal);
+			if(in.getInt() != MAGIC){
+				throw new StreamCorruptedException("not a journal");
+			}
+			int version = in.getInt();
+			if(version != VERSION){
+				throw new InvalidObjectException("journal version " + version + ", expected " + VERSION);
+			}
+		}
+
+		/**
+		 * Reads the next checkpoint or input
+		 * @return false at the end of the journal
+		 */
+		public boolean next(){
+			while(position >= frameEnd){
+				if(!nextFrame()){
+					return false;
+				}
+				if(journal[frameStart] == CHECKPOINT_FRAME){
+					position = getVarlong(journal, position, read);
+					tick = read[0];
+					checkpoint = Arrays.copyOfRange(journal, position, frameEnd);
+					action = CHECKPOINT;
+					position = frameEnd;
+					return true;
+				}
+			}
+			position = getVarlong(journal, position, read);
+			tick += read[0];
+			int header = journal[position++] & 0xFF;
+			action = header >> 1;
+			player1 = (header & 1) != 0;
+			if(action >= ARGS.length){
+				truncated = true; //Whole by its CRC but not from this version
+				position = frameEnd = nextFrame = journal.length;
+				return false;
+			}
+			Arrays.fill(args, 0);
+			for(int i = 0; i < ARGS[action]; i++){
+				position = getVarlong(journal, position, read);
+				int zigzag = (int) read[0];
+				args[i] = (zigzag >>> 1) ^ -(zigzag & 1);
+			}
+			return true;
+		}
+
+		/**
+		 * Moves to the payload of the next frame, if it is whole and its CRC matches
+		 */
+		private boolean nextFrame(){
+			int start = nextFrame;
+			if(start >= journal.length){
+				return false;
+			}
+			try{
+				byte type = journal[start];
+				int payload = getVarlong(journal, start + 1, read);
+				long end = payload + read[0];
+				if((type != CHECKPOINT_FRAME && type != INPUTS_FRAME) || end + 4 > journal.length){
+					truncated = true;
+					return false;
+				}
+				crc.reset();
+				crc.update(journal, start, (int) end - start);
+				if(ByteBuffer.wrap(journal, (int) end, 4).getInt() != (int) crc.getValue()){
+					truncated = true;
+					return false;
+				}
+				frameStart = start;
+				position = payload;
+				frameEnd = (int) end;
+				nextFrame = frameEnd + 4;
+				return true;
+			}catch(ArrayIndexOutOfBoundsException e){
+				truncated = true; //Cut short in its length
+				return false;
+			}
+		}
+
+		/**
+		 * @return where the frame of the checkpoint read starts, to read the journal again from
+		 */
+		public int getFrameStart(){
+			return frameStart;
+		}
+
+		/**
+		 * @return true if the journal ended in a frame cut short or corrupt
+		 */
+		public boolean isTruncated(){
+			return truncated;
+		}
+
+		/**
+		 * @return the action read, or CHECKPOINT
+		 */
+		public int getAction(){
+			return action;
+		}
+
+		/**
+		 * @return the checkpoint read, a SaveCodec save
+		 */
+		public byte[] getCheckpoint(){
+			return checkpoint;
+		}
+
+		/**
+		 * @return the tick the input read was applied before, or of the checkpoint read
+		 */
+		public long getTick(){
+			return tick;
+		}
+
+		public boolean isPlayer1(){
+			return player1;
+		}
+
+		public int getA(){
+			return args[0];
+		}
+
+		public int getB(){
+			return args[1];
+		}
+
+		public int getC(){
+			return args[2];
+		}
+	}
+
+	private static int putVarint(byte[] out, int i, int value){
+		while((value & ~0x7F) != 0){
+			out[i++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out[i++] = (byte) value;
+		return i;
+	}
+
+	private static int putVarlong(byte[] out, int i, long value){
+		while((value & ~0x7FL) != 0){
+			out[i++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out[i++] = (byte) value;
+		return i;
+	}
+
+	/**
+	 * Reads a varint or varlong
+	 * @param read set to the value read
+	 * @return the index after it
+	 */
+	private static int getVarlong(byte[] in, int i, long[] read){
+		long value = 0;
+		for(int shift = 0; ; shift += 7){
+			byte b = in[i++];
+			value |= (long) (b & 0x7F) << shift;
+			if(b >= 0){
+				read[0] = value;
+				return i;
+			}
+		}
+	}
+}
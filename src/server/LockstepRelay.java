@@ -0,0 +1,181 @@
+package server;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+
+import GUI.GameView.towerType;
+import commands.ClientLockstepTurn;
+import commands.ServerLockstepHash;
+
+/**
+ * The server's side of a lockstep co-op game in a GameRoom. Neither map is played on the
+ * server: both clients play the whole Level from the same level code and seed, and all the
+ * room does is count ticks on its GameLoop and relay the players' inputs. Every TURN_TICKS
+ * ticks it sends both clients a ClientLockstepTurn with the inputs that arrived since the
+ * last one, stamped to apply LEAD_TICKS ahead of the server's clock, so a turn reaches the
+ * clients before they get there and the same inputs are applied on the same tick in both
+ * games. A client may play up to the next turn's tick and waits there if the turn is late.
+ *
+ * Each client hashes its Level's state every HASH_INTERVAL ticks and sends it back in a
+ * ServerLockstepHash; differing hashes for the same tick mean the two games have desynced.
+ *
+ * Only the room's worker uses a relay.
+ *
+ * Instance Variables:
+ * int levelCode, long seed			- The level both clients play
+ * long tick						- The ticks the room's GameLoop has run since the game started
+ * int[] pending					- The inputs waiting for the next turn, packed as in ClientLockstepTurn
+ * LinkedHashMap<Long, Long> hashes	- The first client's hash of each tick, until the other's arrives
+ * boolean[] finished				- Set when each player's client reports its game over
+ * statistics						- Turns sent, inputs relayed, desyncs and the tick of the first
+ *
+ * Methods:
+ * ClientLockstepTurn tick(int speed)
+ * void place(boolean player1, towerType type, int row, int column)
+ * void sell(boolean player1, int row, int column)
+ * void upgrade(boolean player1, int row, int column)
+ * void transfer(boolean fromPlayer1, int amount)
+ * boolean hash(boolean player1, long tick, long hash)
+ * boolean finish(boolean player1, int outcome)
+ * String getStats()
+ */
+public class LockstepRelay{
+
+	public static final int TURN_TICKS = 5; //A turn every 100ms
+	public static final int LEAD_TICKS = 2 * TURN_TICKS; //How far ahead of the server's clock inputs are stamped
+	public static final int HASH_INTERVAL = 50; //Ticks between the clients' state hashes, a second
+	private static final int MAX_HASHES = 64; //Hashes kept waiting for the other client's
+
+	private final int levelCode;
+	private final long seed;
+	private long tick;
+	private int[] pending = new int[4 * ClientLockstepTurn.INPUT_LENGTH];
+	private int pendingLength;
+	private final LinkedHashMap<Long, Long> hashes = new LinkedHashMap<Long, Long>();
+	private final boolean[] finished = new boolean[2];
+	private long turnsSent;
+	private long inputsRelayed;
+	private long desyncs;
+	private long firstDesyncTick = -1;
+
+	/**
+	 * @param levelCode the level both clients play, as given to LevelFactory
+	 * @param seed the seed of the level's GameRandom
+	 */
+	public LockstepRelay(int levelCode, long seed){
+		this.levelCode = levelCode;
+		this.seed = seed;
+	}
+
+	public int getLevelCode(){
+		return levelCode;
+	}
+
+	public long getSeed(){
+		return seed;
+	}
+
+	/**
+	 * Counts one tick of the room's GameLoop
+	 * @param speed the GameLoop's speed multiplier, for the clients to play at
+	 * @return the turn to send both clients, or null if none is due this tick
+	 */
+	public ClientLockstepTurn tick(int speed){
+		ClientLockstepTurn turn = null;
+		if(tick % TURN_TICKS == 0){
+			turn = new ClientLockstepTurn(tick + LEAD_TICKS, speed, Arrays.copyOf(pending, pendingLength));
+			inputsRelayed += pendingLength / ClientLockstepTurn.INPUT_LENGTH;
+			pendingLength = 0;
+			turnsSent++;
+		}
+		tick++;
+		return turn;
+	}
+
+	/**
+	 * Queues a tower being placed on a player's map
+	 */
+	public void place(boolean player1, towerType type, int row, int column){
+		add(ClientLockstepTurn.PLACE, player1, type.ordinal(), row, column);
+	}
+
+	/**
+	 * Queues the tower on a tile of a player's map being sold
+	 */
+	public void sell(boolean player1, int row, int column){
+		add(ClientLockstepTurn.SELL, player1, 0, row, column);
+	}
+
+	/**
+	 * Queues the tower on a tile of a player's map being upgraded
+	 */
+	public void upgrade(boolean player1, int row, int column){
+		add(ClientLockstepTurn.UPGRADE, player1, 0, row, column);
+	}
+
+	/**
+	 * Queues money being sent to a player's partner, the clients only move it if the
+	 * sender has it when the turn is played
+	 */
+	public void transfer(boolean fromPlayer1, int amount){
+		add(ClientLockstepTurn.TRANSFER, fromPlayer1, amount, 0, 0);
+	}
+
+	private void add(int action, boolean player1, int a, int b, int c){
+		if(pendingLength + ClientLockstepTurn.INPUT_LENGTH > pending.length){
+			pending = Arrays.copyOf(pending, pending.length * 2);
+		}
+		pending[pendingLength++] = action;
+		pending[pendingLength++] = player1 ? 1 : 0;
+		pending[pendingLength++] = a;
+		pending[pendingLength++] = b;
+		pending[pendingLength++] = c;
+	}
+
+	/**
+	 * Takes a client's state hash, comparing it with the other client's for the same tick
+	 * @param player1 true if from player 1's client
+	 * @param tick the tick the hash was taken after
+	 * @param hash the hash
+	 * @return false if the other client's hash of the tick differs, the games have desynced
+	 */
+	public boolean hash(boolean player1, long tick, long hash){
+		Long other = hashes.remove(tick);
+		if(other == null){
+			hashes.put(tick, hash);
+			if(hashes.size() > MAX_HASHES){
+				hashes.remove(hashes.keySet().iterator().next()); //The other client is gone or far behind
+			}
+			return true;
+		}
+		if(other.longValue() == hash){
+			return true;
+		}
+		desyncs++;
+		if(firstDesyncTick < 0){
+			firstDesyncTick = tick;
+		}
+		return false;
+	}
+
+	/**
+	 * Notes that a player's client has reported its game over
+	 * @param player1 true if from player 1's client
+	 * @param outcome ServerLockstepHash.WON or LOST
+	 * @return true once both clients have reported
+	 */
+	public boolean finish(boolean player1, int outcome){
+		if(outcome != ServerLockstepHash.PLAYING){
+			finished[player1 ? 0 : 1] = true;
+		}
+		return finished[0] && finished[1];
+	}
+
+	/**
+	 * @return one line of the relay's ticks, turns, inputs and desyncs, for the room's statistics
+	 */
+	public String getStats(){
+		return "lockstep tick=" + tick + " turns=" + turnsSent + " inputs=" + inputsRelayed
+				+ " desyncs=" + desyncs + (firstDesyncTick >= 0 ? " first at tick " + firstDesyncTick : "");
+	}
+}
@@ -0,0 +1,257 @@
+package server;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import client.Transport;
+import commands.ClientHPandMoney;
+import commands.ClientMiniMap;
+import commands.ClientSnapshot;
+import commands.ClientUpdate;
+import commands.Command;
+import commands.DisconnectCommand;
+import commands.EncodedFrame;
+
+/**
+ * The ClientConnection of a GameClient in the same JVM as its GameServer, for single player.
+ * Command objects are handed over as they are, never encoded; the commands the server sends
+ * are not changed after they are sent, so the client can use them as they are too.
+ *
+ * Commands to the client go through an SpscQueue: whichever thread sends holds this
+ * connection's lock, so there is one producer at a time, and the client's reader thread is
+ * the one consumer, parking while the queue is empty. Superseded state, ClientHPandMoney,
+ * ClientMiniMap and ClientUpdate, is coalesced without a lock: the newest of each kind and map
+ * waits in a slot of latest, and only a marker for the slot goes through the queue, so a
+ * client that falls behind gets the newest state once. A snapshot that finds the queue full
+ * is dropped and its map's next snapshot is a keyframe; any other command that finds it full
+ * means the client stopped reading and it is disconnected.
+ *
+ * Commands from the client are passed straight to GameServer.commandReceived, which queues
+ * them on the client's room.
+ *
+ * Instance Variables:
+ * GameServer server						- The server
+ * String name								- The client's name, null until the client has sent it
+ * SpscQueue<Object> toClient				- Commands, and markers of latest slots, for the client
+ * AtomicReferenceArray<Object> latest		- The newest state command of each kind, per map
+ * boolean[] keyframeNeeded					- Set when a map's snapshots were dropped
+ * Thread reader							- The client's reader thread while it is parked
+ * boolean closed							- True once the connection is closed
+ * statistics								- Commands delivered, coalesced and dropped, max queue depth
+ *
+ * Methods:
+ * the ClientConnection methods
+ * Transport getClientTransport()
+ */
+public class LoopbackConnection implements ClientConnection{
+
+	public static final int CAPACITY = 4096; //Commands queued before the client counts as gone
+	private static final int HP_AND_MONEY = 0, MINI_MAP = 2, UPDATE = 4; //Slot of each kind of state, + 1 for player 2's map
+	private static final Slot[] SLOTS = new Slot[6];
+	static{
+		for(int i = 0; i < SLOTS.length; i++){
+			SLOTS[i] = new Slot(i);
+		}
+	}
+
+	private final GameServer server;
+	private volatile String name;
+	private final SpscQueue<Object> toClient = new SpscQueue<Object>(CAPACITY);
+	private final AtomicReferenceArray<Object> latest = new AtomicReferenceArray<Object>(SLOTS.length);
+	private final boolean[] keyframeNeeded = new boolean[2];
+	private final Transport clientTransport = new ClientEnd();
+	private volatile Thread reader;
+	private volatile boolean closed;
+	private boolean disconnecting;
+	private volatile long delivered;
+	private long coalesced;
+	private long snapshotsDropped;
+	private int maxDepth;
+
+	/**
+	 * Marks where in the queue the newest command of a latest slot is delivered
+	 */
+	private static class Slot{
+		private final int index;
+
+		private Slot(int index){
+			this.index = index;
+		}
+	}
+
+	/**
+	 * @param server the server the client connects to
+	 */
+	LoopbackConnection(GameServer server){
+		this.server = server;
+	}
+
+	/**
+	 * @return the client's end of the connection
+	 */
+	public Transport getClientTransport(){
+		return clientTransport;
+	}
+
+	public String getName(){
+		return name;
+	}
+
+	public synchronized void send(Object command){
+		if(closed){
+			return;
+		}
+		Object message = command instanceof EncodedFrame ? ((EncodedFrame) command).getMessage() : command;
+		if(message instanceof ClientSnapshot){
+			ClientSnapshot s = (ClientSnapshot) message;
+			int side = s.isFromPlayer1() ? 0 : 1;
+			if((!s.isKeyframe() && keyframeNeeded[side]) || !toClient.offer(message)){
+				snapshotsDropped++; //Behind, skip to a keyframe
+				keyframeNeeded[side] = true;
+				return;
+			}
+		}else if(message instanceof ClientHPandMoney){
+			sendLatest(HP_AND_MONEY + (((ClientHPandMoney) message).isFromPlayer1() ? 0 : 1), message);
+		}else if(message instanceof ClientMiniMap){
+			sendLatest(MINI_MAP + (((ClientMiniMap) message).isFromPlayer1() ? 0 : 1), message);
+		}else if(message instanceof ClientUpdate){
+			sendLatest(UPDATE + (((ClientUpdate) message).isFromPlayer1() ? 0 : 1), message);
+		}else if(!toClient.offer(message)){
+			System.out.println("\t\t " + name + " is not reading, disconnecting");
+			fail();
+			return;
+		}
+		int depth = toClient.size();
+		if(depth > maxDepth){
+			maxDepth = depth;
+		}
+		VarHandle.fullFence(); //Publish before checking for a parked reader, see ClientEnd.readObject
+		Thread parked = reader;
+		if(parked != null){
+			LockSupport.unpark(parked);
+		}
+	}
+
+	/**
+	 * Replaces the command waiting in a latest slot, queueing the slot's marker if none is queued
+	 */
+	private void sendLatest(int slot, Object message){
+		if(latest.getAndSet(slot, message) != null){
+			coalesced++; //The queued marker delivers this one instead
+		}else if(!toClient.offer(SLOTS[slot])){
+			latest.set(slot, null); //Full, dropped; the next one is newer anyway
+			coalesced++;
+		}
+	}
+
+	public synchronized boolean takeKeyframeRequest(boolean fromPlayer1){
+		int side = fromPlayer1 ? 0 : 1;
+		if(!keyframeNeeded[side] || toClient.size() > CAPACITY / 2){
+			return false; //Not needed, or the client has not caught up yet
+		}
+		keyframeNeeded[side] = false;
+		return true;
+	}
+
+	/**
+	 * Closes the connection and tells the server the client is gone
+	 */
+	private void fail(){
+		if(close() && name != null && server.connectionLost(name)){
+			System.out.println("\t\t " + name + " did not safely disconnect");
+		}
+	}
+
+	public boolean close(){
+		synchronized(this){
+			if(closed){
+				return false;
+			}
+			closed = true;
+		}
+		Thread parked = reader;
+		if(parked != null){
+			LockSupport.unpark(parked);
+		}
+		return true;
+	}
+
+	public boolean isClosed(){
+		return closed;
+	}
+
+	public int getQueueDepth(){
+		return toClient.size();
+	}
+
+	public synchronized String getStats(){
+		return name + " (loopback): queued=" + toClient.size() + " max=" + maxDepth
+				+ " sent=" + delivered + " coalesced=" + coalesced + " snapshotsDropped=" + snapshotsDropped;
+	}
+
+	/**
+	 * The client's end: writes go straight to the server, reads take from toClient
+	 */
+	private class ClientEnd implements Transport{
+
+		@SuppressWarnings("unchecked")
+		public void writeObject(Object message) throws IOException{
+			if(closed){
+				throw new IOException("Connection closed");
+			}
+			synchronized(this){
+				if(name == null){
+					if(!(message instanceof String)){
+						throw new StreamCorruptedException("Expected a client name");
+					}
+					if(server.clientConnected(LoopbackConnection.this, (String) message)){
+						name = (String) message;
+					}
+					return;
+				}
+				if(disconnecting){
+					return; //The server stops taking commands after a DisconnectCommand
+				}
+				if(message instanceof DisconnectCommand){
+					disconnecting = true;
+				}
+			}
+			if(!(message instanceof Command)){
+				throw new StreamCorruptedException("Expected a command");
+			}
+			server.commandReceived(name, (Command<GameServer>) message);
+		}
+
+		public Object readObject() throws IOException{
+			while(true){
+				Object message = toClient.poll();
+				if(message instanceof Slot){
+					message = latest.getAndSet(((Slot) message).index, null);
+					if(message == null){
+						continue;
+					}
+				}
+				if(message != null){
+					delivered++;
+					return message;
+				}
+				if(closed){
+					throw new EOFException();
+				}
+				reader = Thread.currentThread();
+				if(toClient.isEmpty() && !closed){ //Checked again after reader is set, so a send cannot be missed
+					LockSupport.park(this);
+				}
+				reader = null;
+			}
+		}
+
+		public void close() throws IOException{
+			fail();
+		}
+	}
+}
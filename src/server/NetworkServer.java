@@ -0,0 +1,403 @@
+package server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import commands.WireCodec;
+
+/**
+ * The GameServer's network layer: every client connection is a non-blocking SocketChannel
+ * served by one of a small, fixed number of IoLoop threads, each running a Selector. However
+ * many clients are connected, idle in the lobby or watching, the server uses the same threads.
+ *
+ * IoLoop 0 also accepts connections, from a listen backlog of ACCEPT_BACKLOG, and hands each
+ * new one to the loops in turn. A loop reads and decodes the frames of its connections and
+ * passes them to the GameServer, and writes out whatever their ClientConnections have queued,
+ * registering for OP_WRITE only while a socket is full.
+ *
+ * Connections are closed when they:
+ *   do not send the header and their name within HANDSHAKE_TIMEOUT_MILLIS
+ *   send nothing for IDLE_TIMEOUT_MILLIS, which a SocketTransport never does while it is open, it
+ *   sends a ServerKeepAlive when it has sent nothing else for SocketTransport.KEEPALIVE_MILLIS
+ *   have output waiting that makes no progress for WRITE_TIMEOUT_MILLIS, the client stopped reading
+ * Sockets also have SO_KEEPALIVE set, so a peer that vanished is noticed by the OS. A
+ * connection whose frames throw anything while they are read or handled is closed alone, the
+ * loop goes on serving the rest.
+ *
+ * shutdown() closes the listening socket and stops reading, waits up to a grace period for
+ * every connection's queued output to be written, then closes them all and stops the loops.
+ *
+ * Instance Variables:
+ * GameServer server						- Told about new clients, their commands and lost connections
+ * ServerSocketChannel listener			- The listening socket
+ * IoLoop[] loops							- The I/O threads
+ * Set<SocketConnection> connections		- Every open connection
+ * int nextLoop							- The loop the next accepted connection goes to
+ * boolean draining						- True once shutdown has begun, nothing more is read
+ *
+ * Methods:
+ * void start()
+ * void stopAccepting()
+ * void shutdown(long graceMillis)
+ * int getPort()
+ * int getConnectionCount()
+ * int getIoThreadCount()
+ */
+public class NetworkServer{
+
+	public static final int ACCEPT_BACKLOG = 1024; //Connections the OS holds until they are accepted
+	public static final long HANDSHAKE_TIMEOUT_MILLIS = 10 * 1000;
+	public static final long IDLE_TIMEOUT_MILLIS = 30 * 60 * 1000;
+	public static final long WRITE_TIMEOUT_MILLIS = 30 * 1000;
+	private static final long CHECK_INTERVAL_MILLIS = 1000; //How often each loop checks for timeouts
+
+	private final GameServer server;
+	private final ServerSocketChannel listener;
+	private final IoLoop[] loops;
+	private final Set<SocketConnection> connections = ConcurrentHashMap.newKeySet();
+	private int nextLoop;
+	private volatile boolean draining;
+
+	/**
+	 * Opens the listening socket, start() begins accepting on it
+	 * @param server the server
+	 * @param port the port to listen on, 0 for any free port
+	 * @param ioThreads the number of I/O threads
+	 * @throws IOException if the port cannot be opened
+	 */
+	public NetworkServer(GameServer server, int port, int ioThreads) throws IOException{
+		this.server = server;
+		this.listener = ServerSocketChannel.open();
+		listener.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+		listener.bind(new InetSocketAddress(port), ACCEPT_BACKLOG);
+		listener.configureBlocking(false);
+		loops = new IoLoop[Math.max(1, ioThreads)];
+		for(int i = 0; i < loops.length; i++){
+			loops[i] = new IoLoop(i);
+		}
+		listener.register(loops[0].selector, SelectionKey.OP_ACCEPT);
+	}
+
+	/**
+	 * Starts the I/O threads
+	 */
+	public void start(){
+		for(IoLoop loop : loops){
+			loop.thread.start();
+		}
+	}
+
+	/**
+	 * Stops accepting connections and reading commands, output is still written
+	 */
+	public void stopAccepting(){
+		draining = true;
+		try{
+			listener.close();
+		}catch(IOException e){
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Stops accepting and reading, gives queued output up to graceMillis to be written,
+	 * then closes every connection and stops the I/O threads
+	 * @param graceMillis how long to wait for output to drain
+	 */
+	public void shutdown(long graceMillis){
+		if(!draining){
+			stopAccepting();
+		}
+		long deadline = System.currentTimeMillis() + graceMillis;
+		while(System.currentTimeMillis() < deadline && !allFlushed()){
+			try{
+				Thread.sleep(10);
+			}catch(InterruptedException e){
+				break;
+			}
+		}
+		for(SocketConnection connection : connections){
+			connection.close();
+		}
+		for(IoLoop loop : loops){
+			loop.running = false;
+			loop.selector.wakeup();
+		}
+		for(IoLoop loop : loops){
+			try{
+				loop.thread.join(1000);
+			}catch(InterruptedException e){
+				break;
+			}
+		}
+	}
+
+	private boolean allFlushed(){
+		for(SocketConnection connection : connections){
+			if(!connection.isFlushed()){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the port being listened on
+	 */
+	public int getPort(){
+		return listener.socket().getLocalPort();
+	}
+
+	public int getConnectionCount(){
+		return connections.size();
+	}
+
+	public int getIoThreadCount(){
+		return loops.length;
+	}
+
+	/**
+	 * Forgets a connection once it has been closed
+	 */
+	void closed(SocketConnection connection){
+		connections.remove(connection);
+	}
+
+	/**
+	 * Accepts every waiting connection and hands them to the loops in turn. Run on loop 0.
+	 */
+	private void accept(){
+		while(true){
+			SocketChannel channel;
+			try{
+				channel = listener.accept();
+			}catch(IOException e){
+				if(!draining){
+					e.printStackTrace();
+				}
+				return;
+			}
+			if(channel == null){
+				return;
+			}
+			try{
+				channel.configureBlocking(false);
+				channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+				channel.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+			}catch(IOException e){
+				e.printStackTrace();
+				closeQuietly(channel);
+				continue;
+			}
+			IoLoop loop = loops[nextLoop];
+			nextLoop = (nextLoop + 1) % loops.length;
+			SocketConnection connection = new SocketConnection(server, loop, channel);
+			connections.add(connection);
+			loop.accepted.add(connection);
+			loop.selector.wakeup();
+		}
+	}
+
+	private static void closeQuietly(SocketChannel channel){
+		try{
+			channel.close();
+		}catch(IOException e){
+			//Closing anyway
+		}
+	}
+
+	/**
+	 * One I/O thread and its Selector. A connection is only ever read from and written to by
+	 * the loop it was given to; other threads queue output on the SocketConnection, which asks
+	 * its loop for a flush.
+	 *
+	 * Instance Variables:
+	 * Selector selector								- The loop's connections, and on loop 0 the listener
+	 * ConcurrentLinkedQueue<SocketConnection> accepted	- New connections to register
+	 * ConcurrentLinkedQueue<SocketConnection> flushes	- Connections with newly queued output
+	 * ByteBuffer readBuffer							- Shared by the loop's connections for reading
+	 * WireCodec codec									- Encodes and decodes for the loop's connections
+	 */
+	class IoLoop implements Runnable{
+
+		private final Selector selector;
+		private final Thread thread;
+		private final ConcurrentLinkedQueue<SocketConnection> accepted = new ConcurrentLinkedQueue<SocketConnection>();
+		private final ConcurrentLinkedQueue<SocketConnection> flushes = new ConcurrentLinkedQueue<SocketConnection>();
+		private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(SocketConnection.MAX_INBOUND_FRAME + 16);
+		private final WireCodec codec = new WireCodec();
+		private volatile boolean running = true;
+
+		private IoLoop(int index) throws IOException{
+			this.selector = Selector.open();
+			this.thread = new Thread(this, "IoLoop-" + index);
+			this.thread.setDaemon(true);
+		}
+
+		/**
+		 * Asks the loop to write out a connection's queued output. Called from any thread.
+		 */
+		void requestFlush(SocketConnection connection){
+			flushes.add(connection);
+			selector.wakeup();
+		}
+
+		NetworkServer getNetwork(){
+			return NetworkServer.this;
+		}
+
+		public void run(){
+			long nextCheck = System.currentTimeMillis() + CHECK_INTERVAL_MILLIS;
+			while(running){
+				try{
+					selector.select(CHECK_INTERVAL_MILLIS);
+				}catch(IOException e){
+					e.printStackTrace();
+					break;
+				}
+				registerAccepted();
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while(keys.hasNext()){
+					SelectionKey key = keys.next();
+					keys.remove();
+					try{
+						if(key.isAcceptable()){
+							accept();
+						}else{
+							SocketConnection connection = (SocketConnection) key.attachment();
+							if(key.isReadable()){
+								read(connection);
+							}
+							if(key.isValid() && key.isWritable()){
+								flush(connection);
+							}
+						}
+					}catch(CancelledKeyException e){
+						//Closed by another thread
+					}catch(RuntimeException e){
+						Object attachment = key.attachment();
+						failed(attachment instanceof SocketConnection ? (SocketConnection) attachment : null, e);
+					}
+				}
+				SocketConnection connection;
+				while((connection = flushes.poll()) != null){
+					try{
+						flush(connection);
+					}catch(RuntimeException e){
+						failed(connection, e);
+					}
+				}
+				long now = System.currentTimeMillis();
+				if(now >= nextCheck){
+					checkTimeouts(now);
+					nextCheck = now + CHECK_INTERVAL_MILLIS;
+				}
+			}
+			try{
+				selector.close();
+			}catch(IOException e){
+				e.printStackTrace();
+			}
+		}
+
+		/**
+		 * Closes only the connection whose reading or writing threw, a client's bad frame or a
+		 * bug in the command it sent, so the loop goes on serving the others
+		 * @param connection the connection, null if the listening socket's accept threw
+		 */
+		private void failed(SocketConnection connection, RuntimeException e){
+			if(connection == null){
+				System.out.println("\t\t Could not accept a connection: " + e);
+			}else{
+				System.out.println("\t\t Closing " + connection.getDescription() + " after " + e);
+			}
+			e.printStackTrace();
+			if(connection != null){
+				connection.fail();
+			}
+		}
+
+		private void registerAccepted(){
+			SocketConnection connection;
+			while((connection = accepted.poll()) != null){
+				try{
+					connection.setKey(connection.getChannel().register(selector, SelectionKey.OP_READ, connection));
+				}catch(IOException e){
+					connection.close(); //Closed before it was registered
+					continue;
+				}
+				flush(connection); //The connection header
+			}
+		}
+
+		private void read(SocketConnection connection){
+			if(draining){
+				return;
+			}
+			try{
+				connection.read(readBuffer, codec);
+			}catch(IOException e){
+				connection.fail();
+				return;
+			}
+			updateInterest(connection);
+		}
+
+		private void flush(SocketConnection connection){
+			if(connection.isClosed()){
+				return;
+			}
+			try{
+				connection.flush(codec);
+			}catch(IOException e){
+				connection.fail();
+				return;
+			}
+			updateInterest(connection);
+		}
+
+		/**
+		 * Reads while the connection still takes commands, and waits to write while its socket is full
+		 */
+		private void updateInterest(SocketConnection connection){
+			SelectionKey key = connection.getKey();
+			if(key == null || !key.isValid()){
+				return;
+			}
+			int ops = connection.isReading() && !draining ? SelectionKey.OP_READ : 0;
+			if(connection.isWriteBlocked()){
+				ops |= SelectionKey.OP_WRITE;
+			}
+			try{
+				key.interestOps(ops);
+			}catch(CancelledKeyException e){
+				//Closed by another thread
+			}
+		}
+
+		private void checkTimeouts(long now){
+			for(SelectionKey key : selector.keys()){
+				Object attachment = key.attachment();
+				if(attachment instanceof SocketConnection){
+					SocketConnection connection = (SocketConnection) attachment;
+					String reason = connection.checkTimeouts(now);
+					if(reason != null){
+						System.out.println("\t\t Closing " + connection.getDescription() + ", " + reason);
+						connection.fail();
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,108 @@
+package server;
+
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.LinkedList;
+
+import model.GameEventSink;
+import model.Map;
+import GUI.EnemyImage;
+import GUI.TowerImage;
+import GUI.GameView.towerType;
+import client.Player;
+
+/**
+ * A GameEventSink for playing a Level with nobody watching, as the HeadlessEngine does.
+ * Every update is ignored and Maps are told there are no viewers so they never build
+ * their Image lists. It only remembers whether the game has been won or lost.
+ * Extend it and override the update methods to record what happens.
+ */
+public class NullEventSink implements GameEventSink{
+
+	private Player player1;
+	private boolean gameOver;
+	private boolean won;
+
+	/**
+	 * Readies the sink for a new game, to be called before the Level is created
+	 * @param player the Player playing the game
+	 */
+	public void reset(Player player){
+		this.player1 = player;
+		this.gameOver = false;
+		this.won = false;
+	}
+
+	/**
+	 * @return true once the Level has reported the game won or lost
+	 */
+	public boolean isGameOver(){
+		return gameOver;
+	}
+
+	/**
+	 * @return true if the game was won
+	 */
+	public boolean isWon(){
+		return won;
+	}
+
+	@Override
+	public void putClientToMap(String clientName, Map map){
+	}
+
+	@Override
+	public Player getPlayer1(){
+		return player1;
+	}
+
+	@Override
+	public boolean isMultiplayer(){
+		return false;
+	}
+
+	@Override
+	public void startTimer(){
+	}
+
+	@Override
+	public void gameLost(){
+		gameOver = true;
+		won = false;
+	}
+
+	@Override
+	public void gameWon(){
+		gameOver = true;
+		won = true;
+	}
+
+	@Override
+	public boolean hasViewers(){
+		return false;
+	}
+
+	/**
+	 * Headless games have no network rate, Image lists are built every tick there are viewers
+	 */
+	@Override
+	public boolean isImageUpdateDue(boolean fromPlayer1){
+		return hasViewers();
+	}
+
+	@Override
+	public void updateClients(int playerHealth, int playerMoney, boolean fromPlayer1){
+	}
+
+	@Override
+	public void updateClients(ArrayList<EnemyImage> enemyImages, ArrayList<TowerImage> towerImages, boolean fromPlayer1){
+	}
+
+	@Override
+	public void updateClientsOfAttack(towerType type, Point towerLocation, Point enemyLocation, boolean fromPlayer1){
+	}
+
+	@Override
+	public void updateClientsOfMapBackground(String mapBackgroundURL, LinkedList<LinkedList<Point>> paths, int numOfRows, int numOfColumns, boolean fromPlayer1){
+	}
+}
@@ -0,0 +1,89 @@
+package server;
+
+import java.awt.Point;
+import java.util.ArrayList;
+
+import GUI.EnemyImage;
+import GUI.TowerImage;
+import GUI.GameView.towerType;
+
+/**
+ * A NullEventSink that keeps a log of what happened during a headless game: every
+ * tower attack and every change in the player's HP or money, in order. Useful to
+ * compare two runs of the same seed and build script, or to see why a script lost.
+ */
+public class RecordingEventSink extends NullEventSink{
+
+	private final boolean withImages; //If true Maps build and send their Image lists every tick
+	private ArrayList<String> log = new ArrayList<String>();
+	private int attacks;
+	private int imageUpdates;
+
+	/**
+	 * Creates a sink that records attacks and HP/money changes only
+	 */
+	public RecordingEventSink(){
+		this(false);
+	}
+
+	/**
+	 * @param withImages true to also have Maps build their Image lists every tick, as
+	 * they would for a connected client, and count them
+	 */
+	public RecordingEventSink(boolean withImages){
+		this.withImages = withImages;
+	}
+
+	@Override
+	public boolean hasViewers(){
+		return withImages;
+	}
+
+	@Override
+	public void gameLost(){
+		if(!isGameOver()){
+			log.add("lost");
+		}
+		super.gameLost();
+	}
+
+	@Override
+	public void gameWon(){
+		if(!isGameOver()){
+			log.add("won");
+		}
+		super.gameWon();
+	}
+
+	@Override
+	public void updateClients(int playerHealth, int playerMoney, boolean fromPlayer1){
+		log.add("hp " + playerHealth + " money " + playerMoney);
+	}
+
+	@Override
+	public void updateClients(ArrayList<EnemyImage> enemyImages, ArrayList<TowerImage> towerImages, boolean fromPlayer1){
+		imageUpdates++;
+	}
+
+	@Override
+	public void updateClientsOfAttack(towerType type, Point towerLocation, Point enemyLocation, boolean fromPlayer1){
+		attacks++;
+		log.add("attack " + type + " (" + towerLocation.x + "," + towerLocation.y + ") -> ("
+				+ enemyLocation.x + "," + enemyLocation.y + ")");
+	}
+
+	/**
+	 * @return every recorded event, in the order they happened
+	 */
+	public ArrayList<String> getLog(){
+		return log;
+	}
+
+	public int getAttacks(){
+		return attacks;
+	}
+
+	public int getImageUpdates(){
+		return imageUpdates;
+	}
+}
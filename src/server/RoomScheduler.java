@@ -0,0 +1,112 @@
+package server;
+
+import java.util.concurrent.DelayQueue;
+
+/**
+ * A fixed pool of worker threads that run every GameRoom on the server. Rooms wait in a
+ * DelayQueue ordered by when they next need running. A worker takes the room that is due
+ * first, runs its frame and puts it back, so each room is pinned to exactly one worker
+ * while it runs and many rooms share as many threads as there are cores. A room with no game
+ * running parks itself instead of being put back, and is added again when its inbox next
+ * receives a command.
+ *
+ * Instance Variables:
+ * DelayQueue<GameRoom> rooms	- The rooms waiting for their next frame
+ * Thread[] workers				- The worker threads
+ * boolean running				- False once the scheduler has been shut down
+ *
+ * Methods:
+ * void start()
+ * void shutdown(long graceMillis)
+ * void add(GameRoom room)
+ * int getWorkerCount()
+ */
+public class RoomScheduler{
+
+	private final DelayQueue<GameRoom> rooms = new DelayQueue<GameRoom>();
+	private final Thread[] workers;
+	private volatile boolean running;
+
+	/**
+	 * @param workerCount the number of worker threads, usually the number of cores
+	 */
+	public RoomScheduler(int workerCount){
+		workers = new Thread[Math.max(1, workerCount)];
+		for(int i = 0; i < workers.length; i++){
+			workers[i] = new Thread(new Worker(), "RoomWorker-" + i);
+			workers[i].setDaemon(true);
+		}
+	}
+
+	/**
+	 * Starts the worker threads
+	 */
+	public void start(){
+		running = true;
+		for(Thread worker : workers){
+			worker.start();
+		}
+	}
+
+	/**
+	 * Stops the workers once they finish the room they are running, and waits for them, so
+	 * nothing a room does in its last frame comes after the caller goes on
+	 * @param graceMillis the longest to wait for all of them
+	 */
+	public void shutdown(long graceMillis){
+		running = false;
+		for(Thread worker : workers){
+			worker.interrupt();
+		}
+		long deadline = System.currentTimeMillis() + graceMillis;
+		for(Thread worker : workers){
+			long left = deadline - System.currentTimeMillis();
+			if(worker == Thread.currentThread() || left <= 0){
+				continue; //Shut down from a room, or out of time
+			}
+			try{
+				worker.join(left);
+			}catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Schedules a new room, or a parked one that has a command to run, it runs as soon as a
+	 * worker is free
+	 * @param room the room
+	 */
+	public void add(GameRoom room){
+		rooms.put(room);
+	}
+
+	public int getWorkerCount(){
+		return workers.length;
+	}
+
+	/**
+	 * Takes due rooms, runs a frame of each and requeues them until they close or park
+	 */
+	private class Worker implements Runnable{
+		public void run(){
+			while(running){
+				GameRoom room;
+				try{
+					room = rooms.take();
+				}catch(InterruptedException e){
+					continue;
+				}
+				try{
+					room.runFrame();
+				}catch(Exception e){
+					e.printStackTrace(); //Keep the room, and this worker, going
+				}
+				if(!room.isClosed() && !room.park()){
+					rooms.put(room);
+				}
+			}
+		}
+	}
+}
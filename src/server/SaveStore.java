@@ -0,0 +1,353 @@
+package server;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.Serializable;
+import java.io.StreamCorruptedException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import model.Level;
+import model.SaveCodec;
+import client.Player;
+
+/**
+ * A player's saved games, any number of them, each in a slot under a name the player chose. Each
+ * save is a file of its own in the store's directory, and an index file beside them holds what a
+ * menu shows of each: its level, wave, HP and money, when it was saved, and its size and
+ * checksum. Opening a store and listing its saves read only the index, never a save.
+ *
+ * Loading a save checks its size and checksum against the index, and the checksum against its
+ * bytes, before it is decoded, so a corrupt save is refused with the reason rather than loaded.
+ *
+ * The saves and the index are written atomically by the SaveWriter. A save goes to a new file,
+ * never over the one it replaces, the index naming it is written after it, and the replaced file
+ * is deleted after that, so a crash at any point leaves an index whose every save is whole.
+ * Files no index names are deleted when the store is next opened. An index that fails its
+ * checksum is moved aside with every save file, each renamed to end in CORRUPT_SUFFIX, so they
+ * are kept for the player to recover by hand and no later save or opening touches them.
+ *
+ * The index is MAGIC and VERSION, the next file number and the number of slots as big endian
+ * ints, then each slot oldest first: its name as a short of its UTF-8 length and the bytes, its
+ * file number, level code, wave, HP and money as ints, the time it was saved as a long, and its
+ * size and checksum as ints. Last is a CRC32 of everything before it.
+ *
+ * Instance Variables:
+ * File directory						- Where the saves and their index are
+ * SaveWriter writer					- Writes them
+ * LinkedHashMap<String, Slot> slots	- The index, by name, the one saved last at the end
+ * int nextFile							- The number of the next save's file
+ *
+ * Methods:
+ * List<Slot> list()
+ * Slot save(String name, Level level, byte[] save)
+ * byte[] read(String name)
+ * int size()
+ */
+public class SaveStore{
+
+	public static final int MAGIC = 0x504B5349; //"PKSI"
+	public static final int VERSION = 1;
+	public static final int MAX_NAME = 64; //The longest name a slot may have
+	private static final String INDEX_FILE = "index.data";
+	private static final String SAVE_PREFIX = "save-"; //Followed by the file number
+	private static final String SAVE_SUFFIX = ".data";
+	private static final String CORRUPT_SUFFIX = ".corrupt"; //Added to the files moved aside with a corrupt index
+	private static final int HEADER = 16; //MAGIC, VERSION, the next file number and the number of slots
+	private static final int SLOT_FIELDS = 36; //The ints and long of a slot after its name
+	private static final int TRAILER = 4; //The CRC32
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final File directory;
+	private final SaveWriter writer;
+	private final LinkedHashMap<String, Slot> slots = new LinkedHashMap<String, Slot>();
+	private int nextFile;
+
+	/**
+	 * What the index holds of one save, all a menu needs to list it
+	 */
+	public static class Slot implements Serializable{
+
+		private static final long serialVersionUID = -3125440851733519427L;
+		private final String name;
+		private final int file; //The number of the file the save is in
+		private final int levelCode;
+		private final int wave;
+		private final int healthPoints;
+		private final int money;
+		private final long savedAt; //System.currentTimeMillis() when saved
+		private final int size;
+		private final int checksum;
+
+		private Slot(String name, int file, int levelCode, int wave, int healthPoints, int money,
+				long savedAt, int size, int checksum){
+			this.name = name;
+			this.file = file;
+			this.levelCode = levelCode;
+			this.wave = wave;
+			this.healthPoints = healthPoints;
+			this.money = money;
+			this.savedAt = savedAt;
+			this.size = size;
+			this.checksum = checksum;
+		}
+
+		public String getName(){
+			return name;
+		}
+
+		public int getLevelCode(){
+			return levelCode;
+		}
+
+		/**
+		 * @return the number of waves that had ended when it was saved
+		 */
+		public int getWave(){
+			return wave;
+		}
+
+		public int getHealthPoints(){
+			return healthPoints;
+		}
+
+		public int getMoney(){
+			return money;
+		}
+
+		public long getSavedAt(){
+			return savedAt;
+		}
+
+		/**
+		 * @return the size of the save in bytes
+		 */
+		public int getSize(){
+			return size;
+		}
+
+		/**
+		 * @return the CRC32 the save ends with
+		 */
+		public int getChecksum(){
+			return checksum;
+		}
+	}
+
+	/**
+	 * Opens a store, reading its index if it has one. An index that fails its checksum is moved
+	 * aside with the saves, and the store starts empty, numbering its files past theirs.
+	 * @param directory where the saves are, created with the first save
+	 * @param writer the SaveWriter to write them with
+	 * @throws IOException if the index cannot be read
+	 */
+	public SaveStore(File directory, SaveWriter writer) throws IOException{
+		this.directory = directory;
+		this.writer = writer;
+		File index = new File(directory, INDEX_FILE);
+		if(!index.exists()){
+			return;
+		}
+		try{
+			readIndex(writer.read(index));
+		}catch(StreamCorruptedException e){
+			slots.clear();
+			nextFile = 0;
+			File aside = new File(directory, INDEX_FILE + CORRUPT_SUFFIX);
+			Files.move(index.toPath(), aside.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			int moved = moveSavesAside();
+			System.out.println("The save index " + index + " was corrupt, moved to " + aside + " with " + moved
+					+ " saves: " + e.getMessage());
+			return;
+		}
+		deleteUnindexed();
+	}
+
+	/**
+	 * @return every slot, the one saved last first
+	 */
+	public synchronized List<Slot> list(){
+		ArrayList<Slot> list = new ArrayList<Slot>(slots.values());
+		Collections.reverse(list);
+		return list;
+	}
+
+	/**
+	 * @return the number of slots
+	 */
+	public synchronized int size(){
+		return slots.size();
+	}
+
+	/**
+	 * Saves a game in a slot, replacing any save already in it. The save and the index are
+	 * queued on the SaveWriter, so this never waits on the disk.
+	 * @param name the slot, at most MAX_NAME characters
+	 * @param level the game saved, for the index, between ticks on the thread that ticks it
+	 * @param save the game as SaveCodec encoded it, not to be modified afterwards
+	 * @return the slot as the index now holds it
+	 * @throws IOException if the store's directory cannot be created
+	 */
+	public synchronized Slot save(String name, Level level, byte[] save) throws IOException{
+		if(name == null || name.trim().isEmpty() || name.length() > MAX_NAME){
+			throw new IllegalArgumentException("a save's name must be 1 to " + MAX_NAME + " characters: " + name);
+		}
+		if(!directory.isDirectory() && !directory.mkdirs()){
+			throw new IOException("could not create " + directory);
+		}
+		Player player = level.getMap1().getPlayer();
+		Slot slot = new Slot(name, nextFile++, level.getLevelCode(), level.getWaveIndex(), player.getHealthPoints(),
+				player.getMoney(), System.currentTimeMillis(), save.length, SaveCodec.checksum(save));
+		writer.submit(getFile(slot.file), save);
+		Slot replaced = slots.remove(name);
+		slots.put(name, slot);
+		writer.submit(new File(directory, INDEX_FILE), encodeIndex()); //After the save, so it never names one not written
+		if(replaced != null){
+			writer.delete(getFile(replaced.file)); //After the index that no longer names it
+		}
+		return slot;
+	}
+
+	/**
+	 * Reads a save and checks it against the index before it is decoded
+	 * @param name the slot
+	 * @return the save, to be decoded with SaveCodec
+	 * @throws IOException if there is no such slot, or its save is missing or corrupt
+	 */
+	public byte[] read(String name) throws IOException{
+		Slot slot;
+		synchronized(this){
+			slot = slots.get(name);
+		}
+		if(slot == null){
+			throw new FileNotFoundException("there is no save named " + name);
+		}
+		byte[] save = writer.read(getFile(slot.file));
+		if(save.length != slot.size || SaveCodec.checksum(save) != slot.checksum){
+			throw new StreamCorruptedException("the save " + name + " is not the one its index holds");
+		}
+		SaveCodec.verify(save); //The checksum against the bytes
+		return save;
+	}
+
+	private File getFile(int number){
+		return new File(directory, SAVE_PREFIX + number + SAVE_SUFFIX);
+	}
+
+	private byte[] encodeIndex(){
+		int length = HEADER;
+		byte[][] names = new byte[slots.size()][];
+		int i = 0;
+		for(Slot slot : slots.values()){
+			names[i] = slot.name.getBytes(UTF8);
+			length += 2 + names[i++].length + SLOT_FIELDS;
+		}
+		ByteBuffer out = ByteBuffer.allocate(length + TRAILER);
+		out.putInt(MAGIC).putInt(VERSION).putInt(nextFile).putInt(slots.size());
+		i = 0;
+		for(Slot slot : slots.values()){
+			out.putShort((short) names[i].length).put(names[i++]);
+			out.putInt(slot.file).putInt(slot.levelCode).putInt(slot.wave).putInt(slot.healthPoints).putInt(slot.money);
+			out.putLong(slot.savedAt).putInt(slot.size).putInt(slot.checksum);
+		}
+		CRC32 crc = new CRC32();
+		crc.update(out.array(), 0, length);
+		out.putInt((int) crc.getValue());
+		return out.array();
+	}
+
+	private void readIndex(byte[] index) throws IOException{
+		if(index.length < HEADER + TRAILER){
+			throw new StreamCorruptedException("save index too short: " + index.length + " bytes");
+		}
+		CRC32 crc = new CRC32();
+		crc.update(index, 0, index.length - TRAILER);
+		if(ByteBuffer.wrap(index).getInt(index.length - TRAILER) != (int) crc.getValue()){
+			throw new StreamCorruptedException("save index failed its checksum");
+		}
+		ByteBuffer in = ByteBuffer.wrap(index, 0, index.length - TRAILER);
+		if(in.getInt() != MAGIC){
+			throw new StreamCorruptedException("not a save index");
+		}
+		int version = in.getInt();
+		if(version != VERSION){
+			throw new InvalidObjectException("save index version " + version + ", expected " + VERSION);
+		}
+		nextFile = in.getInt();
+		int count = in.getInt();
+		try{
+			for(int i = 0; i < count; i++){
+				byte[] name = new byte[in.getShort() & 0xFFFF];
+				in.get(name);
+				Slot slot = new Slot(new String(name, UTF8), in.getInt(), in.getInt(), in.getInt(), in.getInt(),
+						in.getInt(), in.getLong(), in.getInt(), in.getInt());
+				slots.put(slot.name, slot);
+			}
+		}catch(BufferUnderflowException e){
+			throw new StreamCorruptedException("save index ends in the middle of a slot");
+		}
+	}
+
+	/**
+	 * Renames every save file to end in CORRUPT_SUFFIX, where neither deleteUnindexed nor a new
+	 * save touches it, and sets nextFile past the numbers of those and of any moved aside before
+	 * @return the number of files moved
+	 */
+	private int moveSavesAside() throws IOException{
+		String[] names = directory.list();
+		if(names == null){
+			return 0;
+		}
+		int moved = 0;
+		for(String name : names){
+			boolean aside = name.endsWith(CORRUPT_SUFFIX);
+			String save = aside ? name.substring(0, name.length() - CORRUPT_SUFFIX.length()) : name;
+			if(!save.startsWith(SAVE_PREFIX) || !save.endsWith(SAVE_SUFFIX)){
+				continue;
+			}
+			try{
+				int number = Integer.parseInt(save.substring(SAVE_PREFIX.length(), save.length() - SAVE_SUFFIX.length()));
+				nextFile = Math.max(nextFile, number + 1);
+			}catch(NumberFormatException e){
+				//Not one of the store's numbers, moved aside all the same
+			}
+			if(!aside){
+				Files.move(new File(directory, name).toPath(), new File(directory, name + CORRUPT_SUFFIX).toPath(),
+						StandardCopyOption.REPLACE_EXISTING);
+				moved++;
+			}
+		}
+		return moved;
+	}
+
+	/**
+	 * Deletes the save files the index does not name, left by a crash before the index that
+	 * named them was written, or before the save they replaced was deleted
+	 */
+	private void deleteUnindexed(){
+		HashSet<String> indexed = new HashSet<String>();
+		for(Slot slot : slots.values()){
+			indexed.add(getFile(slot.file).getName());
+		}
+		String[] names = directory.list();
+		if(names == null){
+			return;
+		}
+		for(String name : names){
+			if(name.startsWith(SAVE_PREFIX) && name.endsWith(SAVE_SUFFIX) && !indexed.contains(name)){
+				writer.delete(new File(directory, name));
+			}
+		}
+	}
+}
@@ -0,0 +1,337 @@
+package server;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Writes saved games to disk on a thread of its own, so a room's worker only pays for encoding
+ * the save, never for the file I/O. Each save is written to a temporary file beside its own,
+ * synced to disk, then renamed over it in one atomic step, so a crash mid-write leaves the
+ * last complete save in place rather than half of a new one.
+ *
+ * Saves wait in a queue with one entry per file: a save submitted while an older one for the
+ * same file is still waiting replaces it, so a slow disk only ever costs the saves in between.
+ * The writer looks for saves every POLL_MILLIS rather than being woken for each, so handing one
+ * over never wakes another thread onto the caller's core.
+ *
+ * Bytes can also be appended to a file, as an InputJournal is. Appends to the same file that
+ * are waiting together are written and synced as one, so a file appended to every frame is
+ * synced at most once per POLL_MILLIS, and a whole save submitted for the file replaces the
+ * appends still waiting before it.
+ *
+ * A file can be deleted in turn as well, once everything queued before it has been written, as a
+ * SaveStore deletes a slot's old save only after the index no longer names it.
+ *
+ * Instance Variables:
+ * LinkedHashMap<File, Write> pending	- The saves and appends waiting to be written, oldest file first
+ * File writing, Write writingSave		- The file being written and what is written to it, null when idle
+ * Thread thread						- The writer thread
+ * statistics							- Writes done, saves replaced while waiting, appends queued, files deleted and writes failed, bytes and write times
+ *
+ * Methods:
+ * void start()
+ * void shutdown()
+ * void submit(File file, byte[] save)
+ * void append(File file, byte[] bytes, int length)
+ * void delete(File file)
+ * byte[] read(File file)
+ * boolean awaitIdle(long millis)
+ * static void writeAtomically(File file, byte[] save)
+ * String getStats()
+ */
+public class SaveWriter implements Runnable{
+
+	private static final long POLL_MILLIS = 50; //The longest a save waits before the writer takes it
+	private final LinkedHashMap<File, Write> pending = new LinkedHashMap<File, Write>();
+	private final Thread thread;
+	private File writing;
+	private Write writingSave;
+	private boolean running;
+	private long written;
+	private long replaced;
+	private long appends;
+	private long deleted;
+	private long failed;
+	private long bytesWritten;
+	private long writeNanos;
+	private long worstWriteNanos;
+
+	/**
+	 * The bytes waiting to be written to one file: a whole save, or bytes to append to it.
+	 * One with no bytes deletes the file.
+	 */
+	private static class Write{
+		private byte[] bytes;
+		private int length;
+		private final boolean append;
+
+		private Write(byte[] bytes, int length, boolean append){
+			this.bytes = bytes;
+			this.length = length;
+			this.append = append;
+		}
+
+		private void add(byte[] more, int moreLength){
+			if(length + moreLength > bytes.length){
+				bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + moreLength));
+			}
+			System.arraycopy(more, 0, bytes, length, moreLength);
+			length += moreLength;
+		}
+
+		private byte[] toBytes(){
+			return length == bytes.length ? bytes : Arrays.copyOf(bytes, length);
+		}
+	}
+
+	public SaveWriter(){
+		thread = new Thread(this, "SaveWriter");
+		thread.setDaemon(true);
+	}
+
+	/**
+	 * Starts the writer thread
+	 */
+	public synchronized void start(){
+		running = true;
+		thread.start();
+	}
+
+	/**
+	 * Writes out the saves still waiting, then stops the writer thread
+	 */
+	public void shutdown(){
+		synchronized(this){
+			running = false;
+			notifyAll();
+		}
+		try{
+			thread.join(GameServer.SHUTDOWN_GRACE_MILLIS);
+		}catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Queues a save to be written, replacing one still waiting for the same file. Never blocks
+	 * on the disk, and a read of the file returns the save straight away.
+	 * @param file the file to write
+	 * @param save the whole save, not to be modified afterwards
+	 */
+	public synchronized void submit(File file, byte[] save){
+		if(pending.remove(file) != null){
+			replaced++;
+		}
+		pending.put(file, new Write(save, save.length, false));
+	}
+
+	/**
+	 * Queues bytes to be appended to a file, after anything already queued for it
+	 * @param file the file to append to, created if there is none
+	 * @param bytes the bytes, copied so the caller can reuse the array
+	 * @param length the number of bytes to append
+	 */
+	public synchronized void append(File file, byte[] bytes, int length){
+		Write waiting = pending.get(file);
+		if(waiting != null && waiting.bytes == null){
+			pending.put(file, new Write(Arrays.copyOf(bytes, length), length, false)); //Deleted, then all it holds
+		}else if(waiting != null){
+			waiting.add(bytes, length); //Onto the save or the appends before it, synced as one
+		}else{
+			pending.put(file, new Write(Arrays.copyOf(bytes, length), length, true));
+		}
+		appends++;
+	}
+
+	/**
+	 * Queues a file to be deleted once everything queued before it is written. Anything still
+	 * waiting to be written to the file is dropped.
+	 * @param file the file to delete
+	 */
+	public synchronized void delete(File file){
+		pending.remove(file); //Queued last, after whatever may still name the file
+		pending.put(file, new Write(null, 0, false));
+	}
+
+	/**
+	 * Reads a save, the last one submitted for the file if it has not been written out yet.
+	 * A file with appends waiting is read once they are written.
+	 * @param file the file to read
+	 * @return the save
+	 * @throws IOException if there is no such save or it cannot be read
+	 */
+	public byte[] read(File file) throws IOException{
+		synchronized(this){
+			while(isAppending(file)){
+				try{
+					wait();
+				}catch(InterruptedException e){
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("interrupted waiting to read " + file);
+				}
+			}
+			Write save = pending.get(file);
+			if(save == null && file.equals(writing)){
+				save = writingSave;
+			}
+			if(save != null && save.bytes == null){
+				throw new FileNotFoundException(file + " is being deleted");
+			}
+			if(save != null){
+				return save.toBytes();
+			}
+		}
+		byte[] save = new byte[(int) file.length()];
+		DataInputStream in = new DataInputStream(new FileInputStream(file));
+		try{
+			in.readFully(save);
+		}finally{
+			in.close();
+		}
+		return save;
+	}
+
+	/**
+	 * @return true if appends to the file are waiting or being written, so only the file will
+	 * hold all of it once they are done
+	 */
+	private boolean isAppending(File file){
+		Write waiting = pending.get(file);
+		if(waiting != null){
+			return waiting.append;
+		}
+		return file.equals(writing) && writingSave.append;
+	}
+
+	/**
+	 * Waits for every queued save to be written, for tests and benchmarks
+	 * @param millis the most time to wait
+	 * @return true if the writer is idle
+	 */
+	public synchronized boolean awaitIdle(long millis) throws InterruptedException{
+		long deadline = System.currentTimeMillis() + millis;
+		while(!pending.isEmpty() || writing != null){
+			long left = deadline - System.currentTimeMillis();
+			if(left <= 0){
+				return false;
+			}
+			wait(left);
+		}
+		return true;
+	}
+
+	public void run(){
+		while(true){
+			File file;
+			Write save;
+			synchronized(this){
+				while(running && pending.isEmpty()){
+					try{
+						wait(POLL_MILLIS);
+					}catch(InterruptedException e){
+						running = false;
+					}
+				}
+				if(pending.isEmpty()){
+					return; //Shut down with nothing left to write
+				}
+				Iterator<Map.Entry<File, Write>> oldest = pending.entrySet().iterator();
+				Map.Entry<File, Write> entry = oldest.next();
+				oldest.remove();
+				file = entry.getKey();
+				save = entry.getValue();
+				writing = file;
+				writingSave = save;
+			}
+			long start = System.nanoTime();
+			boolean ok = true;
+			try{
+				if(save.bytes == null){
+					Files.deleteIfExists(file.toPath());
+				}else if(save.append){
+					appendAndSync(file, save.bytes, save.length);
+				}else{
+					writeAtomically(file, save.toBytes());
+				}
+			}catch(IOException e){
+				ok = false;
+				System.out.println("Could not write the save " + file + ": " + e);
+			}
+			long nanos = System.nanoTime() - start;
+			synchronized(this){
+				if(ok && save.bytes == null){
+					deleted++;
+				}else if(ok){
+					written++;
+					bytesWritten += save.length;
+					writeNanos += nanos;
+					worstWriteNanos = Math.max(worstWriteNanos, nanos);
+				}else{
+					failed++;
+				}
+				writing = null;
+				writingSave = null;
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Writes a file so that it holds either its old contents or all of the new ones, never
+	 * part of them: the new contents go to a temporary file in the same directory, which is
+	 * synced and then renamed over the file
+	 * @param file the file to write
+	 * @param save the new contents
+	 */
+	public static void writeAtomically(File file, byte[] save) throws IOException{
+		File dir = file.getAbsoluteFile().getParentFile();
+		File temp = new File(dir, file.getName() + ".tmp");
+		FileOutputStream out = new FileOutputStream(temp);
+		try{
+			out.write(save);
+			out.getFD().sync(); //On disk before it replaces the old save
+		}finally{
+			out.close();
+		}
+		try{
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		}catch(AtomicMoveNotSupportedException e){
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Appends to a file and syncs it to disk
+	 */
+	private static void appendAndSync(File file, byte[] bytes, int length) throws IOException{
+		FileOutputStream out = new FileOutputStream(file, true);
+		try{
+			out.write(bytes, 0, length);
+			out.getFD().sync();
+		}finally{
+			out.close();
+		}
+	}
+
+	/**
+	 * @return one line of the saves written, replaced, deleted and failed and the time writing them
+	 */
+	public synchronized String getStats(){
+		return "saves written=" + written + " replaced=" + replaced + " appends=" + appends + " deleted=" + deleted + " failed=" + failed
+				+ " bytes=" + bytesWritten
+				+ " write avg/worst us=" + (written == 0 ? 0 : writeNanos / written / 1000) + "/" + worstWriteNanos / 1000
+				+ " waiting=" + pending.size();
+	}
+}
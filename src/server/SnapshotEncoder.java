@@ -0,0 +1,183 @@
+package server;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import GUI.EnemyImage;
+import GUI.TowerImage;
+import commands.ClientSnapshot;
+
+/**
+ * Turns the enemy and tower images of one map into ClientSnapshots for one client. It keeps
+ * the images last sent to that client, so each snapshot only carries what changed since:
+ * enemies and towers that appeared or left, the changed fields of enemies that moved or
+ * were hurt, and towers that were upgraded. Towers that did not change cost nothing.
+ * The stream is over TCP, so what was last sent is what the client has.
+ *
+ * A keyframe with every entity goes out first, whenever a keyframe is requested (a new
+ * map, a loaded game) and KEYFRAME_INTERVAL_NANOS after the last one, so a client that
+ * missed or mangled a delta is back in sync soon. The interval is a time, not a number of
+ * snapshots, so a client whose snapshot rate was cut because it fell behind, the one most
+ * likely to have missed a delta, is sent keyframes as often as any other.
+ *
+ * Instance Variables:
+ * boolean fromPlayer1						- Which map of the room this encoder is for
+ * HashMap<Integer, EnemyImage> sentEnemies	- The last enemy images sent, by entity ID
+ * HashMap<Integer, TowerImage> sentTowers	- The last tower images sent, by entity ID
+ * int sequence								- The sequence # of the next snapshot
+ * long lastKeyframeAt						- When the last keyframe was sent, System.nanoTime
+ * boolean keyframeDue						- True if the next snapshot must be a keyframe
+ *
+ * Methods:
+ * ClientSnapshot encode(List<EnemyImage> enemies, List<TowerImage> towers, long now)
+ * void requestKeyframe()
+ */
+public class SnapshotEncoder{
+
+	public static final long KEYFRAME_INTERVAL_NANOS = 5 * 1000000000L; //Time between keyframes, whatever the client's rate
+	private static final int[] NONE = new int[0];
+
+	private final boolean fromPlayer1;
+	private HashMap<Integer, EnemyImage> sentEnemies = new HashMap<Integer, EnemyImage>();
+	private HashMap<Integer, EnemyImage> nextEnemies = new HashMap<Integer, EnemyImage>();
+	private HashMap<Integer, TowerImage> sentTowers = new HashMap<Integer, TowerImage>();
+	private HashMap<Integer, TowerImage> nextTowers = new HashMap<Integer, TowerImage>();
+	private int[] changes = new int[64]; //Scratch space the enemy changes are packed into
+	private int changeLength;
+	private int sequence;
+	private long lastKeyframeAt;
+	private boolean keyframeDue = true;
+
+	/**
+	 * @param fromPlayer1 true if this encodes player 1's map
+	 */
+	public SnapshotEncoder(boolean fromPlayer1){
+		this.fromPlayer1 = fromPlayer1;
+	}
+
+	/**
+	 * Makes the next snapshot a keyframe, for when the map has been replaced
+	 */
+	public void requestKeyframe(){
+		keyframeDue = true;
+	}
+
+	/**
+	 * Builds the snapshot that brings the client from what it was last sent to the given images
+	 * @param enemies every enemy image on the map
+	 * @param towers every tower image on the map
+	 * @param now System.nanoTime, or any clock in nanoseconds the encoder is always given
+	 * @return the snapshot, or null if nothing changed and none needs sending
+	 */
+	public ClientSnapshot encode(List<EnemyImage> enemies, List<TowerImage> towers, long now){
+		boolean keyframe = keyframeDue || now - lastKeyframeAt >= KEYFRAME_INTERVAL_NANOS;
+		ArrayList<EnemyImage> addedEnemies = new ArrayList<EnemyImage>();
+		changeLength = 0;
+		for(EnemyImage e : enemies){
+			Integer id = e.getEntityId();
+			EnemyImage old = sentEnemies.remove(id);
+			if(keyframe || old == null){
+				addedEnemies.add(e);
+			}else{
+				diff(old, e);
+			}
+			nextEnemies.put(id, e);
+		}
+		int[] removedEnemies = keyframe ? NONE : keys(sentEnemies); //Whatever was not matched has left
+		HashMap<Integer, EnemyImage> swapEnemies = sentEnemies;
+		swapEnemies.clear();
+		sentEnemies = nextEnemies;
+		nextEnemies = swapEnemies;
+
+		ArrayList<TowerImage> addedTowers = new ArrayList<TowerImage>();
+		for(TowerImage t : towers){
+			Integer id = t.getEntityId();
+			TowerImage old = sentTowers.remove(id);
+			if(keyframe || old == null || old.getLevel() != t.getLevel() || old.getSpriteId() != t.getSpriteId()){
+				addedTowers.add(t);
+			}
+			nextTowers.put(id, t);
+		}
+		int[] removedTowers = keyframe ? NONE : keys(sentTowers);
+		HashMap<Integer, TowerImage> swapTowers = sentTowers;
+		swapTowers.clear();
+		sentTowers = nextTowers;
+		nextTowers = swapTowers;
+
+		if(!keyframe && addedEnemies.isEmpty() && removedEnemies.length == 0 && changeLength == 0
+				&& addedTowers.isEmpty() && removedTowers.length == 0){
+			return null;
+		}
+		if(keyframe){
+			keyframeDue = false;
+			lastKeyframeAt = now;
+		}
+		int[] enemyChanges = changeLength == 0 ? NONE : Arrays.copyOf(changes, changeLength);
+		return new ClientSnapshot(fromPlayer1, keyframe, sequence++, addedEnemies, removedEnemies,
+				enemyChanges, addedTowers, removedTowers);
+	}
+
+	/**
+	 * Packs the fields of an enemy that differ from what was last sent, if any
+	 */
+	private void diff(EnemyImage old, EnemyImage e){
+		int mask = 0;
+		if(!old.getLocation().equals(e.getLocation())){
+			mask |= ClientSnapshot.LOCATION;
+		}
+		if(old.getOrientation() != e.getOrientation()){
+			mask |= ClientSnapshot.ORIENTATION;
+		}
+		if(old.getProgress() != e.getProgress()){
+			mask |= ClientSnapshot.PROGRESS;
+		}
+		if(old.getHealthPercentage() != e.getHealthPercentage()){
+			mask |= ClientSnapshot.HEALTH;
+		}
+		if(old.getSpeed() != e.getSpeed()){
+			mask |= ClientSnapshot.SPEED;
+		}
+		if(mask == 0){
+			return;
+		}
+		ensureChangeSpace(8);
+		changes[changeLength++] = e.getEntityId();
+		changes[changeLength++] = mask;
+		if((mask & ClientSnapshot.LOCATION) != 0){
+			changes[changeLength++] = e.getLocation().x;
+			changes[changeLength++] = e.getLocation().y;
+		}
+		if((mask & ClientSnapshot.ORIENTATION) != 0){
+			changes[changeLength++] = e.getOrientation().ordinal();
+		}
+		if((mask & ClientSnapshot.PROGRESS) != 0){
+			changes[changeLength++] = e.getProgress();
+		}
+		if((mask & ClientSnapshot.HEALTH) != 0){
+			changes[changeLength++] = e.getHealthPercentage();
+		}
+		if((mask & ClientSnapshot.SPEED) != 0){
+			changes[changeLength++] = Float.floatToIntBits((float) e.getSpeed());
+		}
+	}
+
+	private void ensureChangeSpace(int needed){
+		if(changeLength + needed > changes.length){
+			changes = Arrays.copyOf(changes, Math.max(changes.length * 2, changeLength + needed));
+		}
+	}
+
+	private static int[] keys(HashMap<Integer, ?> map){
+		if(map.isEmpty()){
+			return NONE;
+		}
+		int[] ids = new int[map.size()];
+		int i = 0;
+		for(Integer id : map.keySet()){
+			ids[i++] = id;
+		}
+		return ids;
+	}
+}
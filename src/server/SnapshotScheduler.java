@@ -0,0 +1,160 @@
+package server;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Decides when each client of a GameRoom is next sent a snapshot of its map, so the network
+ * rate is independent of the GameLoop's tick rate and speed. Every client starts at the
+ * server's snapshot rate. When its outbound queue has backed up by the time its next snapshot
+ * is due, or snapshots had to be dropped for it, its rate is halved, down to MIN_HZ; while its
+ * queue is empty the rate climbs back by one Hz per snapshot to the server's rate.
+ *
+ * Only the room's worker schedules. The fields the statistics read are volatile, so they may be
+ * read from any thread; each is written by the worker alone.
+ *
+ * Instance Variables:
+ * ConcurrentHashMap<String, ClientRate> rates	- Each client's rate, next send time and statistics
+ *
+ * Methods:
+ * boolean isDue(String clientName, long now)
+ * void sent(String clientName, long now, int queueDepth, boolean dropped)
+ * void skipped(String clientName, long now)
+ * void remove(String clientName)
+ * double getRate(String clientName)
+ * double getSendHz(String clientName, long now)
+ * String getStats(String clientName, long now)
+ */
+public class SnapshotScheduler{
+
+	public static final int MIN_HZ = 2; //The lowest rate a backed up client is slowed to
+	public static final int BACKLOG_DEPTH = 8; //Commands queued at a send that count as backed up
+	private static final long NANOS_PER_SECOND = 1000000000L;
+	private static final long WINDOW_NANOS = 2 * NANOS_PER_SECOND; //How long the send Hz is averaged over
+
+	private final GameServer server;
+	private final ConcurrentHashMap<String, ClientRate> rates = new ConcurrentHashMap<String, ClientRate>(); //Read by the stats getters on other threads
+
+	/**
+	 * One client's schedule. nextSend and windowSends are the worker's own, the rest is read by
+	 * the stats getters too.
+	 */
+	private static class ClientRate{
+		private volatile double hz;
+		private long nextSend;
+		private volatile long windowStart;
+		private int windowSends;
+		private volatile double sendHz; //Snapshots per second over the last full window
+		private volatile long slowdowns;
+	}
+
+	/**
+	 * @param server the server, whose snapshot rate clients are sent at when they keep up
+	 */
+	public SnapshotScheduler(GameServer server){
+		this.server = server;
+	}
+
+	private ClientRate get(String clientName, long now){
+		ClientRate rate = rates.get(clientName);
+		if(rate == null){
+			rate = new ClientRate();
+			rate.hz = server.getSnapshotRate();
+			rate.nextSend = now;
+			rate.windowStart = now;
+			rates.put(clientName, rate);
+		}
+		return rate;
+	}
+
+	/**
+	 * @param clientName the client playing a map
+	 * @param now System.nanoTime()
+	 * @return true if the client is due a snapshot
+	 */
+	public boolean isDue(String clientName, long now){
+		return now - get(clientName, now).nextSend >= 0;
+	}
+
+	/**
+	 * Schedules a client's next snapshot after one was sent, adapting its rate
+	 * @param clientName the client
+	 * @param now System.nanoTime()
+	 * @param queueDepth the commands still waiting in the client's outbound queue
+	 * @param dropped true if some of the client's snapshots were dropped since the last one
+	 */
+	public void sent(String clientName, long now, int queueDepth, boolean dropped){
+		ClientRate rate = get(clientName, now);
+		int target = server.getSnapshotRate();
+		if(dropped || queueDepth >= BACKLOG_DEPTH){
+			rate.hz = Math.max(MIN_HZ, rate.hz / 2);
+			rate.slowdowns++;
+		}else if(queueDepth == 0 && rate.hz < target){
+			rate.hz = Math.min(target, rate.hz + 1);
+		}else if(rate.hz > target){
+			rate.hz = target; //The server's rate was lowered
+		}
+		schedule(rate, now);
+		rate.windowSends++;
+		if(now - rate.windowStart >= WINDOW_NANOS){
+			rate.sendHz = rate.windowSends * (double) NANOS_PER_SECOND / (now - rate.windowStart);
+			rate.windowStart = now;
+			rate.windowSends = 0;
+		}
+	}
+
+	/**
+	 * Schedules a client's next snapshot when nothing had changed and none was sent
+	 */
+	public void skipped(String clientName, long now){
+		schedule(get(clientName, now), now);
+	}
+
+	private static void schedule(ClientRate rate, long now){
+		long interval = (long) (NANOS_PER_SECOND / rate.hz);
+		rate.nextSend += interval;
+		if(now - rate.nextSend >= 0){
+			rate.nextSend = now + interval; //Fell behind, a paused or slow worker, do not send a burst
+		}
+	}
+
+	/**
+	 * Forgets a client that left the room
+	 */
+	public void remove(String clientName){
+		rates.remove(clientName);
+	}
+
+	/**
+	 * @return the rate the client is being sent snapshots at, in Hz
+	 */
+	public double getRate(String clientName){
+		ClientRate rate = rates.get(clientName);
+		return rate == null ? 0 : rate.hz;
+	}
+
+	/**
+	 * @return the snapshots the client was actually sent per second, over the last couple of seconds
+	 */
+	public double getSendHz(String clientName, long now){
+		ClientRate rate = rates.get(clientName);
+		if(rate == null){
+			return 0;
+		}
+		if(now - rate.windowStart > 2 * WINDOW_NANOS){
+			return 0; //Nothing sent lately, the game is paused or over
+		}
+		return rate.sendHz;
+	}
+
+	/**
+	 * @return one line of a client's snapshot rate, for the server's logs
+	 */
+	public String getStats(String clientName, long now){
+		ClientRate rate = rates.get(clientName);
+		if(rate == null){
+			return clientName + ": no snapshots";
+		}
+		return clientName + ": snapshot rate=" + Math.round(rate.hz) + "Hz sent=" + Math.round(getSendHz(clientName, now) * 10) / 10.0
+				+ "Hz slowdowns=" + rate.slowdowns;
+	}
+}
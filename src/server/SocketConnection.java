@@ -0,0 +1,527 @@
+package server;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+
+import commands.ClientHPandMoney;
+import commands.ClientMiniMap;
+import commands.ClientSnapshot;
+import commands.ClientUpdate;
+import commands.Command;
+import commands.DisconnectCommand;
+import commands.EncodedFrame;
+import commands.ServerKeepAlive;
+import commands.WireCodec;
+
+/**
+ * The ClientConnection of a client over TCP: its non-blocking SocketChannel, the frames read from it, and its
+ * outbound queue. Rooms hand commands to send() which only queues them and asks the
+ * connection's NetworkServer.IoLoop to write them out, so a slow or stalled client never
+ * holds up a room's tick. The loop does all the reading and writing.
+ *
+ * Each end starts with the WireCodec header. The client then sends its name; the connection tells the
+ * GameServer it has connected, and passes it every command after that until a
+ * DisconnectCommand, when it stops reading.
+ *
+ * When the client falls behind, state that a newer command replaces is coalesced instead of
+ * queued: a ClientHPandMoney, ClientMiniMap or ClientUpdate takes the place of the queued one for the
+ * same map, so, as over a LoopbackConnection, the newest is delivered where the first was queued. A
+ * keyframe takes the place of a queued snapshot the same way. A snapshot delta can only follow the one before it, so a delta arriving while an older
+ * snapshot for its map is still queued is dropped, along with every delta after it, and once
+ * the queued one is written the room is asked (through takeKeyframeRequest) to send that map's
+ * next snapshot as a keyframe. Every other command,
+ * game won/lost, chat, prompts, is always delivered in order. If MAX_QUEUED of those pile up
+ * the client is not reading at all and it is disconnected.
+ *
+ * Commands broadcast to a room arrive as EncodedFrames shared by every client, and are
+ * coalesced by the message inside them. The loop takes everything queued, up to MAX_BATCH,
+ * and writes it with one gathering write, EncodedFrames straight from their shared buffers.
+ *
+ * Instance Variables:
+ * SocketChannel channel		- The client's socket
+ * IoLoop loop					- The I/O thread that reads and writes the socket
+ * String name					- The client's name, null until it has been read
+ * ByteBuffer partial			- The start of a frame not fully read yet, or null
+ * ArrayDeque<Outbound> queue	- Commands waiting to be written, oldest first
+ * Outbound[] queuedSnapshots	- The queued snapshot for player 1's and player 2's map, or null
+ * Outbound[] queuedHPandMoney	- The queued HP and money for each map, or null
+ * Outbound[] queuedUpdates		- The queued ClientUpdate for each map, or null
+ * Outbound[] queuedMiniMaps	- The queued ClientMiniMap for each map, or null
+ * boolean[] keyframeNeeded		- Set when a map's snapshots were dropped
+ * boolean flushRequested		- True while the loop has queued output of this connection to write
+ * ArrayList<Outbound> writing	- The batch being written, with gather, the frames of it left to write
+ * boolean closed				- True once the connection is closed
+ * statistics					- Commands sent, coalesced and dropped, queue depth and write latency
+ *
+ * Methods:
+ * the ClientConnection methods
+ * and the methods its IoLoop calls to read, flush and time it out
+ */
+public class SocketConnection implements ClientConnection{
+
+	public static final int MAX_QUEUED = 4096; //Reliable commands queued before the client counts as gone
+	public static final int MAX_BATCH = 64; //Most commands written at once
+	public static final int MAX_INBOUND_FRAME = 64 * 1024; //Clients only send small commands
+	private static final int HEADER_SIZE = 5; //WireCodec.MAGIC and VERSION
+
+	private final GameServer server;
+	private final NetworkServer.IoLoop loop;
+	private final SocketChannel channel;
+	private final long connectedAt = System.currentTimeMillis();
+	private SelectionKey key;
+	private volatile String name;
+	private boolean headerRead;
+	private boolean reading = true;
+	private ByteBuffer partial;
+	private long lastReadAt = connectedAt;
+	private long lastWriteAt = connectedAt;
+	private final ArrayDeque<Outbound> queue = new ArrayDeque<Outbound>();
+	private final Outbound[] queuedSnapshots = new Outbound[2];
+	private final Outbound[] queuedHPandMoney = new Outbound[2];
+	private final Outbound[] queuedUpdates = new Outbound[2];
+	private final Outbound[] queuedMiniMaps = new Outbound[2];
+	private final boolean[] keyframeNeeded = new boolean[2];
+	private boolean flushRequested;
+	private final ArrayList<Outbound> writing = new ArrayList<Outbound>(MAX_BATCH);
+	private ByteBuffer[] gather = new ByteBuffer[MAX_BATCH];
+	private int gatherNext, gatherEnd;
+	private ByteBuffer staging;
+	private boolean closed;
+	private long sent;
+	private long coalesced;
+	private long snapshotsDropped;
+	private int maxDepth;
+	private long writeLatencyNanos;
+	private long worstWriteLatencyNanos;
+	private volatile long bytesWritten;
+
+	/**
+	 * A command waiting to be written and when it was queued
+	 */
+	private static class Outbound{
+		private Object command; //Replaced in place while queued when it is coalesced
+		private final long queuedAt;
+		private final int side; //0 for player 1's map, 1 for player 2's, -1 if not map state
+
+		private Outbound(Object command, int side){
+			this.command = command;
+			this.queuedAt = System.nanoTime();
+			this.side = side;
+		}
+	}
+
+	/**
+	 * @param server the server, told the client's name, its commands, and if the connection fails
+	 * @param loop the I/O thread that serves the connection
+	 * @param channel the client's socket, non-blocking
+	 */
+	SocketConnection(GameServer server, NetworkServer.IoLoop loop, SocketChannel channel){
+		this.server = server;
+		this.loop = loop;
+		this.channel = channel;
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.putInt(WireCodec.MAGIC);
+		header.put((byte) WireCodec.VERSION);
+		header.flip();
+		gather[0] = header; //Written as soon as the loop registers the connection
+		gatherEnd = 1;
+	}
+
+	/**
+	 * @return the client's name, null until it has sent it
+	 */
+	public String getName(){
+		return name;
+	}
+
+	/**
+	 * @return the client's name, or its address before it has sent one, for logs
+	 */
+	String getDescription(){
+		if(name != null){
+			return name;
+		}
+		try{
+			return String.valueOf(channel.getRemoteAddress());
+		}catch(IOException e){
+			return "a closed connection";
+		}
+	}
+
+	SocketChannel getChannel(){
+		return channel;
+	}
+
+	SelectionKey getKey(){
+		return key;
+	}
+
+	void setKey(SelectionKey key){
+		this.key = key;
+	}
+
+	/**
+	 * Queues a command for the client, coalescing it with superseded state. Never blocks on I/O.
+	 * @param command the command, or an EncodedFrame of it
+	 */
+	public synchronized void send(Object command){
+		if(closed){
+			return;
+		}
+		Object message = command instanceof EncodedFrame ? ((EncodedFrame) command).getMessage() : command;
+		if(message instanceof ClientSnapshot){
+			ClientSnapshot s = (ClientSnapshot) message;
+			int side = s.isFromPlayer1() ? 0 : 1;
+			if(!s.isKeyframe() && (queuedSnapshots[side] != null || keyframeNeeded[side])){
+				snapshotsDropped++; //Behind, the queued one still goes out, then skip to a keyframe
+				keyframeNeeded[side] = true;
+				return;
+			}
+			sendLatest(queuedSnapshots, side, command); //A keyframe replaces everything before it
+		}else if(message instanceof ClientHPandMoney){
+			sendLatest(queuedHPandMoney, ((ClientHPandMoney) message).isFromPlayer1() ? 0 : 1, command);
+		}else if(message instanceof ClientMiniMap){
+			sendLatest(queuedMiniMaps, ((ClientMiniMap) message).isFromPlayer1() ? 0 : 1, command);
+		}else if(message instanceof ClientUpdate){
+			sendLatest(queuedUpdates, ((ClientUpdate) message).isFromPlayer1() ? 0 : 1, command);
+		}else{
+			if(queue.size() >= MAX_QUEUED){
+				System.out.println("\t\t " + name + " is not reading, disconnecting");
+				fail();
+				return;
+			}
+			enqueue(command, -1);
+		}
+	}
+
+	/**
+	 * Returns true once if a map's snapshots had to be dropped, so its next snapshot must be a keyframe.
+	 * Not until the writer has caught up with that map, so a stalled client does not cost a keyframe every tick.
+	 * @param fromPlayer1 which map
+	 */
+	public synchronized boolean takeKeyframeRequest(boolean fromPlayer1){
+		int side = fromPlayer1 ? 0 : 1;
+		if(queuedSnapshots[side] != null){
+			return false; //Still behind, deltas keep being dropped until then
+		}
+		boolean needed = keyframeNeeded[side];
+		keyframeNeeded[side] = false;
+		return needed;
+	}
+
+	private Outbound enqueue(Object command, int side){
+		Outbound o = new Outbound(command, side);
+		queue.addLast(o);
+		if(queue.size() > maxDepth){
+			maxDepth = queue.size();
+		}
+		if(!flushRequested){
+			flushRequested = true;
+			loop.requestFlush(this);
+		}
+		return o;
+	}
+
+	/**
+	 * Replaces the command of a map's queued state in place, or queues it if none is queued
+	 */
+	private void sendLatest(Outbound[] slots, int side, Object command){
+		if(slots[side] != null){
+			slots[side].command = command; //Delivered where the one it replaces was queued
+			coalesced++;
+		}else{
+			slots[side] = enqueue(command, side);
+		}
+	}
+
+	/**
+	 * Reads what has arrived and passes on every whole frame. Run on the connection's loop.
+	 * @param buffer the loop's read buffer
+	 * @param codec the loop's codec
+	 * @throws IOException if the connection fails, is closed by the client, or sends a bad frame
+	 */
+	void read(ByteBuffer buffer, WireCodec codec) throws IOException{
+		buffer.clear();
+		if(partial != null){
+			buffer.put(partial);
+			partial = null;
+		}
+		int n = channel.read(buffer);
+		buffer.flip();
+		if(n > 0){
+			lastReadAt = System.currentTimeMillis();
+		}
+		if(!headerRead && buffer.remaining() >= HEADER_SIZE){
+			int magic = buffer.getInt();
+			int version = buffer.get() & 0xFF;
+			if(magic != WireCodec.MAGIC){
+				throw new StreamCorruptedException("Not a game connection");
+			}
+			if(version != WireCodec.VERSION){
+				throw new StreamCorruptedException("Wire protocol version " + version + ", expected " + WireCodec.VERSION);
+			}
+			headerRead = true;
+		}
+		while(headerRead && reading && buffer.hasRemaining()){
+			int start = buffer.position();
+			int length = readLength(buffer);
+			if(length < 0 || buffer.remaining() < length){
+				buffer.position(start); //The rest of the frame has not arrived
+				break;
+			}
+			ByteBuffer frame = buffer.slice();
+			frame.limit(length);
+			buffer.position(buffer.position() + length);
+			received(codec.decode(frame));
+		}
+		if(reading && buffer.hasRemaining()){
+			partial = ByteBuffer.allocate(buffer.remaining());
+			partial.put(buffer);
+			partial.flip();
+		}
+		if(n < 0){
+			throw new IOException("Closed by the client");
+		}
+	}
+
+	/**
+	 * Reads a frame's varint length
+	 * @return the length, or -1 if all of it has not arrived
+	 */
+	private static int readLength(ByteBuffer buffer) throws StreamCorruptedException{
+		int length = 0;
+		for(int shift = 0; shift < 35; shift += 7){
+			if(!buffer.hasRemaining()){
+				return -1;
+			}
+			int b = buffer.get();
+			length |= (b & 0x7F) << shift;
+			if((b & 0x80) == 0){
+				if(length < 1 || length > MAX_INBOUND_FRAME){
+					throw new StreamCorruptedException("Bad frame length " + length);
+				}
+				return length;
+			}
+		}
+		throw new StreamCorruptedException("Bad frame length");
+	}
+
+	/**
+	 * Handles one message from the client, its name first and commands after that
+	 */
+	@SuppressWarnings("unchecked")
+	private void received(Object message) throws IOException{
+		if(name == null){
+			if(!(message instanceof String)){
+				throw new StreamCorruptedException("Expected a client name");
+			}
+			if(server.clientConnected(this, (String) message)){
+				name = (String) message;
+			}else{
+				reading = false; //Rejected, closed by the server
+			}
+			return;
+		}
+		if(!(message instanceof Command)){
+			throw new StreamCorruptedException("Expected a command");
+		}
+		if(message instanceof ServerKeepAlive){
+			return; //Only there to be read
+		}
+		server.commandReceived(name, (Command<GameServer>) message);
+		if(message instanceof DisconnectCommand){
+			reading = false; //The room closes the connection
+		}
+	}
+
+	/**
+	 * @return false once the client has disconnected, or been rejected
+	 */
+	boolean isReading(){
+		return reading;
+	}
+
+	/**
+	 * Writes as much queued output as the socket takes. Run on the connection's loop.
+	 * @param codec the loop's codec, for commands not already encoded
+	 * @throws IOException if the connection fails
+	 */
+	void flush(WireCodec codec) throws IOException{
+		while(true){
+			if(gatherNext == gatherEnd && !takeBatch(codec)){
+				return;
+			}
+			long n = channel.write(gather, gatherNext, gatherEnd - gatherNext);
+			if(n > 0){
+				bytesWritten += n;
+				lastWriteAt = System.currentTimeMillis();
+			}
+			while(gatherNext < gatherEnd && !gather[gatherNext].hasRemaining()){
+				gather[gatherNext++] = null; //Do not keep shared frames alive
+			}
+			if(gatherNext < gatherEnd){
+				return; //The socket is full, the loop waits for OP_WRITE
+			}
+			written(writing);
+			writing.clear();
+		}
+	}
+
+	/**
+	 * Takes the oldest queued commands, up to MAX_BATCH, and lines up their frames in gather
+	 * @return false if nothing is queued
+	 */
+	private boolean takeBatch(WireCodec codec) throws IOException{
+		synchronized(this){
+			if(queue.isEmpty() || closed){
+				flushRequested = false;
+				return false;
+			}
+			while(!queue.isEmpty() && writing.size() < MAX_BATCH){
+				Outbound o = queue.pollFirst();
+				if(o.side >= 0){
+					if(queuedSnapshots[o.side] == o){
+						queuedSnapshots[o.side] = null;
+					}else if(queuedHPandMoney[o.side] == o){
+						queuedHPandMoney[o.side] = null;
+					}else if(queuedUpdates[o.side] == o){
+						queuedUpdates[o.side] = null;
+					}else if(queuedMiniMaps[o.side] == o){
+						queuedMiniMaps[o.side] = null;
+					}
+				}
+				writing.add(o);
+			}
+		}
+		lastWriteAt = System.currentTimeMillis(); //Stalls are timed from when there is something to write
+		if(staging != null){
+			staging.clear();
+		}
+		for(int i = 0; i < writing.size(); i++){
+			Object command = writing.get(i).command;
+			if(command instanceof EncodedFrame){
+				gather[i] = ((EncodedFrame) command).getFrame();
+			}else{
+				gather[i] = stage(codec.encode(command));
+			}
+		}
+		gatherNext = 0;
+		gatherEnd = writing.size();
+		return true;
+	}
+
+	/**
+	 * Copies a frame out of the codec's buffer into the staging buffer
+	 * @return a view of the copy
+	 */
+	private ByteBuffer stage(ByteBuffer frame){
+		if(staging == null || staging.remaining() < frame.remaining()){
+			//Frames already staged keep the old buffer alive through their views
+			staging = ByteBuffer.allocateDirect(Math.max(frame.remaining(), staging == null ? 16384 : staging.capacity() * 2));
+		}
+		ByteBuffer view = staging.slice();
+		view.limit(frame.remaining());
+		staging.put(frame);
+		return view;
+	}
+
+	private synchronized void written(ArrayList<Outbound> batch){
+		long now = System.nanoTime();
+		for(int i = 0; i < batch.size(); i++){
+			long latency = now - batch.get(i).queuedAt;
+			sent++;
+			writeLatencyNanos += latency;
+			if(latency > worstWriteLatencyNanos){
+				worstWriteLatencyNanos = latency;
+			}
+		}
+	}
+
+	/**
+	 * @return true if part of a batch is still waiting for the socket to take it
+	 */
+	boolean isWriteBlocked(){
+		return gatherNext < gatherEnd;
+	}
+
+	/**
+	 * @return true once everything queued has been written, or the connection is closed
+	 */
+	synchronized boolean isFlushed(){
+		return closed || !flushRequested;
+	}
+
+	/**
+	 * Checks the connection's timeouts, see NetworkServer. Run on the connection's loop.
+	 * @param now System.currentTimeMillis
+	 * @return why the connection should be closed, or null if it should not
+	 */
+	String checkTimeouts(long now){
+		if(name == null && now - connectedAt > NetworkServer.HANDSHAKE_TIMEOUT_MILLIS){
+			return "no name sent";
+		}
+		if(now - lastReadAt > NetworkServer.IDLE_TIMEOUT_MILLIS){
+			return "idle";
+		}
+		if(isWriteBlocked() && now - lastWriteAt > NetworkServer.WRITE_TIMEOUT_MILLIS){
+			return "not reading";
+		}
+		return null;
+	}
+
+	/**
+	 * Closes the connection after it failed or the client stopped reading, and tells the server
+	 */
+	void fail(){
+		if(close() && name != null && server.connectionLost(name)){
+			System.out.println("\t\t " + name + " did not safely disconnect");
+		}
+	}
+
+	/**
+	 * Closes the connection, commands still queued are discarded
+	 * @return true if this call closed it, false if it was already closed
+	 */
+	public boolean close(){
+		synchronized(this){
+			if(closed){
+				return false;
+			}
+			closed = true;
+			queue.clear();
+		}
+		try{
+			channel.close();
+		}catch(IOException e){
+			e.printStackTrace();
+		}
+		loop.getNetwork().closed(this);
+		return true;
+	}
+
+	public synchronized boolean isClosed(){
+		return closed;
+	}
+
+	/**
+	 * @return the number of commands waiting to be written
+	 */
+	public synchronized int getQueueDepth(){
+		return queue.size();
+	}
+
+	/**
+	 * @return one line of the connection's queue and write statistics, for the server's logs
+	 */
+	public synchronized String getStats(){
+		return name + ": queued=" + queue.size() + " max=" + maxDepth
+				+ " sent=" + sent + " coalesced=" + coalesced + " snapshotsDropped=" + snapshotsDropped
+				+ " write avg/worst us=" + (sent == 0 ? 0 : writeLatencyNanos / sent / 1000) + "/" + worstWriteLatencyNanos / 1000
+				+ " bytes=" + bytesWritten;
+	}
+}
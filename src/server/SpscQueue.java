@@ -0,0 +1,99 @@
+package server;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded, lock-free queue for one producer thread and one consumer thread at a time, a ring
+ * buffer with a power of two capacity. Each side only writes its own index and publishes it
+ * with lazySet, which is all the ordering one producer and one consumer need, and keeps a
+ * cached copy of the other side's index so it only reads that volatile when the ring looks
+ * full or empty.
+ *
+ * Several threads may produce as long as they never offer at the same time, for example by
+ * holding a lock while they do; the same goes for consuming.
+ *
+ * Instance Variables:
+ * AtomicReferenceArray<T> ring	- The elements
+ * int mask						- capacity - 1
+ * AtomicLong head				- The count of elements taken, written by the consumer
+ * AtomicLong tail				- The count of elements offered, written by the producer
+ * long cachedHead, cachedTail	- Each side's last read of the other side's index
+ *
+ * Methods:
+ * boolean offer(T element)
+ * T poll()
+ * int size()
+ * boolean isEmpty()
+ * int capacity()
+ */
+public class SpscQueue<T>{
+
+	private final AtomicReferenceArray<T> ring;
+	private final int mask;
+	private final AtomicLong head = new AtomicLong();
+	private final AtomicLong tail = new AtomicLong();
+	private long cachedHead; //Producer only
+	private long cachedTail; //Consumer only
+
+	/**
+	 * @param capacity the most elements held, rounded up to a power of two
+	 */
+	public SpscQueue(int capacity){
+		int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+		this.ring = new AtomicReferenceArray<T>(size);
+		this.mask = size - 1;
+	}
+
+	/**
+	 * Adds an element, producer side
+	 * @param element not null
+	 * @return false if the queue is full
+	 */
+	public boolean offer(T element){
+		long t = tail.get();
+		if(t - cachedHead > mask){
+			cachedHead = head.get();
+			if(t - cachedHead > mask){
+				return false;
+			}
+		}
+		ring.lazySet((int) t & mask, element);
+		tail.lazySet(t + 1);
+		return true;
+	}
+
+	/**
+	 * Takes the oldest element, consumer side
+	 * @return the element, or null if the queue is empty
+	 */
+	public T poll(){
+		long h = head.get();
+		if(h >= cachedTail){
+			cachedTail = tail.get();
+			if(h >= cachedTail){
+				return null;
+			}
+		}
+		int index = (int) h & mask;
+		T element = ring.get(index);
+		ring.lazySet(index, null);
+		head.lazySet(h + 1);
+		return element;
+	}
+
+	/**
+	 * @return the number of elements queued, exact only when neither side is active
+	 */
+	public int size(){
+		return (int) (tail.get() - head.get());
+	}
+
+	public boolean isEmpty(){
+		return tail.get() == head.get();
+	}
+
+	public int capacity(){
+		return mask + 1;
+	}
+}
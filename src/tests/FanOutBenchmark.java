@@ -0,0 +1,150 @@
+package tests;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+
+import server.BuildScript;
+import server.HeadlessEngine;
+import server.NullEventSink;
+import GUI.EnemyImage;
+import GUI.TowerImage;
+import GUI.GameView.towerType;
+import commands.ClientUpdate;
+import commands.EncodedFrame;
+import commands.FrameOutput;
+import commands.WireCodec;
+
+/**
+ * Measures broadcasting the ClientUpdates of a headless game of level 3 to 2, 8 and 64 clients
+ * connected over loopback sockets, each drained by its own reader thread. For each client count
+ * it reports, per broadcast:
+ *   encode ns      - CPU spent encoding, each client's FrameOutput encoding the update itself
+ *                    against one EncodedFrame shared by all of them
+ *   send ns        - encoding plus writing the frame to every client's socket
+ *
+ * Run as a Java application.
+ */
+public class FanOutBenchmark {
+
+	private static final int[] LISTENERS = {2, 8, 64};
+	private static final int ROUNDS = 5; //The best of this many timed rounds is reported
+
+	public static void main(String[] args) throws Exception{
+		ArrayList<ClientUpdate> updates = captureGame();
+		System.out.println(updates.size() + " ClientUpdates per round");
+		measureEncode(updates, LISTENERS[0]); //Warm up, so the first row is not timing the JIT
+		System.out.printf("%9s | %-23s | %-23s%n", "", "encode ns/broadcast", "send ns/broadcast");
+		System.out.printf("%9s | %11s %11s | %11s %11s%n", "listeners", "per client", "once", "per client", "once");
+		for(int listeners : LISTENERS){
+			long[] encode = measureEncode(updates, listeners);
+			long[] send = measureSend(updates, listeners);
+			int n = updates.size();
+			System.out.printf("%9d | %11d %11d | %11d %11d%n", listeners, encode[0] / n, encode[1] / n, send[0] / n, send[1] / n);
+		}
+	}
+
+	/**
+	 * Plays a game and keeps every ClientUpdate it produces
+	 */
+	private static ArrayList<ClientUpdate> captureGame(){
+		final ArrayList<ClientUpdate> updates = new ArrayList<ClientUpdate>();
+		NullEventSink sink = new NullEventSink(){
+			public boolean hasViewers(){
+				return true;
+			}
+			public void updateClients(ArrayList<EnemyImage> enemyImages, ArrayList<TowerImage> towerImages, boolean fromPlayer1){
+				updates.add(new ClientUpdate(enemyImages, towerImages, fromPlayer1));
+			}
+		};
+		BuildScript script = new BuildScript();
+		for(int i = 0; i < 4; i++){
+			script.place(i * 20, towerType.FIRE, 1 + i, 3);
+		}
+		HeadlessEngine.run(3, script, 7L, sink, HeadlessEngine.DEFAULT_MAX_TICKS);
+		return updates;
+	}
+
+	/**
+	 * @return {ns encoding every update once per listener, ns encoding every update once}
+	 */
+	private static long[] measureEncode(ArrayList<ClientUpdate> updates, int listeners) throws IOException{
+		WireCodec[] codecs = new WireCodec[listeners];
+		for(int i = 0; i < listeners; i++){
+			codecs[i] = new WireCodec();
+		}
+		WireCodec shared = new WireCodec();
+		long perClient = Long.MAX_VALUE, once = Long.MAX_VALUE;
+		for(int round = 0; round < ROUNDS; round++){
+			long start = System.nanoTime();
+			for(ClientUpdate u : updates){
+				for(int i = 0; i < listeners; i++){
+					codecs[i].encode(u);
+				}
+			}
+			perClient = Math.min(perClient, System.nanoTime() - start);
+			start = System.nanoTime();
+			for(ClientUpdate u : updates){
+				new EncodedFrame(u, shared);
+			}
+			once = Math.min(once, System.nanoTime() - start);
+		}
+		return new long[]{perClient, once};
+	}
+
+	/**
+	 * @return {ns sending every update to every listener encoding per client, ns sending EncodedFrames}
+	 */
+	private static long[] measureSend(ArrayList<ClientUpdate> updates, int listeners) throws IOException, InterruptedException{
+		ServerSocketChannel server = ServerSocketChannel.open();
+		server.bind(new InetSocketAddress("localhost", 0));
+		FrameOutput[] outputs = new FrameOutput[listeners];
+		Thread[] readers = new Thread[listeners];
+		for(int i = 0; i < listeners; i++){
+			final SocketChannel client = SocketChannel.open(server.getLocalAddress());
+			outputs[i] = new FrameOutput(server.accept());
+			readers[i] = new Thread(new Runnable(){
+				public void run(){
+					ByteBuffer buffer = ByteBuffer.allocateDirect(65536);
+					try{
+						while(client.read(buffer) >= 0){
+							buffer.clear();
+						}
+					}catch(IOException e){
+						//Closed
+					}
+				}
+			});
+			readers[i].setDaemon(true);
+			readers[i].start();
+		}
+		WireCodec shared = new WireCodec();
+		long perClient = Long.MAX_VALUE, once = Long.MAX_VALUE;
+		for(int round = 0; round < ROUNDS; round++){
+			long start = System.nanoTime();
+			for(ClientUpdate u : updates){
+				for(int i = 0; i < listeners; i++){
+					outputs[i].writeObject(u);
+				}
+			}
+			perClient = Math.min(perClient, System.nanoTime() - start);
+			start = System.nanoTime();
+			for(ClientUpdate u : updates){
+				EncodedFrame frame = new EncodedFrame(u, shared);
+				for(int i = 0; i < listeners; i++){
+					outputs[i].writeObject(frame);
+				}
+			}
+			once = Math.min(once, System.nanoTime() - start);
+		}
+		for(int i = 0; i < listeners; i++){
+			outputs[i].close();
+			readers[i].join(1000);
+		}
+		server.close();
+		return new long[]{perClient, once};
+	}
+}
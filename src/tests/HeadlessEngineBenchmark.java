@@ -0,0 +1,69 @@
+package tests;
+
+import java.awt.Point;
+
+import model.CompiledPath;
+import model.Map;
+import model.MapFactory;
+import server.BuildScript;
+import server.GameLoop;
+import server.HeadlessEngine;
+import server.HeadlessEngine.Outcome;
+import server.RecordingEventSink;
+import GUI.GameView.towerType;
+import client.Player;
+
+/**
+ * Plays every single player level many times with the HeadlessEngine and reports games
+ * per second and how much faster than real time the games ran. Also checks that a seed
+ * and build script replay to the same outcome.
+ * 
+ * Run as a Java application, optionally with the number of games per level.
+ */
+public class HeadlessEngineBenchmark {
+
+	public static void main(String[] args){
+		int gamesPerLevel = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+		for(int level = 0; level <= 3; level++){
+			BuildScript script = scriptAlongPath(level, 6);
+			
+			Outcome first = HeadlessEngine.run(level, script, 42L);
+			Outcome again = HeadlessEngine.run(level, script, 42L);
+			RecordingEventSink recorder = new RecordingEventSink();
+			HeadlessEngine.run(level, script, 42L, recorder, HeadlessEngine.DEFAULT_MAX_TICKS);
+			System.out.println("Level " + level + " seed 42: " + first + " (" + recorder.getAttacks() + " attacks)"
+					+ (first.toString().equals(again.toString()) ? "" : " MISMATCH on replay: " + again));
+			
+			for(int i = 0; i < gamesPerLevel / 10; i++){ //Warm up
+				HeadlessEngine.run(level, script, i);
+			}
+			long gameMillis = 0;
+			long start = System.nanoTime();
+			for(int i = 0; i < gamesPerLevel; i++){
+				gameMillis += HeadlessEngine.run(level, script, i).getTicks() * GameLoop.STEP_MILLIS;
+			}
+			double seconds = (System.nanoTime() - start) / 1e9;
+			System.out.printf("  %d games in %.2f s, %.0f games/s, %.0fx real time%n",
+					gamesPerLevel, seconds, gamesPerLevel / seconds, gameMillis / 1000.0 / seconds);
+		}
+	}
+	
+	/**
+	 * Places towers of alternating types beside the first path of a level's map, spread
+	 * out from the exit backward. Spots the map rejects are simply skipped by the script.
+	 */
+	private static BuildScript scriptAlongPath(int mapCode, int towers){
+		Map map = MapFactory.generateMap(new Player("probe", 0, 0), mapCode);
+		CompiledPath path = map.getCompiledPath(0);
+		towerType[] types = {towerType.FIRE, towerType.WATER, towerType.GRASS, towerType.NORMAL};
+		BuildScript script = new BuildScript();
+		int placed = 0;
+		for(int i = path.lastIndex() - 2; i > 0 && placed < towers * 2; i -= 3){
+			Point p = path.getPoint(i);
+			script.place(placed * 50L, types[placed % types.length], p.x + 1, p.y);
+			script.place(placed * 50L, types[(placed + 1) % types.length], p.x, p.y + 1);
+			placed += 2;
+		}
+		return script;
+	}
+}
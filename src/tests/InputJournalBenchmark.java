@@ -0,0 +1,210 @@
+package tests;
+
+import java.awt.Point;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import model.CompiledPath;
+import model.Level;
+import model.LevelFactory;
+import model.SaveCodec;
+import server.GameLoop;
+import server.HeadlessEngine;
+import server.InputJournal;
+import server.NullEventSink;
+import server.SaveWriter;
+import GUI.GameView.towerType;
+import client.Player;
+
+/**
+ * Plays every single player level with nobody watching, building towers along the path, and
+ * journals the game as a GameRoom does: every input recorded before it is applied, a flush
+ * every tick, a MARK when there has been no input for a while and a checkpoint every
+ * CHECKPOINT_TICKS, and reports the journal's size.
+ *
+ * Every CRASH_EVERY ticks it takes the journal as it is on disk, as a crash would leave it,
+ * and checks that recovering it gives the game's state hash at the tick it recovers to, within
+ * a second of the crash. The same journal with its last frame cut short must recover too, to
+ * the tick before that frame, unless that frame is the checkpoint, which is never written in part.
+ *
+ * Last it times recording a stream of inputs and flushing them every tick, the part of
+ * journaling paid for by the thread handling the commands.
+ *
+ * Run as a Java application.
+ */
+public class InputJournalBenchmark {
+
+	private static final long SEED = 42L;
+	private static final long MAX_TICKS = 20L * 60 * 1000 / GameLoop.STEP_MILLIS;
+	private static final long CHECKPOINT_TICKS = 30 * 1000 / GameLoop.STEP_MILLIS; //As GameServer.AUTOSAVE_SECONDS
+	private static final long CRASH_EVERY = 700;
+	private static final int RECORDED_TICKS = 20000; //Ticks of inputs timed
+	private static final int INPUTS_A_TICK = 4;
+
+	public static void main(String[] args) throws Exception{
+		File dir = Files.createTempDirectory("journal").toFile();
+		SaveWriter writer = new SaveWriter();
+		writer.start();
+		for(int levelCode = 0; levelCode <= 3; levelCode++){
+			File file = new File(dir, "journal-" + levelCode + ".data");
+			InputJournal journal = new InputJournal(file, writer);
+			SaveCodec codec = new SaveCodec();
+			NullEventSink sink = new NullEventSink();
+			Player player = new Player(HeadlessEngine.PLAYER_NAME, 0, 0);
+			sink.reset(player);
+			Level level = LevelFactory.generateLevel(player, sink, levelCode, SEED);
+			long[] plan = buildPlan(level.getMap1().getCompiledPath(0), 12);
+			long[] hashes = new long[(int) MAX_TICKS + 1]; //After the inputs of each tick
+			ArrayList<byte[]> crashes = new ArrayList<byte[]>();
+			int inputs = 0, next = 0;
+			long tick = 0;
+			journal.checkpoint(tick, codec.encode(level));
+			while(!sink.isGameOver() && tick < MAX_TICKS){
+				while(next < plan.length && plan[next] <= tick){
+					int action = (int) plan[next + 1];
+					int a = (int) plan[next + 2], b = (int) plan[next + 3], c = (int) plan[next + 4];
+					journal.record(tick, action, true, a, b, c);
+					InputJournal.apply(level, action, true, a, b, c);
+					inputs++;
+					next += 5;
+				}
+				hashes[(int) tick] = level.stateHash();
+				journal.flush();
+				if(tick > 0 && tick % CRASH_EVERY == 0){
+					writer.awaitIdle(10000);
+					crashes.add(Files.readAllBytes(file.toPath()));
+				}
+				level.tick(GameLoop.STEP_MILLIS);
+				level.getMap1().tick(GameLoop.STEP_MILLIS);
+				tick++;
+				if(tick % CHECKPOINT_TICKS == 0){
+					journal.checkpoint(tick, codec.encode(level));
+				}
+				journal.mark(tick);
+			}
+
+			int recovered = 0, torn = 0, tearable = 0;
+			for(int i = 0; i < crashes.size(); i++){
+				long crashTick = (i + 1) * CRASH_EVERY;
+				byte[] crash = crashes.get(i);
+				if(recoversTo(levelCode, crash, hashes, crashTick - InputJournal.MARK_TICKS)){
+					recovered++;
+				}
+				if(!endsInCheckpoint(crash)){ //A checkpoint is written whole, by a rename, never torn
+					tearable++;
+					if(recoversTo(levelCode, Arrays.copyOf(crash, crash.length - 3), hashes, 0)){
+						torn++;
+					}
+				}
+			}
+			System.out.printf("Level %d seed %d: %d ticks, %d inputs, journal %d bytes at the end%n",
+					levelCode, SEED, tick, inputs, file.length());
+			System.out.println("  " + journal.getStats());
+			System.out.println("  " + recovered + "/" + crashes.size() + " crashes recovered to the same game"
+					+ (recovered == crashes.size() ? "" : "  FAIL") + ", " + torn + "/" + tearable
+					+ " with the last frame torn" + (torn == tearable ? "" : "  FAIL"));
+			file.delete();
+		}
+		timeRecording(writer, new File(dir, "timed.data"));
+		writer.shutdown();
+		System.out.println(writer.getStats());
+		dir.delete();
+	}
+
+	/**
+	 * Times recording inputs and flushing them a frame at a time, on the thread that would be
+	 * handling the commands, after a round to warm up
+	 */
+	private static void timeRecording(SaveWriter writer, File file) throws InterruptedException{
+		InputJournal journal = new InputJournal(file, writer);
+		journal.checkpoint(0, new byte[0]);
+		long recordNanos = 0, flushNanos = 0, worstFlushNanos = 0;
+		int flushes = 0;
+		for(int round = 0; round < 2; round++){
+			recordNanos = flushNanos = worstFlushNanos = 0;
+			flushes = 0;
+			for(int tick = 0; tick < RECORDED_TICKS; tick++){
+				long start = System.nanoTime();
+				for(int i = 0; i < INPUTS_A_TICK; i++){
+					journal.record(tick, InputJournal.PLACE, true, i & 7, tick & 31, i);
+				}
+				long recorded = System.nanoTime();
+				journal.flush();
+				long flushed = System.nanoTime();
+				recordNanos += recorded - start;
+				flushNanos += flushed - recorded;
+				worstFlushNanos = Math.max(worstFlushNanos, flushed - recorded);
+				flushes++;
+			}
+			writer.awaitIdle(10000);
+		}
+		file.delete();
+		System.out.printf("Recording: %.0f ns an input, flushing %d inputs %.1f/%.1f us avg/worst on the caller%n",
+				recordNanos / (double) (RECORDED_TICKS * INPUTS_A_TICK), INPUTS_A_TICK,
+				flushNanos / 1e3 / flushes, worstFlushNanos / 1e3);
+	}
+
+	/**
+	 * Recovers a journal with nobody watching
+	 * @return true if its state hash is the game's at the tick it recovered to, no earlier than the given tick
+	 */
+	private static boolean recoversTo(int levelCode, byte[] journal, long[] hashes, long earliest) throws IOException{
+		Player player = new Player(HeadlessEngine.PLAYER_NAME, 0, 0);
+		NullEventSink sink = new NullEventSink();
+		sink.reset(player);
+		Level level = InputJournal.recover(journal, player, sink);
+		if(level == null){
+			return false; //Over
+		}
+		long tick = level.getMap1().getClock() / GameLoop.STEP_MILLIS;
+		return level.getLevelCode() == levelCode && tick >= earliest && level.stateHash() == hashes[(int) tick];
+	}
+
+	/**
+	 * @return true if the journal holds nothing after its checkpoint, as on the tick one is taken
+	 */
+	private static boolean endsInCheckpoint(byte[] journal) throws IOException{
+		InputJournal.Reader in = new InputJournal.Reader(journal);
+		int action = InputJournal.CHECKPOINT;
+		while(in.next()){
+			action = in.getAction();
+		}
+		return action == InputJournal.CHECKPOINT;
+	}
+
+	/**
+	 * @return {tick, action, a, b, c} of each input: towers beside the path from the exit backward,
+	 * every third upgraded a few seconds later and one of them sold
+	 */
+	private static long[] buildPlan(CompiledPath path, int towers){
+		towerType[] types = {towerType.FIRE, towerType.WATER, towerType.GRASS, towerType.NORMAL};
+		ArrayList<long[]> inputs = new ArrayList<long[]>();
+		int placed = 0;
+		for(int i = path.lastIndex() - 2; i > 0 && placed < towers; i -= 3){
+			Point p = path.getPoint(i);
+			long tick = placed * 400L;
+			inputs.add(new long[]{tick, InputJournal.PLACE, types[placed % types.length].ordinal(), p.x + 1, p.y});
+			if(placed % 3 == 2){
+				inputs.add(new long[]{tick + 200, InputJournal.UPGRADE, p.x + 1, p.y, 0});
+			}
+			if(placed == 4){
+				inputs.add(new long[]{tick + 300, InputJournal.SELL, p.x + 1, p.y, 0});
+			}
+			placed++;
+		}
+		long[][] sorted = inputs.toArray(new long[inputs.size()][]);
+		Arrays.sort(sorted, new java.util.Comparator<long[]>(){
+			public int compare(long[] x, long[] y){
+				return Long.compare(x[0], y[0]);
+			}
+		});
+		long[] plan = new long[sorted.length * 5];
+		for(int i = 0; i < sorted.length; i++){
+			System.arraycopy(sorted[i], 0, plan, i * 5, 5);
+		}
+		return plan;
+	}
+}
@@ -0,0 +1,303 @@
+package tests;
+
+import static org.junit.Assert.*;
+
+import java.awt.Point;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import model.CompiledPath;
+import model.Level;
+import model.LevelFactory;
+import model.SaveCodec;
+import server.GameLoop;
+import server.GameRoom;
+import server.GameServer;
+import server.HeadlessEngine;
+import server.InputJournal;
+import server.NullEventSink;
+import server.SaveWriter;
+import GUI.GameView.towerType;
+import client.Player;
+import client.Transport;
+import commands.ClientMessageCommand;
+import commands.ServerCreateLevelCommand;
+
+public class InputJournalTest {
+
+	public static void main (String args[]){}
+	/* void checkpoint(long tick, byte[] save)
+	 * void record(long tick, int action, boolean player1, int a, int b, int c)
+	 * void flush()
+	 * static Level recover(byte[] journal, Player player, GameEventSink server)
+	 * GameRoom.loadGame(null)		- the last game, from its autosave and journal
+	 */
+
+	private static final long SEED = 42L;
+	private static final long TICKS = 3000; //Played and journaled
+	private static final long CHECKPOINT_TICKS = 1000;
+	private static final long CRASH_EVERY = 170; //Ticks between copies of the journal as a crash would leave it
+
+	private static Level newLevel(NullEventSink sink){
+		Player player = new Player(HeadlessEngine.PLAYER_NAME, 0, 0);
+		sink.reset(player);
+		return LevelFactory.generateLevel(player, sink, 1, SEED);
+	}
+
+	/*
+	 * @return the journal of a level played for 100 ticks, as on disk after its last flush
+	 */
+	private static byte[] journal(File file, SaveWriter writer, boolean ended) throws Exception{
+		InputJournal journal = new InputJournal(file, writer);
+		Level level = newLevel(new NullEventSink());
+		journal.checkpoint(0, new SaveCodec().encode(level));
+		for(long tick = 0; tick < 100; tick++){
+			level.tick(GameLoop.STEP_MILLIS);
+			level.getMap1().tick(GameLoop.STEP_MILLIS);
+			journal.mark(tick + 1);
+			journal.flush();
+		}
+		if(ended){
+			journal.record(100, InputJournal.END, true, 0, 0, 0);
+			journal.flush();
+		}
+		writer.awaitIdle(10000);
+		return Files.readAllBytes(file.toPath());
+	}
+
+	/*
+	 * a journaled game with towers placed, upgraded and sold and checkpoints taken as it goes
+	 */
+	private static class Journaled{
+		final ArrayList<byte[]> crashes = new ArrayList<byte[]>(); //The file every CRASH_EVERY ticks
+		final long[] hashes = new long[(int) TICKS + 1]; //After the inputs of each tick
+
+		Journaled(File file, SaveWriter writer) throws Exception{
+			InputJournal journal = new InputJournal(file, writer);
+			NullEventSink sink = new NullEventSink();
+			Level level = newLevel(sink);
+			CompiledPath path = level.getMap1().getCompiledPath(0);
+			SaveCodec codec = new SaveCodec();
+			journal.checkpoint(0, codec.encode(level));
+			int placed = 0;
+			for(long tick = 0; tick < TICKS; tick++){
+				if(tick % 150 == 0 && placed < 10){
+					Point p = path.getPoint(path.lastIndex() - 2 - 3 * placed);
+					input(journal, level, tick, InputJournal.PLACE, towerType.values()[placed % 4].ordinal(), p.x + 1, p.y);
+					if(placed % 3 == 1){
+						input(journal, level, tick, InputJournal.UPGRADE, p.x + 1, p.y, 0);
+					}
+					if(placed == 5){
+						input(journal, level, tick, InputJournal.SELL, p.x + 1, p.y, 0);
+					}
+					placed++;
+				}
+				hashes[(int) tick] = level.stateHash();
+				journal.flush();
+				if(tick > 0 && tick % CRASH_EVERY == 0){
+					writer.awaitIdle(10000);
+					crashes.add(Files.readAllBytes(file.toPath()));
+				}
+				level.tick(GameLoop.STEP_MILLIS);
+				level.getMap1().tick(GameLoop.STEP_MILLIS);
+				assertFalse(sink.isGameOver());
+				if((tick + 1) % CHECKPOINT_TICKS == 0){
+					journal.checkpoint(tick + 1, codec.encode(level));
+				}
+				journal.mark(tick + 1);
+			}
+		}
+
+		private static void input(InputJournal journal, Level level, long tick, int action, int a, int b, int c){
+			journal.record(tick, action, true, a, b, c);
+			InputJournal.apply(level, action, true, a, b, c);
+		}
+
+		/*
+		 * @return the tick a journal recovered to, after checking its state hash is the game's then
+		 */
+		long recover(byte[] journal) throws IOException{
+			NullEventSink sink = new NullEventSink();
+			Player player = new Player(HeadlessEngine.PLAYER_NAME, 0, 0);
+			sink.reset(player);
+			Level level = InputJournal.recover(journal, player, sink);
+			assertNotNull(level);
+			long tick = level.getMap1().getClock() / GameLoop.STEP_MILLIS;
+			assertEquals("recovered to tick " + tick, hashes[(int) tick], level.stateHash());
+			return tick;
+		}
+	}
+
+	/*
+	 * the journal as a crash leaves it recovers to the game as it was, within MARK_TICKS of the
+	 * crash, and with its last frame torn to the game as it was before that frame
+	 */
+	@Test(timeout = 120000)
+	public void testCrashesRecovered() throws Exception{
+		File dir = Files.createTempDirectory("journal").toFile();
+		SaveWriter writer = new SaveWriter();
+		writer.start();
+		File file = new File(dir, "journal.data");
+		Journaled game = new Journaled(file, writer);
+		assertTrue(game.crashes.size() > 10);
+		int torn = 0;
+		for(int i = 0; i < game.crashes.size(); i++){
+			long crashTick = (i + 1) * CRASH_EVERY;
+			byte[] crash = game.crashes.get(i);
+			long tick = game.recover(crash);
+			assertTrue("crash at " + crashTick + " recovered to " + tick,
+					tick <= crashTick && tick >= crashTick - InputJournal.MARK_TICKS);
+			if(!endsInCheckpoint(crash)){ //A checkpoint is written whole, by a rename, never torn
+				assertTrue(game.recover(Arrays.copyOf(crash, crash.length - 3)) <= tick);
+				torn++;
+			}
+		}
+		assertTrue(torn > 0);
+		writer.shutdown();
+		file.delete();
+		dir.delete();
+	}
+
+	/*
+	 * a frame corrupt in the middle of the journal ends it there, and a journal with no
+	 * checkpoint is refused
+	 */
+	@Test(timeout = 120000)
+	public void testCorruptFrameEndsTheJournal() throws Exception{
+		File dir = Files.createTempDirectory("journal").toFile();
+		SaveWriter writer = new SaveWriter();
+		writer.start();
+		File file = new File(dir, "journal.data");
+		Journaled game = new Journaled(file, writer);
+		byte[] crash = game.crashes.get(4); //Inputs frames after the first checkpoint
+		long whole = game.recover(crash);
+		byte[] corrupt = crash.clone();
+		corrupt[corrupt.length * 3 / 4] ^= 0x10;
+		assertTrue(game.recover(corrupt) < whole);
+		try{
+			InputJournal.recover(Arrays.copyOf(crash, 8), new Player(HeadlessEngine.PLAYER_NAME, 0, 0),
+					new NullEventSink());
+			fail("recovered a journal with no checkpoint");
+		}catch(IOException e){
+			//Expected
+		}
+		writer.shutdown();
+		file.delete();
+		dir.delete();
+	}
+
+	/*
+	 * @return true if the journal holds nothing after its checkpoint, as on the tick one is taken
+	 */
+	private static boolean endsInCheckpoint(byte[] journal) throws IOException{
+		InputJournal.Reader in = new InputJournal.Reader(journal);
+		int action = InputJournal.CHECKPOINT;
+		while(in.next()){
+			action = in.getAction();
+		}
+		return action == InputJournal.CHECKPOINT;
+	}
+
+	/*
+	 * a journal ending in END recovers no game, the same journal without it does
+	 */
+	@Test
+	public void testEndedGameIsNotRecovered() throws Exception{
+		File dir = Files.createTempDirectory("journal").toFile();
+		SaveWriter writer = new SaveWriter();
+		writer.start();
+		File file = new File(dir, "journal.data");
+		NullEventSink sink = new NullEventSink();
+		Player player = new Player(HeadlessEngine.PLAYER_NAME, 0, 0);
+		sink.reset(player);
+		assertNotNull(InputJournal.recover(journal(file, writer, false), player, sink));
+		assertNull(InputJournal.recover(journal(file, writer, true), player, sink));
+		writer.shutdown();
+		file.delete();
+		dir.delete();
+	}
+
+	/*
+	 * a room's game that is lost has its autosave deleted, and loading the last game starts a new
+	 * level instead of going back to the autosave from before it was lost
+	 */
+	@Test(timeout = 60000)
+	public void testLostGameIsNotLoaded() throws Exception{
+		File dir = Files.createTempDirectory("saves").toFile();
+		GameServer server = new GameServer(GameServer.LOCAL_ONLY);
+		server.setSaveDirectory(dir);
+		server.setReplayDirectory(null);
+		server.setAutosaveSeconds(1);
+		final Transport client = server.openLoopback();
+		client.writeObject("Loser");
+		client.readObject(); //Its Player
+		client.readObject(); //That it is player 1
+		final StringBuilder messages = new StringBuilder();
+		Thread reader = new Thread(new Runnable(){
+			public void run(){
+				try{
+					while(true){
+						Object o = client.readObject();
+						if(o instanceof ClientMessageCommand){
+							synchronized(messages){
+								messages.append(o.toString());
+							}
+						}
+					}
+				}catch(Exception e){
+					//Closed
+				}
+			}
+		});
+		reader.setDaemon(true);
+		reader.start();
+		client.writeObject(new ServerCreateLevelCommand("Loser", 1));
+		final GameRoom room = server.getRoom("Loser");
+		room.submit(new Runnable(){
+			public void run(){
+				room.setSpeedMultiplier(GameLoop.MAX_SPEED);
+			}
+		});
+		File autosave = new File(new File(dir, "Loser"), "autosave.data");
+		while(!autosave.exists()){
+			Thread.sleep(10);
+		}
+		final long[] clocks = new long[2];
+		room.submit(new Runnable(){
+			public void run(){
+				clocks[0] = room.getLevel().getMap1().getClock();
+				room.gameLost();
+			}
+		});
+		Thread.sleep(200);
+		server.getSaveWriter().awaitIdle(10000);
+		assertFalse("the autosave of the lost game was kept", autosave.exists());
+		assertTrue(new File(new File(dir, "Loser"), "journal.data").exists());
+
+		room.submit(new Runnable(){
+			public void run(){
+				room.loadGame(null);
+				room.stopTimer();
+				clocks[1] = room.getLevel() == null ? -1 : room.getLevel().getMap1().getClock();
+			}
+		});
+		Thread.sleep(200);
+		assertTrue(clocks[0] > 0);
+		assertEquals("a new level, not the lost game", 0, clocks[1]);
+		while(true){
+			synchronized(messages){
+				if(messages.indexOf("The last game is over") >= 0){
+					break;
+				}
+			}
+			Thread.sleep(10);
+		}
+		client.close();
+		server.shutdown();
+	}
+}
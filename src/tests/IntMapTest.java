@@ -0,0 +1,202 @@
+package tests;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.Test;
+
+import client.IntMap;
+
+public class IntMapTest {
+
+	public static void main (String args[]){}
+	/* V get(int key)
+	 * V put(int key, V value)
+	 * V remove(int key)
+	 * int size()
+	 * void clear()
+	 */
+
+	private static final int TABLE = 16; //The table of an IntMap made for 8 entries, until it grows
+
+	/*
+	 * the slot IntMap looks for a key in first, worked out as IntMap.slot does, to pick keys
+	 * whose probe runs collide
+	 */
+	private static int home(int key){
+		int h = key * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & (TABLE - 1);
+	}
+
+	/*
+	 * @return the first count keys from from on whose home slot is slot
+	 */
+	private static int[] keysAt(int slot, int count, int from){
+		int[] keys = new int[count];
+		int n = 0;
+		for(int key = from; n < count; key++){
+			if(home(key) == slot){
+				keys[n++] = key;
+			}
+		}
+		return keys;
+	}
+
+	private static IntMap<String> small(){
+		return new IntMap<String>(8);
+	}
+
+	@Test
+	public void testPutGetRemove(){
+		IntMap<String> map = small();
+		assertNull(map.get(1));
+		assertNull(map.put(1, "one"));
+		assertEquals("one", map.put(1, "uno"));
+		assertEquals("uno", map.get(1));
+		assertEquals(1, map.size());
+		assertNull(map.remove(2));
+		assertEquals("uno", map.remove(1));
+		assertNull(map.get(1));
+		assertEquals(0, map.size());
+		map.put(-5, "negative");
+		map.put(0, "zero");
+		assertEquals("negative", map.get(-5));
+		assertEquals("zero", map.get(0));
+		map.clear();
+		assertEquals(0, map.size());
+		assertNull(map.get(0));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testReservedKey(){
+		small().put(Integer.MIN_VALUE, "free");
+	}
+
+	/*
+	 * keys with the same home slot are all found, and each can be replaced
+	 */
+	@Test
+	public void testCollidingKeys(){
+		IntMap<String> map = small();
+		int[] keys = keysAt(5, 5, 1);
+		for(int key : keys){
+			map.put(key, "v" + key);
+		}
+		for(int key : keys){
+			assertEquals("v" + key, map.get(key));
+		}
+		assertEquals("v" + keys[3], map.put(keys[3], "replaced"));
+		assertEquals("replaced", map.get(keys[3]));
+		assertEquals(keys.length, map.size());
+		assertNull(map.get(keysAt(5, 6, 1)[5])); //Same home, never put
+	}
+
+	/*
+	 * removing from the middle of a probe run shifts back only the entries that would otherwise
+	 * no longer be found: one whose home is past the gap stays where it is
+	 */
+	@Test
+	public void testRemoveInTheMiddleOfARun(){
+		IntMap<String> map = small();
+		int[] atFive = keysAt(5, 3, 1);
+		int atSeven = keysAt(7, 1, 1)[0];
+		map.put(atFive[0], "a"); //Slot 5
+		map.put(atFive[1], "b"); //6
+		map.put(atSeven, "x"); //7, its home
+		map.put(atFive[2], "c"); //8, past x
+		assertEquals("b", map.remove(atFive[1]));
+		assertNull(map.get(atFive[1]));
+		assertEquals("a", map.get(atFive[0]));
+		assertEquals("x", map.get(atSeven));
+		assertEquals("c", map.get(atFive[2]));
+		assertEquals("a", map.remove(atFive[0])); //The head of the run
+		assertEquals("x", map.get(atSeven));
+		assertEquals("c", map.get(atFive[2]));
+		assertEquals(2, map.size());
+		map.put(atFive[0], "a2"); //Goes back in the run, and is found
+		assertEquals("a2", map.get(atFive[0]));
+		assertEquals("c", map.get(atFive[2]));
+	}
+
+	/*
+	 * a run that starts in the last slot continues at the first, and removal shifts entries
+	 * back across the end of the table
+	 */
+	@Test
+	public void testWraparound(){
+		IntMap<String> map = small();
+		int[] last = keysAt(TABLE - 1, 3, 1);
+		int first = keysAt(0, 1, 1)[0];
+		map.put(last[0], "p"); //Slot 15
+		map.put(last[1], "q"); //0
+		map.put(first, "f"); //1, its home is 0
+		map.put(last[2], "r"); //2
+		for(int i = 0; i < 3; i++){
+			assertEquals("pqr".substring(i, i + 1), map.get(last[i]));
+		}
+		assertEquals("f", map.get(first));
+		assertEquals("p", map.remove(last[0]));
+		assertEquals("q", map.get(last[1]));
+		assertEquals("f", map.get(first));
+		assertEquals("r", map.get(last[2]));
+		assertEquals("q", map.remove(last[1]));
+		assertEquals("f", map.get(first));
+		assertEquals("r", map.get(last[2]));
+		assertEquals(2, map.size());
+	}
+
+	/*
+	 * the table grows past half full and every entry is still found, colliding ones included
+	 */
+	@Test
+	public void testGrowth(){
+		IntMap<String> map = small();
+		int[] colliding = keysAt(3, 6, -1000000); //Negative, so none is one of the keys below
+		for(int key : colliding){
+			map.put(key, "c" + key);
+		}
+		for(int key = 1; key <= 5000; key++){
+			map.put(key * 7, "k" + key * 7);
+		}
+		for(int key : colliding){
+			assertEquals("c" + key, map.get(key));
+		}
+		for(int key = 1; key <= 5000; key++){
+			assertEquals("k" + key * 7, map.get(key * 7));
+		}
+		for(int key = 1; key <= 5000; key += 2){
+			assertEquals("k" + key * 7, map.remove(key * 7));
+		}
+		assertEquals(colliding.length + 2500, map.size());
+		for(int key = 1; key <= 5000; key++){
+			assertEquals(key % 2 == 0 ? "k" + key * 7 : null, map.get(key * 7));
+		}
+	}
+
+	/*
+	 * random puts and removes over a small key range, so runs collide, wrap and are shifted back,
+	 * always agree with a HashMap
+	 */
+	@Test
+	public void testAgainstHashMap(){
+		Random random = new Random(42L);
+		IntMap<Integer> map = new IntMap<Integer>(4);
+		HashMap<Integer, Integer> expected = new HashMap<Integer, Integer>();
+		for(int i = 0; i < 200000; i++){
+			int key = random.nextInt(300) - 50;
+			if(random.nextInt(3) == 0){
+				assertEquals(expected.remove(key), map.remove(key));
+			}else{
+				assertEquals(expected.put(key, i), map.put(key, i));
+			}
+			assertEquals(expected.size(), map.size());
+			if(i % 1000 == 0){
+				for(int k = -50; k < 250; k++){
+					assertEquals(expected.get(k), map.get(k));
+				}
+			}
+		}
+	}
+}
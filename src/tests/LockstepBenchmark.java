@@ -0,0 +1,225 @@
+package tests;
+
+import java.awt.Point;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import model.CompiledPath;
+import server.GameLoop;
+import server.GameServer;
+import server.LockstepRelay;
+import server.SnapshotEncoder;
+import GUI.EnemyImage;
+import GUI.TowerImage;
+import GUI.GameView.towerType;
+import client.LockstepSimulation;
+import commands.ClientHPandMoney;
+import commands.ClientLockstepTurn;
+import commands.ClientMiniMap;
+import commands.ClientSnapshot;
+import commands.ClientTowerAttack;
+import commands.FrameOutput;
+import commands.ServerLockstepHash;
+
+/**
+ * Plays the first five minutes of a co-op game of level 3 in lockstep: a LockstepRelay stands in for the GameRoom and
+ * two LockstepSimulations with nobody watching stand in for the clients, each player placing
+ * towers along their path. It checks that both clients' state hashes match at every check,
+ * then that a turn applied by only one client is caught as a desync.
+ *
+ * It also reports the WireCodec bytes both modes send: lockstep's turns to both clients and
+ * the hashes they send back, against what the GameRoom would stream of the same game,
+ * each map's snapshots at GameServer.SNAPSHOT_HZ to its player, its attacks and HP and
+ * money, and the ClientMiniMaps sent to the partner.
+ *
+ * Run as a Java application.
+ */
+public class LockstepBenchmark {
+
+	private static final int LEVEL = 3;
+	private static final long SEED = 11L;
+	private static final long MAX_TICKS = 5L * 60 * 1000 / GameLoop.STEP_MILLIS; //Five minutes of game, the waves and the building
+
+	public static void main(String[] args) throws IOException{
+		ByteArrayOutputStream streamedBytes = new ByteArrayOutputStream(1 << 20);
+		FrameOutput streamed = new FrameOutput(streamedBytes);
+		LockstepSimulation a = streamingSimulation(streamed);
+		LockstepSimulation b = simulation();
+		ByteArrayOutputStream lockstepBytes = new ByteArrayOutputStream(1 << 16);
+		FrameOutput lockstep = new FrameOutput(lockstepBytes);
+
+		LockstepRelay relay = new LockstepRelay(LEVEL, SEED);
+		a.createLevel();
+		b.createLevel();
+		long[] plan = buildPlan(a.getLevel().getMap1().getCompiledPath(0), 8);
+		int next = 0;
+		int hashes = 0, mismatches = 0, turns = 0;
+		long compared = 0;
+		long start = System.nanoTime();
+		for(long serverTick = 0; serverTick < MAX_TICKS && !(a.isOver() && b.isOver()); serverTick++){
+			while(next < plan.length && plan[next] <= serverTick){ //Both players click on the same ticks
+				Point p = new Point((int) plan[next + 1], (int) plan[next + 2]);
+				towerType type = towerType.values()[(int) plan[next + 3]];
+				relay.place(true, type, p.x, p.y);
+				relay.place(false, type, p.x, p.y);
+				next += 4;
+			}
+			ClientLockstepTurn turn = relay.tick(1);
+			if(turn != null){
+				turns++;
+				lockstep.writeObject(turn); //Once per client
+				lockstep.writeObject(turn);
+				a.turnArrived(turn);
+				b.turnArrived(turn);
+			}
+			while(a.step()){
+				if(a.getTick() % LockstepRelay.HASH_INTERVAL == 0){
+					lockstep.writeObject(new ServerLockstepHash(a.getTick(), a.getLastHash(), ServerLockstepHash.PLAYING));
+				}
+			}
+			while(b.step()){
+				if(b.getTick() % LockstepRelay.HASH_INTERVAL == 0){
+					lockstep.writeObject(new ServerLockstepHash(b.getTick(), b.getLastHash(), ServerLockstepHash.PLAYING));
+				}
+			}
+			if(a.getTick() == b.getTick() && a.getTick() % LockstepRelay.HASH_INTERVAL == 0 && a.getTick() > compared){
+				compared = a.getTick();
+				hashes++;
+				if(a.getLastHash() != b.getLastHash()){
+					mismatches++;
+				}
+			}
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		double gameSeconds = a.getTick() * GameLoop.STEP_MILLIS / 1000.0;
+		System.out.printf("Level %d seed %d: %d ticks (%.0f s of game) in %.2f s, %s, %d turns%n", LEVEL, SEED,
+				a.getTick(), gameSeconds, seconds, a.isOver() ? "finished" : "unfinished", turns);
+		System.out.println("  state hashes compared " + hashes + ", mismatched " + mismatches
+				+ (mismatches == 0 ? "" : "  FAIL"));
+		System.out.printf("  streamed: %9d bytes, %8.0f bytes/s%n", streamedBytes.size(), streamedBytes.size() / gameSeconds);
+		System.out.printf("  lockstep: %9d bytes, %8.0f bytes/s%n", lockstepBytes.size(), lockstepBytes.size() / gameSeconds);
+		checkDesyncIsCaught();
+	}
+
+	/**
+	 * Feeds one client a tower the other never places, and checks the relay reports it
+	 */
+	private static void checkDesyncIsCaught(){
+		LockstepSimulation a = simulation();
+		LockstepSimulation b = simulation();
+		LockstepRelay relay = new LockstepRelay(LEVEL, SEED);
+		a.createLevel();
+		Point p = a.getLevel().getMap1().getCompiledPath(0).getPoint(4);
+		long caughtAt = -1;
+		for(long serverTick = 0; serverTick < 20 * LockstepRelay.HASH_INTERVAL && caughtAt < 0; serverTick++){
+			ClientLockstepTurn turn = relay.tick(1);
+			if(turn != null){
+				a.turnArrived(turn);
+				if(turn.getTick() == 2 * LockstepRelay.TURN_TICKS + LockstepRelay.LEAD_TICKS){
+					turn = new ClientLockstepTurn(turn.getTick(), 1,
+							new int[]{ClientLockstepTurn.PLACE, 1, towerType.FIRE.ordinal(), p.x + 1, p.y});
+				}
+				b.turnArrived(turn);
+			}
+			while(a.step()){
+			}
+			while(b.step()){
+			}
+			if(a.getTick() == b.getTick() && a.getTick() % LockstepRelay.HASH_INTERVAL == 0 && a.getTick() > 0){
+				relay.hash(true, a.getTick(), a.getLastHash());
+				if(!relay.hash(false, b.getTick(), b.getLastHash())){
+					caughtAt = a.getTick();
+				}
+			}
+		}
+		System.out.println("  desync test: " + (caughtAt >= 0 ? "caught at tick " + caughtAt : "NOT CAUGHT  FAIL")
+				+ ", " + relay.getStats());
+	}
+
+	private static LockstepSimulation simulation(){
+		return new LockstepSimulation(null, null, LEVEL, SEED, "Player1", "Player2", "Player1",
+				LockstepRelay.TURN_TICKS, LockstepRelay.LEAD_TICKS, LockstepRelay.HASH_INTERVAL);
+	}
+
+	/**
+	 * A simulation that writes out what the GameRoom would send both clients of the same game
+	 */
+	private static LockstepSimulation streamingSimulation(final FrameOutput out){
+		final long snapshotMillis = 1000 / GameServer.SNAPSHOT_HZ;
+		final long miniMapMillis = 200;
+		return new LockstepSimulation(null, null, LEVEL, SEED, "Player1", "Player2", "Player1",
+				LockstepRelay.TURN_TICKS, LockstepRelay.LEAD_TICKS, LockstepRelay.HASH_INTERVAL){
+			private final SnapshotEncoder[] encoders = {new SnapshotEncoder(true), new SnapshotEncoder(false)};
+			private final long[] nextSnapshot = new long[2];
+			private final long[] nextMiniMap = new long[2];
+
+			private long now(){
+				return getTick() * GameLoop.STEP_MILLIS;
+			}
+
+			public boolean hasViewers(){
+				return true;
+			}
+
+			public boolean isImageUpdateDue(boolean fromPlayer1){
+				int side = fromPlayer1 ? 0 : 1;
+				return now() >= nextSnapshot[side] || now() >= nextMiniMap[side];
+			}
+
+			public void updateClients(ArrayList<EnemyImage> enemyImages, ArrayList<TowerImage> towerImages, boolean fromPlayer1){
+				int side = fromPlayer1 ? 0 : 1;
+				try{
+					if(now() >= nextSnapshot[side]){
+						nextSnapshot[side] = now() + snapshotMillis;
+						ClientSnapshot s = encoders[side].encode(enemyImages, towerImages, now() * 1000000L);
+						if(s != null){
+							out.writeObject(s);
+						}
+					}
+					if(now() >= nextMiniMap[side]){
+						nextMiniMap[side] = now() + miniMapMillis;
+						out.writeObject(new ClientMiniMap(towerImages, enemyImages, fromPlayer1));
+					}
+				}catch(IOException e){
+					throw new RuntimeException(e);
+				}
+			}
+
+			public void updateClients(int playerHealth, int playerMoney, boolean fromPlayer1){
+				try{
+					out.writeObject(new ClientHPandMoney(playerHealth, playerMoney, fromPlayer1));
+				}catch(IOException e){
+					throw new RuntimeException(e);
+				}
+			}
+
+			public void updateClientsOfAttack(towerType type, Point towerLocation, Point enemyLocation, boolean fromPlayer1){
+				try{
+					out.writeObject(new ClientTowerAttack(type, towerLocation, enemyLocation, fromPlayer1));
+				}catch(IOException e){
+					throw new RuntimeException(e);
+				}
+			}
+		};
+	}
+
+	/**
+	 * @return {tick, row, column, towerType ordinal} of each tower, beside the path from the exit backward
+	 */
+	private static long[] buildPlan(CompiledPath path, int towers){
+		towerType[] types = {towerType.FIRE, towerType.WATER, towerType.GRASS, towerType.NORMAL};
+		long[] plan = new long[towers * 4];
+		int placed = 0;
+		for(int i = path.lastIndex() - 2; i > 0 && placed < towers; i -= 3){
+			Point p = path.getPoint(i);
+			plan[placed * 4] = placed * 50L;
+			plan[placed * 4 + 1] = p.x + 1;
+			plan[placed * 4 + 2] = p.y;
+			plan[placed * 4 + 3] = types[placed % types.length].ordinal();
+			placed++;
+		}
+		return Arrays.copyOf(plan, placed * 4);
+	}
+}
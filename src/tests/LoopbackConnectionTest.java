@@ -0,0 +1,111 @@
+package tests;
+
+import static org.junit.Assert.*;
+
+import java.util.LinkedList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import server.GameServer;
+import client.Transport;
+import commands.ClientHPandMoney;
+import commands.ClientMessageCommand;
+
+public class LoopbackConnectionTest {
+
+	public static void main (String args[]){}
+	/* void send(Object command)		- through GameServer.sendTo
+	 * Object readObject()			- the client's end, parks while nothing is queued
+	 */
+
+	private static final int ROUNDS = 20000; //Commands handed to a reader that has parked, or is about to
+
+	/*
+	 * @return a loopback client of a server of its own, past the commands sent when it connects
+	 */
+	private static Transport connect(GameServer server, String name) throws Exception{
+		Transport transport = server.openLoopback();
+		transport.writeObject(name);
+		transport.readObject(); //Its Player
+		transport.readObject(); //That it is player 1
+		return transport;
+	}
+
+	private static ClientMessageCommand message(String text){
+		LinkedList<String> messages = new LinkedList<String>();
+		messages.add(text);
+		return new ClientMessageCommand(messages);
+	}
+
+	/*
+	 * every command sent while the reader is parked, or parking, wakes it. A send the reader
+	 * missed would leave it parked and the test would time out.
+	 */
+	@Test(timeout = 60000)
+	public void testParkedReaderIsWoken() throws Exception{
+		GameServer server = new GameServer(GameServer.LOCAL_ONLY);
+		final Transport client = connect(server, "Reader");
+		final AtomicInteger read = new AtomicInteger();
+		final Thread reader = new Thread(new Runnable(){
+			public void run(){
+				try{
+					while(true){
+						if(client.readObject() instanceof ClientMessageCommand){
+							read.incrementAndGet();
+						}
+					}
+				}catch(Exception e){
+					//Closed
+				}
+			}
+		});
+		reader.setDaemon(true);
+		reader.start();
+		for(int i = 1; i <= ROUNDS; i++){
+			if(i % 100 == 0){
+				while(reader.getState() != Thread.State.WAITING){ //Parked for certain
+					Thread.yield();
+				}
+			}
+			server.sendTo("Reader", message("ping " + i));
+			while(read.get() < i){
+				Thread.yield();
+			}
+		}
+		assertEquals(ROUNDS, read.get());
+		client.close();
+		reader.join(1000);
+		assertFalse("the reader was not woken when closed", reader.isAlive());
+	}
+
+	/*
+	 * state sent while the client is behind is coalesced into the newest, delivered where the
+	 * first was queued, between the commands around it
+	 */
+	@Test(timeout = 60000)
+	public void testLatestStateKeepsItsPlace() throws Exception{
+		GameServer server = new GameServer(GameServer.LOCAL_ONLY);
+		Transport client = connect(server, "Behind");
+		server.sendTo("Behind", message("a"));
+		for(int hp = 1; hp <= 1000; hp++){
+			server.sendTo("Behind", new ClientHPandMoney(hp, 0, true));
+			if(hp == 1){
+				server.sendTo("Behind", message("b"));
+			}
+		}
+		server.sendTo("Behind", message("c"));
+		StringBuilder order = new StringBuilder();
+		while(!order.toString().endsWith("c ")){
+			Object o = client.readObject();
+			if(o instanceof ClientMessageCommand){
+				String text = o.toString().trim();
+				order.append(text.substring(text.lastIndexOf('\n') + 1)).append(' ');
+			}else if(o instanceof ClientHPandMoney){
+				order.append("HP ");
+			}
+		}
+		assertEquals("a HP b c ", order.toString());
+		client.close();
+	}
+}
@@ -0,0 +1,56 @@
+package tests;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import server.GameServer;
+import client.Player;
+import client.SocketTransport;
+import client.Transport;
+import commands.ClientMessageCommand;
+
+public class NetworkServerTest {
+
+	public static void main (String args[]){}
+	/* IoLoop.run()		- reads every connection of its thread, and checks their timeouts
+	 */
+
+	/*
+	 * @return a client connected over TCP, past its Player and that it is player 1
+	 */
+	private static Transport connect(GameServer server, String name) throws IOException{
+		Transport transport = new SocketTransport("localhost", server.getPort());
+		transport.writeObject(name);
+		assertTrue(transport.readObject() instanceof Player);
+		assertEquals(Boolean.TRUE, transport.readObject());
+		return transport;
+	}
+
+	/*
+	 * a command that throws while the server reads it closes only its own connection. Every
+	 * IoLoop goes on serving: a client connected to each loop afterwards still gets in.
+	 */
+	@Test(timeout = 60000)
+	public void testThrowingClientClosedAlone() throws Exception{
+		GameServer server = new GameServer(0);
+		try{
+			Transport bad = connect(server, "Bad");
+			bad.writeObject(new ClientMessageCommand(null)); //Its toString throws as the command is logged
+			try{
+				while(true){
+					bad.readObject();
+				}
+			}catch(IOException e){
+				//Closed by the server
+			}
+			for(int i = 0; i < 2 * GameServer.IO_THREADS; i++){
+				connect(server, "Good " + i).close();
+			}
+		}finally{
+			server.shutdown();
+		}
+	}
+}
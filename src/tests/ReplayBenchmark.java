@@ -0,0 +1,157 @@
+package tests;
+
+import java.awt.Point;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import model.CompiledPath;
+import model.Level;
+import model.LevelFactory;
+import model.SaveCodec;
+import server.GameLoop;
+import server.HeadlessEngine;
+import server.InputJournal;
+import server.NullEventSink;
+import server.SaveWriter;
+import GUI.GameView.towerType;
+import client.Player;
+import client.ReplayPlayback;
+
+/**
+ * Plays every single player level with nobody watching, building towers along the path, and
+ * records the game as a GameRoom records a replay: a checkpoint at the start, every input before
+ * it is applied, a snapshot every SNAPSHOT_TICKS and END when the game is won or lost.
+ *
+ * It then plays each replay back with nobody watching, as fast as it will go, and checks it ends
+ * the same way with the same state hash as the game that was recorded. Seeks to ticks through the
+ * game must give the game's state hash at the start of that tick, before its inputs, and it
+ * compares the time to seek to the end against playing the replay from the start.
+ *
+ * Run as a Java application.
+ */
+public class ReplayBenchmark {
+
+	private static final long SEED = 42L;
+	private static final long MAX_TICKS = 20L * 60 * 1000 / GameLoop.STEP_MILLIS;
+	private static final long SNAPSHOT_TICKS = 30 * 1000 / GameLoop.STEP_MILLIS; //As GameRoom.REPLAY_SNAPSHOT_TICKS
+	private static final long SEEK_EVERY = 377; //Ticks between the seeks checked, off the snapshots
+	private static final int REPEATS = 20; //Playbacks and seeks timed per level
+
+	public static void main(String[] args) throws Exception{
+		File dir = Files.createTempDirectory("replays").toFile();
+		SaveWriter writer = new SaveWriter();
+		writer.start();
+		for(int levelCode = 0; levelCode <= 3; levelCode++){
+			File file = new File(dir, "level-" + levelCode + ".replay");
+			InputJournal recording = new InputJournal(file, writer);
+			SaveCodec codec = new SaveCodec();
+			NullEventSink sink = new NullEventSink();
+			Player player = new Player(HeadlessEngine.PLAYER_NAME, 0, 0);
+			sink.reset(player);
+			Level level = LevelFactory.generateLevel(player, sink, levelCode, SEED);
+			long[] plan = buildPlan(level.getMap1().getCompiledPath(0), 12);
+			long[] hashes = new long[(int) MAX_TICKS + 1]; //At the start of each tick, before its inputs
+			int inputs = 0, next = 0;
+			long tick = 0;
+			recording.checkpoint(tick, codec.encode(level));
+			while(!sink.isGameOver() && tick < MAX_TICKS){
+				hashes[(int) tick] = level.stateHash();
+				while(next < plan.length && plan[next] <= tick){
+					int action = (int) plan[next + 1];
+					int a = (int) plan[next + 2], b = (int) plan[next + 3], c = (int) plan[next + 4];
+					recording.record(tick, action, true, a, b, c);
+					InputJournal.apply(level, action, true, a, b, c);
+					inputs++;
+					next += 5;
+				}
+				level.tick(GameLoop.STEP_MILLIS); //As GameRoom.tickModel, the Map too on the tick the game ends
+				level.getMap1().tick(GameLoop.STEP_MILLIS);
+				tick++;
+				if(sink.isGameOver()){
+					recording.record(tick, InputJournal.END, true, 0, 0, 0);
+				}else if(tick % SNAPSHOT_TICKS == 0){
+					recording.snapshot(tick, codec.encode(level));
+				}
+				recording.flush();
+			}
+			long lastTick = tick;
+			hashes[(int) lastTick] = level.stateHash();
+			writer.awaitIdle(10000);
+			byte[] replay = Files.readAllBytes(file.toPath());
+			file.delete();
+
+			ReplayPlayback playback = new ReplayPlayback(null, replay);
+			playback.playToEnd();
+			boolean same = playback.isOver() == sink.isGameOver() && playback.isWon() == sink.isWon()
+					&& playback.getLevel().stateHash() == hashes[(int) lastTick];
+			long start = System.nanoTime();
+			for(int i = 0; i < REPEATS; i++){
+				new ReplayPlayback(null, replay).playToEnd();
+			}
+			long playNanos = (System.nanoTime() - start) / REPEATS;
+
+			int seeks = 0, matched = 0;
+			for(long target = SEEK_EVERY; target < lastTick; target += SEEK_EVERY){
+				playback.seek(target);
+				seeks++;
+				if(playback.getTick() == target && playback.getLevel().stateHash() == hashes[(int) target]){
+					matched++;
+				}
+			}
+			playback.seek(5);
+			boolean back = playback.getTick() == 5 && playback.getLevel().stateHash() == hashes[5];
+			start = System.nanoTime();
+			for(int i = 0; i < REPEATS; i++){
+				playback.seek(lastTick - 1);
+			}
+			long seekNanos = (System.nanoTime() - start) / REPEATS;
+
+			System.out.printf("Level %d seed %d: %d ticks, %d inputs, %s, replay %d bytes with %d snapshots%n",
+					levelCode, SEED, lastTick, inputs, sink.isWon() ? "won" : "lost", replay.length,
+					playback.getSnapshotTicks().length);
+			System.out.printf("  played back in %.1f ms, %.0f ticks/s, %s%n", playNanos / 1e6,
+					lastTick * 1e9 / playNanos, same ? "same outcome and state hash" : "DIFFERENT GAME  FAIL");
+			System.out.println("  " + matched + "/" + seeks + " seeks at the recorded game's state"
+					+ (matched == seeks ? "" : "  FAIL") + ", back to tick 5 " + (back ? "ok" : "FAIL"));
+			System.out.printf("  seek to the end %.2f ms, %.0f%% of playing from the start%n",
+					seekNanos / 1e6, 100.0 * seekNanos / playNanos);
+		}
+		writer.shutdown();
+		dir.delete();
+	}
+
+	/**
+	 * @return {tick, action, a, b, c} of each input: towers beside the path from the exit backward,
+	 * every third upgraded a few seconds later and one of them sold
+	 */
+	private static long[] buildPlan(CompiledPath path, int towers){
+		towerType[] types = {towerType.FIRE, towerType.WATER, towerType.GRASS, towerType.NORMAL};
+		ArrayList<long[]> inputs = new ArrayList<long[]>();
+		int placed = 0;
+		for(int i = path.lastIndex() - 2; i > 0 && placed < towers; i -= 3){
+			Point p = path.getPoint(i);
+			long tick = placed * 400L;
+			inputs.add(new long[]{tick, InputJournal.PLACE, types[placed % types.length].ordinal(), p.x + 1, p.y});
+			if(placed % 3 == 2){
+				inputs.add(new long[]{tick + 200, InputJournal.UPGRADE, p.x + 1, p.y, 0});
+			}
+			if(placed == 4){
+				inputs.add(new long[]{tick + 300, InputJournal.SELL, p.x + 1, p.y, 0});
+			}
+			placed++;
+		}
+		long[][] sorted = inputs.toArray(new long[inputs.size()][]);
+		Arrays.sort(sorted, new java.util.Comparator<long[]>(){
+			public int compare(long[] x, long[] y){
+				return Long.compare(x[0], y[0]);
+			}
+		});
+		long[] plan = new long[sorted.length * 5];
+		for(int i = 0; i < sorted.length; i++){
+			System.arraycopy(sorted[i], 0, plan, i * 5, 5);
+		}
+		return plan;
+	}
+}
@@ -0,0 +1,170 @@
+package tests;
+
+import static org.junit.Assert.*;
+
+import java.awt.Point;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import model.CompiledPath;
+import model.Level;
+import model.LevelFactory;
+import model.SaveCodec;
+import server.GameLoop;
+import server.HeadlessEngine;
+import server.InputJournal;
+import server.NullEventSink;
+import server.SaveWriter;
+import GUI.GameView.towerType;
+import client.Player;
+import client.ReplayPlayback;
+
+public class ReplayPlaybackTest {
+
+	public static void main (String args[]){}
+	/* ReplayPlayback(GameClient client, byte[] replay)
+	 * void playToEnd()
+	 * void seek(long target)
+	 * long getTick()
+	 * boolean isOver()
+	 * boolean isWon()
+	 */
+
+	private static final long SEED = 42L;
+	private static final long MAX_TICKS = 20L * 60 * 1000 / GameLoop.STEP_MILLIS;
+	private static final long SNAPSHOT_TICKS = 500;
+	private static final long SEEK_EVERY = 377; //Ticks between the seeks checked, off the snapshots
+
+	private static Recorded recorded; //Recorded once for every test
+
+	/*
+	 * a game of level 0 played to its end with towers built beside the path, recorded as a
+	 * GameRoom records a replay
+	 */
+	private static class Recorded{
+		byte[] replay;
+		long[] hashes = new long[(int) MAX_TICKS + 1]; //At the start of each tick, before its inputs
+		long lastTick;
+		boolean over, won;
+	}
+
+	private static synchronized Recorded record() throws Exception{
+		if(recorded != null){
+			return recorded;
+		}
+		Recorded r = new Recorded();
+		File file = Files.createTempFile("level", ".replay").toFile();
+		SaveWriter writer = new SaveWriter();
+		writer.start();
+		InputJournal recording = new InputJournal(file, writer);
+		SaveCodec codec = new SaveCodec();
+		NullEventSink sink = new NullEventSink();
+		Player player = new Player(HeadlessEngine.PLAYER_NAME, 0, 0);
+		sink.reset(player);
+		Level level = LevelFactory.generateLevel(player, sink, 0, SEED);
+		CompiledPath path = level.getMap1().getCompiledPath(0);
+		towerType[] types = towerType.values();
+		int placed = 0;
+		long tick = 0;
+		recording.checkpoint(tick, codec.encode(level));
+		while(!sink.isGameOver() && tick < MAX_TICKS){
+			r.hashes[(int) tick] = level.stateHash();
+			if(tick % 300 == 0 && placed < 12 && path.lastIndex() - 2 - 3 * placed > 0){
+				Point p = path.getPoint(path.lastIndex() - 2 - 3 * placed);
+				input(recording, level, tick, InputJournal.PLACE, types[placed % 4].ordinal(), p.x + 1, p.y);
+				if(placed % 3 == 2){
+					input(recording, level, tick, InputJournal.UPGRADE, p.x + 1, p.y, 0);
+				}
+				if(placed == 4){
+					input(recording, level, tick, InputJournal.SELL, p.x + 1, p.y, 0);
+				}
+				placed++;
+			}
+			level.tick(GameLoop.STEP_MILLIS); //As GameRoom.tickModel, the Map too on the tick the game ends
+			level.getMap1().tick(GameLoop.STEP_MILLIS);
+			tick++;
+			if(sink.isGameOver()){
+				recording.record(tick, InputJournal.END, true, 0, 0, 0);
+			}else if(tick % SNAPSHOT_TICKS == 0){
+				recording.snapshot(tick, codec.encode(level));
+			}
+			recording.flush();
+		}
+		r.lastTick = tick;
+		r.hashes[(int) tick] = level.stateHash();
+		r.over = sink.isGameOver();
+		r.won = sink.isWon();
+		writer.awaitIdle(10000);
+		writer.shutdown();
+		r.replay = Files.readAllBytes(file.toPath());
+		file.delete();
+		recorded = r;
+		return r;
+	}
+
+	private static void input(InputJournal recording, Level level, long tick, int action, int a, int b, int c){
+		recording.record(tick, action, true, a, b, c);
+		InputJournal.apply(level, action, true, a, b, c);
+	}
+
+	/*
+	 * played back from the start the replay ends the way the recorded game did, with the same
+	 * state hash
+	 */
+	@Test(timeout = 120000)
+	public void testPlaysBackTheSameGame() throws Exception{
+		Recorded r = record();
+		assertTrue("the recorded game never ended", r.over);
+		ReplayPlayback playback = new ReplayPlayback(null, r.replay);
+		playback.playToEnd();
+		assertTrue(playback.isOver());
+		assertEquals(r.won, playback.isWon());
+		assertEquals(r.lastTick, playback.getTick());
+		assertEquals(r.hashes[(int) r.lastTick], playback.getLevel().stateHash());
+		assertTrue(playback.getSnapshotTicks().length > 2);
+	}
+
+	/*
+	 * seeking forward, onto a snapshot, back to the start and past the end gives the recorded
+	 * game's state at the start of that tick
+	 */
+	@Test(timeout = 120000)
+	public void testSeek() throws Exception{
+		Recorded r = record();
+		ReplayPlayback playback = new ReplayPlayback(null, r.replay);
+		for(long target = SEEK_EVERY; target < r.lastTick; target += SEEK_EVERY){
+			playback.seek(target);
+			assertEquals(target, playback.getTick());
+			assertEquals("seek to " + target, r.hashes[(int) target], playback.getLevel().stateHash());
+		}
+		long[] snapshots = playback.getSnapshotTicks();
+		long onSnapshot = snapshots[snapshots.length - 1];
+		playback.seek(onSnapshot);
+		assertEquals(r.hashes[(int) onSnapshot], playback.getLevel().stateHash());
+		playback.seek(5);
+		assertEquals(5, playback.getTick());
+		assertEquals(r.hashes[5], playback.getLevel().stateHash());
+		assertFalse(playback.isOver());
+		playback.seek(r.lastTick + 1000);
+		assertTrue(playback.isOver());
+		assertEquals(r.hashes[(int) r.lastTick], playback.getLevel().stateHash());
+	}
+
+	/*
+	 * a replay cut short before its first snapshot is refused
+	 */
+	@Test(timeout = 120000)
+	public void testNoSnapshotRefused() throws Exception{
+		Recorded r = record();
+		try{
+			new ReplayPlayback(null, Arrays.copyOf(r.replay, 8));
+			fail("played a replay with no snapshot");
+		}catch(IOException e){
+			//Expected
+		}
+	}
+}
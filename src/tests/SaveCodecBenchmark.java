@@ -0,0 +1,262 @@
+package tests;
+
+import java.awt.Point;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import model.CompiledPath;
+import model.Level;
+import model.LevelFactory;
+import model.Map;
+import model.MapFactory;
+import model.SaveCodec;
+import server.BuildScript;
+import server.GameLoop;
+import server.HeadlessEngine;
+import server.NullEventSink;
+import server.SaveWriter;
+import GUI.GameView.towerType;
+import client.Player;
+
+/**
+ * Saves every single player level at points through a game with nobody watching, and compares
+ * the size of each save and the time to save and load it, Java serializing the whole Level as
+ * GameRoom used to against SaveCodec. It then loads every SaveCodec save and plays the rest of
+ * the game from it, checking the state hash after every tick matches the game that was never
+ * saved, and that a save with a byte changed is refused.
+ *
+ * Last it hands the saves to a SaveWriter, as rooms autosave, and compares what that costs the
+ * thread handing them over against the writer's time to write, sync and rename each file.
+ *
+ * Run as a Java application.
+ */
+public class SaveCodecBenchmark {
+
+	private static final long SEED = 42L;
+	private static final long SAVE_EVERY = 1000; //Ticks between saves, 20 seconds of game
+	private static final long MAX_TICKS = 20L * 60 * 1000 / GameLoop.STEP_MILLIS;
+	private static final int REPEATS = 200; //Saves and loads timed per level
+	private static final int WRITE_ROUNDS = 10; //Times every save is handed to the SaveWriter
+
+	public static void main(String[] args) throws Exception{
+		ArrayList<byte[]> allSaves = new ArrayList<byte[]>();
+		for(int levelCode = 0; levelCode <= 3; levelCode++){
+			BuildScript script = scriptAlongPath(levelCode, 6);
+
+			//Play the game through once, keeping the hash after every tick and a save every SAVE_EVERY
+			NullEventSink sink = new NullEventSink();
+			Player player = new Player(HeadlessEngine.PLAYER_NAME, 0, 0);
+			sink.reset(player);
+			Level level = LevelFactory.generateLevel(player, sink, levelCode, SEED);
+			SaveCodec codec = new SaveCodec();
+			long[] hashes = new long[(int) MAX_TICKS + 1];
+			ArrayList<byte[]> saves = new ArrayList<byte[]>();
+			ArrayList<long[]> savedAt = new ArrayList<long[]>(); //{tick, next script step}
+			byte[] javaSave = null;
+			long javaSaveNanos = 0, codecSaveNanos = 0;
+			int nextStep = 0;
+			long tick = 0;
+			while(!sink.isGameOver() && tick < MAX_TICKS){
+				if(tick > 0 && tick % SAVE_EVERY == 0){
+					saves.add(codec.encode(level));
+					savedAt.add(new long[]{tick, nextStep});
+					if(javaSave == null && level.getMap1().getEnemies().size() > 0){ //Time the first save mid-wave
+						long start = System.nanoTime();
+						for(int i = 0; i < REPEATS; i++){
+							javaSave = javaSerialize(level);
+						}
+						javaSaveNanos = (System.nanoTime() - start) / REPEATS;
+						start = System.nanoTime();
+						for(int i = 0; i < REPEATS; i++){
+							codec.encode(level);
+						}
+						codecSaveNanos = (System.nanoTime() - start) / REPEATS;
+					}
+				}
+				nextStep = play(level, sink, script, tick, nextStep);
+				hashes[(int) ++tick] = level.stateHash();
+			}
+			long lastTick = tick;
+
+			int matched = 0;
+			long codecBytes = 0;
+			long codecLoadNanos = 0, javaLoadNanos = 0;
+			for(int s = 0; s < saves.size(); s++){
+				byte[] save = saves.get(s);
+				codecBytes += save.length;
+				if(resumeMatches(levelCode, save, script, savedAt.get(s), hashes, lastTick)){
+					matched++;
+				}
+			}
+			if(javaSave != null){
+				byte[] save = saves.get(0);
+				long start = System.nanoTime();
+				for(int i = 0; i < REPEATS; i++){
+					Player loaded = new Player(HeadlessEngine.PLAYER_NAME, 0, 0);
+					NullEventSink loadedSink = new NullEventSink();
+					loadedSink.reset(loaded);
+					SaveCodec.decode(save, loaded, loadedSink);
+				}
+				codecLoadNanos = (System.nanoTime() - start) / REPEATS;
+				start = System.nanoTime();
+				for(int i = 0; i < REPEATS; i++){
+					ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(javaSave));
+					((Level) in.readObject()).setServer(sink);
+					in.close();
+				}
+				javaLoadNanos = (System.nanoTime() - start) / REPEATS;
+			}
+
+			System.out.printf("Level %d seed %d: %d ticks, %d saves%n", levelCode, SEED, lastTick, saves.size());
+			if(javaSave != null){
+				System.out.printf("  Java serialized: %7d bytes, save %7.1f us, load %7.1f us%n",
+						javaSave.length, javaSaveNanos / 1e3, javaLoadNanos / 1e3);
+				System.out.printf("  SaveCodec:       %7d bytes, save %7.1f us, load %7.1f us (first save mid-wave)%n",
+						saves.get(0).length, codecSaveNanos / 1e3, codecLoadNanos / 1e3);
+			}
+			System.out.println("  SaveCodec mean " + (saves.isEmpty() ? 0 : codecBytes / saves.size()) + " bytes, "
+					+ matched + "/" + saves.size() + " loaded saves played on the same as the unsaved game"
+					+ (matched == saves.size() ? "" : "  FAIL"));
+			if(!saves.isEmpty()){
+				System.out.println("  corrupted save " + (refusesCorruption(saves.get(0)) ? "refused" : "ACCEPTED  FAIL"));
+			}
+			allSaves.addAll(saves);
+		}
+		timeBackgroundWrites(allSaves);
+	}
+
+	/**
+	 * Submits every save to a SaveWriter in turn, a file per level, and checks the files end up
+	 * holding the last save submitted for them
+	 */
+	private static void timeBackgroundWrites(ArrayList<byte[]> saves) throws Exception{
+		File dir = Files.createTempDirectory("saves").toFile();
+		SaveWriter writer = new SaveWriter();
+		writer.start();
+		File[] files = new File[4];
+		for(int i = 0; i < files.length; i++){
+			files[i] = new File(dir, "autosave-" + i + ".data");
+		}
+		byte[][] last = new byte[files.length][];
+		long submitNanos = 0, worstSubmitNanos = 0;
+		int submitted = 0;
+		for(int round = 0; round < WRITE_ROUNDS; round++){
+			for(int i = 0; i < saves.size(); i++){
+				long start = System.nanoTime();
+				writer.submit(files[i % files.length], saves.get(i));
+				long nanos = System.nanoTime() - start;
+				if(round > 0){ //The first round warms up
+					submitNanos += nanos;
+					worstSubmitNanos = Math.max(worstSubmitNanos, nanos);
+					submitted++;
+				}
+				last[i % files.length] = saves.get(i);
+				Thread.sleep(1); //Saves come seconds apart in a game, not all at once
+			}
+		}
+		boolean idle = writer.awaitIdle(10000);
+		int intact = 0;
+		for(int i = 0; i < files.length; i++){
+			if(last[i] != null && Arrays.equals(last[i], writer.read(files[i]))){
+				intact++;
+			}
+			files[i].delete();
+		}
+		writer.shutdown();
+		dir.delete();
+		System.out.printf("SaveWriter: %d saves timed, submit avg/worst %.1f/%.1f us on the caller%n",
+				submitted, submitNanos / 1e3 / Math.max(1, submitted), worstSubmitNanos / 1e3);
+		System.out.println("  " + writer.getStats() + (idle ? "" : "  NOT IDLE"));
+		System.out.println("  " + intact + "/" + files.length + " files hold the last save submitted"
+				+ (intact == files.length ? "" : "  FAIL"));
+	}
+
+	/**
+	 * Plays one tick as HeadlessEngine.run does
+	 * @return the index of the first script step still to run
+	 */
+	private static int play(Level level, NullEventSink sink, BuildScript script, long tick, int nextStep){
+		Map map = level.getMap1();
+		nextStep = script.applyDue(tick, map, map.getPlayer(), nextStep);
+		level.tick(GameLoop.STEP_MILLIS);
+		if(!sink.isGameOver()){
+			map.tick(GameLoop.STEP_MILLIS);
+		}
+		return nextStep;
+	}
+
+	/**
+	 * Loads a save and plays the rest of the game from it
+	 * @return true if its state hash matched the unsaved game's after every tick
+	 */
+	private static boolean resumeMatches(int levelCode, byte[] save, BuildScript script, long[] savedAt,
+			long[] hashes, long lastTick) throws IOException{
+		Player player = new Player(HeadlessEngine.PLAYER_NAME, 0, 0);
+		NullEventSink sink = new NullEventSink();
+		sink.reset(player);
+		Level level = SaveCodec.decode(save, player, sink);
+		if(level.getLevelCode() != levelCode){
+			return false;
+		}
+		int nextStep = (int) savedAt[1];
+		for(long tick = savedAt[0]; tick < lastTick; tick++){
+			if(level.stateHash() != hashes[(int) tick]){
+				System.out.println("  save at tick " + savedAt[0] + " diverged at tick " + tick);
+				return false;
+			}
+			nextStep = play(level, sink, script, tick, nextStep);
+		}
+		return level.stateHash() == hashes[(int) lastTick];
+	}
+
+	private static boolean refusesCorruption(byte[] save){
+		byte[] corrupt = save.clone();
+		corrupt[corrupt.length / 2] ^= 0x10;
+		try{
+			SaveCodec.verify(corrupt);
+			return false;
+		}catch(IOException e){
+			return true;
+		}
+	}
+
+	private static byte[] javaSerialize(Level level) throws IOException{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(1 << 16);
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(level);
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Places towers of alternating types beside the first path of a level's map, upgrades the
+	 * first few of them and sells one, so saves hold leveled up towers and gaps left by a sale
+	 */
+	private static BuildScript scriptAlongPath(int mapCode, int towers){
+		Map map = MapFactory.generateMap(new Player("probe", 0, 0), mapCode);
+		CompiledPath path = map.getCompiledPath(0);
+		towerType[] types = {towerType.FIRE, towerType.WATER, towerType.GRASS, towerType.NORMAL};
+		BuildScript script = new BuildScript();
+		int placed = 0;
+		for(int i = path.lastIndex() - 2; i > 0 && placed < towers * 2; i -= 3){
+			Point p = path.getPoint(i);
+			script.place(placed * 50L, types[placed % types.length], p.x + 1, p.y);
+			script.place(placed * 50L, types[(placed + 1) % types.length], p.x, p.y + 1);
+			if(placed < 4){
+				script.upgrade(2000L + placed * 100L, p.x + 1, p.y);
+			}
+			if(placed == 2){
+				script.sell(3000L, p.x, p.y + 1);
+			}
+			placed += 2;
+		}
+		return script;
+	}
+}
@@ -0,0 +1,202 @@
+package tests;
+
+import static org.junit.Assert.*;
+
+import java.awt.Point;
+import java.io.File;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import model.CompiledPath;
+import model.Level;
+import model.LevelFactory;
+import model.Map;
+import model.SaveCodec;
+import server.BuildScript;
+import server.GameLoop;
+import server.HeadlessEngine;
+import server.NullEventSink;
+import server.SaveWriter;
+import GUI.GameView.towerType;
+import client.Player;
+
+public class SaveCodecTest {
+
+	public static void main (String args[]){}
+	/* byte[] encode(Level level)
+	 * static Level decode(byte[] save, Player player, GameEventSink server)
+	 * static void verify(byte[] save)
+	 * SaveWriter.submit(File file, byte[] save)
+	 */
+
+	private static final long SEED = 42L;
+	private static final long SAVED_AT = 1500; //Ticks played before the save, towers built, upgraded and one sold
+	private static final long PLAYED_ON = 1000; //Ticks the saved and the loaded game are compared over
+
+	/*
+	 * a game and the script building towers along its first path, played as HeadlessEngine does
+	 */
+	private static class Game{
+		final NullEventSink sink = new NullEventSink();
+		final Level level;
+		final BuildScript script;
+		int nextStep;
+
+		Game(int levelCode){
+			Player player = new Player(HeadlessEngine.PLAYER_NAME, 0, 0);
+			sink.reset(player);
+			level = LevelFactory.generateLevel(player, sink, levelCode, SEED);
+			script = scriptAlongPath(level.getMap1().getCompiledPath(0));
+		}
+
+		Game(byte[] save, BuildScript script, int nextStep) throws IOException{
+			Player player = new Player(HeadlessEngine.PLAYER_NAME, 0, 0);
+			sink.reset(player);
+			level = SaveCodec.decode(save, player, sink);
+			this.script = script;
+			this.nextStep = nextStep;
+		}
+
+		void play(long tick){
+			Map map = level.getMap1();
+			nextStep = script.applyDue(tick, map, map.getPlayer(), nextStep);
+			level.tick(GameLoop.STEP_MILLIS);
+			if(!sink.isGameOver()){
+				map.tick(GameLoop.STEP_MILLIS);
+			}
+		}
+	}
+
+	private static BuildScript scriptAlongPath(CompiledPath path){
+		towerType[] types = {towerType.FIRE, towerType.WATER, towerType.GRASS, towerType.NORMAL};
+		BuildScript script = new BuildScript();
+		int placed = 0;
+		for(int i = path.lastIndex() - 2; i > 0 && placed < 8; i -= 3){
+			Point p = path.getPoint(i);
+			script.place(placed * 50L, types[placed % types.length], p.x + 1, p.y);
+			script.place(placed * 50L, types[(placed + 1) % types.length], p.x, p.y + 1);
+			script.upgrade(1000L + placed * 50L, p.x + 1, p.y);
+			if(placed == 2){
+				script.sell(1200L, p.x, p.y + 1);
+			}
+			placed += 2;
+		}
+		return script;
+	}
+
+	/*
+	 * @return a save of a game of the level at SAVED_AT, mid-wave, towers built
+	 */
+	private static byte[] saveOf(Game game) throws IOException{
+		for(long tick = 0; tick < SAVED_AT; tick++){
+			game.play(tick);
+		}
+		return new SaveCodec().encode(game.level);
+	}
+
+	/*
+	 * a loaded save of every level is the same game: the same state hash, the same save again,
+	 * and every tick played on from it the same as in the game that was never saved
+	 */
+	@Test
+	public void testLoadedGamePlaysOnTheSame() throws IOException{
+		for(int levelCode = 0; levelCode <= 3; levelCode++){
+			Game game = new Game(levelCode);
+			byte[] save = saveOf(game);
+			Game loaded = new Game(save, game.script, game.nextStep);
+			assertEquals(levelCode, loaded.level.getLevelCode());
+			assertEquals(game.level.stateHash(), loaded.level.stateHash());
+			assertArrayEquals(save, new SaveCodec().encode(loaded.level));
+			for(long tick = SAVED_AT; tick < SAVED_AT + PLAYED_ON && !game.sink.isGameOver(); tick++){
+				game.play(tick);
+				loaded.play(tick);
+				assertEquals("level " + levelCode + " diverged at tick " + tick, game.level.stateHash(),
+						loaded.level.stateHash());
+			}
+		}
+	}
+
+	/*
+	 * a save with any one byte changed, cut short, of another version or not a save at all is
+	 * refused before anything is decoded
+	 */
+	@Test
+	public void testCorruptSaveRefused() throws IOException{
+		byte[] save = saveOf(new Game(1));
+		SaveCodec.verify(save);
+		for(int i = 0; i < save.length; i++){
+			byte[] corrupt = save.clone();
+			corrupt[i] ^= 0x10;
+			assertRefused(corrupt, "byte " + i + " changed");
+		}
+		for(int length = 0; length < save.length; length += 7){
+			assertRefused(Arrays.copyOf(save, length), "cut to " + length + " bytes");
+		}
+		byte[] newer = save.clone();
+		ByteBuffer.wrap(newer).putInt(4, SaveCodec.VERSION + 1);
+		try{
+			SaveCodec.verify(newer);
+			fail("a newer version was accepted");
+		}catch(InvalidObjectException e){
+			//Expected
+		}
+		assertRefused(new byte[64], "zeros");
+	}
+
+	private static void assertRefused(byte[] save, String what){
+		try{
+			SaveCodec.verify(save);
+			fail("verified a save with " + what);
+		}catch(IOException e){
+			//Expected
+		}
+		try{
+			Player player = new Player(HeadlessEngine.PLAYER_NAME, 0, 0);
+			NullEventSink sink = new NullEventSink();
+			sink.reset(player);
+			SaveCodec.decode(save, player, sink);
+			fail("decoded a save with " + what);
+		}catch(IOException e){
+			//Expected
+		}
+	}
+
+	/*
+	 * saves submitted to a SaveWriter faster than it writes them leave each file holding the
+	 * last one submitted for it, whole, and no temporary files
+	 */
+	@Test(timeout = 60000)
+	public void testWriterKeepsTheLastSave() throws Exception{
+		File dir = Files.createTempDirectory("saves").toFile();
+		SaveWriter writer = new SaveWriter();
+		writer.start();
+		Game game = new Game(2);
+		File[] files = {new File(dir, "a.data"), new File(dir, "b.data")};
+		byte[][] last = new byte[files.length][];
+		SaveCodec codec = new SaveCodec();
+		for(long tick = 0; tick < 2000; tick++){
+			game.play(tick);
+			if(tick % 20 == 0){
+				int f = (int) (tick / 20 % files.length);
+				last[f] = codec.encode(game.level);
+				writer.submit(files[f], last[f]);
+				assertArrayEquals(last[f], writer.read(files[f])); //Before it is written too
+			}
+		}
+		assertTrue(writer.awaitIdle(30000));
+		writer.shutdown();
+		for(int f = 0; f < files.length; f++){
+			byte[] written = Files.readAllBytes(files[f].toPath());
+			assertArrayEquals(last[f], written);
+			SaveCodec.verify(written);
+			files[f].delete();
+		}
+		assertEquals(0, dir.list().length);
+		dir.delete();
+	}
+}
@@ -0,0 +1,207 @@
+package tests;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.List;
+
+import model.Level;
+import model.LevelFactory;
+import model.SaveCodec;
+import server.GameLoop;
+import server.HeadlessEngine;
+import server.NullEventSink;
+import server.SaveStore;
+import server.SaveWriter;
+import client.Player;
+
+/**
+ * Fills one player's SaveStore with SLOTS saves taken through games of every single player level
+ * played with nobody watching, then saves over OVERWRITES of them again, as a player with
+ * hundreds of saves would. It times saving on the caller, listing the saves and opening the
+ * store again, which reads only the index, and compares the index's size against the saves'.
+ *
+ * Every save is then loaded back, checked against the index and decoded, and must have the
+ * state hash the game had when it was saved. A save with a byte changed, a save cut short and a
+ * corrupt index must all be refused before anything is decoded, and a save file no index names
+ * must be deleted when the store is opened. The saves of a corrupt index must be moved aside
+ * with it, and neither the next save nor opening the store again may touch them.
+ *
+ * Run as a Java application.
+ */
+public class SaveStoreBenchmark {
+
+	private static final long SEED = 42L;
+	private static final int SLOTS = 500;
+	private static final int OVERWRITES = 100; //Slots saved over a second time
+	private static final int SAVE_EVERY = 40; //Ticks between saves
+	private static final int REPEATS = 200; //Lists and opens timed
+
+	public static void main(String[] args) throws Exception{
+		File dir = Files.createTempDirectory("saves").toFile();
+		SaveWriter writer = new SaveWriter();
+		writer.start();
+		SaveStore store = new SaveStore(dir, writer);
+		SaveCodec codec = new SaveCodec();
+		HashMap<String, Long> hashes = new HashMap<String, Long>(); //The game's state hash when each slot was saved
+		NullEventSink sink = null;
+		Level level = null;
+		int levelCode = 0;
+		long saveNanos = 0, worstSaveNanos = 0;
+		int saves = 0;
+		long ticks = 0;
+		while(saves < SLOTS + OVERWRITES){
+			if(level == null || sink.isGameOver()){
+				sink = new NullEventSink();
+				Player player = new Player(HeadlessEngine.PLAYER_NAME, 0, 0);
+				sink.reset(player);
+				level = LevelFactory.generateLevel(player, sink, levelCode++ % 4, SEED);
+			}
+			level.tick(GameLoop.STEP_MILLIS);
+			level.getMap1().tick(GameLoop.STEP_MILLIS);
+			if(++ticks % SAVE_EVERY != 0 || sink.isGameOver()){
+				continue;
+			}
+			String name = "Save " + (saves < SLOTS ? saves : (saves - SLOTS) * 3); //Then every third slot again
+			long start = System.nanoTime();
+			store.save(name, level, codec.encode(level));
+			long nanos = System.nanoTime() - start;
+			saveNanos += nanos;
+			worstSaveNanos = Math.max(worstSaveNanos, nanos);
+			hashes.put(name, level.stateHash());
+			saves++;
+			Thread.sleep(1); //Saves come seconds apart in a game, not all at once
+		}
+		boolean idle = writer.awaitIdle(30000);
+
+		long saveBytes = 0;
+		int saveFiles = 0;
+		for(File file : dir.listFiles()){
+			if(file.getName().startsWith("save-")){
+				saveBytes += file.length();
+				saveFiles++;
+			}
+		}
+		File index = new File(dir, "index.data");
+		System.out.printf("%d saves in %d slots over %d ticks: %d save files, %d KB of saves, index %.1f KB%n",
+				saves, store.size(), ticks, saveFiles, saveBytes / 1024, index.length() / 1024.0);
+		System.out.printf("  save avg/worst %.1f/%.1f us on the caller, encoding and index included%n",
+				saveNanos / 1e3 / saves, worstSaveNanos / 1e3);
+
+		long start = System.nanoTime();
+		for(int i = 0; i < REPEATS; i++){
+			store.list();
+		}
+		long listNanos = (System.nanoTime() - start) / REPEATS;
+		start = System.nanoTime();
+		SaveStore reopened = null;
+		for(int i = 0; i < REPEATS; i++){
+			reopened = new SaveStore(dir, writer);
+		}
+		long openNanos = (System.nanoTime() - start) / REPEATS;
+		List<SaveStore.Slot> slots = reopened.list();
+		System.out.printf("  list %.1f us, open from the index and list %.2f ms%n", listNanos / 1e3,
+				(openNanos + listNanos) / 1e6);
+
+		int matched = 0;
+		long loadNanos = 0, readNanos = 0;
+		for(SaveStore.Slot slot : slots){
+			start = System.nanoTime();
+			byte[] save = reopened.read(slot.getName());
+			long read = System.nanoTime();
+			Player player = new Player(HeadlessEngine.PLAYER_NAME, 0, 0);
+			NullEventSink loaded = new NullEventSink();
+			loaded.reset(player);
+			Level game = SaveCodec.decode(save, player, loaded);
+			loadNanos += System.nanoTime() - start;
+			readNanos += read - start;
+			if(game.stateHash() == hashes.get(slot.getName()) && game.getLevelCode() == slot.getLevelCode()){
+				matched++;
+			}
+		}
+		System.out.printf("  load avg %.1f us, %.1f us of it reading and checking%n", loadNanos / 1e3 / slots.size(),
+				readNanos / 1e3 / slots.size());
+		System.out.println("  " + matched + "/" + hashes.size() + " saves loaded as they were saved"
+				+ (matched == hashes.size() && slots.size() == SLOTS ? "" : "  FAIL")
+				+ ", " + (saveFiles == SLOTS ? "replaced saves deleted" : "REPLACED SAVES LEFT  FAIL")
+				+ (idle ? "" : "  NOT IDLE"));
+
+		String first = slots.get(0).getName(), second = slots.get(1).getName();
+		File firstFile = saveFileOf(dir, slots.get(0), reopened);
+		RandomAccessFile file = new RandomAccessFile(firstFile, "rw");
+		file.seek(file.length() / 2);
+		int b = file.read();
+		file.seek(file.length() / 2);
+		file.write(b ^ 0x10);
+		file.close();
+		File secondFile = saveFileOf(dir, slots.get(1), reopened);
+		file = new RandomAccessFile(secondFile, "rw");
+		file.setLength(file.length() - 1);
+		file.close();
+		System.out.println("  changed byte " + (refuses(reopened, first) ? "refused" : "ACCEPTED  FAIL")
+				+ ", cut short " + (refuses(reopened, second) ? "refused" : "ACCEPTED  FAIL"));
+
+		File orphan = new File(dir, "save-999999.data");
+		Files.write(orphan.toPath(), new byte[]{1, 2, 3});
+		new SaveStore(dir, writer);
+		writer.awaitIdle(10000);
+		RandomAccessFile corrupt = new RandomAccessFile(index, "rw");
+		corrupt.seek(20);
+		corrupt.write(0xFF);
+		corrupt.close();
+		SaveStore fresh = new SaveStore(dir, writer);
+		System.out.println("  unindexed save " + (orphan.exists() ? "LEFT  FAIL" : "deleted") + ", corrupt index "
+				+ (fresh.size() == 0 && new File(dir, "index.data.corrupt").exists() ? "moved aside" : "USED  FAIL"));
+
+		HashMap<String, Long> aside = new HashMap<String, Long>(); //Each file moved aside and its length
+		for(File f : dir.listFiles()){
+			if(f.getName().startsWith("save-")){
+				aside.put(f.getName(), f.length());
+			}
+		}
+		fresh.save("After", level, codec.encode(level));
+		writer.awaitIdle(10000);
+		new SaveStore(dir, writer); //Deletes what the new index does not name
+		writer.awaitIdle(10000);
+		int kept = 0;
+		for(String name : aside.keySet()){
+			File f = new File(dir, name);
+			if(name.endsWith(".corrupt") && f.exists() && f.length() == aside.get(name)){
+				kept++;
+			}
+		}
+		System.out.println("  " + kept + "/" + aside.size() + " saves of the corrupt index kept"
+				+ (kept == aside.size() && kept == SLOTS ? "" : "  FAIL"));
+
+		writer.shutdown();
+		System.out.println(writer.getStats());
+		for(File f : dir.listFiles()){
+			f.delete();
+		}
+		dir.delete();
+	}
+
+	/**
+	 * @return the file a slot's save is in, the only one whose bytes match it
+	 */
+	private static File saveFileOf(File dir, SaveStore.Slot slot, SaveStore store) throws IOException{
+		byte[] save = store.read(slot.getName());
+		for(File file : dir.listFiles()){
+			if(file.getName().startsWith("save-") && java.util.Arrays.equals(save, Files.readAllBytes(file.toPath()))){
+				return file;
+			}
+		}
+		throw new IOException("no file holds " + slot.getName());
+	}
+
+	private static boolean refuses(SaveStore store, String name){
+		try{
+			store.read(name);
+			return false;
+		}catch(IOException e){
+			return true;
+		}
+	}
+}
@@ -0,0 +1,234 @@
+package tests;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StreamCorruptedException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.Test;
+
+import model.Level;
+import model.LevelFactory;
+import model.SaveCodec;
+import server.GameLoop;
+import server.HeadlessEngine;
+import server.NullEventSink;
+import server.SaveStore;
+import server.SaveWriter;
+import client.Player;
+
+public class SaveStoreTest {
+
+	public static void main (String args[]){}
+	/* SaveStore(File directory, SaveWriter writer)	- reads only the index
+	 * Slot save(String name, Level level, byte[] save)
+	 * byte[] read(String name)
+	 * List<Slot> list()
+	 * int size()
+	 */
+
+	private static final long SEED = 42L;
+
+	/*
+	 * a store in a new directory, and the game of level 1 saved in it
+	 */
+	private static class Store{
+		final File dir;
+		final SaveWriter writer = new SaveWriter();
+		final NullEventSink sink = new NullEventSink();
+		final Level level;
+		final SaveCodec codec = new SaveCodec();
+
+		Store() throws IOException{
+			dir = Files.createTempDirectory("saves").toFile();
+			writer.start();
+			Player player = new Player(HeadlessEngine.PLAYER_NAME, 0, 0);
+			sink.reset(player);
+			level = LevelFactory.generateLevel(player, sink, 1, SEED);
+		}
+
+		/*
+		 * plays the game on, so each save is a different one
+		 * @return its save
+		 */
+		byte[] playOn(int ticks) throws IOException{
+			for(int i = 0; i < ticks; i++){
+				level.tick(GameLoop.STEP_MILLIS);
+				level.getMap1().tick(GameLoop.STEP_MILLIS);
+			}
+			return codec.encode(level);
+		}
+
+		SaveStore open() throws Exception{
+			assertTrue(writer.awaitIdle(10000));
+			return new SaveStore(dir, writer);
+		}
+
+		String[] saveFiles(){
+			return dir.list(new java.io.FilenameFilter(){
+				public boolean accept(File d, String name){
+					return name.startsWith("save-");
+				}
+			});
+		}
+
+		void delete() throws InterruptedException{
+			writer.awaitIdle(10000);
+			writer.shutdown();
+			for(File f : dir.listFiles()){
+				f.delete();
+			}
+			dir.delete();
+		}
+	}
+
+	/*
+	 * saves are listed newest first with what the index holds of them, read back as they were
+	 * saved after the store is opened again, and a slot saved over keeps one file
+	 */
+	@Test(timeout = 60000)
+	public void testSaveListAndRead() throws Exception{
+		Store s = new Store();
+		SaveStore store = s.open();
+		HashMap<String, byte[]> saves = new HashMap<String, byte[]>();
+		for(int i = 0; i < 20; i++){
+			byte[] save = s.playOn(50);
+			SaveStore.Slot slot = store.save("Game " + i, s.level, save);
+			assertEquals(save.length, slot.getSize());
+			assertEquals(1, slot.getLevelCode());
+			saves.put("Game " + i, save);
+		}
+		byte[] again = s.playOn(50);
+		store.save("Game 3", s.level, again); //Saved over
+		saves.put("Game 3", again);
+		List<SaveStore.Slot> slots = store.list();
+		assertEquals(20, slots.size());
+		assertEquals("Game 3", slots.get(0).getName());
+		assertEquals("Game 19", slots.get(1).getName());
+
+		SaveStore reopened = s.open();
+		assertEquals(20, reopened.size());
+		for(String name : saves.keySet()){
+			assertArrayEquals(saves.get(name), reopened.read(name));
+		}
+		assertEquals("the save that was replaced was kept", 20, s.saveFiles().length);
+		try{
+			reopened.read("Never saved");
+			fail("read a save that is not there");
+		}catch(FileNotFoundException e){
+			//Expected
+		}
+		s.delete();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNameTooLong() throws Exception{
+		Store s = new Store();
+		try{
+			char[] name = new char[SaveStore.MAX_NAME + 1];
+			java.util.Arrays.fill(name, 'x');
+			s.open().save(new String(name), s.level, s.playOn(1));
+		}finally{
+			s.delete();
+		}
+	}
+
+	/*
+	 * a save with a byte changed or cut short is refused before it is decoded, the other saves
+	 * still read
+	 */
+	@Test(timeout = 60000)
+	public void testCorruptSaveRefused() throws Exception{
+		Store s = new Store();
+		SaveStore store = s.open();
+		store.save("Changed", s.level, s.playOn(100));
+		store.save("Cut", s.level, s.playOn(100));
+		byte[] kept = s.playOn(100);
+		store.save("Kept", s.level, kept);
+		store = s.open();
+		String[] files = s.saveFiles();
+		java.util.Arrays.sort(files); //save-0 is Changed, save-1 Cut
+		RandomAccessFile file = new RandomAccessFile(new File(s.dir, files[0]), "rw");
+		file.seek(file.length() / 2);
+		int b = file.read();
+		file.seek(file.length() / 2);
+		file.write(b ^ 0x10);
+		file.close();
+		file = new RandomAccessFile(new File(s.dir, files[1]), "rw");
+		file.setLength(file.length() - 1);
+		file.close();
+		for(String name : new String[]{"Changed", "Cut"}){
+			try{
+				store.read(name);
+				fail("read the corrupt save " + name);
+			}catch(StreamCorruptedException e){
+				//Expected
+			}
+		}
+		assertArrayEquals(kept, store.read("Kept"));
+		s.delete();
+	}
+
+	/*
+	 * a save file no index names, left by a crash, is deleted when the store is opened
+	 */
+	@Test(timeout = 60000)
+	public void testUnindexedSaveDeleted() throws Exception{
+		Store s = new Store();
+		s.open().save("Indexed", s.level, s.playOn(10));
+		File orphan = new File(s.dir, "save-999.data");
+		Files.write(orphan.toPath(), new byte[]{1, 2, 3});
+		assertEquals(1, s.open().size());
+		assertTrue(s.writer.awaitIdle(10000));
+		assertFalse(orphan.exists());
+		assertEquals(1, s.saveFiles().length);
+		s.delete();
+	}
+
+	/*
+	 * a corrupt index is moved aside with the saves it named, the store starts empty, and neither
+	 * the next saves nor opening the store again touch the saves moved aside
+	 */
+	@Test(timeout = 60000)
+	public void testCorruptIndexMovedAside() throws Exception{
+		Store s = new Store();
+		SaveStore store = s.open();
+		for(int i = 0; i < 5; i++){
+			store.save("Old " + i, s.level, s.playOn(20));
+		}
+		s.open();
+		File index = new File(s.dir, "index.data");
+		RandomAccessFile corrupt = new RandomAccessFile(index, "rw");
+		corrupt.seek(20);
+		corrupt.write(0xFF);
+		corrupt.close();
+		HashMap<String, Long> old = new HashMap<String, Long>();
+		for(String name : s.saveFiles()){
+			old.put(name, new File(s.dir, name).length());
+		}
+		assertEquals(5, old.size());
+
+		SaveStore fresh = s.open();
+		assertEquals(0, fresh.size());
+		assertTrue(new File(s.dir, "index.data.corrupt").exists());
+		byte[] after = s.playOn(20);
+		for(int i = 0; i < 5; i++){
+			fresh.save("New " + i, s.level, after);
+		}
+		assertEquals(5, s.open().size()); //Deletes what the new index does not name
+		assertTrue(s.writer.awaitIdle(10000));
+		for(String name : old.keySet()){
+			File aside = new File(s.dir, name + ".corrupt");
+			assertTrue(name + " was not kept", aside.exists());
+			assertEquals(old.get(name).longValue(), aside.length());
+		}
+		assertArrayEquals(after, s.open().read("New 4"));
+		s.delete();
+	}
+}
@@ -0,0 +1,98 @@
+package tests;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import server.SpscQueue;
+
+public class SpscQueueTest {
+
+	public static void main (String args[]){}
+	/* boolean offer(T element)
+	 * T poll()
+	 * int size()
+	 * boolean isEmpty()
+	 * int capacity()
+	 */
+
+	private static final int ITEMS = 4000000; //Passed between the two threads
+	private static final int RING = 64; //Small, so the producer keeps finding it full and both sides wrap
+
+	/*
+	 * the capacity is rounded up to a power of two
+	 */
+	@Test
+	public void testCapacity(){
+		assertEquals(8, new SpscQueue<Integer>(8).capacity());
+		assertEquals(16, new SpscQueue<Integer>(9).capacity());
+		assertEquals(4096, new SpscQueue<Integer>(4096).capacity());
+	}
+
+	/*
+	 * offer returns false when full, poll null when empty, and the order holds across the
+	 * end of the ring
+	 */
+	@Test
+	public void testFullAndEmpty(){
+		SpscQueue<Integer> queue = new SpscQueue<Integer>(8);
+		assertTrue(queue.isEmpty());
+		assertNull(queue.poll());
+		int next = 0, expected = 0;
+		for(int round = 0; round < 5; round++){
+			while(queue.offer(next)){
+				next++;
+			}
+			assertEquals(8, queue.size());
+			assertFalse(queue.offer(-1));
+			for(int i = 0; i < 3 + round; i++){ //Take some out, so the next round's elements wrap
+				assertEquals(expected++, (int) queue.poll());
+			}
+		}
+		while(!queue.isEmpty()){
+			assertEquals(expected++, (int) queue.poll());
+		}
+		assertEquals(next, expected);
+		assertNull(queue.poll());
+		assertEquals(0, queue.size());
+	}
+
+	/*
+	 * a producer and a consumer thread pass ITEMS through a small ring, every one arriving once
+	 * and in order
+	 */
+	@Test(timeout = 120000)
+	public void testTwoThreads() throws InterruptedException{
+		final SpscQueue<Integer> queue = new SpscQueue<Integer>(RING);
+		final long[] full = new long[1];
+		Thread producer = new Thread(new Runnable(){
+			public void run(){
+				for(int i = 0; i < ITEMS; i++){
+					Integer item = i;
+					while(!queue.offer(item)){
+						full[0]++;
+						Thread.yield();
+					}
+				}
+			}
+		});
+		producer.start();
+		int expected = 0;
+		while(expected < ITEMS){
+			Integer item = queue.poll();
+			if(item == null){
+				Thread.yield();
+				continue;
+			}
+			if(item != expected){
+				fail("expected " + expected + ", took " + item);
+			}
+			expected++;
+		}
+		producer.join();
+		assertEquals(ITEMS, expected);
+		assertTrue(queue.isEmpty());
+		assertNull(queue.poll());
+		assertTrue("the producer never found the ring full", full[0] > 0);
+	}
+}
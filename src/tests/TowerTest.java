@@ -3,11 +3,14 @@ package tests;
 import static org.junit.Assert.*;
 
 import java.awt.Point;
-import java.util.ArrayList;
 
 import org.junit.Test;
 
 import GameController.*;
+import model.LevelFactory;
+import model.Map;
+import server.NullEventSink;
+import client.Player;
 
 public class TowerTest {
 
@@ -42,33 +45,45 @@ public class TowerTest {
 		
 	}
 	
+	/*
+	 * the tower finds enemies through its Map: it hits the one in range until it faints and is
+	 * removed from the Map, then has nothing left to attack
+	 */
 	@Test
 	public void testAttacks(){
 		
+		NullEventSink sink = new NullEventSink();
+		Player player = new Player("Max Justice", 1000, 100);
+		sink.reset(player);
+		Map map = LevelFactory.generateLevel(player, sink, 1, 42L).getMap1();
+		Point start = map.getCompiledPath(0).getPoint(0);
 		
 		CuboneTower gym = new CuboneTower("Max Justice");
-		
-		gym.setPlaceOnBoard(new Point (25,25));
-		
-		ArrayList<Enemy> badguys = new ArrayList<Enemy>();
-		PikachuEnemy pika1 = new PikachuEnemy();
-		pika1.setLocation( new Point(5,5));
-		PikachuEnemy pika2 = new PikachuEnemy();
-		pika2.setLocation( new Point(50,50));
-		PikachuEnemy pika3 = new PikachuEnemy();
-		pika3.setLocation( new Point(100,100));
-		PikachuEnemy pika4 = new PikachuEnemy();
-		pika4.setLocation( new Point(300,300));	
-		badguys.add(pika1);
-		badguys.add(pika2);
-		badguys.add(pika3);
-		//badguys.add(pika4);
-		
-		assertEquals(gym.AttackEnemy(badguys), 0);
-		
-		assertTrue(badguys.isEmpty());
-		
-		assertTrue(!gym.canAttackEnemy(pika4.getLocation()));
+		Point[] besides = {new Point(start.x + 1, start.y), new Point(start.x - 1, start.y),
+				new Point(start.x, start.y + 1), new Point(start.x, start.y - 1)};
+		boolean placed = false;
+		for(int i = 0; i < besides.length && !placed; i++){
+			placed = map.addTower(gym, besides[i]);
+		}
+		assertTrue(placed);
+		assertFalse(gym.AttackEnemy()); //No enemies yet
+		
+		PikachuEnemy pika1 = new PikachuEnemy(map);
+		map.spawnEnemy(pika1);
+		assertTrue(gym.canAttackEnemy(pika1.getLocation()));
+		int health = pika1.getHealth();
+		
+		assertTrue(gym.AttackEnemy());
+		assertEquals(health - gym.getAttackPower(), pika1.getHealth());
+		
+		for(int i = 0; i < 10 && pika1.getHealth() > 0; i++){ //isDead() would pay out its worth again
+			assertTrue(gym.AttackEnemy());
+		}
+		assertTrue(pika1.getHealth() <= 0);
+		assertFalse(map.getEnemies().contains(pika1));
+		assertFalse(gym.AttackEnemy());
+		
+		assertTrue(!gym.canAttackEnemy(new Point(300,300)));
 		
 	}
 	
@@ -0,0 +1,85 @@
+package tests;
+
+import java.io.EOFException;
+import java.util.LinkedList;
+import java.util.concurrent.Semaphore;
+
+import server.GameServer;
+import client.SocketTransport;
+import client.Transport;
+import commands.ClientMessageCommand;
+
+/**
+ * Compares the two ways a GameClient reaches its GameServer: a SocketTransport over TCP to
+ * localhost, and the in-memory loopback of GameServer.openLoopback. For each it reports:
+ *   start us		- starting a GameServer and connecting one client, up to the client
+ *					  having read its Player, the TCP server binding a port first
+ *   deliver ns		- per command, sending ClientMessageCommands to the client in batches of
+ *					  BATCH and waiting for its reader thread to have read them all
+ *
+ * Run as a Java application.
+ */
+public class TransportBenchmark {
+
+	private static final int ROUNDS = 5; //The best of this many timed rounds is reported
+	private static final int BATCH = 1000; //Commands sent before waiting for the reader, below the loopback's capacity
+	private static final int BATCHES = 50;
+
+	public static void main(String[] args) throws Exception{
+		System.out.printf("%9s | %10s | %11s%n", "transport", "start us", "deliver ns");
+		long[] tcp = {Long.MAX_VALUE, Long.MAX_VALUE};
+		long[] loopback = {Long.MAX_VALUE, Long.MAX_VALUE};
+		for(int round = 0; round < ROUNDS; round++){
+			measure(false, tcp);
+			measure(true, loopback);
+		}
+		System.out.printf("%9s | %10d | %11d%n", "tcp", tcp[0] / 1000, tcp[1] / (BATCH * BATCHES));
+		System.out.printf("%9s | %10d | %11d%n", "loopback", loopback[0] / 1000, loopback[1] / (BATCH * BATCHES));
+	}
+
+	/**
+	 * Runs one round on a new server, keeping the best times in best
+	 */
+	private static void measure(boolean loopback, long[] best) throws Exception{
+		long start = System.nanoTime();
+		GameServer server = new GameServer(loopback ? GameServer.LOCAL_ONLY : 0);
+		final Transport transport = loopback ? server.openLoopback() : new SocketTransport("localhost", server.getPort());
+		transport.writeObject("bench");
+		transport.readObject(); //Player
+		best[0] = Math.min(best[0], System.nanoTime() - start);
+		transport.readObject(); //isPlayer1Client
+		transport.readObject(); //ClientSpriteTable
+
+		final Semaphore read = new Semaphore(0);
+		Thread reader = new Thread(new Runnable(){
+			public void run(){
+				try{
+					while(true){
+						transport.readObject();
+						read.release();
+					}
+				}catch(EOFException e){
+					//Closed
+				}catch(Exception e){
+					e.printStackTrace();
+				}
+			}
+		});
+		reader.setDaemon(true);
+		reader.start();
+
+		LinkedList<String> messages = new LinkedList<String>();
+		messages.add("bench: hello");
+		ClientMessageCommand command = new ClientMessageCommand(messages);
+		start = System.nanoTime();
+		for(int b = 0; b < BATCHES; b++){
+			for(int i = 0; i < BATCH; i++){
+				server.sendTo("bench", command);
+			}
+			read.acquire(BATCH);
+		}
+		best[1] = Math.min(best[1], System.nanoTime() - start);
+		server.shutdown();
+		reader.join(1000);
+	}
+}
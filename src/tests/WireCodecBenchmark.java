@@ -0,0 +1,155 @@
+package tests;
+
+import java.awt.Point;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+
+import server.BuildScript;
+import server.GameLoop;
+import server.HeadlessEngine;
+import server.NullEventSink;
+import server.SnapshotEncoder;
+import GUI.EnemyImage;
+import GUI.TowerImage;
+import GUI.GameView.towerType;
+import commands.ClientHPandMoney;
+import commands.ClientSnapshot;
+import commands.ClientTowerAttack;
+import commands.ClientUpdate;
+import commands.FrameInput;
+import commands.FrameOutput;
+import commands.ServerTowerCommand;
+import commands.upgradeTowerCommand;
+
+/**
+ * Compares the WireCodec frames against Java serialization for the commands sent every tick.
+ * The messages are captured from a headless game of level 3, then for each kind of message it
+ * reports bytes per frame and encode/decode ns per frame of:
+ *   java        - one ObjectOutputStream for the whole game, never reset, the old path
+ *   java+reset  - the same, reset after every message so its handle table does not grow
+ *   wire        - FrameOutput and FrameInput
+ *
+ * Run as a Java application.
+ */
+public class WireCodecBenchmark {
+
+	private static final int ROUNDS = 7; //The best of this many timed rounds is reported
+
+	public static void main(String[] args) throws Exception{
+		LinkedHashMap<String, ArrayList<Object>> messages = captureGame();
+		System.out.printf("%-18s %7s | %-20s | %-20s | %-20s%n", "", "", "bytes/frame", "encode ns/frame", "decode ns/frame");
+		System.out.printf("%-18s %7s | %6s %6s %6s | %6s %6s %6s | %6s %6s %6s%n", "message", "frames",
+				"java", "reset", "wire", "java", "reset", "wire", "java", "reset", "wire");
+		for(String kind : messages.keySet()){
+			ArrayList<Object> list = messages.get(kind);
+			long[] java = measureJava(list, false);
+			long[] reset = measureJava(list, true);
+			long[] wire = measureWire(list);
+			int n = list.size();
+			System.out.printf("%-18s %7d | %6d %6d %6d | %6d %6d %6d | %6d %6d %6d%n", kind, n,
+					java[0] / n, reset[0] / n, wire[0] / n, java[1] / n, reset[1] / n, wire[1] / n,
+					java[2] / n, reset[2] / n, wire[2] / n);
+		}
+	}
+
+	/**
+	 * Plays a game and keeps every message the server would send a client, by kind
+	 */
+	private static LinkedHashMap<String, ArrayList<Object>> captureGame(){
+		final LinkedHashMap<String, ArrayList<Object>> messages = new LinkedHashMap<String, ArrayList<Object>>();
+		final String[] kinds = {"ClientUpdate", "snapshot delta", "snapshot keyframe", "ClientTowerAttack",
+				"ClientHPandMoney", "ServerTowerCommand", "upgradeTowerCmd"};
+		for(String kind : kinds){
+			messages.put(kind, new ArrayList<Object>());
+		}
+		final SnapshotEncoder encoder = new SnapshotEncoder(true);
+		final long[] ticks = new long[1]; //Updates so far, one a tick, the encoder's clock
+		NullEventSink sink = new NullEventSink(){
+			public boolean hasViewers(){
+				return true;
+			}
+			public void updateClients(ArrayList<EnemyImage> enemyImages, ArrayList<TowerImage> towerImages, boolean fromPlayer1){
+				messages.get("ClientUpdate").add(new ClientUpdate(enemyImages, towerImages, fromPlayer1));
+				ClientSnapshot s = encoder.encode(enemyImages, towerImages, ticks[0]++ * GameLoop.STEP_MILLIS * 1000000L);
+				if(s != null){
+					messages.get(s.isKeyframe() ? "snapshot keyframe" : "snapshot delta").add(s);
+				}
+			}
+			public void updateClients(int playerHealth, int playerMoney, boolean fromPlayer1){
+				messages.get("ClientHPandMoney").add(new ClientHPandMoney(playerHealth, playerMoney, fromPlayer1));
+			}
+			public void updateClientsOfAttack(towerType type, Point towerLocation, Point enemyLocation, boolean fromPlayer1){
+				messages.get("ClientTowerAttack").add(new ClientTowerAttack(type, towerLocation, enemyLocation, fromPlayer1));
+			}
+		};
+		BuildScript script = new BuildScript();
+		for(int i = 0; i < 4; i++){
+			script.place(i * 20, towerType.FIRE, 1 + i, 3);
+		}
+		HeadlessEngine.run(3, script, 7L, sink, HeadlessEngine.DEFAULT_MAX_TICKS);
+		for(int i = 0; i < 1000; i++){ //What clients send, at the rate players click
+			messages.get("ServerTowerCommand").add(new ServerTowerCommand("Player" + (i % 2), towerType.values()[i % 8], new Point(i % 12, i % 17)));
+			messages.get("upgradeTowerCmd").add(new upgradeTowerCommand("Player" + (i % 2), new Point(i % 12, i % 17)));
+		}
+		return messages;
+	}
+
+	/**
+	 * @return {bytes, encode ns, decode ns} for all the messages through one Object stream
+	 */
+	private static long[] measureJava(ArrayList<Object> messages, boolean reset) throws IOException, ClassNotFoundException{
+		long bestEncode = Long.MAX_VALUE, bestDecode = Long.MAX_VALUE;
+		byte[] bytes = null;
+		for(int round = 0; round < ROUNDS; round++){
+			ByteArrayOutputStream buffer = new ByteArrayOutputStream(1 << 20);
+			long start = System.nanoTime();
+			ObjectOutputStream out = new ObjectOutputStream(buffer);
+			for(Object m : messages){
+				out.writeObject(m);
+				if(reset){
+					out.reset();
+				}
+			}
+			out.flush();
+			bestEncode = Math.min(bestEncode, System.nanoTime() - start);
+			bytes = buffer.toByteArray();
+			start = System.nanoTime();
+			ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes));
+			for(int i = 0; i < messages.size(); i++){
+				in.readObject();
+			}
+			bestDecode = Math.min(bestDecode, System.nanoTime() - start);
+		}
+		return new long[]{bytes.length, bestEncode, bestDecode};
+	}
+
+	/**
+	 * @return {bytes, encode ns, decode ns} for all the messages through a FrameOutput and FrameInput
+	 */
+	private static long[] measureWire(ArrayList<Object> messages) throws IOException{
+		long bestEncode = Long.MAX_VALUE, bestDecode = Long.MAX_VALUE;
+		byte[] bytes = null;
+		for(int round = 0; round < ROUNDS; round++){
+			ByteArrayOutputStream buffer = new ByteArrayOutputStream(1 << 20);
+			long start = System.nanoTime();
+			FrameOutput out = new FrameOutput(buffer);
+			for(Object m : messages){
+				out.writeObject(m);
+			}
+			bestEncode = Math.min(bestEncode, System.nanoTime() - start);
+			bytes = buffer.toByteArray();
+			start = System.nanoTime();
+			FrameInput in = new FrameInput(new ByteArrayInputStream(bytes));
+			for(int i = 0; i < messages.size(); i++){
+				in.readObject();
+			}
+			bestDecode = Math.min(bestDecode, System.nanoTime() - start);
+		}
+		return new long[]{bytes.length, bestEncode, bestDecode};
+	}
+}
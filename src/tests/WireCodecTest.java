@@ -0,0 +1,252 @@
+package tests;
+
+import static org.junit.Assert.*;
+
+import java.awt.Point;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import GUI.EnemyImage;
+import GUI.TowerImage;
+import GUI.GameView.towerType;
+import GameController.Enemy.directionFacing;
+import commands.ClientHPandMoney;
+import commands.ClientLockstepTurn;
+import commands.ClientMiniMap;
+import commands.ClientSnapshot;
+import commands.ClientTowerAttack;
+import commands.ClientUpdate;
+import commands.ServerLockstepHash;
+import commands.ServerTowerCommand;
+import commands.WireCodec;
+import commands.upgradeTowerCommand;
+
+public class WireCodecTest {
+
+	public static void main (String args[]){}
+	/* ByteBuffer encode(Object message)
+	 * Object decode(ByteBuffer frame)
+	 * static void putVarint(ByteBuffer buffer, int value)
+	 * static int getVarint(ByteBuffer buffer)
+	 */
+
+	/*
+	 * one message of every frame type, values picked to reach negative zigzags, multi byte
+	 * varints and null strings
+	 */
+	private static Object[] samples(){
+		return new Object[]{
+			new ClientSnapshot(true, true, 300, enemies(3), new int[]{7, 1 << 20}, new int[]{-1, 0, 5},
+					towers(2), new int[]{Integer.MIN_VALUE}),
+			new ClientTowerAttack(towerType.WATER, new Point(3, 4), new Point(-2, 200), true),
+			new ClientHPandMoney(-15, 123456, false),
+			new ServerTowerCommand("Ash Ketchum", towerType.PSYCHIC, new Point(11, 16)),
+			new upgradeTowerCommand(null, new Point(0, 0)),
+			new ClientUpdate(enemies(4), towers(3), false),
+			new ClientMiniMap(true, new int[]{1, 2, 3}, new int[0]),
+			new ClientLockstepTurn(1L << 40, 2, new int[]{0, 5, 6, 7, -8}),
+			new ServerLockstepHash(99999L, -1234567890123L, ServerLockstepHash.LOST),
+			"any other object, Java serialized" //JAVA
+		};
+	}
+
+	private static ArrayList<EnemyImage> enemies(int count){
+		ArrayList<EnemyImage> enemies = new ArrayList<EnemyImage>();
+		for(int i = 0; i < count; i++){
+			enemies.add(new EnemyImage(i * 1000, i % 5, new Point(i, -i), directionFacing.values()[i % 4],
+					i * 37, 100 - i, 250, 8, -3, 0.5 * i, 40));
+		}
+		return enemies;
+	}
+
+	private static ArrayList<TowerImage> towers(int count){
+		ArrayList<TowerImage> towers = new ArrayList<TowerImage>();
+		for(int i = 0; i < count; i++){
+			towers.add(new TowerImage(i + 1, i % 8, new Point(i * 2, i * 3), 1 + i % 3));
+		}
+		return towers;
+	}
+
+	/*
+	 * @return the type tag and body of a message's frame, its length prefix checked and removed
+	 */
+	private static byte[] body(WireCodec codec, Object message) throws IOException{
+		ByteBuffer frame = codec.encode(message);
+		int length = WireCodec.getVarint(frame);
+		assertEquals(length, frame.remaining());
+		byte[] body = new byte[length];
+		frame.get(body);
+		return body;
+	}
+
+	private static int tagOf(Object message) throws IOException{
+		return body(new WireCodec(), message)[0];
+	}
+
+	private static void assertRefused(byte[] body){
+		try{
+			new WireCodec().decode(ByteBuffer.wrap(body));
+			fail("decoded a corrupt frame");
+		}catch(StreamCorruptedException e){
+			//Expected
+		}catch(IOException e){
+			fail("wrong exception " + e);
+		}
+	}
+
+	/*
+	 * every frame type decodes to a message that encodes to the same bytes, using all the frame
+	 */
+	@Test
+	public void testRoundTripEveryTag() throws IOException{
+		WireCodec codec = new WireCodec();
+		boolean[] tags = new boolean[16];
+		for(Object message : samples()){
+			byte[] body = body(codec, message);
+			tags[body[0]] = true;
+			ByteBuffer in = ByteBuffer.wrap(body);
+			Object decoded = codec.decode(in);
+			assertEquals(message.getClass(), decoded.getClass());
+			assertEquals(0, in.remaining());
+			assertArrayEquals(body, body(codec, decoded));
+		}
+		for(int tag = 0; tag <= 9; tag++){
+			assertTrue("no sample of tag " + tag, tags[tag]);
+		}
+	}
+
+	/*
+	 * the fields come back as they were sent
+	 */
+	@Test
+	public void testRoundTripValues() throws IOException{
+		WireCodec codec = new WireCodec();
+		ClientSnapshot s = (ClientSnapshot) codec.decode(ByteBuffer.wrap(body(codec, samples()[0])));
+		assertTrue(s.isFromPlayer1());
+		assertTrue(s.isKeyframe());
+		assertEquals(300, s.getSequence());
+		assertArrayEquals(new int[]{-1, 0, 5}, s.getEnemyChanges());
+		assertArrayEquals(new int[]{Integer.MIN_VALUE}, s.getRemovedTowers());
+		EnemyImage e = s.getAddedEnemies().get(2);
+		assertEquals(2000, e.getEntityId());
+		assertEquals(new Point(2, -2), e.getLocation());
+		assertEquals(directionFacing.values()[2], e.getOrientation());
+		assertEquals(-3, e.getDefense());
+		assertEquals(1.0, e.getSpeed(), 0);
+		assertEquals(2, s.getAddedTowers().get(1).getLevel());
+
+		ServerTowerCommand t = (ServerTowerCommand) codec.decode(ByteBuffer.wrap(body(codec, samples()[3])));
+		assertEquals("Ash Ketchum", t.getName());
+		assertEquals(towerType.PSYCHIC, t.getTowerType());
+		assertNull(((upgradeTowerCommand) codec.decode(ByteBuffer.wrap(body(codec, samples()[4])))).getName());
+
+		ServerLockstepHash h = (ServerLockstepHash) codec.decode(ByteBuffer.wrap(body(codec, samples()[8])));
+		assertEquals(99999L, h.getTick());
+		assertEquals(-1234567890123L, h.getHash());
+		assertEquals(1L << 40, ((ClientLockstepTurn) codec.decode(ByteBuffer.wrap(body(codec, samples()[7])))).getTick());
+	}
+
+	/*
+	 * a message larger than the codec's buffer grows it
+	 */
+	@Test
+	public void testLargeMessage() throws IOException{
+		WireCodec codec = new WireCodec();
+		ClientUpdate update = new ClientUpdate(enemies(2000), towers(500), true);
+		byte[] body = body(codec, update);
+		assertTrue(body.length > 4096);
+		ClientUpdate decoded = (ClientUpdate) codec.decode(ByteBuffer.wrap(body));
+		assertEquals(2000, decoded.getEnemyImages().size());
+		assertEquals(500, decoded.getTowerImages().size());
+	}
+
+	/*
+	 * varints at the edges of each length, negatives taking all five bytes
+	 */
+	@Test
+	public void testVarints(){
+		int[] values = {0, 1, 127, 128, 16383, 16384, Integer.MAX_VALUE, -1, Integer.MIN_VALUE};
+		int[] sizes = {1, 1, 1, 2, 2, 3, 5, 5, 5};
+		ByteBuffer buffer = ByteBuffer.allocate(64);
+		for(int i = 0; i < values.length; i++){
+			buffer.clear();
+			WireCodec.putVarint(buffer, values[i]);
+			assertEquals(sizes[i], buffer.position());
+			assertEquals(sizes[i], WireCodec.varintSize(values[i]));
+			buffer.flip();
+			assertEquals(values[i], WireCodec.getVarint(buffer));
+		}
+	}
+
+	/*
+	 * every frame cut short is refused
+	 */
+	@Test
+	public void testTruncatedFrames() throws IOException{
+		for(Object message : samples()){
+			byte[] body = body(new WireCodec(), message);
+			for(int length = 1; length < body.length; length++){
+				byte[] cut = new byte[length];
+				System.arraycopy(body, 0, cut, 0, length);
+				try{
+					new WireCodec().decode(ByteBuffer.wrap(cut));
+					fail(message.getClass().getSimpleName() + " cut to " + length + " bytes decoded");
+				}catch(IOException e){
+					//Expected, a StreamCorruptedException or the EOF of a cut JAVA frame
+				}
+			}
+		}
+		assertRefused(new byte[]{(byte) tagOf(samples()[2])}); //The tag alone
+	}
+
+	/*
+	 * lengths larger than the frame are refused before they are allocated
+	 */
+	@Test
+	public void testOversizedLengths() throws IOException{
+		int[] lengths = {Integer.MAX_VALUE, 0x7FFFFFF0, -1, -2, 1000};
+		for(int length : lengths){
+			ByteBuffer body = ByteBuffer.allocate(16);
+			body.put((byte) tagOf(samples()[3])); //ServerTowerCommand, its name first
+			WireCodec.putVarint(body, length);
+			body.put((byte) 'A').put((byte) 0).put((byte) 0).put((byte) 0);
+			assertRefused(java.util.Arrays.copyOf(body.array(), body.position()));
+
+			body.clear();
+			body.put((byte) tagOf(samples()[7])); //ClientLockstepTurn, tick, speed then inputs
+			body.put((byte) 1).put((byte) 1);
+			WireCodec.putVarint(body, length);
+			body.put((byte) 0);
+			assertRefused(java.util.Arrays.copyOf(body.array(), body.position()));
+
+			body.clear();
+			body.put((byte) tagOf(samples()[5])); //ClientUpdate, fromPlayer1 then the enemies
+			body.put((byte) 0);
+			WireCodec.putVarint(body, length);
+			body.put((byte) 0);
+			assertRefused(java.util.Arrays.copyOf(body.array(), body.position()));
+		}
+		assertRefused(new byte[]{(byte) tagOf(samples()[4]), (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF,
+				(byte) 0xFF, 0}); //A varint longer than five bytes
+	}
+
+	/*
+	 * unknown type tags and enum ordinals are refused
+	 */
+	@Test
+	public void testUnknownTags(){
+		assertRefused(new byte[]{10});
+		assertRefused(new byte[]{42, 0, 0});
+		assertRefused(new byte[]{-1});
+		assertRefused(new byte[0]);
+		try{
+			assertRefused(new byte[]{(byte) tagOf(samples()[1]), 100, 0, 0, 0, 0, 1}); //No tower type 100
+		}catch(IOException e){
+			fail(e.toString());
+		}
+	}
+}